@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal;
+
+import com.nfsdb.journal.column.ColumnType;
+import com.nfsdb.journal.column.FixedColumn;
+import com.nfsdb.journal.column.SymbolTable;
+import com.nfsdb.journal.column.VariableColumn;
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.factory.configuration.ColumnMetadata;
+import com.nfsdb.journal.index.KVIndex;
+import com.nfsdb.journal.utils.Checksum;
+import com.nfsdb.journal.utils.Unsafe;
+import org.joda.time.Interval;
+
+import java.util.Arrays;
+
+/**
+ * Tells writer whether row it is about to append repeats existing row, that is row with same timestamp and
+ * same values of key columns. Appends are ordered, so only rows at or before last appended timestamp can be
+ * repeated. Rows appended within window of last timestamp are kept in open addressing table of key hashes
+ * and row numbers, which makes check of replayed row O(1). Rows written before writer started checking or
+ * fallen out of window are looked up in partition of their timestamp, either in KVIndex of first indexed
+ * SYMBOL or INT key column or by binary search of timestamp column.
+ * <p/>
+ * Table only points at rows, matches are always compared to row data, so table can go stale without
+ * producing false duplicates.
+ */
+class Deduplicator<T> {
+    private static final int MIN_CAPACITY = 1024;
+    private static final long UNKNOWN = Long.MAX_VALUE;
+    private final JournalWriter<T> writer;
+    private final long window;
+    private final int columns[];
+    private final ColumnType types[];
+    private final long values[];
+    private final String strings[];
+    private final int indexColumn;
+    private long timestamps[];
+    private long rows[];
+    private long hashes[];
+    private int mask;
+    private int count;
+    // rows with timestamp from here onwards are all in table
+    private long coveredLo = UNKNOWN;
+    private long hash;
+
+    Deduplicator(JournalWriter<T> writer, long window, int columns[]) {
+        this.writer = writer;
+        this.window = window;
+        this.columns = columns;
+        this.types = new ColumnType[columns.length];
+        this.values = new long[columns.length];
+        this.strings = new String[columns.length];
+        int indexColumn = -1;
+        for (int i = 0; i < columns.length; i++) {
+            ColumnMetadata m = writer.getMetadata().getColumnMetadata(columns[i]);
+            types[i] = m.type;
+            if (indexColumn == -1 && m.indexed && (m.type == ColumnType.SYMBOL || m.type == ColumnType.INT)) {
+                indexColumn = i;
+            }
+        }
+        this.indexColumn = indexColumn;
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * @param obj       object to be appended.
+     * @param timestamp timestamp of object.
+     * @return true if journal has row with same timestamp and key values.
+     * @throws JournalException if partitions cannot be opened.
+     */
+    boolean isDuplicate(T obj, long timestamp) throws JournalException {
+        if (!isCandidate(timestamp)) {
+            return false;
+        }
+        for (int i = 0; i < columns.length; i++) {
+            Journal.ColumnMetadata m = writer.getColumnMetadata(columns[i]);
+            long offset = m.meta.offset;
+            switch (types[i]) {
+                case SYMBOL:
+                    String sym = (String) Unsafe.getUnsafe().getObject(obj, offset);
+                    int key = sym == null ? SymbolTable.VALUE_IS_NULL : m.symbolTable.getQuick(sym);
+                    if (key == SymbolTable.VALUE_NOT_FOUND) {
+                        return false;
+                    }
+                    values[i] = key;
+                    break;
+                case STRING:
+                    strings[i] = (String) Unsafe.getUnsafe().getObject(obj, offset);
+                    values[i] = Checksum.hash64(strings[i]);
+                    break;
+                case INT:
+                    values[i] = Unsafe.getUnsafe().getInt(obj, offset);
+                    break;
+                case SHORT:
+                    values[i] = Unsafe.getUnsafe().getShort(obj, offset);
+                    break;
+                case BYTE:
+                    values[i] = Unsafe.getUnsafe().getByte(obj, offset);
+                    break;
+                case BOOLEAN:
+                    values[i] = Unsafe.getUnsafe().getBoolean(obj, offset) ? 1 : 0;
+                    break;
+                default:
+                    values[i] = Unsafe.getUnsafe().getLong(obj, offset);
+                    break;
+            }
+        }
+        return find(timestamp);
+    }
+
+    /**
+     * Same as isDuplicate() over object for row that has been written to columns of partition but not committed.
+     */
+    boolean isDuplicate(Partition<T> partition, long localRowID, long timestamp) throws JournalException {
+        if (!isCandidate(timestamp)) {
+            return false;
+        }
+        read(partition, localRowID);
+        return find(timestamp);
+    }
+
+    /**
+     * Adds last row of partition to table.
+     */
+    void add(Partition<T> partition, long timestamp) {
+        if (count >= (mask + 1) / 2) {
+            evict(timestamp - window);
+        }
+        long row = partition.size() - 1;
+        read(partition, row);
+        computeHash(timestamp);
+        int i = (int) hash & mask;
+        while (rows[i] != -1) {
+            i = (i + 1) & mask;
+        }
+        timestamps[i] = timestamp;
+        rows[i] = row;
+        hashes[i] = hash;
+        count++;
+    }
+
+    /**
+     * Forgets rows in table, e.g. after rollback.
+     */
+    void clear() {
+        Arrays.fill(rows, -1);
+        count = 0;
+        coveredLo = UNKNOWN;
+    }
+
+    private boolean isCandidate(long timestamp) throws JournalException {
+        long last = writer.getAppendTimestampLo();
+        if (coveredLo == UNKNOWN) {
+            coveredLo = writer.nonLagPartitionCount() == 0 ? Long.MIN_VALUE : last + 1;
+        }
+        return timestamp <= last && writer.nonLagPartitionCount() > 0;
+    }
+
+    private boolean find(long timestamp) throws JournalException {
+        computeHash(timestamp);
+        Partition<T> partition = null;
+        for (int i = (int) hash & mask; rows[i] != -1; i = (i + 1) & mask) {
+            if (hashes[i] == hash && timestamps[i] == timestamp) {
+                if (partition == null && (partition = partitionOf(timestamp)) == null) {
+                    return false;
+                }
+                if (rows[i] < partition.size() && matches(partition, rows[i], timestamp)) {
+                    return true;
+                }
+            }
+        }
+
+        if (timestamp >= coveredLo) {
+            return false;
+        }
+
+        if (partition == null && (partition = partitionOf(timestamp)) == null) {
+            return false;
+        }
+
+        if (indexColumn != -1 && !partition.isIndexDeferred()) {
+            KVIndex index = partition.getIndexForColumn(columns[indexColumn]);
+            int key = types[indexColumn] == ColumnType.INT
+                    ? (int) values[indexColumn] % writer.getMetadata().getColumnMetadata(columns[indexColumn]).distinctCountHint
+                    : (int) values[indexColumn];
+            if (!index.contains(key)) {
+                return false;
+            }
+            FixedColumn ts = partition.getTimestampColumn();
+            for (int i = index.getValueCount(key) - 1; i >= 0; i--) {
+                long row = index.getValueQuick(key, i);
+                long t = ts.getLong(row);
+                if (t < timestamp) {
+                    break;
+                }
+                if (t == timestamp && matches(partition, row, timestamp)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long row = partition.indexOf(timestamp, BinarySearch.SearchType.NEWER_OR_SAME);
+        if (row < 0) {
+            return false;
+        }
+        FixedColumn ts = partition.getTimestampColumn();
+        for (long sz = partition.size(); row < sz && ts.getLong(row) == timestamp; row++) {
+            if (matches(partition, row, timestamp)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Partition<T> partitionOf(long timestamp) throws JournalException {
+        for (int i = writer.nonLagPartitionCount() - 1; i >= 0; i--) {
+            Partition<T> partition = writer.getPartition(i, true);
+            Interval interval = partition.getInterval();
+            if (interval == null || (timestamp >= interval.getStartMillis() && timestamp <= interval.getEndMillis())) {
+                return partition;
+            }
+            if (timestamp > interval.getEndMillis()) {
+                break;
+            }
+        }
+        return null;
+    }
+
+    private boolean matches(Partition<T> partition, long row, long timestamp) {
+        if (partition.getTimestampColumn().getLong(row) != timestamp) {
+            return false;
+        }
+        for (int i = 0; i < columns.length; i++) {
+            if (types[i] == ColumnType.STRING) {
+                VariableColumn column = (VariableColumn) partition.getAbstractColumn(columns[i]);
+                if (strings[i] == null ? column.getStr(row) != null : !column.cmpStr(row, strings[i])) {
+                    return false;
+                }
+            } else if (value(partition, row, i) != values[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void read(Partition<T> partition, long row) {
+        for (int i = 0; i < columns.length; i++) {
+            if (types[i] == ColumnType.STRING) {
+                strings[i] = partition.getStr(row, columns[i]);
+                values[i] = Checksum.hash64(strings[i]);
+            } else {
+                values[i] = value(partition, row, i);
+            }
+        }
+    }
+
+    private long value(Partition<T> partition, long row, int i) {
+        FixedColumn column = (FixedColumn) partition.getAbstractColumn(columns[i]);
+        switch (types[i]) {
+            case SYMBOL:
+            case INT:
+                return column.getInt(row);
+            case SHORT:
+                return column.getShort(row);
+            case BYTE:
+                return column.getByte(row);
+            case BOOLEAN:
+                return column.getBool(row) ? 1 : 0;
+            default:
+                return column.getLong(row);
+        }
+    }
+
+    private void computeHash(long timestamp) {
+        long h = timestamp;
+        for (int i = 0; i < values.length; i++) {
+            h = h * 31 + values[i];
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        this.hash = h;
+    }
+
+    /**
+     * Drops rows older than horizon, table grows when most of rows are still within window.
+     */
+    private void evict(long horizon) {
+        long timestamps[] = this.timestamps;
+        long rows[] = this.rows;
+        long hashes[] = this.hashes;
+
+        int kept = 0;
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i] != -1 && timestamps[i] >= horizon) {
+                kept++;
+            }
+        }
+
+        allocate(kept * 4 > rows.length ? rows.length * 2 : rows.length);
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i] != -1 && timestamps[i] >= horizon) {
+                int k = (int) hashes[i] & mask;
+                while (this.rows[k] != -1) {
+                    k = (k + 1) & mask;
+                }
+                this.timestamps[k] = timestamps[i];
+                this.rows[k] = rows[i];
+                this.hashes[k] = hashes[i];
+                count++;
+            }
+        }
+        if (coveredLo != UNKNOWN && coveredLo < horizon) {
+            coveredLo = horizon;
+        }
+    }
+
+    private void allocate(int capacity) {
+        timestamps = new long[capacity];
+        rows = new long[capacity];
+        hashes = new long[capacity];
+        Arrays.fill(rows, -1);
+        mask = capacity - 1;
+        count = 0;
+    }
+}
@@ -18,14 +18,18 @@ package com.nfsdb.journal;
 
 import com.nfsdb.journal.collections.DirectLongList;
 import com.nfsdb.journal.column.ColumnType;
+import com.nfsdb.journal.column.HugeBuffer;
 import com.nfsdb.journal.column.FixedColumn;
 import com.nfsdb.journal.column.SymbolTable;
+import com.nfsdb.journal.concurrent.PageMapper;
 import com.nfsdb.journal.concurrent.TimerCache;
 import com.nfsdb.journal.exceptions.JournalException;
 import com.nfsdb.journal.exceptions.JournalRuntimeException;
 import com.nfsdb.journal.factory.JournalClosingListener;
 import com.nfsdb.journal.factory.configuration.Constants;
 import com.nfsdb.journal.factory.configuration.JournalMetadata;
+import com.nfsdb.journal.factory.configuration.JournalMetadataImpl;
+import com.nfsdb.journal.factory.configuration.JournalStructure;
 import com.nfsdb.journal.iterators.ConcurrentIterator;
 import com.nfsdb.journal.iterators.JournalPeekingIterator;
 import com.nfsdb.journal.iterators.JournalRowBufferedIterator;
@@ -33,6 +37,8 @@ import com.nfsdb.journal.lang.cst.JournalSource;
 import com.nfsdb.journal.lang.cst.impl.jsrc.JournalSourceImpl;
 import com.nfsdb.journal.lang.cst.impl.psrc.JournalPartitionSource;
 import com.nfsdb.journal.lang.cst.impl.rsrc.AllRowSource;
+import com.nfsdb.journal.locks.Lock;
+import com.nfsdb.journal.locks.LockManager;
 import com.nfsdb.journal.query.api.Query;
 import com.nfsdb.journal.query.spi.QueryImpl;
 import com.nfsdb.journal.tx.Tx;
@@ -52,12 +58,15 @@ import java.util.*;
 public class Journal<T> implements Iterable<T>, Closeable {
 
     public static final long TX_LIMIT_EVAL = -1L;
+    static final char PARTITION_VERSION_SEPARATOR = '.';
     final List<Partition<T>> partitions = new ArrayList<>();
     // empty container for current transaction
     final Tx tx = new Tx();
-    final JournalMetadata<T> metadata;
+    JournalMetadata<T> metadata;
     private final File location;
+    final PartitionManifest manifest;
     private final Map<String, SymbolTable> symbolTableMap = new HashMap<>();
+    private final Map<File, Lock> versionLocks = new HashMap<>();
     private final ArrayList<SymbolTable> symbolTables = new ArrayList<>();
     private final JournalKey<T> key;
     private final Query<T> query = new QueryImpl<>(this);
@@ -76,6 +85,8 @@ public class Journal<T> implements Iterable<T>, Closeable {
     boolean open;
     ColumnMetadata[] columnMetadata;
     private Partition<T> irregularPartition;
+    private int[] partitionVersions;
+    private int partitionIndexBase;
     private JournalClosingListener closeListener;
 
 
@@ -83,6 +94,7 @@ public class Journal<T> implements Iterable<T>, Closeable {
         this.metadata = metadata;
         this.key = key;
         this.location = new File(metadata.getLocation());
+        this.manifest = new PartitionManifest(location);
         this.timerCache = timerCache;
         this.txLog = new TxLog(location, getMode());
         this.open = true;
@@ -113,6 +125,10 @@ public class Journal<T> implements Iterable<T>, Closeable {
             }
 
             closePartitions();
+            for (Lock lock : versionLocks.values()) {
+                LockManager.release(lock);
+            }
+            versionLocks.clear();
             for (int i = 0, sz = symbolTables.size(); i < sz; i++) {
                 symbolTables.get(i).close();
             }
@@ -126,6 +142,9 @@ public class Journal<T> implements Iterable<T>, Closeable {
     public boolean refresh() throws JournalException {
         if (txLog.hasNext()) {
             txLog.head(tx);
+            if (tx.metadataVersion > metadata.getVersion() && metadata.getModelClass() == null) {
+                reloadMetadata();
+            }
             refreshInternal();
             for (int i = 0, sz = symbolTables.size(); i < sz; i++) {
                 symbolTables.get(i).applyTx(tx.symbolTableSizes[i], tx.symbolTableIndexPointers[i]);
@@ -162,6 +181,17 @@ public class Journal<T> implements Iterable<T>, Closeable {
         return builder.getResult();
     }
 
+    /**
+     * Number of partitions retention has dropped from the head of journal. Partition index of row id is
+     * position among partitions that are left, row id obtained when base was lower moves down by the
+     * difference of bases.
+     *
+     * @return partition index base of last transaction this journal has seen.
+     */
+    public int getPartitionIndexBase() {
+        return partitionIndexBase;
+    }
+
     public int getPartitionCount() {
         if (irregularPartition == null) {
             return nonLagPartitionCount();
@@ -187,7 +217,8 @@ public class Journal<T> implements Iterable<T>, Closeable {
     }
 
     /**
-     * Selects column names to be accessed by this journal.
+     * Selects column names to be accessed by this journal. Readers open column files on first access,
+     * so files of columns that are not selected are not opened by iterators, result sets and queries.
      *
      * @param columns the names of all the columns that have to be read.
      */
@@ -581,7 +612,7 @@ public class Journal<T> implements Iterable<T>, Closeable {
                 Interval lastPartitionInterval = partitions.get(nonLagPartitionCount() - 1).getInterval();
                 interval = new Interval(lastPartitionInterval.getStart(), lastPartitionInterval.getEnd().plusHours(lag));
             } else {
-                interval = Dates.intervalForDate(System.currentTimeMillis(), getMetadata().getPartitionType());
+                interval = Dates.intervalForDate(System.currentTimeMillis(), getMetadata().getPartitionType(), getMetadata().getPartitionWidth());
             }
         }
         return new TempPartition<>(this, interval, nonLagPartitionCount(), name);
@@ -594,6 +625,90 @@ public class Journal<T> implements Iterable<T>, Closeable {
         );
     }
 
+    /**
+     * Version of partition data directory. Partitions start at version 0, which is directory named after
+     * partition interval. Out-of-order writes rewrite partitions into directories of next version and
+     * transaction log tells which version is current.
+     *
+     * @param partitionIndex index of non-lag partition
+     * @return current version of partition
+     */
+    int getPartitionVersion(int partitionIndex) {
+        int[] versions = tx.partitionVersions;
+        return versions == null || partitionIndex >= versions.length ? 0 : versions[partitionIndex];
+    }
+
+    File getPartitionDir(Interval interval, int version) {
+        String name = Dates.dirNameForIntervalStart(interval, getMetadata().getPartitionType());
+        return new File(manifest.getLocation(name, version), version == 0 ? name : name + PARTITION_VERSION_SEPARATOR + version);
+    }
+
+    /**
+     * Points partitions at directories of their current versions. Partitions that move are closed
+     * and reopen from new directory on next access.
+     */
+    void applyPartitionVersions() throws JournalException {
+        for (int i = 0, sz = partitions.size(); i < sz; i++) {
+            Partition<T> partition = partitions.get(i);
+            if (partition.getInterval() == null) {
+                continue;
+            }
+            File dir = getPartitionDir(partition.getInterval(), getPartitionVersion(i));
+            if (!dir.equals(partition.getPartitionDir())) {
+                partition.close();
+                partition.setPartitionDir(dir, null);
+                partition.clearTx();
+            }
+        }
+        partitionVersions = tx.partitionVersions;
+        lockPartitionVersions();
+    }
+
+    /**
+     * Takes shared locks on directories of rewritten partitions this journal uses and releases locks on
+     * directories it no longer uses. Writer deletes superseded versions only when nobody has them locked, so
+     * that readers, which have not caught up with writer, can still open columns lazily.
+     *
+     * @return false if directory is gone before it could be locked, which means transaction is out of date.
+     * @throws JournalException if lock file cannot be created.
+     */
+    boolean lockPartitionVersions() throws JournalException {
+        Set<File> dirs = new HashSet<>();
+        for (int i = 0, sz = partitions.size(); i < sz; i++) {
+            Partition<T> partition = partitions.get(i);
+            if (partition.getInterval() != null && getPartitionVersion(i) > 0) {
+                dirs.add(partition.getPartitionDir());
+            }
+        }
+
+        for (Iterator<Map.Entry<File, Lock>> it = versionLocks.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<File, Lock> e = it.next();
+            if (!dirs.contains(e.getKey())) {
+                LockManager.release(e.getValue());
+                it.remove();
+            }
+        }
+
+        boolean result = true;
+        for (File dir : dirs) {
+            if (versionLocks.containsKey(dir)) {
+                continue;
+            }
+            if (!dir.exists()) {
+                result = false;
+                continue;
+            }
+            Lock lock = LockManager.lockShared(dir);
+            if (lock != null && lock.isValid() && dir.exists()) {
+                versionLocks.put(dir, lock);
+            } else {
+                LockManager.release(lock);
+                result = false;
+            }
+        }
+        return result;
+    }
+
     long getTimestampOffset() {
         return timestampOffset;
     }
@@ -608,6 +723,40 @@ public class Journal<T> implements Iterable<T>, Closeable {
         partitions.clear();
     }
 
+    /**
+     * Adds partition in front of first partition and renumbers partitions that follow.
+     *
+     * @param partition partition attached to head of journal.
+     */
+    void prependPartition(Partition<T> partition) {
+        partitions.add(0, partition);
+        for (int i = 0, sz = partitions.size(); i < sz; i++) {
+            partitions.get(i).setPartitionIndex(i);
+        }
+        if (irregularPartition != null) {
+            irregularPartition.setPartitionIndex(partitions.size());
+        }
+        partitionIndexBase--;
+    }
+
+    /**
+     * Removes partitions retention has dropped from the head of journal and renumbers partitions that are left.
+     *
+     * @param count number of partitions to remove.
+     */
+    void dropPartitions(int count) {
+        for (int i = 0, n = Math.min(count, partitions.size()); i < n; i++) {
+            partitions.remove(0).close();
+        }
+        for (int i = 0, sz = partitions.size(); i < sz; i++) {
+            partitions.get(i).setPartitionIndex(i);
+        }
+        if (irregularPartition != null) {
+            irregularPartition.setPartitionIndex(partitions.size());
+        }
+        partitionIndexBase += count;
+    }
+
     void configure() throws JournalException {
         txLog.head(tx);
         configureColumns();
@@ -615,6 +764,22 @@ public class Journal<T> implements Iterable<T>, Closeable {
         configurePartitions();
     }
 
+    /**
+     * Switches journal to metadata with columns added to it. Partitions are closed and open with new set of
+     * columns on next access, symbol tables of existing columns are kept.
+     *
+     * @param metadata metadata of journal with added columns.
+     * @throws JournalException if partitions cannot be configured.
+     */
+    void reconfigure(JournalMetadata<T> metadata) throws JournalException {
+        closePartitions();
+        removeIrregularPartitionInternal();
+        this.metadata = metadata;
+        configureColumns();
+        configureSymbolTableSynonyms();
+        configurePartitions();
+    }
+
     void removeIrregularPartitionInternal() {
         if (irregularPartition != null) {
             if (irregularPartition.isOpen()) {
@@ -632,6 +797,15 @@ public class Journal<T> implements Iterable<T>, Closeable {
         return timerCache;
     }
 
+    /**
+     * Background mapper of column pages. Random access readers do not need one.
+     *
+     * @return page mapper or null.
+     */
+    PageMapper getPageMapper() {
+        return null;
+    }
+
     private void configureColumns() throws JournalException {
         int columnCount = getMetadata().getColumnCount();
         columnMetadata = new ColumnMetadata[columnCount];
@@ -639,18 +813,36 @@ public class Journal<T> implements Iterable<T>, Closeable {
             columnMetadata[i] = new ColumnMetadata();
             com.nfsdb.journal.factory.configuration.ColumnMetadata meta = metadata.getColumnMetadata(i);
             if (meta.type == ColumnType.SYMBOL && meta.sameAs == null) {
-                int tabIndex = symbolTables.size();
-                int tabSize = tx.symbolTableSizes.length > tabIndex ? tx.symbolTableSizes[tabIndex] : 0;
-                long indexTxAddress = tx.symbolTableIndexPointers.length > tabIndex ? tx.symbolTableIndexPointers[tabIndex] : 0;
-                SymbolTable tab = new SymbolTable(meta.distinctCountHint, meta.avgSize, getMetadata().getTxCountHint(), location, meta.name, getMode(), tabSize, indexTxAddress, meta.noCache);
-                symbolTables.add(tab);
-                symbolTableMap.put(meta.name, tab);
+                // reconfigured journal keeps symbol tables it has open
+                SymbolTable tab = symbolTableMap.get(meta.name);
+                if (tab == null) {
+                    int tabIndex = symbolTables.size();
+                    int tabSize = tx.symbolTableSizes.length > tabIndex ? tx.symbolTableSizes[tabIndex] : 0;
+                    long indexTxAddress = tx.symbolTableIndexPointers.length > tabIndex ? tx.symbolTableIndexPointers[tabIndex] : 0;
+                    tab = new SymbolTable(meta.distinctCountHint, meta.avgSize, getMetadata().getTxCountHint(), location, meta.name, getMode(), tabSize, indexTxAddress, meta.noCache);
+                    symbolTables.add(tab);
+                    symbolTableMap.put(meta.name, tab);
+                }
                 columnMetadata[i].symbolTable = tab;
             }
             columnMetadata[i].meta = meta;
         }
     }
 
+    /**
+     * Generic journal picks up columns writer has added since journal was opened. Journal mapped to class
+     * keeps metadata it was opened with and does not see added columns.
+     */
+    @SuppressWarnings("unchecked")
+    private void reloadMetadata() throws JournalException {
+        try (HugeBuffer hb = new HugeBuffer(new File(location, "_meta2"), 12, JournalMode.READ)) {
+            reconfigure((JournalMetadata<T>) new JournalStructure(new JournalMetadataImpl<>(hb))
+                    .location(location)
+                    .recordCountHint(metadata.getRecordHint())
+                    .build());
+        }
+    }
+
     private void configureSymbolTableSynonyms() {
         for (int i = 0; i < getMetadata().getColumnCount(); i++) {
             com.nfsdb.journal.factory.configuration.ColumnMetadata meta = metadata.getColumnMetadata(i);
@@ -663,17 +855,53 @@ public class Journal<T> implements Iterable<T>, Closeable {
     }
 
     private void configurePartitions() throws JournalException {
+        configurePartitionDirs();
+        // writer has deleted version this transaction refers to, which means there is newer transaction
+        while (!lockPartitionVersions()) {
+            long address = tx.address;
+            if (txLog.head(tx).address == address) {
+                throw new JournalException("Partition version of transaction %d is missing: %s", address, this);
+            }
+            configurePartitionDirs();
+        }
+    }
+
+    private void configurePartitionDirs() throws JournalException {
         File[] files = getLocation().listFiles(new FileFilter() {
             public boolean accept(File f) {
                 return f.isDirectory() && !f.getName().startsWith(Constants.TEMP_DIRECTORY_PREFIX);
             }
         });
 
-        int partitionIndex = 0;
-        if (files != null && tx.journalMaxRowID > 0) {
-            Arrays.sort(files);
+        // partitions moved to other volumes are known from manifest only
+        manifest.read();
+        List<String> names = new ArrayList<>(manifest.getNames());
+        if (files != null) {
             for (int i = 0; i < files.length; i++) {
-                File f = files[i];
+                String name = files[i].getName();
+                int versionPos = name.indexOf(PARTITION_VERSION_SEPARATOR);
+                names.add(versionPos == -1 ? name : name.substring(0, versionPos));
+            }
+        }
+
+        int partitionIndex = 0;
+        if (tx.journalMaxRowID > 0) {
+            Collections.sort(names);
+            String lastName = null;
+            for (int i = 0, sz = names.size(); i < sz; i++) {
+                String name = names.get(i);
+
+                // several versions of rewritten partition can be present on disk
+                if (name.equals(lastName)) {
+                    continue;
+                }
+                lastName = name;
+
+                Interval interval = Dates.intervalForDirName(name, getMetadata().getPartitionType(), getMetadata().getPartitionWidth());
+                // partition dropped by retention, which writer is yet to delete
+                if (interval.getStartMillis() < tx.partitionTimestampLo) {
+                    continue;
+                }
 
                 if (partitionIndex > Rows.toPartitionIndex(tx.journalMaxRowID)) {
                     break;
@@ -692,9 +920,13 @@ public class Journal<T> implements Iterable<T>, Closeable {
                     indexTxAddresses = tx.indexPointers;
                 }
 
-                Interval interval = Dates.intervalForDirName(f.getName(), getMetadata().getPartitionType());
+                File dir = getPartitionDir(interval, getPartitionVersion(partitionIndex));
                 if (partition != null) {
                     if (partition.getInterval() == null || partition.getInterval().equals(interval)) {
+                        if (partition.getInterval() != null && !dir.equals(partition.getPartitionDir())) {
+                            partition.close();
+                            partition.setPartitionDir(dir, indexTxAddresses);
+                        }
                         partition.applyTx(txLimit, indexTxAddresses);
                         partitionIndex++;
                     } else {
@@ -704,11 +936,15 @@ public class Journal<T> implements Iterable<T>, Closeable {
                         partitions.remove(partitionIndex);
                     }
                 } else {
-                    partitions.add(new Partition<>(this, interval, partitionIndex, txLimit, indexTxAddresses));
+                    partition = new Partition<>(this, interval, partitionIndex, txLimit, indexTxAddresses);
+                    partition.setPartitionDir(dir, indexTxAddresses);
+                    partitions.add(partition);
                     partitionIndex++;
                 }
             }
         }
+        partitionVersions = tx.partitionVersions;
+        partitionIndexBase = tx.partitionIndexBase;
         configureIrregularPartition();
     }
 
@@ -737,8 +973,12 @@ public class Journal<T> implements Iterable<T>, Closeable {
         assert tx.address > 0;
 
         int txPartitionIndex = Rows.toPartitionIndex(tx.journalMaxRowID);
-        if (partitions.size() != txPartitionIndex + 1 || tx.journalMaxRowID == 0) {
-            if (tx.journalMaxRowID == 0 || partitions.size() > txPartitionIndex + 1) {
+        if (partitions.size() != txPartitionIndex + 1 || tx.journalMaxRowID == 0 || !Arrays.equals(partitionVersions, tx.partitionVersions)
+                || partitionIndexBase != tx.partitionIndexBase) {
+            if (partitionIndexBase < tx.partitionIndexBase) {
+                dropPartitions(tx.partitionIndexBase - partitionIndexBase);
+            }
+            if (tx.journalMaxRowID == 0 || partitions.size() > txPartitionIndex + 1 || partitionIndexBase > tx.partitionIndexBase) {
                 closePartitions();
             }
             configurePartitions();
@@ -16,17 +16,65 @@
 
 package com.nfsdb.journal;
 
+import com.nfsdb.journal.concurrent.PageMapper;
 import com.nfsdb.journal.concurrent.TimerCache;
 import com.nfsdb.journal.exceptions.JournalException;
 import com.nfsdb.journal.factory.configuration.JournalMetadata;
 
 public class JournalBulkReader<T> extends Journal<T> {
+    private PageMapper pageMapper;
+    private boolean readAhead;
+
     public JournalBulkReader(JournalMetadata<T> metadata, JournalKey<T> key, TimerCache timerCache) throws JournalException {
         super(metadata, key, timerCache);
     }
 
+    @Override
+    public void close() {
+        super.close();
+        if (!isOpen() && pageMapper != null) {
+            pageMapper.halt();
+        }
+    }
+
     @Override
     public JournalMode getMode() {
         return JournalMode.BULK_READ;
     }
+
+    public boolean isReadAhead() {
+        return readAhead;
+    }
+
+    /**
+     * Enables or disables read-ahead of column pages. Read-ahead is disabled by default, so bulk reader does not
+     * start any threads unless asked to. When enabled, a helper thread maps and touches pages that follow the page
+     * being read for each column that is accessed, so columns excluded by select() are never prefetched.
+     * Read-ahead depth doubles each time reader gets to a page before helper thread does.
+     *
+     * @param enabled true to prefetch pages ahead of reader.
+     * @return this reader
+     */
+    public JournalBulkReader<T> setReadAhead(boolean enabled) {
+        this.readAhead = enabled;
+        if (pageMapper != null) {
+            if (enabled) {
+                pageMapper.start();
+            } else {
+                pageMapper.halt();
+            }
+        }
+        return this;
+    }
+
+    @Override
+    PageMapper getPageMapper() {
+        if (pageMapper == null) {
+            pageMapper = new PageMapper(getMetadata(), getLocation().getName());
+            if (readAhead) {
+                pageMapper.start();
+            }
+        }
+        return pageMapper;
+    }
 }
@@ -19,6 +19,7 @@ package com.nfsdb.journal;
 import com.nfsdb.journal.column.*;
 import com.nfsdb.journal.exceptions.JournalException;
 import com.nfsdb.journal.exceptions.JournalRuntimeException;
+import com.nfsdb.journal.index.Trigrams;
 import com.nfsdb.journal.utils.Checksum;
 
 import java.io.InputStream;
@@ -31,6 +32,8 @@ public class JournalEntryWriterImpl implements JournalEntryWriter {
     private final int timestampIndex;
     private final BitSet updated = new BitSet();
     private final long[] koTuple;
+    private final long[] hashes;
+    private final Trigrams[] trigrams;
     private AbstractColumn columns[];
     private SymbolIndexProxy indexProxies[];
     private Partition partition;
@@ -41,6 +44,13 @@ public class JournalEntryWriterImpl implements JournalEntryWriter {
         this.meta = journal.columnMetadata;
         this.timestampIndex = journal.getMetadata().getTimestampColumnIndex();
         koTuple = new long[meta.length * 2];
+        hashes = new long[meta.length];
+        trigrams = new Trigrams[meta.length];
+        for (int i = 0; i < meta.length; i++) {
+            if (meta[i].meta.ngramIndexed) {
+                trigrams[i] = new Trigrams();
+            }
+        }
     }
 
     @Override
@@ -138,11 +148,39 @@ public class JournalEntryWriterImpl implements JournalEntryWriter {
             if (!updated.get(i)) {
                 putNull(i);
             }
+        }
+
+        try {
+            if (journal.isDuplicate(partition, timestamp)) {
+                discard();
+                return;
+            }
+        } catch (JournalException e) {
+            discard();
+            throw e;
+        }
+
+        for (int i = 0; i < meta.length; i++) {
             columns[i].commit();
 
-            if (meta[i].meta.indexed) {
+            if (meta[i].meta.indexed && (meta[i].meta.type == ColumnType.STRING || !partition.isIndexDeferred())) {
                 indexProxies[i].getIndex().add((int) koTuple[i * 2], koTuple[i * 2 + 1]);
             }
+
+            if (meta[i].meta.bitmapIndexed) {
+                partition.getBitmapIndexForColumn(i).add((int) koTuple[i * 2], koTuple[i * 2 + 1]);
+            }
+
+            if (meta[i].meta.exactIndexed) {
+                partition.getStringIndexForColumn(i).add(hashes[i], columns[i].size() - 1);
+            }
+
+            if (meta[i].meta.ngramIndexed) {
+                Partition.addNgrams(partition.getNgramIndexForColumn(i), trigrams[i], columns[i].size() - 1);
+            }
+        }
+        if (partition.compositeIndexProxies.length > 0) {
+            partition.updateCompositeIndexes(columns[0].size() - 1);
         }
         partition.applyTx(Journal.TX_LIMIT_EVAL, null);
         journal.updateTsLo(timestamp);
@@ -161,6 +199,12 @@ public class JournalEntryWriterImpl implements JournalEntryWriter {
         }
     }
 
+    private void discard() {
+        for (int i = 0; i < meta.length; i++) {
+            columns[i].discard();
+        }
+    }
+
     private void assertType(int index, ColumnType t) {
         if (meta[index].meta.type != t) {
             throw new JournalRuntimeException("Expected type: " + meta[index].meta.type);
@@ -168,6 +212,12 @@ public class JournalEntryWriterImpl implements JournalEntryWriter {
     }
 
     private void putString0(int index, CharSequence value) {
+        if (meta[index].meta.exactIndexed) {
+            hashes[index] = Checksum.hash64(value);
+        }
+        if (meta[index].meta.ngramIndexed) {
+            trigrams[index].of(value);
+        }
         if (meta[index].meta.indexed) {
             koTuple[index * 2] = value == null ? SymbolTable.VALUE_IS_NULL : Checksum.hash(value, meta[index].meta.distinctCountHint);
             koTuple[index * 2 + 1] = ((VariableColumn) columns[index]).putStr(value);
@@ -183,7 +233,7 @@ public class JournalEntryWriterImpl implements JournalEntryWriter {
         } else {
             key = meta[index].symbolTable.put(value);
         }
-        if (meta[index].meta.indexed) {
+        if (meta[index].meta.indexed || meta[index].meta.bitmapIndexed) {
             koTuple[index * 2] = key;
             koTuple[index * 2 + 1] = ((FixedColumn) columns[index]).putInt(key);
         } else {
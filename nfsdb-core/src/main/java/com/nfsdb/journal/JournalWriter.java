@@ -16,34 +16,44 @@
 
 package com.nfsdb.journal;
 
+import com.nfsdb.journal.column.ColumnType;
+import com.nfsdb.journal.column.CompressedFile;
 import com.nfsdb.journal.column.FixedColumn;
 import com.nfsdb.journal.column.HugeBuffer;
+import com.nfsdb.journal.column.MappedFile;
+import com.nfsdb.journal.column.MappedFileImpl;
 import com.nfsdb.journal.column.SymbolTable;
+import com.nfsdb.journal.concurrent.GroupCommit;
+import com.nfsdb.journal.concurrent.GroupCommitTask;
+import com.nfsdb.journal.concurrent.IndexBuilder;
+import com.nfsdb.journal.concurrent.PageMapper;
 import com.nfsdb.journal.concurrent.PartitionCleaner;
+import com.nfsdb.journal.concurrent.TierMove;
+import com.nfsdb.journal.concurrent.TierMover;
 import com.nfsdb.journal.concurrent.TimerCache;
 import com.nfsdb.journal.exceptions.JournalException;
 import com.nfsdb.journal.exceptions.JournalRuntimeException;
 import com.nfsdb.journal.factory.configuration.Constants;
 import com.nfsdb.journal.factory.configuration.JournalMetadata;
+import com.nfsdb.journal.factory.configuration.JournalMetadataImpl;
+import com.nfsdb.journal.factory.configuration.JournalStructure;
 import com.nfsdb.journal.iterators.ConcurrentIterator;
-import com.nfsdb.journal.iterators.MergingIterator;
 import com.nfsdb.journal.iterators.PeekingIterator;
 import com.nfsdb.journal.locks.Lock;
 import com.nfsdb.journal.locks.LockManager;
 import com.nfsdb.journal.logging.Logger;
 import com.nfsdb.journal.tx.*;
+import com.nfsdb.journal.utils.Checksum;
 import com.nfsdb.journal.utils.Dates;
 import com.nfsdb.journal.utils.Files;
 import com.nfsdb.journal.utils.PeekingListIterator;
 import com.nfsdb.journal.utils.Rows;
+import com.nfsdb.journal.utils.Unsafe;
 import org.joda.time.Interval;
 
 import java.io.File;
 import java.io.FileFilter;
-import java.util.Arrays;
-import java.util.Iterator;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.TimeUnit;
 
 public class JournalWriter<T> extends Journal<T> {
@@ -52,8 +62,7 @@ public class JournalWriter<T> extends Journal<T> {
     private final long lagSwellMillis;
     private final boolean checkOrder;
     private final PeekingListIterator<T> peekingListIterator = new PeekingListIterator<>();
-    private final MergingIterator<T> mergingIterator = new MergingIterator<>();
-    private final JournalEntryWriterImpl journalEntryWriter;
+    private JournalEntryWriterImpl journalEntryWriter;
     private Lock writeLock;
     private TxListener txListener;
     private TxAsyncListener txAsyncListener;
@@ -67,6 +76,22 @@ public class JournalWriter<T> extends Journal<T> {
     private boolean doJournal = true;
     private Partition<T> appendPartition;
     private long appendTimestampHi = -1;
+    // created lazily, partitions can be opened by super constructor
+    private PageMapper pageMapper;
+    private GroupCommit groupCommit;
+    // durable commit, which group commit service has not made durable yet
+    private DurableTx durableTx;
+    private int indexBatchSize = 0;
+    // append has moved on to new partition and retention is to be applied at commit
+    private boolean retentionPending = false;
+    // tiered storage
+    private TierMover tierMover;
+    private File tierLocation;
+    private int tierAge;
+    private int compressAge;
+    private boolean tierPending = false;
+    private final Set<String> tierMoves = new HashSet<>();
+    private Deduplicator<T> deduplicator;
 
     public JournalWriter(JournalMetadata<T> metadata, JournalKey<T> key, TimerCache timerCache) throws JournalException {
         super(metadata, key, timerCache);
@@ -82,10 +107,18 @@ public class JournalWriter<T> extends Journal<T> {
     @Override
     public void close() {
         if (open) {
+            awaitDurableCommit();
             if (partitionCleaner != null) {
                 partitionCleaner.halt();
                 partitionCleaner = null;
             }
+            if (pageMapper != null) {
+                pageMapper.halt();
+                pageMapper.cancelNextPartition();
+            }
+            if (tierMover != null) {
+                tierMover.halt();
+            }
             try {
                 if (isCommitOnClose()) {
                     commit();
@@ -114,6 +147,39 @@ public class JournalWriter<T> extends Journal<T> {
         return future;
     }
 
+    /**
+     * Prepares transaction and hands it over to group commit service, so that caller does not wait for disk.
+     * Service flushes data files of transaction, then writes and flushes transaction record, so guarantees are
+     * the same as those of commitDurable(). Transaction becomes visible to readers and tx listener is notified
+     * once it is durable, which is when returned future completes. Without group commit service this method
+     * is the same as commitDurable().
+     * <p/>
+     * Writer can carry on appending while transaction is being flushed. Next commit, rollback or any other
+     * operation that restructures journal files waits for it to complete first. Rows of transaction that could
+     * not be made durable are published by next commit or discarded by rollback().
+     *
+     * @return future to wait for transaction to become durable or null if there is nothing to wait for.
+     * @throws com.nfsdb.journal.exceptions.JournalException if transaction cannot be committed.
+     */
+    public TxFuture commitDurableAsync() throws JournalException {
+        if (groupCommit == null) {
+            commitDurable();
+            return null;
+        }
+
+        TxFuture future = null;
+        if (txActive) {
+            List<MappedFile> files = new ArrayList<>();
+            commit(Tx.TX_FORCE, files);
+            for (int i = 0, sz = files.size(); i < sz; i++) {
+                files.get(i).prepareSync();
+            }
+            future = durableTx.future = groupCommit.submit(files, durableTx);
+            txActive = false;
+        }
+        return future;
+    }
+
     public void rollback() throws JournalException {
         if (txActive) {
             rollback(txLog.headAddress());
@@ -122,13 +188,14 @@ public class JournalWriter<T> extends Journal<T> {
     }
 
     public void rollback(long address) throws JournalException {
-
+        awaitDurableCommit();
         txLog.get(address, tx);
 
         if (tx.address == 0) {
             throw new JournalException("Invalid transaction address");
         }
         // partitions need to be dealt with first to make sure new lag is assigned a correct partitionIndex
+        applyPartitionVersions();
         rollbackPartitions(tx);
 
         Partition<T> lag = getIrregularPartition();
@@ -155,6 +222,12 @@ public class JournalWriter<T> extends Journal<T> {
         appendTimestampLo = -1;
         appendTimestampHi = -1;
         appendPartition = null;
+        if (pageMapper != null) {
+            pageMapper.cancelNextPartition();
+        }
+        if (deduplicator != null) {
+            deduplicator.clear();
+        }
         txLog.setTxAddress(tx.address);
         txActive = false;
     }
@@ -251,20 +324,176 @@ public class JournalWriter<T> extends Journal<T> {
     }
 
     public void rebuildIndexes() throws JournalException {
-        int partitionCount = getPartitionCount();
-        for (int i = 0; i < partitionCount; i++) {
-            getPartition(i, true).rebuildIndexes();
+        rebuildIndexes(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Rebuilds indexes of all partitions. Sealed partitions are rebuilt on fork-join pool, while
+     * active and lag partitions are rebuilt by calling thread.
+     *
+     * @param parallelism number of threads to rebuild sealed partitions.
+     * @throws JournalException if indexes cannot be rebuilt.
+     */
+    public void rebuildIndexes(int parallelism) throws JournalException {
+        IndexBuilder<T> builder = rebuildSealedIndexes(parallelism, parallelism);
+        try {
+            for (int i = builder.getPartitionCount(), sz = getPartitionCount(); i < sz; i++) {
+                getPartition(i, true).rebuildIndexes();
+            }
+        } finally {
+            builder.join();
+        }
+    }
+
+    /**
+     * Starts rebuilding indexes of sealed partitions, which are all partitions except for active and lag ones,
+     * in background. Indexes are rebuilt into new partition versions, so writer can carry on appending to active
+     * partition and sealed partitions keep serving queries with their old indexes until returned builder is joined.
+     * Builder reports progress and has to be joined by writer thread.
+     *
+     * @param parallelism       number of threads.
+     * @param maxOpenPartitions maximum number of partitions being rebuilt at the same time.
+     * @return started builder.
+     * @throws JournalException if rebuild cannot be started.
+     */
+    public IndexBuilder<T> rebuildSealedIndexes(int parallelism, int maxOpenPartitions) throws JournalException {
+        List<Partition<T>> sealed = new ArrayList<>();
+        for (int i = 0, sz = nonLagPartitionCount() - 1; i < sz; i++) {
+            sealed.add(partitions.get(i));
+        }
+        return new IndexBuilder<>(this, sealed, parallelism, maxOpenPartitions).start();
+    }
+
+    /**
+     * Picks directory for working copy of sealed partition, which its indexes are to be rebuilt in while readers
+     * carry on using partition itself. Directory is a temp one next to where next version of partition goes.
+     *
+     * @param partition sealed partition.
+     * @return shared lock on directory, which keeps temp partition cleanup off it until released.
+     * @throws JournalException if lock cannot be taken.
+     */
+    public Lock lockBranch(Partition<T> partition) throws JournalException {
+        File next = getPartitionDir(partition.getInterval(), getPartitionVersion(partition.getPartitionIndex()) + 1);
+        return LockManager.lockShared(new File(next.getParentFile(), Constants.TEMP_DIRECTORY_PREFIX + "." + partition.getName() + "." + UUID.randomUUID().toString()));
+    }
+
+    /**
+     * Writes working copy of partition into directory picked by {@link #lockBranch(Partition)}. Column files of
+     * copy share pages with those of partition, see {@link Partition#branch(File, long)}, compressed partitions
+     * and partitions on another tier are copied whole. Copy is written through partition instance of its own,
+     * so this method can be called by any thread as long as writer does not rewrite partition meanwhile.
+     *
+     * @param partition sealed partition.
+     * @param source    directory of partition at the time its copy was locked.
+     * @param dir       directory of working copy.
+     * @throws JournalException if copy cannot be written.
+     */
+    public void branchPartition(Partition<T> partition, File source, File dir) throws JournalException {
+        Lock lock = LockManager.lockShared(source);
+        try {
+            Files.mkDirsOrException(dir);
+            if (isCompressed(source) || !source.getParentFile().equals(dir.getParentFile())) {
+                Files.copyDirContents(source, dir);
+            } else {
+                Partition<T> p = new Partition<>(this, partition.getInterval(), partition.getPartitionIndex(), Journal.TX_LIMIT_EVAL, null);
+                p.setPartitionDir(source, null);
+                p.open();
+                try {
+                    p.branch(dir, p.size());
+                } finally {
+                    p.close();
+                }
+            }
+        } finally {
+            LockManager.release(lock);
+        }
+    }
+
+    /**
+     * Makes working copies written by {@link #branchPartition(Partition, File, File)} next versions of their partitions and
+     * commits, so that readers switch to rebuilt indexes atomically. Rows appended since last commit are committed
+     * too. Copy of partition, which has moved to another version since it was branched, is out of date and is
+     * deleted instead. Journal is rolled back only if it fails after having switched to copies.
+     *
+     * @param partitions branched partitions.
+     * @param sources    directories partitions were branched from.
+     * @param branches   working copies in the same order.
+     * @throws JournalException if copies cannot be switched to, copies are deleted in this case.
+     */
+    public void commitBranches(List<Partition<T>> partitions, List<File> sources, List<File> branches) throws JournalException {
+        awaitDurableCommit();
+
+        int versions[] = new int[nonLagPartitionCount()];
+        for (int i = 0; i < versions.length; i++) {
+            versions[i] = getPartitionVersion(i);
+        }
+
+        List<File> dirs = new ArrayList<>();
+        try {
+            for (int i = 0, sz = partitions.size(); i < sz; i++) {
+                Partition<T> partition = partitions.get(i);
+                if (!partition.getPartitionDir().equals(sources.get(i))) {
+                    LOGGER.info("Discarding %s, partition has moved to %s", branches.get(i), partition.getPartitionDir());
+                    Files.deleteOrException(branches.get(i));
+                    continue;
+                }
+                File dir = getPartitionDir(partition.getInterval(), ++versions[partition.getPartitionIndex()]);
+                // remove leftovers of failed switch
+                Files.deleteOrException(dir);
+                if (!branches.get(i).renameTo(dir)) {
+                    throw new JournalException("Cannot rename %s to %s", branches.get(i), dir);
+                }
+                dirs.add(dir);
+            }
+
+            if (dirs.size() > 0) {
+                beginTx();
+                tx.partitionVersions = versions;
+                applyPartitionVersions();
+                commit();
+            }
+        } catch (JournalException | RuntimeException e) {
+            if (tx.partitionVersions == versions) {
+                rollback();
+            }
+            for (int i = 0, sz = dirs.size(); i < sz; i++) {
+                Files.delete(dirs.get(i));
+            }
+            for (int i = 0, sz = branches.size(); i < sz; i++) {
+                Files.delete(branches.get(i));
+            }
+            throw e;
         }
+
+        purgePartitionVersions();
     }
 
     public void compact() throws JournalException {
+        compact(false);
+    }
+
+    /**
+     * Removes empty space at end of partition files. Indexes of sealed partitions, which are all partitions
+     * except for active and lag ones, are rewritten into compact layout first.
+     *
+     * @param packIndexes when true sealed indexes store row IDs as bit-packed deltas.
+     * @throws JournalException if partition files cannot be compacted.
+     */
+    public void compact(boolean packIndexes) throws JournalException {
+        awaitDurableCommit();
         int partitionCount = getPartitionCount();
+        int sealedCount = nonLagPartitionCount() - 1;
         for (int i = 0; i < partitionCount; i++) {
-            getPartition(i, true).compact();
+            Partition<T> partition = getPartition(i, true);
+            if (i < sealedCount) {
+                partition.sealIndexes(packIndexes);
+            }
+            partition.compact();
         }
     }
 
     public void truncate() throws JournalException {
+        awaitDurableCommit();
         beginTx();
         int partitionCount = getPartitionCount();
         for (int i = 0; i < partitionCount; i++) {
@@ -272,14 +501,28 @@ public class JournalWriter<T> extends Journal<T> {
             partition.truncate(0);
             partition.close();
             Files.deleteOrException(partition.getPartitionDir());
+            // versions current one shares pages with
+            for (int version = getPartitionVersion(i) - 1; version >= 0; version--) {
+                Files.deleteOrException(getPartitionDir(partition.getInterval(), version));
+            }
         }
 
         closePartitions();
+        tx.partitionVersions = null;
+        applyPartitionVersions();
+        if (pageMapper != null) {
+            pageMapper.cancelNextPartition();
+        }
 
         for (int i = 0, sz = getSymbolTableCount(); i < sz; i++) {
             getSymbolTable(i).truncate();
         }
+        manifest.clear();
+        manifest.write();
         appendTimestampLo = -1;
+        if (deduplicator != null) {
+            deduplicator.clear();
+        }
         commitDurable();
     }
 
@@ -338,13 +581,19 @@ public class JournalWriter<T> extends Journal<T> {
                 switchAppendPartition(timestamp);
             }
 
+            if (deduplicator != null && deduplicator.isDuplicate(obj, timestamp)) {
+                return;
+            }
+
             if (timestamp < appendTimestampLo) {
-                throw new JournalException("Cannot insert records out of order. maxHardTimestamp=%d (%s), timestamp=%d (%s): %s"
-                        , appendTimestampLo, Dates.toString(appendTimestampLo), timestamp, Dates.toString(timestamp), this);
+                throw outOfOrder(timestamp);
             }
 
             appendPartition.append(obj);
             appendTimestampLo = timestamp;
+            if (deduplicator != null) {
+                deduplicator.add(appendPartition, timestamp);
+            }
         } else {
             getAppendPartition().append(obj);
         }
@@ -364,9 +613,9 @@ public class JournalWriter<T> extends Journal<T> {
                 switchAppendPartition(timestamp);
             }
 
-            if (timestamp < appendTimestampLo) {
-                throw new JournalException("Cannot insert records out of order. maxHardTimestamp=%d (%s), timestamp=%d (%s): %s"
-                        , appendTimestampLo, Dates.toString(appendTimestampLo), timestamp, Dates.toString(timestamp), this);
+            // with deduplication order is checked once row values are known
+            if (timestamp < appendTimestampLo && deduplicator == null) {
+                throw outOfOrder(timestamp);
             }
 
             journalEntryWriter.setPartition(appendPartition, timestamp);
@@ -409,16 +658,17 @@ public class JournalWriter<T> extends Journal<T> {
             if (result.getInterval() == null || result.getInterval().contains(timestamp)) {
                 return result.open().access();
             } else if (result.getInterval().isBefore(timestamp)) {
-                return createPartition(Dates.intervalForDate(timestamp, getMetadata().getPartitionType()), sz);
+                return createPartition(Dates.intervalForDate(timestamp, getMetadata().getPartitionType(), getMetadata().getPartitionWidth()), sz);
             } else {
                 throw new JournalException("%s cannot be appended to %s", Dates.toString(timestamp), this);
             }
         } else {
-            return createPartition(Dates.intervalForDate(timestamp, getMetadata().getPartitionType()), 0);
+            return createPartition(Dates.intervalForDate(timestamp, getMetadata().getPartitionType(), getMetadata().getPartitionWidth()), 0);
         }
     }
 
     public Partition<T> createPartition(Interval interval, int partitionIndex) throws JournalException {
+        checkPartitionIndex(partitionIndex);
         Partition<T> result = new Partition<>(this, interval, partitionIndex, Journal.TX_LIMIT_EVAL, null).open();
         partitions.add(result);
         return result;
@@ -474,6 +724,183 @@ public class JournalWriter<T> extends Journal<T> {
         return this;
     }
 
+    public boolean isPageMapperEnabled() {
+        return pageMapper != null && pageMapper.isStarted();
+    }
+
+    /**
+     * Enables background thread, which maps and touches column pages ahead of append cursor and creates
+     * next partition ahead of interval boundary. This takes page faults and file creation off append path.
+     *
+     * @param enabled true to start mapper thread, false to stop it.
+     * @return this writer
+     */
+    public JournalWriter<T> setPageMapperEnabled(boolean enabled) {
+        if (enabled) {
+            getPageMapper().start();
+        } else if (pageMapper != null) {
+            pageMapper.halt();
+            pageMapper.cancelNextPartition();
+        }
+        return this;
+    }
+
+    public GroupCommit getGroupCommit() {
+        return groupCommit;
+    }
+
+    /**
+     * Sets service to flush commits made by commitDurableAsync(). Service can be shared between writers
+     * and has to be started by caller.
+     *
+     * @param groupCommit group commit service, null to flush on caller thread.
+     * @return this writer
+     */
+    public JournalWriter<T> setGroupCommit(GroupCommit groupCommit) {
+        this.groupCommit = groupCommit;
+        return this;
+    }
+
+    public int getDeferredIndexBatchSize() {
+        return indexBatchSize;
+    }
+
+    /**
+     * Defers symbol and int index updates from append to batches. Appended rows go to columns only and indexes
+     * catch up from column data one column at a time: at commit once there are at least batchSize rows behind,
+     * when append moves on to next partition and on catchUpIndexes(). Transactions carry index state as of its
+     * watermark and queries scan rows past it.
+     * <p/>
+     * Batches are indexed on writer thread, inside commit() that crosses the threshold. Indexing work is not
+     * reduced, only moved: append latency drops and stays flat, while every such commit takes as long as indexing
+     * batchSize rows and readers scan up to batchSize unindexed rows. Call catchUpIndexes() at a quiet moment
+     * to choose where that cost lands.
+     *
+     * @param batchSize number of rows indexes can fall behind at commit, 0 to index rows as they are appended.
+     * @return this writer
+     * @throws com.nfsdb.journal.exceptions.JournalException if indexes cannot be caught up.
+     */
+    public JournalWriter<T> setDeferredIndexing(int batchSize) throws JournalException {
+        this.indexBatchSize = batchSize;
+        if (appendPartition != null) {
+            if (batchSize == 0) {
+                catchUpIndexes();
+            }
+            appendPartition.setIndexDeferred(batchSize > 0);
+        }
+        return this;
+    }
+
+    /**
+     * Adds rows appended with indexing deferred to indexes. Readers see them at next commit.
+     *
+     * @throws com.nfsdb.journal.exceptions.JournalException if indexes cannot be updated.
+     */
+    public void catchUpIndexes() throws JournalException {
+        if (appendPartition != null && appendPartition.catchUpIndexes() > 0) {
+            beginTx();
+        }
+    }
+
+    /**
+     * Moves sealed partitions, which are at least given number of partition periods behind last partition, to
+     * secondary volume. Partitions are copied in background at limited rate and switched over at next commit,
+     * which readers follow on refresh. Journal directory keeps manifest of partitions that live elsewhere.
+     *
+     * @param location       directory on secondary volume, journal gets its own sub-directory there.
+     * @param age            number of partition periods partition has to be behind last partition to be moved.
+     * @param bytesPerSecond maximum rate of copying, 0 for unlimited.
+     * @return this writer
+     */
+    public JournalWriter<T> setTierPolicy(File location, int age, long bytesPerSecond) {
+        if (tierMover != null) {
+            tierMover.halt();
+        }
+        this.tierLocation = new File(location, getLocation().getName());
+        this.tierAge = age;
+        this.tierMoves.clear();
+
+        // copies that were not made current before writer stopped
+        File[] dirs = tierLocation.listFiles();
+        if (dirs != null) {
+            Set<File> current = new HashSet<>();
+            for (int i = 0, sz = nonLagPartitionCount(); i < sz; i++) {
+                current.add(partitions.get(i).getPartitionDir());
+            }
+            for (int i = 0; i < dirs.length; i++) {
+                if (dirs[i].isDirectory() && !current.contains(dirs[i])) {
+                    Files.delete(dirs[i]);
+                }
+            }
+        }
+
+        this.tierMover = new TierMover(getLocation().getName(), bytesPerSecond);
+        this.tierMover.start();
+        this.tierPending = true;
+        scheduleTierMoves();
+        return this;
+    }
+
+    /**
+     * Converts sealed partitions, which are at least given number of partition periods behind last partition,
+     * to read-only compressed format. Partitions are compressed in background by same mover that moves them to
+     * secondary volume and switched over at next commit. Compressed partition that receives out-of-order rows
+     * is rewritten uncompressed and compressed again later.
+     *
+     * @param age number of partition periods partition has to be behind last partition to be compressed,
+     *            0 to stop compressing partitions.
+     * @return this writer
+     */
+    public JournalWriter<T> setCompression(int age) {
+        this.compressAge = age;
+        if (age > 0) {
+            if (tierMover == null) {
+                this.tierMover = new TierMover(getLocation().getName(), 0);
+                this.tierMover.start();
+            }
+            this.tierPending = true;
+            scheduleTierMoves();
+        }
+        return this;
+    }
+
+    /**
+     * Drops appended rows that repeat existing row, which is row with same timestamp and same values of key
+     * columns, e.g. rows that feed replays after reconnect. Replayed rows may be older than last row of journal
+     * as long as all of them are duplicates, row that is older and is not a duplicate is rejected as out of order.
+     * Rows appended within window of last timestamp are checked in memory, older rows are looked up in index of
+     * first indexed SYMBOL or INT key column or by timestamp. Applies to append() and entryWriter(), rows merged
+     * into lag partition are checked as they move on from lag to journal.
+     *
+     * @param window  how far behind last timestamp rows are checked in memory.
+     * @param unit    unit of window.
+     * @param columns key columns, none to stop checking.
+     * @return this writer
+     * @throws com.nfsdb.journal.exceptions.JournalException if journal has no timestamp or column cannot be key.
+     */
+    public JournalWriter<T> setDeduplication(long window, TimeUnit unit, String... columns) throws JournalException {
+        if (columns.length == 0) {
+            this.deduplicator = null;
+            return this;
+        }
+
+        if (!checkOrder) {
+            throw new JournalException("Cannot deduplicate journal without ordered timestamp: %s", this);
+        }
+
+        int indexes[] = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            int index = getMetadata().getColumnIndex(columns[i]);
+            ColumnType type = getMetadata().getColumnMetadata(index).type;
+            if (type == ColumnType.BINARY || index == getMetadata().getTimestampColumnIndex()) {
+                throw new JournalException("Column %s cannot be deduplication key of %s", columns[i], this);
+            }
+            indexes[i] = index;
+        }
+        this.deduplicator = new Deduplicator<>(this, unit.toMillis(window), indexes);
+        return this;
+    }
+
     public void purgeTempPartitions() {
         partitionCleaner.purge();
     }
@@ -488,129 +915,472 @@ public class JournalWriter<T> extends Journal<T> {
         mergeAppend(this.peekingListIterator);
     }
 
-    public void mergeAppend(ResultSet<T> resultSet) throws JournalException {
-        mergeAppend(resultSet.bufferedIterator());
-    }
+    /**
+     * Appends objects in any timestamp order and commits. Objects older than the last object of journal are merged
+     * into partitions their timestamps belong to. Each affected partition is written into next version of its
+     * directory, which shares rows before first out-of-order row with previous version and has column and index
+     * tails rewritten from that row onwards. Readers switch to new partition versions atomically when they see
+     * transaction committed by this method.
+     * <p/>
+     * Out-of-order objects must fall into existing partitions and journal must not have lag partition.
+     *
+     * @param objects objects to append, they need not be sorted.
+     * @throws JournalException if objects cannot be appended, journal is rolled back in this case.
+     */
+    public void appendOutOfOrder(List<T> objects) throws JournalException {
+        if (txActive) {
+            throw new JournalException("Cannot append out of order while transaction is active: %s", this);
+        }
+        awaitDurableCommit();
 
-    public void mergeAppend(PeekingIterator<T> data) throws JournalException {
+        if (getTimestampOffset() == -1) {
+            throw new JournalException("Cannot append out of order to journal without timestamp: %s", this);
+        }
 
-        if (lagMillis == 0) {
-            throw new JournalException("This journal is not configured to have lag partition");
+        if (hasIrregularPartition()) {
+            throw new JournalException("Cannot append out of order to journal with lag partition: %s", this);
         }
 
-        beginTx();
+        List<T> sorted = new ArrayList<>(objects);
+        Collections.sort(sorted, getTimestampComparator());
 
-        if (data == null || data.isEmpty()) {
-            return;
+        Partition<T> last = lastNonEmptyNonLag();
+        long maxTimestamp = last == null ? Long.MIN_VALUE : last.getTimestampColumn().getLong(last.size() - 1);
+        int lateCount = 0;
+        while (lateCount < sorted.size() && getTimestamp(sorted.get(lateCount)) < maxTimestamp) {
+            lateCount++;
         }
 
-        long dataMaxTimestamp = getTimestamp(data.peekLast());
-        long hard = getAppendTimestampLo();
-
-        if (dataMaxTimestamp < hard) {
-            return;
+        // partitions are rewritten together with their indexes, which must not be behind
+        if (appendPartition != null && appendPartition.catchUpIndexes() > 0) {
+            appendPartition.commit();
         }
 
-        final Partition<T> lagPartition = openOrCreateLagPartition();
-        this.doDiscard = true;
-        this.doJournal = true;
+        List<File> dirs = new ArrayList<>();
+        beginTx();
+        try {
+            if (lateCount > 0) {
+                int versions[] = new int[nonLagPartitionCount()];
+                for (int i = 0; i < versions.length; i++) {
+                    versions[i] = getPartitionVersion(i);
+                }
 
-        long dataMinTimestamp = getTimestamp(data.peekFirst());
-        long lagMaxTimestamp = getMaxTimestamp();
-        long lagMinTimestamp = lagPartition.size() == 0L ? 0 : getTimestamp(lagPartition.read(0));
-        long soft = Math.max(dataMaxTimestamp, lagMaxTimestamp) - lagMillis;
+                int lo = 0;
+                while (lo < lateCount) {
+                    long timestamp = getTimestamp(sorted.get(lo));
+                    Partition<T> partition = null;
+                    for (int i = 0; i < versions.length; i++) {
+                        Partition<T> p = getPartition(i, true);
+                        if (p.getInterval() != null && p.getInterval().contains(timestamp)) {
+                            partition = p;
+                            break;
+                        }
+                    }
 
-        if (dataMinTimestamp > lagMaxTimestamp) {
-            // this could be as simple as just appending data to lag
-            // the only complication is that after adding records to lag it could swell beyond
-            // the allocated "lagSwellTimestamp"
-            // we should check if this is going to happen and optimise copying of data
+                    if (partition == null) {
+                        throw new JournalException("There is no partition for out-of-order timestamp %s in %s", Dates.toString(timestamp), this);
+                    }
 
-            long lagSizeMillis;
-            if (hard > 0L) {
-                lagSizeMillis = dataMaxTimestamp - hard;
-            } else if (lagMinTimestamp > 0L) {
-                lagSizeMillis = dataMaxTimestamp - lagMinTimestamp;
-            } else {
-                lagSizeMillis = 0L;
-            }
+                    int hi = lo + 1;
+                    while (hi < lateCount && partition.getInterval().contains(getTimestamp(sorted.get(hi)))) {
+                        hi++;
+                    }
 
-            if (lagSizeMillis > lagSwellMillis) {
-                // data would  be too big and would stretch outside of swell timestamp
-                // this is when lag partition should be split, but it is still a straight split without re-order
+                    int partitionIndex = partition.getPartitionIndex();
+                    dirs.add(rewritePartition(partition, sorted.subList(lo, hi), ++versions[partitionIndex]));
+                    lo = hi;
+                }
 
-                Partition<T> tempPartition = createTempPartition().open();
-                splitAppend(lagPartition.bufferedIterator(), hard, soft, tempPartition);
-                splitAppend(data, hard, soft, tempPartition);
-                replaceIrregularPartition(tempPartition);
-            } else {
-                // simplest case, just append to lag
-                lagPartition.append(data);
+                // new versions become current for this writer straight away and for readers on commit
+                tx.partitionVersions = versions;
+                applyPartitionVersions();
+                appendPartition = null;
+                appendTimestampLo = -1;
+                appendTimestampHi = -1;
+                if (deduplicator != null) {
+                    deduplicator.clear();
+                }
             }
-        } else {
 
-            Partition<T> tempPartition = createTempPartition().open();
-            if (dataMinTimestamp > lagMinTimestamp && dataMaxTimestamp < lagMaxTimestamp) {
-                //
-                // overlap scenario 1: data is fully inside of lag
-                //
+            for (int i = lateCount, sz = sorted.size(); i < sz; i++) {
+                append(sorted.get(i));
+            }
+            commit();
+        } catch (JournalException | RuntimeException e) {
+            rollback();
+            for (int i = 0, sz = dirs.size(); i < sz; i++) {
+                Files.delete(dirs.get(i));
+            }
+            throw e;
+        }
 
-                // calc boundaries of lag that intersects with data
-                long lagMid1 = lagPartition.indexOf(dataMinTimestamp, BinarySearch.SearchType.OLDER_OR_SAME);
-                long lagMid2 = lagPartition.indexOf(dataMaxTimestamp, BinarySearch.SearchType.NEWER_OR_SAME);
+        purgePartitionVersions();
+    }
 
-                // copy part of lag above data
-                splitAppend(lagPartition.bufferedIterator(0, lagMid1), hard, soft, tempPartition);
+    /**
+     * Adds column to generic journal without rewriting data. Column is recorded in metadata with next schema
+     * version. Partitions written before it have no file for the column and read it as nulls, partitions writer
+     * appends to have their file filled with nulls and new partitions are created with it. Generic readers pick
+     * up new column on refresh.
+     *
+     * @param name column name.
+     * @param type column type, symbol column cannot be added as symbol tables are fixed when journal is created.
+     * @throws JournalException if journal is mapped to class, column exists or transaction is active.
+     */
+    @SuppressWarnings("unchecked")
+    public void addColumn(String name, ColumnType type) throws JournalException {
+        if (txActive) {
+            throw new JournalException("Cannot add column while transaction is active: %s", this);
+        }
+        awaitDurableCommit();
 
-                // merge lag with data and copy result to temp partition
-                splitAppendMerge(data, lagPartition.bufferedIterator(lagMid1 + 1, lagMid2 - 1), hard, soft, tempPartition);
+        if (getMetadata().getModelClass() != null) {
+            throw new JournalException("Cannot add column to journal mapped to %s", getMetadata().getModelClass().getName());
+        }
 
-                // copy part of lag below data
-                splitAppend(lagPartition.bufferedIterator(lagMid2, lagPartition.size() - 1), hard, soft, tempPartition);
+        if (type == ColumnType.SYMBOL) {
+            throw new JournalException("Cannot add symbol column %s to existing journal", name);
+        }
 
-            } else if (dataMaxTimestamp < lagMinTimestamp && dataMaxTimestamp <= lagMinTimestamp) {
-                //
-                // overlap scenario 2: data sits directly above lag
-                //
-                splitAppend(data, hard, soft, tempPartition);
-                splitAppend(lagPartition.bufferedIterator(), hard, soft, tempPartition);
-            } else if (dataMinTimestamp <= lagMinTimestamp && dataMaxTimestamp < lagMaxTimestamp) {
-                //
-                // overlap scenario 3: bottom part of data overlaps top part of lag
-                //
+        int columnCount = getMetadata().getColumnCount();
+        for (int i = 0; i < columnCount; i++) {
+            if (getMetadata().getColumnMetadata(i).name.equals(name)) {
+                throw new JournalException("Duplicate column: %s", name);
+            }
+        }
 
-                // calc overlap line
-                long split = lagPartition.indexOf(dataMaxTimestamp, BinarySearch.SearchType.NEWER_OR_SAME);
+        JournalMetadata<T> metadata = (JournalMetadata<T>) new JournalStructure(getMetadata()).addColumn(name, type).build();
 
-                // merge lag with data and copy result to temp partition
-                splitAppendMerge(data, lagPartition.bufferedIterator(0, split - 1), hard, soft, tempPartition);
+        // files left behind by writer that failed to publish column
+        int count = nonLagPartitionCount();
+        if (count > 0) {
+            deleteColumnFiles(getPartition(count - 1, false).getPartitionDir(), name);
+        }
+        if (getIrregularPartition() != null) {
+            deleteColumnFiles(getIrregularPartition().getPartitionDir(), name);
+        }
 
-                // copy part of lag below data
-                splitAppend(lagPartition.bufferedIterator(split, lagPartition.size() - 1), hard, soft, tempPartition);
-            } else if (dataMinTimestamp > lagMinTimestamp && dataMaxTimestamp >= lagMaxTimestamp) {
-                //
-                // overlap scenario 4: top part of data overlaps with bottom part of lag
-                //
-                long split = lagPartition.indexOf(dataMinTimestamp, BinarySearch.SearchType.OLDER_OR_SAME);
+        // partitions are configured from last transaction, in which index pointers of composite indexes
+        // follow those of columns
+        txLog.head(tx);
+        tx.indexPointers = insertPointer(tx.indexPointers, columnCount);
+        tx.lagIndexPointers = insertPointer(tx.lagIndexPointers, columnCount);
 
-                // copy part of lag above overlap
-                splitAppend(lagPartition.bufferedIterator(0, split), hard, soft, tempPartition);
+        reconfigure(metadata);
+        journalEntryWriter = new JournalEntryWriterImpl(this);
 
-                // merge lag with data and copy result to temp partition
-                splitAppendMerge(data, lagPartition.bufferedIterator(split + 1, lagPartition.size() - 1), hard, soft, tempPartition);
-            } else if (dataMinTimestamp <= lagMinTimestamp && dataMaxTimestamp >= lagMaxTimestamp) {
+        // column files of partitions writer appends to exist before readers learn of column
+        if (count > 0) {
+            getPartition(count - 1, true);
+        }
+        if (getIrregularPartition() != null) {
+            getIrregularPartition().open();
+        }
+
+        File meta = new File(getLocation(), "_meta2");
+        File temp = new File(getLocation(), "_meta2.tmp");
+        Files.delete(temp);
+        try (HugeBuffer hb = new HugeBuffer(temp, 12, JournalMode.APPEND)) {
+            metadata.write(hb);
+        }
+        if (!temp.renameTo(meta)) {
+            throw new JournalException("Cannot rename %s to %s", temp, meta);
+        }
+
+        beginTx();
+        commit();
+    }
+
+    /**
+     * Attaches partition built elsewhere, for example by bulk writer into scratch journal, in front of first
+     * partition or after last one. Partition directory is moved into journal rather than copied. Journal
+     * partition comes from must have the same metadata as this one. Symbol keys of partition are translated
+     * to symbol tables of this journal, indexes are rebuilt when that changes any keys or when they are behind.
+     * Readers pick up attached partition on refresh.
+     *
+     * @param dir partition directory inside directory of journal it comes from, it is consumed by this call.
+     * @throws JournalException if partition does not fit this journal or cannot be moved.
+     */
+    public void attachPartition(File dir) throws JournalException {
+        if (txActive) {
+            throw new JournalException("Cannot attach partition while transaction is active: %s", this);
+        }
+        awaitDurableCommit();
+
+        if (hasIrregularPartition()) {
+            throw new JournalException("Cannot attach partition to journal with lag partition: %s", this);
+        }
+
+        PartitionType type = getMetadata().getPartitionType();
+        if (type == PartitionType.NONE) {
+            throw new JournalException("Cannot attach partition to journal that is not partitioned: %s", this);
+        }
+
+        if (!dir.isDirectory()) {
+            throw new JournalException("Partition directory does not exist: %s", dir);
+        }
+
+        File origin = dir.getParentFile();
+        checkMetadata(origin);
+
+        String name = dir.getName();
+        int versionPos = name.indexOf(PARTITION_VERSION_SEPARATOR);
+        if (versionPos != -1) {
+            name = name.substring(0, versionPos);
+        }
+        Interval interval = Dates.intervalForDirName(name, type, getMetadata().getPartitionWidth());
+
+        int count = nonLagPartitionCount();
+        boolean head = count > 0 && interval.getEndMillis() <= partitions.get(0).getInterval().getStartMillis();
+        if (!head && count > 0 && interval.getStartMillis() < partitions.get(count - 1).getInterval().getEndMillis()) {
+            throw new JournalException("Partition %s can only be attached before first or after last partition of %s", dir, this);
+        }
+
+        checkPartitionIndex(count);
+        beginTx();
+        try {
+            boolean translated = translateSymbols(dir, origin);
+            Partition<T> partition = new Partition<>(this, interval, count, Journal.TX_LIMIT_EVAL, null);
+            partition.setPartitionDir(dir, null);
+            partition.open();
+            try {
+                if (translated || partition.getIndexedSize() < partition.size()) {
+                    partition.rebuildIndexes();
+                }
+            } finally {
+                partition.close();
+            }
+
+            // directory that is moved in front of first partition is not part of journal until readers
+            // see transaction that lowers first partition timestamp
+            if (head && tx.partitionTimestampLo <= interval.getStartMillis()) {
+                tx.partitionTimestampLo = partitions.get(0).getInterval().getStartMillis();
+            }
+            commit();
+        } catch (JournalException | RuntimeException e) {
+            rollback();
+            throw e;
+        }
+
+        File target = new File(getLocation(), name);
+        // leftover of partition dropped by retention or detached
+        Files.deleteOrException(target);
+        move(dir, target);
+
+        beginTx();
+        if (head) {
+            int versions[] = tx.partitionVersions;
+            if (versions != null) {
+                tx.partitionVersions = new int[versions.length + 1];
+                System.arraycopy(versions, 0, tx.partitionVersions, 1, versions.length);
+            }
+            tx.partitionIndexBase--;
+            tx.partitionTimestampLo = interval.getStartMillis();
+            Partition<T> partition = new Partition<>(this, interval, 0, Journal.TX_LIMIT_EVAL, null);
+            partition.setPartitionDir(target, null);
+            prependPartition(partition);
+            txPartitionIndex++;
+        } else {
+            // appended partition is beyond last transaction, readers do not see it until commit
+            Partition<T> partition = setAppendPartition(createPartition(interval, count));
+            retentionPending = getMetadata().getRetention() > 0;
+            tierPending = tierMover != null;
+            appendTimestampHi = interval.getEndMillis();
+            long sz = partition.size();
+            appendTimestampLo = sz > 0 ? partition.getTimestampColumn().getLong(sz - 1) : interval.getStartMillis();
+        }
+        commit();
+        LOGGER.info("Attached %s to %s", dir, this);
+    }
+
+    /**
+     * Detaches oldest partition and moves its directory to archive location rather than copying it. Journal
+     * metadata and symbol tables are copied next to partition, so that it can be attached back later. Rows ids
+     * of partitions that are left move down same as when retention drops partition, readers follow on refresh.
+     *
+     * @param interval interval of oldest partition.
+     * @param location archive directory.
+     * @throws JournalException if partition is not oldest sealed partition or cannot be moved.
+     */
+    public void detachPartition(Interval interval, File location) throws JournalException {
+        if (txActive) {
+            throw new JournalException("Cannot detach partition while transaction is active: %s", this);
+        }
+        awaitDurableCommit();
+
+        int count = nonLagPartitionCount();
+        if (count < 2 || !interval.equals(partitions.get(0).getInterval())) {
+            throw new JournalException("Only oldest sealed partition can be detached, %s is not one in %s", interval, this);
+        }
+
+        String name = Dates.dirNameForIntervalStart(interval, getMetadata().getPartitionType());
+        File target = new File(location, name);
+        if (target.exists()) {
+            throw new JournalException("Partition %s already exists", target);
+        }
+        if (!location.exists()) {
+            Files.mkDirsOrException(location);
+        }
+
+        beginTx();
+        File dir = partitions.get(0).getPartitionDir();
+        int versions[] = tx.partitionVersions;
+        if (versions != null) {
+            tx.partitionVersions = versions.length > 1 ? Arrays.copyOfRange(versions, 1, versions.length) : null;
+        }
+        tx.partitionIndexBase++;
+        tx.partitionTimestampLo = partitions.get(1).getInterval().getStartMillis();
+        dropPartitions(1);
+        applyPartitionVersions();
+        txPartitionIndex = Math.max(txPartitionIndex - 1, 0);
+        commit();
+
+        // transaction no longer refers to partition, readers skip its directory
+        materialize(dir);
+        move(dir, target);
+        if (manifest.remove(name)) {
+            manifest.write();
+        }
+
+        Files.copy(new File(getLocation(), "_meta2"), new File(location, "_meta2"));
+        File[] files = getLocation().listFiles();
+        for (int i = 0, n = files == null ? 0 : files.length; i < n; i++) {
+            for (int k = 0, sz = getMetadata().getColumnCount(); k < sz; k++) {
+                if (getMetadata().getColumnMetadata(k).type == ColumnType.SYMBOL && getMetadata().getColumnMetadata(k).sameAs == null
+                        && files[i].isFile() && files[i].getName().startsWith(getMetadata().getColumnMetadata(k).name + ".sym")) {
+                    Files.copy(files[i], new File(location, files[i].getName()));
+                }
+            }
+        }
+        LOGGER.info("Detached %s from %s to %s", dir, this, target);
+    }
+
+    public void mergeAppend(ResultSet<T> resultSet) throws JournalException {
+        mergeAppend(resultSet.bufferedIterator());
+    }
+
+    public void mergeAppend(PeekingIterator<T> data) throws JournalException {
+
+        if (lagMillis == 0) {
+            throw new JournalException("This journal is not configured to have lag partition");
+        }
+
+        beginTx();
+
+        if (data == null || data.isEmpty()) {
+            return;
+        }
+
+        long dataMaxTimestamp = getTimestamp(data.peekLast());
+        long hard = getAppendTimestampLo();
+
+        if (dataMaxTimestamp < hard) {
+            return;
+        }
+
+        final Partition<T> lagPartition = openOrCreateLagPartition();
+        this.doDiscard = true;
+        this.doJournal = true;
+
+        long dataMinTimestamp = getTimestamp(data.peekFirst());
+        long lagMaxTimestamp = getMaxTimestamp();
+        long lagMinTimestamp = lagPartition.size() == 0L ? 0 : getTimestamp(lagPartition.read(0));
+        long soft = Math.max(dataMaxTimestamp, lagMaxTimestamp) - lagMillis;
+
+        if (dataMinTimestamp > lagMaxTimestamp) {
+            // this could be as simple as just appending data to lag
+            // the only complication is that after adding records to lag it could swell beyond
+            // the allocated "lagSwellTimestamp"
+            // we should check if this is going to happen and optimise copying of data
+
+            long lagSizeMillis;
+            if (hard > 0L) {
+                lagSizeMillis = dataMaxTimestamp - hard;
+            } else if (lagMinTimestamp > 0L) {
+                lagSizeMillis = dataMaxTimestamp - lagMinTimestamp;
+            } else {
+                lagSizeMillis = 0L;
+            }
+
+            if (lagSizeMillis > lagSwellMillis) {
+                // data would  be too big and would stretch outside of swell timestamp
+                // this is when lag partition should be split, but it is still a straight split without re-order
+
+                Partition<T> tempPartition = createTempPartition().open();
+                splitAppend(lagPartition, 0, lagPartition.size() - 1, hard, soft, tempPartition);
+                splitAppend(data, hard, soft, tempPartition);
+                tempPartition.rebuildIndexes();
+                replaceIrregularPartition(tempPartition);
+            } else {
+                // simplest case, just append to lag
+                lagPartition.append(data);
+            }
+        } else {
+
+            Partition<T> tempPartition = createTempPartition().open();
+            if (dataMinTimestamp > lagMinTimestamp && dataMaxTimestamp < lagMaxTimestamp) {
+                //
+                // overlap scenario 1: data is fully inside of lag
+                //
+
+                // calc boundaries of lag that intersects with data
+                long lagMid1 = lagPartition.indexOf(dataMinTimestamp, BinarySearch.SearchType.OLDER_OR_SAME);
+                long lagMid2 = lagPartition.indexOf(dataMaxTimestamp, BinarySearch.SearchType.NEWER_OR_SAME);
+
+                // copy part of lag above data
+                splitAppend(lagPartition, 0, lagMid1, hard, soft, tempPartition);
+
+                // merge lag with data and copy result to temp partition
+                splitAppendMerge(data, lagPartition, lagMid1 + 1, lagMid2 - 1, hard, soft, tempPartition);
+
+                // copy part of lag below data
+                splitAppend(lagPartition, lagMid2, lagPartition.size() - 1, hard, soft, tempPartition);
+
+            } else if (dataMaxTimestamp < lagMinTimestamp && dataMaxTimestamp <= lagMinTimestamp) {
+                //
+                // overlap scenario 2: data sits directly above lag
+                //
+                splitAppend(data, hard, soft, tempPartition);
+                splitAppend(lagPartition, 0, lagPartition.size() - 1, hard, soft, tempPartition);
+            } else if (dataMinTimestamp <= lagMinTimestamp && dataMaxTimestamp < lagMaxTimestamp) {
+                //
+                // overlap scenario 3: bottom part of data overlaps top part of lag
+                //
+
+                // calc overlap line
+                long split = lagPartition.indexOf(dataMaxTimestamp, BinarySearch.SearchType.NEWER_OR_SAME);
+
+                // merge lag with data and copy result to temp partition
+                splitAppendMerge(data, lagPartition, 0, split - 1, hard, soft, tempPartition);
+
+                // copy part of lag below data
+                splitAppend(lagPartition, split, lagPartition.size() - 1, hard, soft, tempPartition);
+            } else if (dataMinTimestamp > lagMinTimestamp && dataMaxTimestamp >= lagMaxTimestamp) {
+                //
+                // overlap scenario 4: top part of data overlaps with bottom part of lag
+                //
+                long split = lagPartition.indexOf(dataMinTimestamp, BinarySearch.SearchType.OLDER_OR_SAME);
+
+                // copy part of lag above overlap
+                splitAppend(lagPartition, 0, split, hard, soft, tempPartition);
+
+                // merge lag with data and copy result to temp partition
+                splitAppendMerge(data, lagPartition, split + 1, lagPartition.size() - 1, hard, soft, tempPartition);
+            } else if (dataMinTimestamp <= lagMinTimestamp && dataMaxTimestamp >= lagMaxTimestamp) {
                 //
                 // overlap scenario 5: lag is fully inside of data
                 //
 
                 // merge lag with data and copy result to temp partition
-                splitAppendMerge(data, lagPartition.bufferedIterator(), hard, soft, tempPartition);
+                splitAppendMerge(data, lagPartition, 0, lagPartition.size() - 1, hard, soft, tempPartition);
             } else {
                 throw new JournalRuntimeException("Unsupported overlap type: lag min/max [%s/%s] data min/max: [%s/%s]"
                         , Dates.toString(lagMinTimestamp), Dates.toString(lagMaxTimestamp)
                         , Dates.toString(dataMinTimestamp), Dates.toString(dataMaxTimestamp));
             }
 
+            // lag rows are copied without touching indexes
+            tempPartition.rebuildIndexes();
             replaceIrregularPartition(tempPartition);
         }
     }
@@ -651,10 +1421,40 @@ public class JournalWriter<T> extends Journal<T> {
 
     }
 
+    @Override
+    PageMapper getPageMapper() {
+        if (pageMapper == null) {
+            pageMapper = new PageMapper(getMetadata(), getLocation().getName());
+        }
+        return pageMapper;
+    }
+
     void updateTsLo(long ts) {
         if (checkOrder) {
             appendTimestampLo = ts;
+            if (deduplicator != null) {
+                deduplicator.add(appendPartition, ts);
+            }
+        }
+    }
+
+    /**
+     * Checks row entry writer has written to columns of partition but not committed yet.
+     *
+     * @return true if row is to be dropped as duplicate.
+     * @throws JournalException if row is out of order and is not a duplicate.
+     */
+    boolean isDuplicate(Partition<T> partition, long timestamp) throws JournalException {
+        if (deduplicator == null || !checkOrder) {
+            return false;
+        }
+        if (deduplicator.isDuplicate(partition, partition.size(), timestamp)) {
+            return true;
+        }
+        if (timestamp < appendTimestampLo) {
+            throw outOfOrder(timestamp);
         }
+        return false;
     }
 
     @Override
@@ -667,7 +1467,9 @@ public class JournalWriter<T> extends Journal<T> {
     private void switchAppendPartition(long timestamp) throws JournalException {
         boolean computeTimestampLo = appendPartition == null;
 
-        appendPartition = getAppendPartition(timestamp);
+        setAppendPartition(getAppendPartition(timestamp));
+        retentionPending = getMetadata().getRetention() > 0;
+        tierPending = tierMover != null;
 
         Interval interval = appendPartition.getInterval();
         if (interval == null) {
@@ -676,6 +1478,12 @@ public class JournalWriter<T> extends Journal<T> {
             appendTimestampHi = interval.getEndMillis();
         }
 
+        if (isPageMapperEnabled() && interval != null && getMetadata().getPartitionType() != PartitionType.NONE) {
+            PartitionType type = getMetadata().getPartitionType();
+            String next = Dates.dirNameForIntervalStart(Dates.intervalForDate(interval.getEndMillis() + 1, type, getMetadata().getPartitionWidth()), type);
+            pageMapper.prepareNextPartition(appendPartition.getPartitionDir(), new File(getLocation(), next));
+        }
+
         if (computeTimestampLo) {
             FixedColumn column = appendPartition.getTimestampColumn();
             long sz;
@@ -688,6 +1496,10 @@ public class JournalWriter<T> extends Journal<T> {
     }
 
     private void commit(boolean force) throws JournalException {
+        // finished partition moves are published even when there is nothing else to commit
+        if (tierMover != null && tierMover.hasDone()) {
+            beginTx();
+        }
         if (txActive) {
             commit(force ? Tx.TX_FORCE : Tx.TX_NORMAL);
             notifyTxListener();
@@ -702,6 +1514,74 @@ public class JournalWriter<T> extends Journal<T> {
         }
     }
 
+    /**
+     * Transaction no longer refers to expired and moved partitions, directories left behind by crash
+     * are skipped by readers and removed when writer opens.
+     */
+    private void deleteObsolete(List<File> dirs) {
+        for (int i = 0, n = dirs == null ? 0 : dirs.size(); i < n; i++) {
+            Files.delete(dirs.get(i));
+        }
+    }
+
+    /**
+     * Waits for transaction handed over to group commit service. Writer must not touch transaction log
+     * or close and delete files of that transaction until it is written out.
+     */
+    private void awaitDurableCommit() {
+        if (durableTx != null) {
+            durableTx.future.waitFor(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            durableTx = null;
+        }
+    }
+
+    private File rewritePartition(Partition<T> partition, List<T> objects, int version) throws JournalException {
+        long size = partition.size();
+        // rows up to and including first out-of-order timestamp stay where they are
+        long lo = partition.indexOf(getTimestamp(objects.get(0)) + 1, BinarySearch.SearchType.NEWER_OR_SAME);
+        if (lo < 0) {
+            lo = size;
+        }
+
+        File dir = getPartitionDir(partition.getInterval(), version);
+        // remove leftovers of failed rewrite
+        Files.deleteOrException(dir);
+        Files.mkDirsOrException(dir);
+        File source = partition.getPartitionDir();
+        if (isCompressed(source) || !source.getParentFile().equals(dir.getParentFile())) {
+            // partition moved to another tier is copied whole
+            Files.copyDirContents(source, dir);
+            decompress(dir);
+        } else {
+            partition.branch(dir, lo);
+        }
+
+        Partition<T> result = new Partition<>(this, partition.getInterval(), partition.getPartitionIndex(), Journal.TX_LIMIT_EVAL, null);
+        result.setPartitionDir(dir, null);
+        result.open();
+        try {
+            result.truncate(lo);
+
+            FixedColumn timestamps = partition.getTimestampColumn();
+            T obj = newObject();
+            int i = 0;
+            long row = lo;
+            while (row < size || i < objects.size()) {
+                if (i == objects.size() || (row < size && timestamps.getLong(row) <= getTimestamp(objects.get(i)))) {
+                    clearObject(obj);
+                    partition.read(row++, obj);
+                    result.append(obj);
+                } else {
+                    result.append(objects.get(i++));
+                }
+            }
+            result.commit();
+        } finally {
+            result.close();
+        }
+        LOGGER.info("Rewrote %s from row %d into %s", partition.getPartitionDir(), lo, dir);
+        return dir;
+    }
 
     Partition<T> createTempPartition() throws JournalException {
         return createTempPartition(Constants.TEMP_DIRECTORY_PREFIX + "." + System.currentTimeMillis() + "." + UUID.randomUUID().toString());
@@ -714,17 +1594,55 @@ public class JournalWriter<T> extends Journal<T> {
 
         int count = nonLagPartitionCount();
         if (count > 0) {
-            return appendPartition = getPartition(count - 1, true);
+            return setAppendPartition(getPartition(count - 1, true));
         } else {
             if (getMetadata().getPartitionType() != PartitionType.NONE) {
                 throw new JournalException("getAppendPartition() without timestamp on partitioned journal: %s", this);
             }
-            return appendPartition = createPartition(Dates.intervalForDate(0, getMetadata().getPartitionType()), 0);
+            return setAppendPartition(createPartition(Dates.intervalForDate(0, getMetadata().getPartitionType(), getMetadata().getPartitionWidth()), 0));
+        }
+    }
+
+    /**
+     * Partition append is leaving has its deferred rows indexed. New append partition is caught up too
+     * when indexing is synchronous, it could be left behind by writer that was not.
+     */
+    private Partition<T> setAppendPartition(Partition<T> partition) throws JournalException {
+        if (appendPartition != partition) {
+            if (appendPartition != null && appendPartition.isIndexDeferred()) {
+                appendPartition.catchUpIndexes();
+                appendPartition.setIndexDeferred(false);
+            }
+            if (indexBatchSize > 0) {
+                partition.setIndexDeferred(true);
+            } else if (partition.isIndexBehind()) {
+                partition.catchUpIndexes();
+            }
         }
+        return appendPartition = partition;
     }
 
     private void commit(byte command) throws JournalException {
-        boolean force = command == Tx.TX_FORCE;
+        commit(command, null);
+    }
+
+    /**
+     * Writes out transaction.
+     *
+     * @param command transaction command.
+     * @param files   when not null, files of durable transaction are collected here and transaction record is
+     *                left to group commit service, which writes it once these files are flushed.
+     * @throws JournalException if transaction cannot be written.
+     */
+    private void commit(byte command, List<MappedFile> files) throws JournalException {
+        awaitDurableCommit();
+        boolean force = command == Tx.TX_FORCE && files == null;
+        if (appendPartition != null && appendPartition.isIndexDeferred()
+                && appendPartition.size() - appendPartition.getIndexedSize() >= indexBatchSize) {
+            appendPartition.catchUpIndexes();
+        }
+        List<File> expired = retentionPending ? dropExpiredPartitions() : null;
+        List<File> moved = tierMover != null && tierMover.hasDone() ? applyTierMoves() : null;
         Partition<T> partition = lastNonEmptyNonLag();
         Partition<T> lag = getIrregularPartition();
 
@@ -742,17 +1660,21 @@ public class JournalWriter<T> extends Journal<T> {
             tab.commit();
             if (force) {
                 tab.force();
+            } else if (files != null) {
+                tab.getMappedFiles(files);
             }
             tx.symbolTableSizes[i] = tab.size();
             tx.symbolTableIndexPointers[i] = tab.getIndexTxAddress();
         }
-        tx.indexPointers = new long[getMetadata().getColumnCount()];
+        tx.indexPointers = new long[getMetadata().getColumnCount() + getMetadata().getCompositeIndexCount()];
 
         for (int i = Math.max(txPartitionIndex, 0), sz = nonLagPartitionCount(); i < sz; i++) {
             Partition<T> p = getPartition(i, true);
             p.commit();
             if (force) {
                 p.force();
+            } else if (files != null) {
+                p.getMappedFiles(files);
             }
 
         }
@@ -761,36 +1683,431 @@ public class JournalWriter<T> extends Journal<T> {
             partition.getIndexPointers(tx.indexPointers);
         }
 
+        // versions are changed by out-of-order append only, all other transactions carry them over
+        tx.partitionVersions = this.tx.partitionVersions;
+        tx.partitionIndexBase = this.tx.partitionIndexBase;
+        tx.partitionTimestampLo = this.tx.partitionTimestampLo;
+        tx.metadataVersion = getMetadata().getVersion();
+
         tx.lagIndexPointers = new long[tx.indexPointers.length];
         if (lag != null) {
             lag.commit();
             if (force) {
                 lag.force();
+            } else if (files != null) {
+                lag.getMappedFiles(files);
             }
             lag.getIndexPointers(tx.lagIndexPointers);
         }
 
-        txLog.create(tx);
-        if (force) {
-            txLog.force();
+        if (moved != null) {
+            if (expired == null) {
+                expired = moved;
+            } else {
+                expired.addAll(moved);
+            }
+        }
+
+        if (files == null) {
+            txLog.create(tx);
+            if (force) {
+                txLog.force();
+            }
+            deleteObsolete(expired);
+        } else {
+            durableTx = new DurableTx(tx, expired);
+        }
+
+        if (tierPending) {
+            scheduleTierMoves();
         }
     }
 
+    /**
+     * Requests copies of sealed partitions, which are old enough, to tier location and compressed copies
+     * of those that are old enough to be compressed. Partition that is due both is copied once.
+     */
+    private void scheduleTierMoves() {
+        tierPending = false;
+        int count = nonLagPartitionCount();
+        if (count < 2 || getMetadata().getPartitionType() == PartitionType.NONE) {
+            return;
+        }
+
+        long last = partitions.get(count - 1).getInterval().getStartMillis();
+        long tierHorizon = tierLocation == null ? Long.MIN_VALUE : Dates.addPeriods(last, getMetadata().getPartitionType(), getMetadata().getPartitionWidth(), -tierAge);
+        long compressHorizon = compressAge <= 0 ? Long.MIN_VALUE : Dates.addPeriods(last, getMetadata().getPartitionType(), getMetadata().getPartitionWidth(), -compressAge);
+        for (int i = 0; i < count - 1; i++) {
+            Partition<T> partition = partitions.get(i);
+            long start = partition.getInterval().getStartMillis();
+            if (start > tierHorizon && start > compressHorizon) {
+                break;
+            }
+
+            String name = Dates.dirNameForIntervalStart(partition.getInterval(), getMetadata().getPartitionType());
+            File dir = partition.getPartitionDir();
+            boolean move = start <= tierHorizon && !tierLocation.equals(dir.getParentFile());
+            boolean compress = start <= compressHorizon && !isCompressed(dir);
+            if ((!move && !compress) || tierMoves.contains(name)) {
+                continue;
+            }
+
+            int version = getPartitionVersion(i);
+            File target = new File(move ? tierLocation : dir.getParentFile(), name + PARTITION_VERSION_SEPARATOR + (version + 1));
+            if (tierMover.move(new TierMove(name, version, dir, target, compress ? compressionCodecs() : null))) {
+                tierMoves.add(name);
+            } else {
+                // mover is behind, try again on next partition switch
+                tierPending = true;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Makes copies, which mover has completed, current versions of their partitions. Copies of partitions that
+     * have changed or gone in the meantime are discarded.
+     *
+     * @return directories partitions have been moved from, to be deleted once transaction is written.
+     */
+    private List<File> applyTierMoves() throws JournalException {
+        List<File> result = null;
+        int versions[] = null;
+        boolean tiered = false;
+        TierMove move;
+        while ((move = tierMover.poll()) != null) {
+            tierMoves.remove(move.name);
+
+            int partitionIndex = -1;
+            for (int i = 0, n = nonLagPartitionCount() - 1; i < n; i++) {
+                if (move.source.equals(partitions.get(i).getPartitionDir())) {
+                    partitionIndex = i;
+                    break;
+                }
+            }
+
+            if (!move.isComplete() || partitionIndex == -1 || getPartitionVersion(partitionIndex) != move.version || TierMove.stamp(move.source) != move.stamp) {
+                Files.delete(move.target);
+                continue;
+            }
+
+            if (versions == null) {
+                versions = new int[nonLagPartitionCount()];
+                for (int i = 0; i < versions.length; i++) {
+                    versions[i] = getPartitionVersion(i);
+                }
+                result = new ArrayList<>();
+            }
+            versions[partitionIndex] = move.version + 1;
+            if (move.target.getParentFile().equals(tierLocation)) {
+                manifest.put(move.name, move.version + 1, tierLocation);
+                tiered = true;
+            }
+            result.add(move.source);
+        }
+
+        if (tiered) {
+            // manifest goes first, until transaction is written readers use current version in journal directory
+            manifest.write();
+        }
+
+        if (versions != null) {
+            tx.partitionVersions = versions;
+            applyPartitionVersions();
+        }
+        return result;
+    }
+
+    private static void deleteColumnFiles(File dir, String name) {
+        Files.delete(new File(dir, name + ".d"));
+        Files.delete(new File(dir, name + ".i"));
+    }
+
+    private static long[] insertPointer(long[] pointers, int index) {
+        if (pointers == null || pointers.length <= index) {
+            return pointers;
+        }
+        long[] result = new long[pointers.length + 1];
+        System.arraycopy(pointers, 0, result, 0, index);
+        System.arraycopy(pointers, index, result, index + 1, pointers.length - index);
+        return result;
+    }
+
+    private JournalException outOfOrder(long timestamp) {
+        return new JournalException("Cannot insert records out of order. maxHardTimestamp=%d (%s), timestamp=%d (%s): %s"
+                , appendTimestampLo, Dates.toString(appendTimestampLo), timestamp, Dates.toString(timestamp), this);
+    }
+
+    private void checkPartitionIndex(int partitionIndex) throws JournalException {
+        if (partitionIndex > Rows.MAX_PARTITION_INDEX) {
+            throw new JournalException("Partition limit of %d reached, use wider partitions for %s", Rows.MAX_PARTITION_INDEX + 1, this);
+        }
+    }
+
+    private void checkMetadata(File origin) throws JournalException {
+        File file = new File(origin, "_meta2");
+        if (!file.exists()) {
+            throw new JournalException("%s is not a journal directory", origin);
+        }
+
+        try (HugeBuffer hb = new HugeBuffer(file, 12, JournalMode.READ)) {
+            if (!Arrays.equals(Checksum.getChecksum(new JournalMetadataImpl<>(hb)), Checksum.getChecksum(getMetadata()))) {
+                throw new JournalException("Metadata of %s does not match metadata of %s", origin, this);
+            }
+        }
+    }
+
+    /**
+     * Rewrites symbol keys of partition from another journal to keys of this journal's symbol tables, values
+     * that are new to this journal are added to its symbol tables.
+     *
+     * @return true if any keys have been rewritten.
+     */
+    private boolean translateSymbols(File dir, File origin) throws JournalException {
+        boolean result = false;
+        for (int i = 0, n = getMetadata().getColumnCount(); i < n; i++) {
+            if (getMetadata().getColumnMetadata(i).type != ColumnType.SYMBOL) {
+                continue;
+            }
+
+            String name = getMetadata().getColumnMetadata(i).name;
+            String sameAs = getMetadata().getColumnMetadata(i).sameAs;
+            String table = sameAs == null ? name : sameAs;
+            SymbolTable target = getSymbolTable(table);
+            SymbolTable source = new SymbolTable(getMetadata().getColumnMetadata(i).distinctCountHint, getMetadata().getColumnMetadata(i).avgSize
+                    , getMetadata().getTxCountHint(), origin, table, JournalMode.READ, 0, 0, true);
+            int keys[];
+            boolean same = true;
+            try {
+                source.alignSize();
+                keys = new int[source.size()];
+                for (int k = 0; k < keys.length; k++) {
+                    keys[k] = target.put(source.value(k));
+                    same &= keys[k] == k;
+                }
+            } finally {
+                source.close();
+            }
+
+            if (same) {
+                continue;
+            }
+
+            if (!result) {
+                // compressed columns are read-only
+                decompress(dir);
+                result = true;
+            }
+
+            try (MappedFileImpl column = new MappedFileImpl(new File(dir, name + ".d"), getMetadata().getColumnMetadata(i).bitHint, JournalMode.APPEND)) {
+                for (long offset = 0, hi = column.getAppendOffset(); offset < hi; offset += 4) {
+                    long address = column.getAddress(offset, 4);
+                    int key = Unsafe.getUnsafe().getInt(address);
+                    if (key >= 0) {
+                        Unsafe.getUnsafe().putInt(address, keys[key]);
+                    }
+                }
+                column.force();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Renames directory, copies it when it is on another volume.
+     */
+    private static void move(File from, File to) throws JournalException {
+        if (!from.renameTo(to)) {
+            Files.mkDirsOrException(to);
+            Files.copyDirContents(from, to);
+            Files.deleteOrException(from);
+        }
+    }
+
+    private boolean isCompressed(File dir) {
+        return CompressedFile.compressedFile(new File(dir, getMetadata().getColumnMetadata(0).name + ".d")).exists();
+    }
+
+    private Map<String, Byte> compressionCodecs() {
+        Map<String, Byte> result = new HashMap<>();
+        for (int i = 0, n = getMetadata().getColumnCount(); i < n; i++) {
+            String name = getMetadata().getColumnMetadata(i).name;
+            ColumnType type = getMetadata().getColumnMetadata(i).type;
+            result.put(name + ".d", CompressedFile.codecFor(type, false));
+            if (type == ColumnType.STRING || type == ColumnType.BINARY) {
+                result.put(name + ".i", CompressedFile.codecFor(type, true));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Restores column files of compressed partition copy, so that it can be written to.
+     */
+    private void decompress(File dir) throws JournalException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (int i = 0; i < files.length; i++) {
+            String name = files[i].getName();
+            if (name.endsWith(CompressedFile.EXTENSION)) {
+                CompressedFile.decompress(files[i], new File(dir, name.substring(0, name.length() - CompressedFile.EXTENSION.length())));
+                Files.deleteOrException(files[i]);
+            }
+        }
+    }
+
+    /**
+     * Drops partitions, which are older than retention period counted back from last partition. Rows ids
+     * of partitions that are left move down, transaction records how many partitions were dropped so readers
+     * can follow without reopening journal.
+     *
+     * @return directories of dropped partitions to be deleted once transaction is written.
+     * @throws JournalException if directories of partitions that are left cannot be locked.
+     */
+    private List<File> dropExpiredPartitions() throws JournalException {
+        retentionPending = false;
+        int count = nonLagPartitionCount();
+        if (count < 2 || getMetadata().getPartitionType() == PartitionType.NONE) {
+            return null;
+        }
+
+        long horizon = Dates.addPeriods(partitions.get(count - 1).getInterval().getStartMillis(), getMetadata().getPartitionType(), getMetadata().getPartitionWidth(), 1 - getMetadata().getRetention());
+        int n = 0;
+        while (n < count - 1 && partitions.get(n).getInterval().getStartMillis() < horizon) {
+            n++;
+        }
+
+        if (n == 0) {
+            return null;
+        }
+
+        List<File> dirs = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            dirs.add(partitions.get(i).getPartitionDir());
+        }
+
+        int versions[] = tx.partitionVersions;
+        if (versions != null) {
+            tx.partitionVersions = n < versions.length ? Arrays.copyOfRange(versions, n, versions.length) : null;
+        }
+        tx.partitionIndexBase += n;
+        tx.partitionTimestampLo = partitions.get(n).getInterval().getStartMillis();
+        dropPartitions(n);
+        applyPartitionVersions();
+        txPartitionIndex = Math.max(txPartitionIndex - n, 0);
+        return dirs;
+    }
+
     private void rollbackPartitionDirs() throws JournalException {
+        final Set<File> keep = new HashSet<>();
+        for (int i = 0, sz = nonLagPartitionCount(); i < sz; i++) {
+            addWithBaseDirs(partitions.get(i).getPartitionDir(), keep);
+        }
+
+        // removes partitions beyond last transaction as well as versions of partitions that are not current
         File[] files = getLocation().listFiles(new FileFilter() {
             public boolean accept(File f) {
-                return f.isDirectory() && !f.getName().startsWith(Constants.TEMP_DIRECTORY_PREFIX);
+                return f.isDirectory() && !f.getName().startsWith(Constants.TEMP_DIRECTORY_PREFIX) && !keep.contains(f);
             }
         });
 
         if (files != null) {
-            Arrays.sort(files);
-            for (int i = getPartitionCount(); i < files.length; i++) {
-                Files.deleteOrException(files[i]);
+            // versions readers still use are kept together with versions they read from
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File o1, File o2) {
+                    return Integer.compare(getVersion(o2), getVersion(o1));
+                }
+            });
+            for (int i = 0; i < files.length; i++) {
+                if (!keep.contains(files[i]) && !deletePartitionDir(files[i])) {
+                    addWithBaseDirs(files[i], keep);
+                }
+            }
+        }
+    }
+
+    private static int getVersion(File dir) {
+        String name = dir.getName();
+        int versionPos = name.indexOf(PARTITION_VERSION_SEPARATOR);
+        return versionPos == -1 ? 0 : Integer.parseInt(name.substring(versionPos + 1));
+    }
+
+    /**
+     * Adds directory and directories its files read unchanged pages from, see
+     * {@link MappedFileImpl#link(File, File, long, int)}.
+     */
+    private static void addWithBaseDirs(File dir, Set<File> dirs) throws JournalException {
+        if (!dirs.add(dir)) {
+            return;
+        }
+        File[] files = dir.listFiles();
+        for (int i = 0, n = files == null ? 0 : files.length; i < n; i++) {
+            String name = files[i].getName();
+            if (name.endsWith(MappedFileImpl.BASE_EXTENSION)) {
+                File base = MappedFileImpl.getBase(new File(dir, name.substring(0, name.length() - MappedFileImpl.BASE_EXTENSION.length())));
+                if (base != null) {
+                    addWithBaseDirs(base.getParentFile(), dirs);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies pages files of rewritten partition read from previous versions into files themselves, so that
+     * directory can be moved away from previous versions.
+     */
+    private static void materialize(File dir) throws JournalException {
+        File[] files = dir.listFiles();
+        for (int i = 0, n = files == null ? 0 : files.length; i < n; i++) {
+            String name = files[i].getName();
+            if (name.endsWith(MappedFileImpl.BASE_EXTENSION)) {
+                MappedFileImpl.materialize(new File(dir, name.substring(0, name.length() - MappedFileImpl.BASE_EXTENSION.length())));
+            }
+        }
+    }
+
+    /**
+     * Deletes superseded versions of rewritten partitions, which no reader has locked and newer versions do
+     * not read from. Versions readers still use are deleted by one of the next out-of-order appends or when
+     * writer opens. Readers do not lock version 0 directories, which is why those are left for writer to
+     * delete on open.
+     *
+     * @throws JournalException if directory cannot be locked or deleted.
+     */
+    private void purgePartitionVersions() throws JournalException {
+        for (int i = 0, sz = nonLagPartitionCount(); i < sz; i++) {
+            Interval interval = partitions.get(i).getInterval();
+            Set<File> keep = new HashSet<>();
+            addWithBaseDirs(partitions.get(i).getPartitionDir(), keep);
+            for (int version = getPartitionVersion(i) - 1; version > 0; version--) {
+                File dir = getPartitionDir(interval, version);
+                if (dir.exists() && !keep.contains(dir) && !deletePartitionDir(dir)) {
+                    addWithBaseDirs(dir, keep);
+                }
             }
         }
     }
 
+    /**
+     * @return false if directory is in use and has not been deleted.
+     */
+    private boolean deletePartitionDir(File dir) throws JournalException {
+        Lock lock = LockManager.lockExclusive(dir);
+        try {
+            if (lock != null && lock.isValid()) {
+                Files.deleteOrException(dir);
+                return true;
+            }
+            LOGGER.info("Partition in use: %s", dir);
+            return false;
+        } finally {
+            LockManager.release(lock);
+        }
+    }
+
     private void rollbackPartitions(Tx tx) throws JournalException {
         int partitionIndex = Rows.toPartitionIndex(tx.journalMaxRowID);
         for (Iterator<Partition<T>> it = partitions.iterator(); it.hasNext(); ) {
@@ -808,23 +2125,64 @@ public class JournalWriter<T> extends Journal<T> {
 
     private void splitAppend(Iterator<T> it, long hard, long soft, Partition<T> partition) throws JournalException {
         while (it.hasNext()) {
-            T obj = it.next();
-            if (doDiscard && getTimestamp(obj) < hard) {
-                // discard
-                continue;
-            } else if (doDiscard) {
-                doDiscard = false;
-            }
+            splitAppend(it.next(), hard, soft, partition);
+        }
+    }
 
-            if (doJournal && getTimestamp(obj) < soft) {
-                append(obj);
-                continue;
-            } else if (doJournal) {
-                doJournal = false;
+    private void splitAppend(T obj, long hard, long soft, Partition<T> partition) throws JournalException {
+        if (doDiscard && getTimestamp(obj) < hard) {
+            // discard
+            return;
+        } else if (doDiscard) {
+            doDiscard = false;
+        }
+
+        if (doJournal && getTimestamp(obj) < soft) {
+            append(obj);
+            return;
+        } else if (doJournal) {
+            doJournal = false;
+        }
+
+        partition.append(obj);
+    }
+
+    /**
+     * Same as splitAppend() over objects but for rows lo..hi of lag partition. Rows that stay in lag are copied
+     * column by column in one go, only rows that go into journal are read as objects.
+     */
+    private void splitAppend(Partition<T> from, long lo, long hi, long hard, long soft, Partition<T> partition) throws JournalException {
+        if (lo > hi) {
+            return;
+        }
+
+        if (doDiscard) {
+            long row = from.indexOf(hard, BinarySearch.SearchType.NEWER_OR_SAME, lo, hi);
+            if (row < 0) {
+                return;
             }
+            lo = row;
+            doDiscard = false;
+        }
 
-            partition.append(obj);
+        if (doJournal) {
+            long row = from.indexOf(soft, BinarySearch.SearchType.NEWER_OR_SAME, lo, hi);
+            long end = row < 0 ? hi + 1 : row;
+            if (lo < end) {
+                T obj = newObject();
+                for (long r = lo; r < end; r++) {
+                    from.read(r, obj);
+                    append(obj);
+                }
+            }
+            if (row < 0) {
+                return;
+            }
+            lo = row;
+            doJournal = false;
         }
+
+        partition.append(from, lo, hi);
     }
 
     private void replaceIrregularPartition(Partition<T> temp) {
@@ -832,7 +2190,51 @@ public class JournalWriter<T> extends Journal<T> {
         purgeTempPartitions();
     }
 
-    private void splitAppendMerge(Iterator<T> a, Iterator<T> b, long hard, long soft, Partition<T> temp) throws JournalException {
-        splitAppend(mergingIterator.$new(a, b, getTimestampComparator()), hard, soft, temp);
+    /**
+     * Merges data with rows lo..hi of lag partition. Runs of lag rows between data objects are found by
+     * binary search over lag timestamp column and copied column by column. On timestamp tie lag rows go first.
+     */
+    private void splitAppendMerge(Iterator<T> data, Partition<T> lag, long lo, long hi, long hard, long soft, Partition<T> temp) throws JournalException {
+        while (data.hasNext()) {
+            T obj = data.next();
+            if (lo <= hi) {
+                long run = lag.indexOf(getTimestamp(obj), BinarySearch.SearchType.OLDER_OR_SAME, lo, hi);
+                if (run >= lo) {
+                    splitAppend(lag, lo, run, hard, soft, temp);
+                    lo = run + 1;
+                }
+            }
+            splitAppend(obj, hard, soft, temp);
+        }
+        splitAppend(lag, lo, hi, hard, soft, temp);
+    }
+
+    private class DurableTx implements GroupCommitTask {
+        private final Tx tx;
+        private final List<File> obsolete;
+        private TxFuture future;
+
+        private DurableTx(Tx tx, List<File> obsolete) {
+            this.tx = tx;
+            this.obsolete = obsolete;
+        }
+
+        @Override
+        public void writeTx() {
+            txLog.create(tx);
+        }
+
+        @Override
+        public MappedFile getTxFile() {
+            return txLog.getMappedFile();
+        }
+
+        @Override
+        public void onComplete(boolean durable) {
+            if (durable) {
+                deleteObsolete(obsolete);
+                notifyTxListener();
+            }
+        }
     }
 }
@@ -20,8 +20,14 @@ import com.nfsdb.journal.column.*;
 import com.nfsdb.journal.exceptions.JournalException;
 import com.nfsdb.journal.exceptions.JournalRuntimeException;
 import com.nfsdb.journal.factory.configuration.ColumnMetadata;
+import com.nfsdb.journal.factory.configuration.CompositeIndexMetadata;
 import com.nfsdb.journal.factory.configuration.JournalMetadata;
+import com.nfsdb.journal.index.BitmapIndex;
+import com.nfsdb.journal.index.BloomFilter;
 import com.nfsdb.journal.index.KVIndex;
+import com.nfsdb.journal.index.SortedIndex;
+import com.nfsdb.journal.index.StringIndex;
+import com.nfsdb.journal.index.Trigrams;
 import com.nfsdb.journal.iterators.ConcurrentIterator;
 import com.nfsdb.journal.iterators.PartitionBufferedIterator;
 import com.nfsdb.journal.iterators.PartitionConcurrentIterator;
@@ -29,6 +35,7 @@ import com.nfsdb.journal.iterators.PartitionIterator;
 import com.nfsdb.journal.logging.Logger;
 import com.nfsdb.journal.utils.Checksum;
 import com.nfsdb.journal.utils.Dates;
+import com.nfsdb.journal.utils.Files;
 import com.nfsdb.journal.utils.Unsafe;
 import org.joda.time.Interval;
 
@@ -38,7 +45,10 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 public class Partition<T> implements Iterable<T>, Closeable {
@@ -48,12 +58,20 @@ public class Partition<T> implements Iterable<T>, Closeable {
     private final Interval interval;
     private final int columnCount;
     SymbolIndexProxy<T> sparseIndexProxies[];
+    SymbolIndexProxy<T> compositeIndexProxies[];
+    private int compositeValues[][];
+    private BitmapIndex bitmapIndexes[];
+    private SortedIndex sortedIndexes[];
+    private StringIndex stringIndexes[];
+    private BloomFilter bloomFilters[];
+    private KVIndex ngramIndexes[];
+    private final Trigrams trigrams = new Trigrams();
     AbstractColumn[] columns;
     private int partitionIndex;
     private File partitionDir;
     private long lastAccessed = System.currentTimeMillis();
     private long txLimit;
-    private FixedColumn timestampColumn;
+    private boolean indexDeferred;
     private BinarySearch.LongTimeSeriesProvider indexOfVisitor;
 
     Partition(Journal<T> journal, Interval interval, int partitionIndex, long txLimit, long[] indexTxAddresses) {
@@ -76,25 +94,28 @@ public class Partition<T> implements Iterable<T>, Closeable {
 
             columns = new AbstractColumn[journal.getMetadata().getColumnCount()];
 
-            for (int i = 0; i < columns.length; i++) {
-                open(i);
+            switch (journal.getMode()) {
+                case READ:
+                case BULK_READ:
+                    // readers open columns on first access, columns outside of select() projection are never opened
+                    break;
+                default:
+                    for (int i = 0; i < columns.length; i++) {
+                        openFilled(i);
+                    }
             }
 
-            int tsIndex = journal.getMetadata().getTimestampColumnIndex();
+            final int tsIndex = journal.getMetadata().getTimestampColumnIndex();
             if (tsIndex >= 0) {
-                timestampColumn = getFixedWidthColumn(tsIndex);
-            }
-
-            if (timestampColumn != null) {
                 this.indexOfVisitor = new BinarySearch.LongTimeSeriesProvider() {
                     @Override
                     public long readLong(long index) {
-                        return timestampColumn.getLong(index);
+                        return getFixedWidthColumn(tsIndex).getLong(index);
                     }
 
                     @Override
                     public long size() {
-                        return timestampColumn.size();
+                        return getFixedWidthColumn(tsIndex).size();
                     }
                 };
             }
@@ -140,6 +161,10 @@ public class Partition<T> implements Iterable<T>, Closeable {
         for (int i = 0, sz = indexProxies.size(); i < sz; i++) {
             indexProxies.get(i).close();
         }
+        closeBitmapIndexes();
+        closeSortedIndexes();
+        closeStringIndexes();
+        closeNgramIndexes();
     }
 
     public boolean isOpen() {
@@ -149,22 +174,22 @@ public class Partition<T> implements Iterable<T>, Closeable {
     public String getStr(long localRowID, int columnIndex) {
         checkColumnIndex(columnIndex);
 
-        return ((VariableColumn) columns[columnIndex]).getStr(localRowID);
+        return ((VariableColumn) getColumn(columnIndex)).getStr(localRowID);
     }
 
     public void getBin(long localRowID, int columnIndex, OutputStream s) {
         checkColumnIndex(columnIndex);
-        ((VariableColumn) columns[columnIndex]).getBin(localRowID, s);
+        ((VariableColumn) getColumn(columnIndex)).getBin(localRowID, s);
     }
 
     public InputStream getBin(long localRowID, int columnIndex) {
         checkColumnIndex(columnIndex);
-        return ((VariableColumn) columns[columnIndex]).getBin(localRowID);
+        return ((VariableColumn) getColumn(columnIndex)).getBin(localRowID);
     }
 
     public String getSym(long localRowID, int columnIndex) {
         checkColumnIndex(columnIndex);
-        int symbolIndex = ((FixedColumn) columns[columnIndex]).getInt(localRowID);
+        int symbolIndex = ((FixedColumn) getColumn(columnIndex)).getInt(localRowID);
         switch (symbolIndex) {
             case SymbolTable.VALUE_IS_NULL:
             case SymbolTable.VALUE_NOT_FOUND:
@@ -196,7 +221,7 @@ public class Partition<T> implements Iterable<T>, Closeable {
 
     public AbstractColumn getAbstractColumn(int i) {
         checkColumnIndex(i);
-        return columns[i];
+        return getColumn(i);
     }
 
     public KVIndex getIndexForColumn(String columnName) throws JournalException {
@@ -211,6 +236,248 @@ public class Partition<T> implements Iterable<T>, Closeable {
         return h.getIndex();
     }
 
+    public KVIndex getCompositeIndex(int index) throws JournalException {
+        return compositeIndexProxies[index].getIndex();
+    }
+
+    public BitmapIndex getBitmapIndexForColumn(String columnName) throws JournalException {
+        return getBitmapIndexForColumn(journal.getMetadata().getColumnIndex(columnName));
+    }
+
+    /**
+     * Bitmap index is opened on first access. Readers see index as of last commit of writer, which can be
+     * ahead of their transaction, so rows have to be limited to partition size.
+     *
+     * @param columnIndex the column index
+     * @return bitmap index of column.
+     * @throws JournalException if column has no bitmap index or index cannot be opened.
+     */
+    public BitmapIndex getBitmapIndexForColumn(int columnIndex) throws JournalException {
+        ColumnMetadata m = journal.getMetadata().getColumnMetadata(columnIndex);
+        if (!m.bitmapIndexed) {
+            throw new JournalException("There is no bitmap index for column '%s' in %s", m.name, this);
+        }
+
+        if (bitmapIndexes == null) {
+            bitmapIndexes = new BitmapIndex[columnCount];
+        }
+
+        BitmapIndex index = bitmapIndexes[columnIndex];
+        if (index == null) {
+            index = bitmapIndexes[columnIndex] = new BitmapIndex(new File(partitionDir, m.name), journal.getMetadata().getRecordHint(), journal.getMode());
+        } else {
+            switch (journal.getMode()) {
+                case READ:
+                case BULK_READ:
+                    index.refresh();
+                    break;
+                default:
+                    break;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Sorted index is built when partition is sealed, so active partition usually does not have one. Index
+     * covers rows [0, index.size()), rows past that have to be scanned.
+     *
+     * @param columnIndex the column index
+     * @return sorted index of column or null when index has not been built.
+     * @throws JournalException if column has no sorted index or index cannot be opened.
+     */
+    public SortedIndex getSortedIndexForColumn(int columnIndex) throws JournalException {
+        ColumnMetadata m = journal.getMetadata().getColumnMetadata(columnIndex);
+        if (!m.sortedIndexed) {
+            throw new JournalException("There is no sorted index for column '%s' in %s", m.name, this);
+        }
+
+        if (sortedIndexes == null) {
+            sortedIndexes = new SortedIndex[columnCount];
+        }
+
+        SortedIndex index = sortedIndexes[columnIndex];
+        if (index != null && index.size() > size()) {
+            // partition has been truncated since index was opened
+            index.close();
+            index = sortedIndexes[columnIndex] = null;
+        }
+
+        if (index == null) {
+            File base = new File(partitionDir, m.name);
+            if (SortedIndex.exists(base)) {
+                index = new SortedIndex(base, journal.getMetadata().getRecordHint());
+                if (index.size() > size()) {
+                    index.close();
+                    return null;
+                }
+                sortedIndexes[columnIndex] = index;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Writes sorted index of column over all rows of partition.
+     *
+     * @param columnIndex the column index
+     * @throws JournalException if index cannot be written.
+     */
+    public void buildSortedIndex(int columnIndex) throws JournalException {
+        final long time = LOGGER.isInfoEnabled() ? System.nanoTime() : 0L;
+        ColumnMetadata m = journal.getMetadata().getColumnMetadata(columnIndex);
+        if (!m.sortedIndexed) {
+            throw new JournalException("There is no sorted index for column '%s' in %s", m.name, this);
+        }
+
+        if (sortedIndexes != null && sortedIndexes[columnIndex] != null) {
+            sortedIndexes[columnIndex].close();
+            sortedIndexes[columnIndex] = null;
+        }
+
+        File base = new File(partitionDir, m.name);
+        SortedIndex.write(base, getFixedWidthColumn(columnIndex), m.type, size(), journal.getMetadata().getRecordHint());
+        LOGGER.debug("SORTED %s [%dms]", base, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - time));
+    }
+
+    /**
+     * Exact index of string column. Index of reader is refreshed to last commit of writer, which can be
+     * ahead of reader transaction, so rows have to be limited to partition size.
+     *
+     * @param columnIndex the column index
+     * @return string index of column.
+     * @throws JournalException if column has no exact index or index cannot be opened.
+     */
+    public StringIndex getStringIndexForColumn(int columnIndex) throws JournalException {
+        ColumnMetadata m = journal.getMetadata().getColumnMetadata(columnIndex);
+        if (!m.exactIndexed) {
+            throw new JournalException("There is no exact index for column '%s' in %s", m.name, this);
+        }
+
+        if (stringIndexes == null) {
+            stringIndexes = new StringIndex[columnCount];
+        }
+
+        StringIndex index = stringIndexes[columnIndex];
+        if (index == null) {
+            index = stringIndexes[columnIndex] = new StringIndex(new File(partitionDir, m.name), journal.getMetadata().getRecordHint(), journal.getMode());
+        } else {
+            switch (journal.getMode()) {
+                case READ:
+                case BULK_READ:
+                    index.refresh();
+                    break;
+                default:
+                    break;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Bloom filter is written when partition is sealed and covers rows [0, filter.size()).
+     *
+     * @param columnIndex the column index
+     * @return Bloom filter of column or null when filter has not been written.
+     * @throws JournalException if column has no Bloom filter or filter cannot be opened.
+     */
+    public BloomFilter getBloomFilterForColumn(int columnIndex) throws JournalException {
+        ColumnMetadata m = journal.getMetadata().getColumnMetadata(columnIndex);
+        if (!m.bloomFiltered) {
+            throw new JournalException("There is no Bloom filter for column '%s' in %s", m.name, this);
+        }
+
+        if (bloomFilters == null) {
+            bloomFilters = new BloomFilter[columnCount];
+        }
+
+        BloomFilter filter = bloomFilters[columnIndex];
+        if (filter != null && filter.size() > size()) {
+            // partition has been truncated since filter was opened
+            filter.close();
+            filter = bloomFilters[columnIndex] = null;
+        }
+
+        if (filter == null) {
+            File base = new File(partitionDir, m.name);
+            if (BloomFilter.exists(base)) {
+                filter = new BloomFilter(base);
+                if (filter.size() > size()) {
+                    filter.close();
+                    return null;
+                }
+                bloomFilters[columnIndex] = filter;
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Writes Bloom filter of column over all rows of partition.
+     *
+     * @param columnIndex the column index
+     * @throws JournalException if filter cannot be written.
+     */
+    public void buildBloomFilter(int columnIndex) throws JournalException {
+        final long time = LOGGER.isInfoEnabled() ? System.nanoTime() : 0L;
+        ColumnMetadata m = journal.getMetadata().getColumnMetadata(columnIndex);
+        if (!m.bloomFiltered) {
+            throw new JournalException("There is no Bloom filter for column '%s' in %s", m.name, this);
+        }
+
+        if (bloomFilters != null && bloomFilters[columnIndex] != null) {
+            bloomFilters[columnIndex].close();
+            bloomFilters[columnIndex] = null;
+        }
+
+        long sz = size();
+        if (sz > Integer.MAX_VALUE) {
+            throw new JournalException("Too many rows for Bloom filter: %d", sz);
+        }
+        VariableColumn col = (VariableColumn) getColumn(columnIndex);
+        long hashes[] = new long[(int) sz];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = Checksum.hash64(col.getStr(i));
+        }
+        File base = new File(partitionDir, m.name);
+        BloomFilter.write(base, hashes, hashes.length);
+        LOGGER.debug("BLOOM %s [%dms]", base, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - time));
+    }
+
+    /**
+     * Trigram index of string column, keys are those of com.nfsdb.journal.index.Trigrams. Index of reader is
+     * refreshed to last commit of writer, so rows have to be limited to partition size.
+     *
+     * @param columnIndex the column index
+     * @return trigram index of column.
+     * @throws JournalException if column has no trigram index or index cannot be opened.
+     */
+    public KVIndex getNgramIndexForColumn(int columnIndex) throws JournalException {
+        ColumnMetadata m = journal.getMetadata().getColumnMetadata(columnIndex);
+        if (!m.ngramIndexed) {
+            throw new JournalException("There is no trigram index for column '%s' in %s", m.name, this);
+        }
+
+        if (ngramIndexes == null) {
+            ngramIndexes = new KVIndex[columnCount];
+        }
+
+        KVIndex index = ngramIndexes[columnIndex];
+        if (index == null) {
+            index = ngramIndexes[columnIndex] = openNgramIndex(columnIndex);
+        } else {
+            switch (journal.getMode()) {
+                case READ:
+                case BULK_READ:
+                    index.refresh();
+                    break;
+                default:
+                    break;
+            }
+        }
+        return index;
+    }
+
     public T read(long localRowID) {
         T obj = journal.newObject();
         read(localRowID, obj);
@@ -228,38 +495,40 @@ public class Partition<T> implements Iterable<T>, Closeable {
                 continue;
             }
 
+            AbstractColumn column = getColumn(i);
+
             switch (m.meta.type) {
                 case BOOLEAN:
-                    Unsafe.getUnsafe().putBoolean(obj, m.meta.offset, ((FixedColumn) columns[i]).getBool(localRowID));
+                    Unsafe.getUnsafe().putBoolean(obj, m.meta.offset, ((FixedColumn) column).getBool(localRowID));
                     break;
                 case BYTE:
-                    Unsafe.getUnsafe().putByte(obj, m.meta.offset, ((FixedColumn) columns[i]).getByte(localRowID));
+                    Unsafe.getUnsafe().putByte(obj, m.meta.offset, ((FixedColumn) column).getByte(localRowID));
                     break;
                 case DOUBLE:
-                    Unsafe.getUnsafe().putDouble(obj, m.meta.offset, ((FixedColumn) columns[i]).getDouble(localRowID));
+                    Unsafe.getUnsafe().putDouble(obj, m.meta.offset, ((FixedColumn) column).getDouble(localRowID));
                     break;
                 case INT:
-                    Unsafe.getUnsafe().putInt(obj, m.meta.offset, ((FixedColumn) columns[i]).getInt(localRowID));
+                    Unsafe.getUnsafe().putInt(obj, m.meta.offset, ((FixedColumn) column).getInt(localRowID));
                     break;
                 case LONG:
                 case DATE:
-                    Unsafe.getUnsafe().putLong(obj, m.meta.offset, ((FixedColumn) columns[i]).getLong(localRowID));
+                    Unsafe.getUnsafe().putLong(obj, m.meta.offset, ((FixedColumn) column).getLong(localRowID));
                     break;
                 case SHORT:
-                    Unsafe.getUnsafe().putShort(obj, m.meta.offset, ((FixedColumn) columns[i]).getShort(localRowID));
+                    Unsafe.getUnsafe().putShort(obj, m.meta.offset, ((FixedColumn) column).getShort(localRowID));
                     break;
                 case STRING:
-                    Unsafe.getUnsafe().putObject(obj, m.meta.offset, ((VariableColumn) columns[i]).getStr(localRowID));
+                    Unsafe.getUnsafe().putObject(obj, m.meta.offset, ((VariableColumn) column).getStr(localRowID));
                     break;
                 case SYMBOL:
-                    int symbolIndex = ((FixedColumn) columns[i]).getInt(localRowID);
+                    int symbolIndex = ((FixedColumn) column).getInt(localRowID);
                     // check if symbol was null
                     if (symbolIndex > SymbolTable.VALUE_IS_NULL) {
                         Unsafe.getUnsafe().putObject(obj, m.meta.offset, m.symbolTable.value(symbolIndex));
                     }
                     break;
                 case BINARY:
-                    int size = ((VariableColumn) columns[i]).getBinSize(localRowID);
+                    int size = ((VariableColumn) column).getBinSize(localRowID);
                     ByteBuffer buf = (ByteBuffer) Unsafe.getUnsafe().getObject(obj, m.meta.offset);
                     if (size == -1) {
                         if (buf != null) {
@@ -275,7 +544,7 @@ public class Partition<T> implements Iterable<T>, Closeable {
                             buf.rewind();
                         }
                         buf.limit(size);
-                        ((VariableColumn) columns[i]).getBin(localRowID, buf);
+                        ((VariableColumn) column).getBin(localRowID, buf);
                         buf.flip();
                     }
 
@@ -301,7 +570,16 @@ public class Partition<T> implements Iterable<T>, Closeable {
             this.txLimit = txLimit;
             for (int i = 0, indexProxiesSize = indexProxies.size(); i < indexProxiesSize; i++) {
                 SymbolIndexProxy<T> proxy = indexProxies.get(i);
-                proxy.setTxAddress(indexTxAddresses == null ? 0 : indexTxAddresses[proxy.getColumnIndex()]);
+                proxy.setTxAddress(indexTxAddresses == null || indexTxAddresses.length <= proxy.getColumnIndex() ? 0 : indexTxAddresses[proxy.getColumnIndex()]);
+            }
+        } else if (indexTxAddresses != null) {
+            // deferred indexes can catch up without new rows
+            for (int i = 0, indexProxiesSize = indexProxies.size(); i < indexProxiesSize; i++) {
+                SymbolIndexProxy<T> proxy = indexProxies.get(i);
+                int columnIndex = proxy.getColumnIndex();
+                if (columnIndex < indexTxAddresses.length && proxy.getTxAddress() != indexTxAddresses[columnIndex]) {
+                    proxy.setTxAddress(indexTxAddresses[columnIndex]);
+                }
             }
         }
     }
@@ -330,7 +608,105 @@ public class Partition<T> implements Iterable<T>, Closeable {
             if (m.getColumnMetadata(i).indexed) {
                 rebuildIndex(i);
             }
+            if (m.getColumnMetadata(i).bitmapIndexed) {
+                rebuildBitmapIndex(i);
+            }
+            if (m.getColumnMetadata(i).sortedIndexed) {
+                buildSortedIndex(i);
+            }
+            if (m.getColumnMetadata(i).exactIndexed) {
+                rebuildStringIndex(i);
+            }
+            if (m.getColumnMetadata(i).bloomFiltered) {
+                buildBloomFilter(i);
+            }
+            if (m.getColumnMetadata(i).ngramIndexed) {
+                rebuildNgramIndex(i);
+            }
+        }
+        for (int i = 0; i < compositeIndexProxies.length; i++) {
+            rebuildCompositeIndex(i);
+        }
+    }
+
+    public void rebuildCompositeIndex(int index) throws JournalException {
+        final long time = LOGGER.isInfoEnabled() ? System.nanoTime() : 0L;
+        JournalMetadata<T> meta = journal.getMetadata();
+
+        SymbolIndexProxy<T> proxy = compositeIndexProxies[index];
+        // proxy reopens index when it is next used
+        proxy.close();
+
+        File base = getIndexBase(proxy.getColumnIndex());
+        KVIndex.delete(base);
+
+        try (KVIndex kvIndex = new KVIndex(base, meta.getCompositeIndex(index).distinctCountHint, meta.getRecordHint(), meta.getTxCountHint(), JournalMode.APPEND, 0)) {
+            for (long localRowID = 0, sz = size(); localRowID < sz; localRowID++) {
+                kvIndex.add(getCompositeKey(index, localRowID), localRowID);
+            }
+            kvIndex.commit();
+        }
+
+        LOGGER.debug("REBUILT %s [%dms]", base, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - time));
+    }
+
+    public void rebuildBitmapIndex(int columnIndex) throws JournalException {
+        final long time = LOGGER.isInfoEnabled() ? System.nanoTime() : 0L;
+
+        BitmapIndex index = getBitmapIndexForColumn(columnIndex);
+        index.close();
+        bitmapIndexes[columnIndex] = null;
+
+        File base = new File(partitionDir, journal.getMetadata().getColumnMetadata(columnIndex).name);
+        BitmapIndex.delete(base);
+
+        index = getBitmapIndexForColumn(columnIndex);
+        FixedColumn col = getFixedWidthColumn(columnIndex);
+        for (long localRowID = 0, sz = size(); localRowID < sz; localRowID++) {
+            index.add(col.getInt(localRowID), localRowID);
         }
+        index.commit();
+
+        LOGGER.debug("REBUILT %s [%dms]", base, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - time));
+    }
+
+    public void rebuildStringIndex(int columnIndex) throws JournalException {
+        final long time = LOGGER.isInfoEnabled() ? System.nanoTime() : 0L;
+
+        StringIndex index = getStringIndexForColumn(columnIndex);
+        index.close();
+        stringIndexes[columnIndex] = null;
+
+        File base = new File(partitionDir, journal.getMetadata().getColumnMetadata(columnIndex).name);
+        StringIndex.delete(base);
+
+        index = getStringIndexForColumn(columnIndex);
+        VariableColumn col = (VariableColumn) getColumn(columnIndex);
+        for (long localRowID = 0, sz = size(); localRowID < sz; localRowID++) {
+            index.add(Checksum.hash64(col.getStr(localRowID)), localRowID);
+        }
+        index.commit();
+
+        LOGGER.debug("REBUILT %s [%dms]", base, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - time));
+    }
+
+    public void rebuildNgramIndex(int columnIndex) throws JournalException {
+        final long time = LOGGER.isInfoEnabled() ? System.nanoTime() : 0L;
+
+        getNgramIndexForColumn(columnIndex).close();
+        ngramIndexes[columnIndex] = null;
+
+        File base = getNgramIndexBase(columnIndex);
+        KVIndex.delete(base);
+
+        KVIndex index = getNgramIndexForColumn(columnIndex);
+        VariableColumn col = (VariableColumn) getColumn(columnIndex);
+        for (long localRowID = 0, sz = size(); localRowID < sz; localRowID++) {
+            addNgrams(index, trigrams.of(col.getStr(localRowID)), localRowID);
+        }
+        index.commit();
+
+        LOGGER.debug("REBUILT %s [%dms]", base, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - time));
     }
 
     /**
@@ -358,7 +734,12 @@ public class Partition<T> implements Iterable<T>, Closeable {
     public void rebuildIndex(int columnIndex, int keyCountHint, int recordCountHint, int txCountHint) throws JournalException {
         final long time = LOGGER.isInfoEnabled() ? System.nanoTime() : 0L;
 
-        getIndexForColumn(columnIndex).close();
+        SymbolIndexProxy<T> proxy = sparseIndexProxies[columnIndex];
+        if (proxy == null) {
+            throw new JournalException("There is no index for column '%s' in %s", journal.getMetadata().getColumnMetadata(columnIndex).name, this);
+        }
+        // proxy reopens index when it is next used
+        proxy.close();
 
         File base = journal.getMetadata().getColumnIndexBase(partitionDir, columnIndex);
         KVIndex.delete(base);
@@ -383,17 +764,8 @@ public class Partition<T> implements Iterable<T>, Closeable {
             return txLimit;
         }
 
-        long sz = 0;
-        for (int i = columns.length - 1; i >= 0; i--) {
-            AbstractColumn c = columns[i];
-            if (c != null) {
-                sz = c.size();
-                break;
-            }
-        }
-
-        txLimit = sz;
-        return sz;
+        // columns are committed from first to last, so last column has the smallest size
+        return txLimit = columns.length == 0 ? 0 : getColumn(columns.length - 1).size();
     }
 
     public long getLastAccessed() {
@@ -453,6 +825,97 @@ public class Partition<T> implements Iterable<T>, Closeable {
         for (int i = 0, sz = indexProxies.size(); i < sz; i++) {
             indexProxies.get(i).getIndex().compact();
         }
+
+        if (bitmapIndexes != null) {
+            for (int i = 0; i < bitmapIndexes.length; i++) {
+                if (bitmapIndexes[i] != null) {
+                    bitmapIndexes[i].compact();
+                }
+            }
+        }
+
+        if (stringIndexes != null) {
+            for (int i = 0; i < stringIndexes.length; i++) {
+                if (stringIndexes[i] != null) {
+                    stringIndexes[i].compact();
+                }
+            }
+        }
+
+        if (ngramIndexes != null) {
+            for (int i = 0; i < ngramIndexes.length; i++) {
+                if (ngramIndexes[i] != null) {
+                    ngramIndexes[i].compact();
+                }
+            }
+        }
+    }
+
+    public void sealIndexes() throws JournalException {
+        sealIndexes(false);
+    }
+
+    /**
+     * Rewrites indexes of this partition into compact layout and builds sorted indexes and Bloom filters. Partition must not be
+     * appended to afterwards, although appending still works at cost of converting indexes back to block layout.
+     *
+     * @param pack when true row IDs are stored as bit-packed deltas.
+     * @throws JournalException if indexes cannot be rewritten.
+     */
+    public void sealIndexes(boolean pack) throws JournalException {
+        if (!isOpen()) {
+            throw new JournalException("Cannot seal indexes in closed partition: %s", this);
+        }
+
+        JournalMetadata<T> meta = journal.getMetadata();
+        for (int i = 0, sz = indexProxies.size(); i < sz; i++) {
+            SymbolIndexProxy<T> proxy = indexProxies.get(i);
+            KVIndex index = proxy.getIndex();
+            if (index.isCompact() && (index.isPacked() || !pack)) {
+                continue;
+            }
+            File base = getIndexBase(proxy.getColumnIndex());
+            File compactBase = new File(partitionDir, base.getName() + ".compact");
+            KVIndex.delete(compactBase);
+            index.writeCompact(compactBase, pack);
+            // proxy reopens index when it is next used
+            proxy.close();
+            KVIndex.replace(compactBase, base);
+            LOGGER.debug("SEALED %s", base);
+        }
+
+        for (int i = 0; i < columnCount; i++) {
+            if (meta.getColumnMetadata(i).sortedIndexed) {
+                SortedIndex index = getSortedIndexForColumn(i);
+                if (index == null || index.size() < size()) {
+                    buildSortedIndex(i);
+                }
+            }
+            if (meta.getColumnMetadata(i).bloomFiltered) {
+                BloomFilter filter = getBloomFilterForColumn(i);
+                if (filter == null || filter.size() < size()) {
+                    buildBloomFilter(i);
+                }
+            }
+            if (meta.getColumnMetadata(i).ngramIndexed) {
+                sealNgramIndex(i, pack);
+            }
+        }
+    }
+
+    private void sealNgramIndex(int columnIndex, boolean pack) throws JournalException {
+        KVIndex index = getNgramIndexForColumn(columnIndex);
+        if (index.isCompact() && (index.isPacked() || !pack)) {
+            return;
+        }
+        File base = getNgramIndexBase(columnIndex);
+        File compactBase = new File(partitionDir, base.getName() + ".compact");
+        KVIndex.delete(compactBase);
+        index.writeCompact(compactBase, pack);
+        index.close();
+        ngramIndexes[columnIndex] = null;
+        KVIndex.replace(compactBase, base);
+        LOGGER.debug("SEALED %s", base);
     }
 
     // TODO: rethink visibility
@@ -461,6 +924,9 @@ public class Partition<T> implements Iterable<T>, Closeable {
             try {
                 for (int i1 = 0, sz = indexProxies.size(); i1 < sz; i1++) {
                     SymbolIndexProxy<T> proxy = indexProxies.get(i1);
+                    if (proxy.getColumnIndex() >= columnCount) {
+                        continue;
+                    }
                     KVIndex index = proxy.getIndex();
                     FixedColumn col = getFixedWidthColumn(proxy.getColumnIndex());
                     for (long i = oldSize; i < newSize; i++) {
@@ -468,12 +934,133 @@ public class Partition<T> implements Iterable<T>, Closeable {
                     }
                     index.commit();
                 }
+
+                for (int c = 0; c < compositeIndexProxies.length; c++) {
+                    KVIndex index = compositeIndexProxies[c].getIndex();
+                    for (long i = oldSize; i < newSize; i++) {
+                        index.add(getCompositeKey(c, i), i);
+                    }
+                    index.commit();
+                }
+
+                JournalMetadata<T> m = journal.getMetadata();
+                for (int c = 0; c < columnCount; c++) {
+                    if (m.getColumnMetadata(c).bitmapIndexed) {
+                        BitmapIndex index = getBitmapIndexForColumn(c);
+                        FixedColumn col = getFixedWidthColumn(c);
+                        for (long i = oldSize; i < newSize; i++) {
+                            index.add(col.getInt(i), i);
+                        }
+                        index.commit();
+                    }
+                    if (m.getColumnMetadata(c).exactIndexed) {
+                        StringIndex index = getStringIndexForColumn(c);
+                        VariableColumn col = (VariableColumn) getColumn(c);
+                        for (long i = oldSize; i < newSize; i++) {
+                            index.add(Checksum.hash64(col.getStr(i)), i);
+                        }
+                        index.commit();
+                    }
+                    if (m.getColumnMetadata(c).ngramIndexed) {
+                        KVIndex index = getNgramIndexForColumn(c);
+                        VariableColumn col = (VariableColumn) getColumn(c);
+                        for (long i = oldSize; i < newSize; i++) {
+                            addNgrams(index, trigrams.of(col.getStr(i)), i);
+                        }
+                        index.commit();
+                    }
+                }
             } catch (JournalException e) {
                 throw new JournalRuntimeException(e);
             }
         }
     }
 
+    /**
+     * Number of rows in symbol and int indexes of this partition. Rows past it were appended with indexing deferred,
+     * queries scan them instead.
+     */
+    public long getIndexedSize() throws JournalException {
+        long result = size();
+        for (int i = 0, sz = indexProxies.size(); i < sz; i++) {
+            SymbolIndexProxy<T> proxy = indexProxies.get(i);
+            if (isDeferrable(proxy.getColumnIndex())) {
+                result = Math.min(result, proxy.getIndex().size());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Number of rows in index of column. Rows past it were appended with indexing deferred and have to be scanned.
+     */
+    public long getIndexedSize(int columnIndex) throws JournalException {
+        return isDeferrable(columnIndex) ? Math.min(size(), getIndexForColumn(columnIndex).size()) : size();
+    }
+
+    /**
+     * Key row has in index of column, for rows that are not in index yet.
+     */
+    public int getIndexKey(long localRowID, int columnIndex) {
+        int v = getInt(localRowID, columnIndex);
+        ColumnMetadata m = journal.getMetadata().getColumnMetadata(columnIndex);
+        return m.type == ColumnType.INT ? v % m.distinctCountHint : v;
+    }
+
+    /**
+     * Adds rows appended with indexing deferred to symbol and int indexes, one column at a time. Indexes
+     * are committed together with partition.
+     *
+     * @return number of rows added to indexes
+     */
+    long catchUpIndexes() throws JournalException {
+        long size = size();
+        long result = 0;
+        for (int i = 0, sz = indexProxies.size(); i < sz; i++) {
+            SymbolIndexProxy<T> proxy = indexProxies.get(i);
+            int columnIndex = proxy.getColumnIndex();
+            if (!isDeferrable(columnIndex)) {
+                continue;
+            }
+            KVIndex index = proxy.getIndex();
+            long lo = index.size();
+            for (long localRowID = lo; localRowID < size; localRowID++) {
+                index.add(getIndexKey(localRowID, columnIndex), localRowID);
+            }
+            result = Math.max(result, size - lo);
+        }
+        return result;
+    }
+
+    /**
+     * Checks if symbol and int indexes are behind column data, as writer with deferred indexing can leave them.
+     * Size is taken from column so that check does not fix transaction limit of partition.
+     */
+    boolean isIndexBehind() throws JournalException {
+        long size = columns.length == 0 ? 0 : getColumn(columns.length - 1).size();
+        if (size > 0) {
+            for (int i = 0, sz = indexProxies.size(); i < sz; i++) {
+                SymbolIndexProxy<T> proxy = indexProxies.get(i);
+                if (isDeferrable(proxy.getColumnIndex()) && proxy.getIndex().size() < size) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    boolean isIndexDeferred() {
+        return indexDeferred;
+    }
+
+    void setIndexDeferred(boolean indexDeferred) {
+        this.indexDeferred = indexDeferred;
+    }
+
+    private boolean isDeferrable(int columnIndex) {
+        return columnIndex < columnCount && journal.getMetadata().getColumnMetadata(columnIndex).type != ColumnType.STRING;
+    }
+
     void append(Iterator<T> it) throws JournalException {
         while (it.hasNext()) {
             append(it.next());
@@ -489,7 +1076,7 @@ public class Partition<T> implements Iterable<T>, Closeable {
                 switch (meta.meta.type) {
                     case INT:
                         int v = Unsafe.getUnsafe().getInt(obj, meta.meta.offset);
-                        if (meta.meta.indexed) {
+                        if (meta.meta.indexed && !indexDeferred) {
                             sparseIndexProxies[i].getIndex().add(v % meta.meta.distinctCountHint, ((FixedColumn) columns[i]).putInt(v));
                         } else {
                             ((FixedColumn) columns[i]).putInt(v);
@@ -512,6 +1099,59 @@ public class Partition<T> implements Iterable<T>, Closeable {
                 columns[i].commit();
             }
 
+            if (compositeIndexProxies.length > 0) {
+                updateCompositeIndexes(columns[0].size() - 1);
+            }
+
+            applyTx(Journal.TX_LIMIT_EVAL, null);
+        } catch (Throwable e) {
+            ((JournalWriter) this.journal).rollback();
+            throw e;
+        }
+    }
+
+    void updateCompositeIndexes(long localRowID) throws JournalException {
+        for (int i = 0; i < compositeIndexProxies.length; i++) {
+            compositeIndexProxies[i].getIndex().add(getCompositeKey(i, localRowID), localRowID);
+        }
+    }
+
+    File getIndexBase(int columnIndex) {
+        JournalMetadata<T> meta = journal.getMetadata();
+        if (columnIndex < columnCount) {
+            return meta.getColumnIndexBase(partitionDir, columnIndex);
+        }
+        return new File(partitionDir, meta.getCompositeIndex(columnIndex - columnCount).name);
+    }
+
+    private int getCompositeKey(int index, long localRowID) {
+        CompositeIndexMetadata m = journal.getMetadata().getCompositeIndex(index);
+        int values[] = compositeValues[index];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = getFixedWidthColumn(m.columnIndexes[i]).getInt(localRowID);
+        }
+        return m.getKey(values);
+    }
+
+    /**
+     * Appends rows lo..hi (inclusive) of another partition of same journal column by column. Indexes
+     * are not updated, they have to be rebuilt once copying is done.
+     */
+    void append(Partition<T> from, long lo, long hi) throws JournalException {
+        try {
+            for (int i = 0; i < columnCount; i++) {
+                switch (journal.getColumnMetadata(i).meta.type) {
+                    case STRING:
+                    case BINARY:
+                        ((VariableColumn) columns[i]).copy((VariableColumn) from.getColumn(i), lo, hi);
+                        break;
+                    default:
+                        ((FixedColumn) columns[i]).copy((FixedColumn) from.getColumn(i), lo, hi);
+                        break;
+                }
+                columns[i].commit();
+            }
+
             applyTx(Journal.TX_LIMIT_EVAL, null);
         } catch (Throwable e) {
             ((JournalWriter) this.journal).rollback();
@@ -536,15 +1176,18 @@ public class Partition<T> implements Iterable<T>, Closeable {
         } else {
             key = meta.symbolTable.put(sym);
         }
-        if (meta.meta.indexed) {
-            sparseIndexProxies[i].getIndex().add(key, ((FixedColumn) columns[i]).putInt(key));
-        } else {
-            ((FixedColumn) columns[i]).putInt(key);
+        long rowID = ((FixedColumn) columns[i]).putInt(key);
+        if (meta.meta.indexed && !indexDeferred) {
+            sparseIndexProxies[i].getIndex().add(key, rowID);
+        }
+        if (meta.meta.bitmapIndexed) {
+            getBitmapIndexForColumn(i).add(key, rowID);
         }
     }
 
     private void appendStr(T obj, int i, Journal.ColumnMetadata meta) throws JournalException {
         String s = (String) Unsafe.getUnsafe().getObject(obj, meta.meta.offset);
+        long rowID = columns[i].size();
         long offset = ((VariableColumn) columns[i]).putStr(s);
         if (meta.meta.indexed) {
             sparseIndexProxies[i].getIndex().add(
@@ -552,11 +1195,47 @@ public class Partition<T> implements Iterable<T>, Closeable {
                     , offset
             );
         }
+        if (meta.meta.exactIndexed) {
+            getStringIndexForColumn(i).add(Checksum.hash64(s), rowID);
+        }
+        if (meta.meta.ngramIndexed) {
+            addNgrams(getNgramIndexForColumn(i), trigrams.of(s), rowID);
+        }
+    }
+
+    static void addNgrams(KVIndex index, Trigrams trigrams, long localRowID) {
+        for (int k = 0, n = trigrams.size(); k < n; k++) {
+            index.add(trigrams.get(k), localRowID);
+        }
+    }
+
+    private File getNgramIndexBase(int columnIndex) {
+        return new File(partitionDir, journal.getMetadata().getColumnMetadata(columnIndex).name + ".tg");
+    }
+
+    private KVIndex openNgramIndex(int columnIndex) throws JournalException {
+        JournalMetadata<T> meta = journal.getMetadata();
+        // each row has about as many trigrams as chars
+        long recordCountHint = (long) meta.getRecordHint() * Math.max(1, meta.getColumnMetadata(columnIndex).avgSize);
+        return new KVIndex(getNgramIndexBase(columnIndex), Trigrams.KEY_COUNT, recordCountHint, meta.getTxCountHint(), journal.getMode(), 0);
     }
 
     private FixedColumn getFixedWidthColumn(int i) {
         checkColumnIndex(i);
-        return (FixedColumn) columns[i];
+        return (FixedColumn) getColumn(i);
+    }
+
+    private AbstractColumn getColumn(int i) {
+        AbstractColumn column = columns[i];
+        if (column == null) {
+            try {
+                open(i);
+            } catch (JournalException e) {
+                throw new JournalRuntimeException(e);
+            }
+            column = columns[i];
+        }
+        return column;
     }
 
     void clearTx() {
@@ -568,25 +1247,97 @@ public class Partition<T> implements Iterable<T>, Closeable {
         this.partitionDir = partitionDir;
         if (create) {
             createSymbolIndexProxies(indexTxAddresses);
+            closeBitmapIndexes();
+            closeSortedIndexes();
+            closeStringIndexes();
+            closeNgramIndexes();
         }
     }
 
     private void open(int columnIndex) throws JournalException {
+        ColumnMetadata m = journal.getMetadata().getColumnMetadata(columnIndex);
+        if (isAbsent(m)) {
+            columns[columnIndex] = openNulls(m, getColumn(0).size());
+        } else {
+            columns[columnIndex] = openColumn(m);
+        }
+    }
 
+    /**
+     * Writer fills file of column, which partition was written without, with nulls for existing rows, so that
+     * rows can be appended. Compressed partition is read-only and keeps reading column as nulls.
+     */
+    private void openFilled(int columnIndex) throws JournalException {
         ColumnMetadata m = journal.getMetadata().getColumnMetadata(columnIndex);
+        if (!isAbsent(m)) {
+            columns[columnIndex] = openColumn(m);
+            return;
+        }
+
+        long rows = getColumn(0).size();
+        AbstractColumn nulls = openNulls(m, rows);
+        if (CompressedFile.compressedFile(new File(partitionDir, journal.getMetadata().getColumnMetadata(0).name + ".d")).exists()) {
+            columns[columnIndex] = nulls;
+            return;
+        }
+
+        AbstractColumn column = openColumn(m);
+        if (rows > 0) {
+            if (column instanceof VariableColumn) {
+                ((VariableColumn) column).copy((VariableColumn) nulls, 0, rows - 1);
+            } else {
+                ((FixedColumn) column).copy((FixedColumn) nulls, 0, rows - 1);
+            }
+            column.commit();
+        }
+        nulls.close();
+        columns[columnIndex] = column;
+    }
+
+    /**
+     * Column added to journal after partition was written has no file in partition directory.
+     */
+    private boolean isAbsent(ColumnMetadata m) {
+        File file = new File(partitionDir, m.name + ".d");
+        return m.version > 0 && !file.exists() && !CompressedFile.compressedFile(file).exists();
+    }
+
+    private AbstractColumn openColumn(ColumnMetadata m) throws JournalException {
         switch (m.type) {
             case STRING:
             case BINARY:
-                columns[columnIndex] = new VariableColumn(
-                        new MappedFileImpl(new File(partitionDir, m.name + ".d"), m.bitHint, journal.getMode())
-                        , new MappedFileImpl(new File(partitionDir, m.name + ".i"), m.indexBitHint, journal.getMode()));
-                break;
+                return new VariableColumn(
+                        openFile(new File(partitionDir, m.name + ".d"), m.bitHint)
+                        , openFile(new File(partitionDir, m.name + ".i"), m.indexBitHint));
             default:
-                columns[columnIndex] = new FixedColumn(
-                        new MappedFileImpl(new File(partitionDir, m.name + ".d"), m.bitHint, journal.getMode()), m.size);
+                return new FixedColumn(openFile(new File(partitionDir, m.name + ".d"), m.bitHint), m.size);
         }
     }
 
+    /**
+     * Column of nulls, which is not backed by file. Null string and binary are 4-byte -1 length, null symbol
+     * is -1 key and null of other types is 0.
+     */
+    private static AbstractColumn openNulls(ColumnMetadata m, long rows) {
+        switch (m.type) {
+            case STRING:
+            case BINARY:
+                return new VariableColumn(NullMappedFile.fill(rows * 4, (byte) -1), NullMappedFile.sequence(rows, 4));
+            case SYMBOL:
+                return new FixedColumn(NullMappedFile.fill(rows * m.size, (byte) -1), m.size);
+            default:
+                return new FixedColumn(NullMappedFile.fill(rows * m.size, (byte) 0), m.size);
+        }
+    }
+
+    private MappedFile openFile(File file, int bitHint) throws JournalException {
+        MappedFile result = CompressedFile.open(file, bitHint, journal.getMode());
+        if (result instanceof MappedFileImpl) {
+            ((MappedFileImpl) result).setPageMapper(journal.getPageMapper());
+        }
+        return result;
+    }
+
     Partition<T> access() {
         this.lastAccessed = getJournal().getTimerCache().getCachedMillis();
         return this;
@@ -608,6 +1359,33 @@ public class Partition<T> implements Iterable<T>, Closeable {
                 SymbolIndexProxy<T> proxy = indexProxies.get(i);
                 proxy.getIndex().truncate(newSize);
             }
+            for (int i = 0; i < columnCount; i++) {
+                if (journal.getMetadata().getColumnMetadata(i).bitmapIndexed) {
+                    getBitmapIndexForColumn(i).truncate(newSize);
+                }
+                if (journal.getMetadata().getColumnMetadata(i).sortedIndexed) {
+                    SortedIndex index = getSortedIndexForColumn(i);
+                    if (index != null && index.size() > newSize) {
+                        index.close();
+                        sortedIndexes[i] = null;
+                        SortedIndex.delete(new File(partitionDir, journal.getMetadata().getColumnMetadata(i).name));
+                    }
+                }
+                if (journal.getMetadata().getColumnMetadata(i).exactIndexed) {
+                    getStringIndexForColumn(i).truncate(newSize);
+                }
+                if (journal.getMetadata().getColumnMetadata(i).ngramIndexed) {
+                    getNgramIndexForColumn(i).truncate(newSize);
+                }
+                if (journal.getMetadata().getColumnMetadata(i).bloomFiltered) {
+                    BloomFilter filter = getBloomFilterForColumn(i);
+                    if (filter != null && filter.size() > newSize) {
+                        filter.close();
+                        bloomFilters[i] = null;
+                        BloomFilter.delete(new File(partitionDir, journal.getMetadata().getColumnMetadata(i).name));
+                    }
+                }
+            }
             for (int i = 0; i < columns.length; i++) {
                 if (columns[i] != null) {
                     columns[i].truncate(newSize);
@@ -619,6 +1397,65 @@ public class Partition<T> implements Iterable<T>, Closeable {
         }
     }
 
+    /**
+     * Writes files of new version of this partition, which is to be truncated to given size and appended to.
+     * Column files of new version read pages that truncation does not change from files of this partition,
+     * see {@link MappedFileImpl#link(File, File, long, int)}, and symbol indexes share row blocks with indexes of
+     * this partition. Other files are copied.
+     *
+     * @param dir  directory of new partition version next to directory of this partition.
+     * @param size number of rows new version keeps.
+     * @throws JournalException if files cannot be written.
+     */
+    void branch(File dir, long size) throws JournalException {
+        open();
+        Set<String> done = new HashSet<>();
+        for (int i = 0; i < columnCount; i++) {
+            ColumnMetadata m = journal.getMetadata().getColumnMetadata(i);
+            if (isAbsent(m)) {
+                continue;
+            }
+            AbstractColumn column = getColumn(i);
+            if (column instanceof VariableColumn) {
+                long offset = size < column.size() ? column.getOffset(size) : column.getOffset();
+                MappedFileImpl.link(new File(partitionDir, m.name + ".d"), new File(dir, m.name + ".d"), offset, m.bitHint);
+                MappedFileImpl.link(new File(partitionDir, m.name + ".i"), new File(dir, m.name + ".i"), size * 8, m.indexBitHint);
+                done.add(m.name + ".i");
+            } else {
+                MappedFileImpl.link(new File(partitionDir, m.name + ".d"), new File(dir, m.name + ".d"), column.getOffset(size), m.bitHint);
+            }
+            done.add(m.name + ".d");
+        }
+
+        for (int i = 0, sz = indexProxies.size(); i < sz; i++) {
+            SymbolIndexProxy<T> proxy = indexProxies.get(i);
+            String name = getIndexBase(proxy.getColumnIndex()).getName();
+            proxy.getIndex().branch(new File(dir, name), size);
+            done.add(name + ".k");
+            done.add(name + ".r");
+        }
+
+        for (int i = 0; i < columnCount; i++) {
+            if (journal.getMetadata().getColumnMetadata(i).ngramIndexed) {
+                String name = getNgramIndexBase(i).getName();
+                getNgramIndexForColumn(i).branch(new File(dir, name), size);
+                done.add(name + ".k");
+                done.add(name + ".r");
+            }
+        }
+
+        File[] files = partitionDir.listFiles();
+        if (files == null) {
+            throw new JournalException("Cannot list files in %s", partitionDir);
+        }
+        for (int i = 0; i < files.length; i++) {
+            String name = files[i].getName();
+            if (files[i].isFile() && !done.contains(name) && !name.endsWith(MappedFileImpl.BASE_EXTENSION)) {
+                Files.copy(files[i], new File(dir, name));
+            }
+        }
+    }
+
     void expireOpenIndices() {
         long expiry = System.currentTimeMillis() - journal.getMetadata().getOpenFileTTL();
         for (int i = 0, indexProxiesSize = indexProxies.size(); i < indexProxiesSize; i++) {
@@ -641,6 +1478,69 @@ public class Partition<T> implements Iterable<T>, Closeable {
             SymbolIndexProxy<T> proxy = indexProxies.get(i);
             proxy.getIndex().commit();
         }
+
+        if (bitmapIndexes != null) {
+            for (int i = 0; i < bitmapIndexes.length; i++) {
+                if (bitmapIndexes[i] != null) {
+                    bitmapIndexes[i].commit();
+                }
+            }
+        }
+
+        if (stringIndexes != null) {
+            for (int i = 0; i < stringIndexes.length; i++) {
+                if (stringIndexes[i] != null) {
+                    stringIndexes[i].commit();
+                }
+            }
+        }
+
+        if (ngramIndexes != null) {
+            for (int i = 0; i < ngramIndexes.length; i++) {
+                if (ngramIndexes[i] != null) {
+                    ngramIndexes[i].commit();
+                }
+            }
+        }
+    }
+
+    void getMappedFiles(List<MappedFile> files) throws JournalException {
+        for (int i = 0, indexProxiesSize = indexProxies.size(); i < indexProxiesSize; i++) {
+            indexProxies.get(i).getIndex().getMappedFiles(files);
+        }
+
+        if (bitmapIndexes != null) {
+            for (int i = 0; i < bitmapIndexes.length; i++) {
+                if (bitmapIndexes[i] != null) {
+                    bitmapIndexes[i].getMappedFiles(files);
+                }
+            }
+        }
+
+        if (stringIndexes != null) {
+            for (int i = 0; i < stringIndexes.length; i++) {
+                if (stringIndexes[i] != null) {
+                    stringIndexes[i].getMappedFiles(files);
+                }
+            }
+        }
+
+        if (ngramIndexes != null) {
+            for (int i = 0; i < ngramIndexes.length; i++) {
+                if (ngramIndexes[i] != null) {
+                    ngramIndexes[i].getMappedFiles(files);
+                }
+            }
+        }
+
+        if (columns != null) {
+            for (int i = 0; i < columns.length; i++) {
+                AbstractColumn column = columns[i];
+                if (column != null) {
+                    column.getMappedFiles(files);
+                }
+            }
+        }
     }
 
     void force() throws JournalException {
@@ -649,6 +1549,30 @@ public class Partition<T> implements Iterable<T>, Closeable {
             proxy.getIndex().force();
         }
 
+        if (bitmapIndexes != null) {
+            for (int i = 0; i < bitmapIndexes.length; i++) {
+                if (bitmapIndexes[i] != null) {
+                    bitmapIndexes[i].force();
+                }
+            }
+        }
+
+        if (stringIndexes != null) {
+            for (int i = 0; i < stringIndexes.length; i++) {
+                if (stringIndexes[i] != null) {
+                    stringIndexes[i].force();
+                }
+            }
+        }
+
+        if (ngramIndexes != null) {
+            for (int i = 0; i < ngramIndexes.length; i++) {
+                if (ngramIndexes[i] != null) {
+                    ngramIndexes[i].force();
+                }
+            }
+        }
+
         if (columns != null) {
             for (int i = 0; i < columns.length; i++) {
                 AbstractColumn column = columns[i];
@@ -659,6 +1583,58 @@ public class Partition<T> implements Iterable<T>, Closeable {
         }
     }
 
+    private void closeSortedIndexes() {
+        if (sortedIndexes != null) {
+            for (int i = 0; i < sortedIndexes.length; i++) {
+                if (sortedIndexes[i] != null) {
+                    sortedIndexes[i].close();
+                    sortedIndexes[i] = null;
+                }
+            }
+        }
+    }
+
+    private void closeStringIndexes() {
+        if (stringIndexes != null) {
+            for (int i = 0; i < stringIndexes.length; i++) {
+                if (stringIndexes[i] != null) {
+                    stringIndexes[i].close();
+                    stringIndexes[i] = null;
+                }
+            }
+        }
+        if (bloomFilters != null) {
+            for (int i = 0; i < bloomFilters.length; i++) {
+                if (bloomFilters[i] != null) {
+                    bloomFilters[i].close();
+                    bloomFilters[i] = null;
+                }
+            }
+        }
+    }
+
+    private void closeNgramIndexes() {
+        if (ngramIndexes != null) {
+            for (int i = 0; i < ngramIndexes.length; i++) {
+                if (ngramIndexes[i] != null) {
+                    ngramIndexes[i].close();
+                    ngramIndexes[i] = null;
+                }
+            }
+        }
+    }
+
+    private void closeBitmapIndexes() {
+        if (bitmapIndexes != null) {
+            for (int i = 0; i < bitmapIndexes.length; i++) {
+                if (bitmapIndexes[i] != null) {
+                    bitmapIndexes[i].close();
+                    bitmapIndexes[i] = null;
+                }
+            }
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private void createSymbolIndexProxies(long[] indexTxAddresses) {
         indexProxies.clear();
@@ -675,5 +1651,17 @@ public class Partition<T> implements Iterable<T>, Closeable {
                 sparseIndexProxies[i] = null;
             }
         }
+
+        JournalMetadata<T> meta = journal.getMetadata();
+        int count = meta.getCompositeIndexCount();
+        compositeIndexProxies = new SymbolIndexProxy[count];
+        compositeValues = new int[count][];
+        for (int i = 0; i < count; i++) {
+            int slot = columnCount + i;
+            SymbolIndexProxy<T> proxy = new SymbolIndexProxy<>(this, slot, indexTxAddresses == null || indexTxAddresses.length <= slot ? 0 : indexTxAddresses[slot]);
+            indexProxies.add(proxy);
+            compositeIndexProxies[i] = proxy;
+            compositeValues[i] = new int[meta.getCompositeIndex(i).columnIndexes.length];
+        }
     }
 }
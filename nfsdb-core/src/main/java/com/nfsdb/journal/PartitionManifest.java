@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal;
+
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.utils.Files;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records partitions that have been moved out of journal directory to another volume. Each entry is
+ * partition name, first version that lives in other volume and directory of journal on that volume.
+ * Earlier versions of partition are still looked up in journal directory.
+ */
+class PartitionManifest {
+    static final String FILE_NAME = "_tiers";
+    private final File journalDir;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    PartitionManifest(File journalDir) {
+        this.journalDir = journalDir;
+    }
+
+    void read() throws JournalException {
+        entries.clear();
+        File file = new File(journalDir, FILE_NAME);
+        if (!file.exists()) {
+            return;
+        }
+
+        String lines[] = Files.readStringFromFile(file).split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i].length() == 0) {
+                continue;
+            }
+            String fields[] = lines[i].split("\t");
+            if (fields.length != 3) {
+                throw new JournalException("Invalid entry in %s: %s", file, lines[i]);
+            }
+            entries.put(fields[0], new Entry(Integer.parseInt(fields[1]), new File(fields[2])));
+        }
+    }
+
+    /**
+     * Replaces manifest file, so that readers never see it half written.
+     */
+    void write() throws JournalException {
+        StringBuilder b = new StringBuilder();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            b.append(e.getKey()).append('\t').append(e.getValue().version).append('\t').append(e.getValue().location.getAbsolutePath()).append('\n');
+        }
+        File file = new File(journalDir, FILE_NAME);
+        File temp = new File(journalDir, FILE_NAME + ".tmp");
+        Files.writeStringToFile(temp, b.toString());
+        if (!temp.renameTo(file)) {
+            throw new JournalException("Cannot rename %s to %s", temp, file);
+        }
+    }
+
+    /**
+     * @param name    partition name.
+     * @param version version of partition.
+     * @return directory of journal, in which this version of partition lives.
+     */
+    File getLocation(String name, int version) {
+        Entry e = entries.get(name);
+        return e == null || version < e.version ? journalDir : e.location;
+    }
+
+    Set<String> getNames() {
+        return entries.keySet();
+    }
+
+    void put(String name, int version, File location) {
+        entries.put(name, new Entry(version, location));
+    }
+
+    boolean remove(String name) {
+        return entries.remove(name) != null;
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    private static class Entry {
+        private final int version;
+        private final File location;
+
+        private Entry(int version, File location) {
+            this.version = version;
+            this.location = location;
+        }
+    }
+}
@@ -29,5 +29,13 @@ public enum PartitionType {
     /**
      * Setting partition type to DEFAULT will use whatever partition type is specified in journal configuration.
      */
-    DEFAULT
+    DEFAULT,
+    /**
+     * Partition per hour, or per several hours when journal is configured with partition width that divides 24.
+     */
+    HOUR,
+    /**
+     * Partition per configured number of minutes, width must divide 1440 so that partitions align with days.
+     */
+    MINUTE
 }
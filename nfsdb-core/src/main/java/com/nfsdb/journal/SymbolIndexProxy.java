@@ -48,6 +48,10 @@ class SymbolIndexProxy<T> implements Closeable {
         return lastAccessed;
     }
 
+    public long getTxAddress() {
+        return txAddress;
+    }
+
     public void setTxAddress(long txAddress) {
         this.txAddress = txAddress;
         if (index != null) {
@@ -63,6 +67,9 @@ class SymbolIndexProxy<T> implements Closeable {
                 '}';
     }
 
+    /**
+     * @return index of column or, for composite indexes, column count plus index of composite index.
+     */
     public int getColumnIndex() {
         return columnIndex;
     }
@@ -72,8 +79,8 @@ class SymbolIndexProxy<T> implements Closeable {
         if (index == null) {
             JournalMetadata<T> meta = partition.getJournal().getMetadata();
             index = new KVIndex(
-                    meta.getColumnIndexBase(partition.getPartitionDir(), columnIndex),
-                    meta.getColumnMetadata(columnIndex).distinctCountHint,
+                    partition.getIndexBase(columnIndex),
+                    columnIndex < meta.getColumnCount() ? meta.getColumnMetadata(columnIndex).distinctCountHint : meta.getCompositeIndex(columnIndex - meta.getColumnCount()).distinctCountHint,
                     meta.getRecordHint(),
                     meta.getTxCountHint(),
                     partition.getJournal().getMode(),
@@ -17,9 +17,11 @@
 package com.nfsdb.journal.column;
 
 import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.utils.Unsafe;
 
 import java.io.Closeable;
 import java.nio.ByteBuffer;
+import java.util.List;
 
 public abstract class AbstractColumn implements Closeable {
     final MappedFile mappedFile;
@@ -47,10 +49,21 @@ public abstract class AbstractColumn implements Closeable {
         }
     }
 
+    /**
+     * Abandons values written since last commit, next value is written in their place.
+     */
+    public void discard() {
+        txAppendOffset = -1;
+    }
+
     public void force() {
         mappedFile.force();
     }
 
+    public void getMappedFiles(List<MappedFile> files) {
+        files.add(mappedFile);
+    }
+
     @Override
     public String toString() {
         return this.getClass().getName() + "[file=" + mappedFile.toString() + ", size=" + size() + "]";
@@ -66,6 +79,28 @@ public abstract class AbstractColumn implements Closeable {
         mappedFile.compact();
     }
 
+    /**
+     * Copies bytes of another file into this column's file page by page.
+     *
+     * @param from       file to copy from
+     * @param fromOffset offset of first byte to copy
+     * @param len        number of bytes to copy
+     * @param offset     offset in this column to copy to
+     */
+    void copyBytes(MappedFile from, long fromOffset, long len, long offset) {
+        while (len > 0) {
+            long src = from.getAddress(fromOffset, 1);
+            int srcLen = from.getAddressSize(fromOffset);
+            long dst = mappedFile.getAddress(offset, 1);
+            int dstLen = mappedFile.getAddressSize(offset);
+            long n = Math.min(len, Math.min(srcLen, dstLen));
+            Unsafe.getUnsafe().copyMemory(src, dst, n);
+            fromOffset += n;
+            offset += n;
+            len -= n;
+        }
+    }
+
     AbstractColumn(MappedFile storage) {
         this.mappedFile = storage;
     }
@@ -0,0 +1,473 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal.column;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Encoders and decoders of column blocks. Each block is encoded on its own, decoder needs nothing but
+ * block payload and number of bytes block had before encoding. Values are read and written little-endian,
+ * which is how columns lay them out.
+ */
+final class BlockCodec {
+    static final byte RAW = 0;
+    // LZ77 byte matching in the manner of LZ4 for strings, binaries and narrow values
+    static final byte LZ = 1;
+    // delta-of-delta of longs for timestamps and offsets of variable length values
+    static final byte DELTA_DELTA = 2;
+    // XOR of consecutive doubles with leading and trailing zeros elided, as in Gorilla
+    static final byte XOR = 3;
+    // ints less their minimum packed into as few bits as range of block needs
+    static final byte BIT_PACK = 4;
+
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xffff;
+    private static final int HASH_BITS = 12;
+
+    private BlockCodec() {
+    }
+
+    /**
+     * @param codec preferred codec.
+     * @param src   block values, little-endian, starting at position 0.
+     * @param len   number of bytes in block.
+     * @return codec byte followed by payload. Block is stored raw when codec cannot make it smaller.
+     */
+    static byte[] encode(byte codec, ByteBuffer src, int len) {
+        byte[] payload;
+        switch (codec) {
+            case LZ:
+                payload = lz(src, len);
+                break;
+            case DELTA_DELTA:
+                payload = len % 8 == 0 ? deltaDelta(src, len) : null;
+                break;
+            case XOR:
+                payload = len % 8 == 0 ? xor(src, len) : null;
+                break;
+            case BIT_PACK:
+                payload = len % 4 == 0 ? bitPack(src, len) : null;
+                break;
+            default:
+                payload = null;
+        }
+
+        if (payload == null || payload.length >= len) {
+            codec = RAW;
+            payload = new byte[len];
+            for (int i = 0; i < len; i++) {
+                payload[i] = src.get(i);
+            }
+        }
+
+        byte[] result = new byte[payload.length + 1];
+        result[0] = codec;
+        System.arraycopy(payload, 0, result, 1, payload.length);
+        return result;
+    }
+
+    /**
+     * @param in     codec byte followed by payload.
+     * @param inLen  number of bytes in input.
+     * @param dst    buffer to decode block into starting at position 0.
+     * @param len    number of bytes block had before encoding.
+     */
+    static void decode(byte[] in, int inLen, ByteBuffer dst, int len) {
+        switch (in[0]) {
+            case RAW:
+                for (int i = 0; i < len; i++) {
+                    dst.put(i, in[i + 1]);
+                }
+                break;
+            case LZ:
+                unLz(in, inLen, dst);
+                break;
+            case DELTA_DELTA:
+                unDeltaDelta(new BitReader(in, 1), dst, len / 8);
+                break;
+            case XOR:
+                unXor(new BitReader(in, 1), dst, len / 8);
+                break;
+            case BIT_PACK:
+                unBitPack(new BitReader(in, 1), dst, len / 4);
+                break;
+            default:
+                throw new IllegalStateException("Unknown codec: " + in[0]);
+        }
+    }
+
+    private static byte[] deltaDelta(ByteBuffer src, int len) {
+        int n = len / 8;
+        BitWriter w = new BitWriter(len);
+        long prev = 0;
+        long prevDelta = 0;
+        for (int i = 0; i < n; i++) {
+            long v = src.getLong(i * 8);
+            if (i == 0) {
+                w.write(v, 64);
+            } else if (i == 1) {
+                prevDelta = v - prev;
+                w.write(prevDelta, 64);
+            } else {
+                long delta = v - prev;
+                long dod = zigZag(delta - prevDelta);
+                prevDelta = delta;
+                if (dod == 0) {
+                    w.write(0, 1);
+                } else if (dod >>> 7 == 0) {
+                    w.write(0b10, 2);
+                    w.write(dod, 7);
+                } else if (dod >>> 9 == 0) {
+                    w.write(0b110, 3);
+                    w.write(dod, 9);
+                } else if (dod >>> 12 == 0) {
+                    w.write(0b1110, 4);
+                    w.write(dod, 12);
+                } else {
+                    w.write(0b1111, 4);
+                    w.write(dod, 64);
+                }
+            }
+            prev = v;
+        }
+        return w.toArray();
+    }
+
+    private static void unDeltaDelta(BitReader r, ByteBuffer dst, int n) {
+        long prev = 0;
+        long delta = 0;
+        for (int i = 0; i < n; i++) {
+            long v;
+            if (i == 0) {
+                v = r.read(64);
+            } else if (i == 1) {
+                delta = r.read(64);
+                v = prev + delta;
+            } else {
+                long dod;
+                if (r.read(1) == 0) {
+                    dod = 0;
+                } else if (r.read(1) == 0) {
+                    dod = r.read(7);
+                } else if (r.read(1) == 0) {
+                    dod = r.read(9);
+                } else if (r.read(1) == 0) {
+                    dod = r.read(12);
+                } else {
+                    dod = r.read(64);
+                }
+                delta += unZigZag(dod);
+                v = prev + delta;
+            }
+            dst.putLong(i * 8, v);
+            prev = v;
+        }
+    }
+
+    private static byte[] xor(ByteBuffer src, int len) {
+        int n = len / 8;
+        BitWriter w = new BitWriter(len);
+        long prev = 0;
+        int prevLead = -1;
+        int prevTrail = 0;
+        for (int i = 0; i < n; i++) {
+            long v = src.getLong(i * 8);
+            if (i == 0) {
+                w.write(v, 64);
+            } else {
+                long x = v ^ prev;
+                if (x == 0) {
+                    w.write(0, 1);
+                } else {
+                    int lead = Long.numberOfLeadingZeros(x);
+                    int trail = Long.numberOfTrailingZeros(x);
+                    if (prevLead != -1 && lead >= prevLead && trail >= prevTrail) {
+                        // meaningful bits fit into window of previous value
+                        w.write(0b10, 2);
+                        w.write(x >>> prevTrail, 64 - prevLead - prevTrail);
+                    } else {
+                        int bits = 64 - lead - trail;
+                        w.write(0b11, 2);
+                        w.write(lead, 6);
+                        w.write(bits - 1, 6);
+                        w.write(x >>> trail, bits);
+                        prevLead = lead;
+                        prevTrail = trail;
+                    }
+                }
+            }
+            prev = v;
+        }
+        return w.toArray();
+    }
+
+    private static void unXor(BitReader r, ByteBuffer dst, int n) {
+        long prev = 0;
+        int lead = 0;
+        int trail = 0;
+        for (int i = 0; i < n; i++) {
+            long v;
+            if (i == 0) {
+                v = r.read(64);
+            } else if (r.read(1) == 0) {
+                v = prev;
+            } else {
+                if (r.read(1) == 1) {
+                    lead = (int) r.read(6);
+                    trail = 64 - lead - (int) r.read(6) - 1;
+                }
+                v = prev ^ (r.read(64 - lead - trail) << trail);
+            }
+            dst.putLong(i * 8, v);
+            prev = v;
+        }
+    }
+
+    private static byte[] bitPack(ByteBuffer src, int len) {
+        int n = len / 4;
+        long min = Integer.MAX_VALUE;
+        long max = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            int v = src.getInt(i * 4);
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+        int bits = n == 0 ? 0 : 64 - Long.numberOfLeadingZeros(max - min);
+        BitWriter w = new BitWriter(len);
+        w.write(min, 32);
+        w.write(bits, 6);
+        if (bits > 0) {
+            for (int i = 0; i < n; i++) {
+                w.write(src.getInt(i * 4) - min, bits);
+            }
+        }
+        return w.toArray();
+    }
+
+    private static void unBitPack(BitReader r, ByteBuffer dst, int n) {
+        int min = (int) r.read(32);
+        int bits = (int) r.read(6);
+        for (int i = 0; i < n; i++) {
+            dst.putInt(i * 4, bits == 0 ? min : (int) (min + r.read(bits)));
+        }
+    }
+
+    /**
+     * Sequences of literal run and match: token with literal length in high and match length less
+     * MIN_MATCH in low nibble, lengths of 15 and over continue in bytes of 255, literals, offset of match.
+     * Last sequence has literals only.
+     */
+    private static byte[] lz(ByteBuffer src, int len) {
+        byte[] in = new byte[len];
+        for (int i = 0; i < len; i++) {
+            in[i] = src.get(i);
+        }
+
+        int table[] = new int[1 << HASH_BITS];
+        Arrays.fill(table, -1);
+        ByteArray out = new ByteArray(len);
+
+        int anchor = 0;
+        int i = 0;
+        while (i + MIN_MATCH <= len) {
+            int h = hash(in, i);
+            int ref = table[h];
+            table[h] = i;
+            if (ref != -1 && i - ref <= MAX_OFFSET && matches(in, ref, i)) {
+                int m = MIN_MATCH;
+                while (i + m < len && in[ref + m] == in[i + m]) {
+                    m++;
+                }
+                sequence(out, in, anchor, i - anchor, i - ref, m);
+                i += m;
+                anchor = i;
+            } else {
+                i++;
+            }
+        }
+        if (anchor < len) {
+            sequence(out, in, anchor, len - anchor, 0, 0);
+        }
+        return out.toArray();
+    }
+
+    private static void sequence(ByteArray out, byte[] in, int literalPos, int literalLen, int offset, int matchLen) {
+        int m = matchLen == 0 ? 0 : matchLen - MIN_MATCH;
+        out.put((byte) ((Math.min(literalLen, 15) << 4) | Math.min(m, 15)));
+        if (literalLen >= 15) {
+            putLength(out, literalLen - 15);
+        }
+        for (int i = 0; i < literalLen; i++) {
+            out.put(in[literalPos + i]);
+        }
+        if (matchLen > 0) {
+            out.put((byte) offset);
+            out.put((byte) (offset >>> 8));
+            if (m >= 15) {
+                putLength(out, m - 15);
+            }
+        }
+    }
+
+    private static void unLz(byte[] in, int inLen, ByteBuffer dst) {
+        int p = 1;
+        int o = 0;
+        while (p < inLen) {
+            int token = in[p++] & 0xff;
+            int literalLen = token >>> 4;
+            if (literalLen == 15) {
+                int b;
+                do {
+                    b = in[p++] & 0xff;
+                    literalLen += b;
+                } while (b == 255);
+            }
+            for (int i = 0; i < literalLen; i++) {
+                dst.put(o++, in[p++]);
+            }
+            if (p >= inLen) {
+                break;
+            }
+            int offset = (in[p++] & 0xff) | ((in[p++] & 0xff) << 8);
+            int matchLen = token & 0x0f;
+            if (matchLen == 15) {
+                int b;
+                do {
+                    b = in[p++] & 0xff;
+                    matchLen += b;
+                } while (b == 255);
+            }
+            matchLen += MIN_MATCH;
+            // match can overlap bytes it produces
+            for (int i = 0; i < matchLen; i++, o++) {
+                dst.put(o, dst.get(o - offset));
+            }
+        }
+    }
+
+    private static void putLength(ByteArray out, int len) {
+        while (len >= 255) {
+            out.put((byte) 255);
+            len -= 255;
+        }
+        out.put((byte) len);
+    }
+
+    private static boolean matches(byte[] in, int a, int b) {
+        return in[a] == in[b] && in[a + 1] == in[b + 1] && in[a + 2] == in[b + 2] && in[a + 3] == in[b + 3];
+    }
+
+    private static int hash(byte[] in, int i) {
+        int v = (in[i] & 0xff) | (in[i + 1] & 0xff) << 8 | (in[i + 2] & 0xff) << 16 | (in[i + 3] & 0xff) << 24;
+        return (v * -1640531535) >>> (32 - HASH_BITS);
+    }
+
+    private static long zigZag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unZigZag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static class ByteArray {
+        private byte[] buf;
+        private int pos;
+
+        private ByteArray(int capacity) {
+            this.buf = new byte[Math.max(capacity, 16)];
+        }
+
+        void put(byte b) {
+            if (pos == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            buf[pos++] = b;
+        }
+
+        byte[] toArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    /**
+     * Writes values most significant bit first.
+     */
+    private static class BitWriter {
+        private final ByteArray out;
+        private int cur;
+        private int bitPos;
+
+        private BitWriter(int capacity) {
+            this.out = new ByteArray(capacity);
+        }
+
+        void write(long value, int bits) {
+            while (bits > 0) {
+                int free = 8 - bitPos;
+                int n = Math.min(free, bits);
+                int chunk = (int) ((value >>> (bits - n)) & ((1 << n) - 1));
+                cur |= chunk << (free - n);
+                bitPos += n;
+                bits -= n;
+                if (bitPos == 8) {
+                    out.put((byte) cur);
+                    cur = 0;
+                    bitPos = 0;
+                }
+            }
+        }
+
+        byte[] toArray() {
+            if (bitPos > 0) {
+                out.put((byte) cur);
+                cur = 0;
+                bitPos = 0;
+            }
+            return out.toArray();
+        }
+    }
+
+    private static class BitReader {
+        private final byte[] in;
+        private int pos;
+        private int bitPos;
+
+        private BitReader(byte[] in, int pos) {
+            this.in = in;
+            this.pos = pos;
+        }
+
+        long read(int bits) {
+            long result = 0;
+            while (bits > 0) {
+                int avail = 8 - bitPos;
+                int n = Math.min(avail, bits);
+                int chunk = ((in[pos] & 0xff) >>> (avail - n)) & ((1 << n) - 1);
+                result = (result << n) | chunk;
+                bitPos += n;
+                bits -= n;
+                if (bitPos == 8) {
+                    pos++;
+                    bitPos = 0;
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal.column;
+
+import com.nfsdb.journal.JournalMode;
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.exceptions.JournalRuntimeException;
+import com.nfsdb.journal.utils.ByteBuffers;
+import com.nfsdb.journal.utils.Unsafe;
+import sun.nio.ch.DirectBuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only view of column file stored in blocks, each compressed on its own. Reading value decodes only
+ * block that contains it, decoded blocks are kept in small cache, so that random access stays cheap and
+ * sequential access decodes each block once.
+ * <p/>
+ * File starts with logical size of column file, block size bits, number of blocks and directory of block
+ * offsets followed by blocks. Each block is codec byte and payload.
+ */
+public class CompressedFile implements MappedFile {
+    public static final String EXTENSION = ".z";
+    private static final int BLOCK_BITS = 16;
+    private static final int CACHE_SIZE = 4;
+    private final File file;
+    private final FileChannel channel;
+    private final long size;
+    private final int blockBits;
+    private final int blockSize;
+    private final long offsets[];
+    private final int cachedBlocks[] = new int[CACHE_SIZE];
+    private final ByteBuffer cache[] = new ByteBuffer[CACHE_SIZE];
+    private final long cacheAddresses[] = new long[CACHE_SIZE];
+    private final long cacheUse[] = new long[CACHE_SIZE];
+    private long useCount;
+    private byte[] encoded;
+    private ByteBuffer stitch;
+    private long stitchAddress;
+    // range of bytes last handed out
+    private long lastLo = -1;
+    private long lastHi = -1;
+    private long lastAddress;
+
+    public CompressedFile(File file) throws JournalException {
+        this.file = file;
+        try {
+            this.channel = new RandomAccessFile(file, "r").getChannel();
+            ByteBuffer header = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(header, 0);
+            this.size = header.getLong(0);
+            this.blockBits = header.getInt(8);
+            this.blockSize = 1 << blockBits;
+            int blockCount = header.getInt(12);
+            ByteBuffer dir = ByteBuffer.allocate((blockCount + 1) * 8).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(dir, 16);
+            this.offsets = new long[blockCount + 1];
+            for (int i = 0; i <= blockCount; i++) {
+                offsets[i] = dir.getLong(i * 8);
+            }
+        } catch (IOException e) {
+            throw new JournalException("Cannot open %s", e, file);
+        }
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            cachedBlocks[i] = -1;
+        }
+    }
+
+    /**
+     * @param file uncompressed column file.
+     * @return compressed file in place of given one if partition has been compressed.
+     */
+    public static File compressedFile(File file) {
+        return new File(file.getParentFile(), file.getName() + EXTENSION);
+    }
+
+    /**
+     * Opens column file whichever way it is stored.
+     *
+     * @param file    uncompressed column file.
+     * @param bitHint page size bits of uncompressed file.
+     * @param mode    mode of uncompressed file.
+     * @return compressed file if it exists, otherwise mapped file.
+     * @throws JournalException if file cannot be opened.
+     */
+    public static MappedFile open(File file, int bitHint, JournalMode mode) throws JournalException {
+        File compressed = compressedFile(file);
+        if (compressed.exists()) {
+            return new CompressedFile(compressed);
+        }
+        return new MappedFileImpl(file, bitHint, mode);
+    }
+
+    /**
+     * Picks codec that suits values stored in column file.
+     *
+     * @param type      column type.
+     * @param indexFile true for file of offsets of variable length column.
+     * @return codec for blocks of file.
+     */
+    public static byte codecFor(ColumnType type, boolean indexFile) {
+        switch (type) {
+            case DATE:
+            case LONG:
+                return BlockCodec.DELTA_DELTA;
+            case DOUBLE:
+                return BlockCodec.XOR;
+            case INT:
+            case SYMBOL:
+                return BlockCodec.BIT_PACK;
+            case STRING:
+            case BINARY:
+                return indexFile ? BlockCodec.DELTA_DELTA : BlockCodec.LZ;
+            default:
+                return BlockCodec.LZ;
+        }
+    }
+
+    /**
+     * Writes compressed copy of column file.
+     *
+     * @param raw    column file as written by {@link MappedFileImpl}.
+     * @param target compressed file to create.
+     * @param codec  codec for blocks, see {@link #codecFor(ColumnType, boolean)}.
+     * @throws JournalException if either file cannot be accessed.
+     */
+    public static void compress(File raw, File target, byte codec) throws JournalException {
+        try (FileChannel in = new RandomAccessFile(raw, "r").getChannel(); FileChannel out = new RandomAccessFile(target, "rw").getChannel()) {
+            ByteBuffer buf = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(in, buf, 0);
+            long size = buf.getLong(0);
+            int blockSize = 1 << BLOCK_BITS;
+            int blockCount = (int) ((size + blockSize - 1) >>> BLOCK_BITS);
+
+            ByteBuffer header = ByteBuffer.allocate(16 + (blockCount + 1) * 8).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(0, size);
+            header.putInt(8, BLOCK_BITS);
+            header.putInt(12, blockCount);
+
+            ByteBuffer block = ByteBuffer.allocate(blockSize).order(ByteOrder.LITTLE_ENDIAN);
+            long offset = header.capacity();
+            for (int i = 0; i < blockCount; i++) {
+                int len = (int) Math.min(blockSize, size - ((long) i << BLOCK_BITS));
+                block.clear().limit(len);
+                readFully(in, block, 8 + ((long) i << BLOCK_BITS));
+                byte[] encoded = BlockCodec.encode(codec, block, len);
+                header.putLong(16 + i * 8, offset);
+                writeFully(out, ByteBuffer.wrap(encoded), offset);
+                offset += encoded.length;
+            }
+            header.putLong(16 + blockCount * 8, offset);
+            writeFully(out, header, 0);
+            out.truncate(offset);
+            out.force(false);
+        } catch (IOException e) {
+            throw new JournalException("Cannot compress %s to %s", e, raw, target);
+        }
+    }
+
+    /**
+     * Restores column file that can be appended to.
+     *
+     * @param compressed file written by {@link #compress(File, File, byte)}.
+     * @param raw        column file to create.
+     * @throws JournalException if either file cannot be accessed.
+     */
+    public static void decompress(File compressed, File raw) throws JournalException {
+        CompressedFile from = new CompressedFile(compressed);
+        try (FileChannel out = new RandomAccessFile(raw, "rw").getChannel()) {
+            ByteBuffer buf = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            buf.putLong(0, from.size);
+            writeFully(out, buf, 0);
+            for (long offset = 0; offset < from.size; ) {
+                int len = (int) Math.min(from.blockSize, from.size - offset);
+                ByteBuffer b = from.getBuffer(offset, len).duplicate();
+                b.limit(b.position() + len);
+                writeFully(out, b, 8 + offset);
+                offset += len;
+            }
+        } catch (IOException e) {
+            throw new JournalException("Cannot decompress %s to %s", e, compressed, raw);
+        } finally {
+            from.close();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position);
+            if (n == -1) {
+                throw new IOException("Unexpected end of file");
+            }
+            position += n;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            position += channel.write(buf, position);
+        }
+    }
+
+    @Override
+    public ByteBuffer getBuffer(long offset, int size) {
+        long address = getAddress(offset, size);
+        ByteBuffer result = lastAddress == stitchAddress ? stitch : cache[slotOf(lastAddress)];
+        result.position((int) (address - lastAddress));
+        return result;
+    }
+
+    @Override
+    public long getAddress(long offset, int size) {
+        if (offset >= lastLo && offset + size <= lastHi) {
+            return lastAddress + offset - lastLo;
+        }
+
+        int blockIndex = (int) (offset >>> blockBits);
+        long blockLo = (long) blockIndex << blockBits;
+        if (offset + size <= blockLo + blockSize) {
+            int slot = block(blockIndex);
+            lastLo = blockLo;
+            lastHi = blockLo + blockSize;
+            lastAddress = cacheAddresses[slot];
+            return lastAddress + offset - blockLo;
+        }
+
+        // value spans blocks
+        if (stitch == null || stitch.capacity() < size) {
+            ByteBuffers.release(stitch);
+            stitch = ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+            stitchAddress = ((DirectBuffer) stitch).address();
+        }
+        for (long p = offset, hi = offset + size; p < hi; ) {
+            int b = (int) (p >>> blockBits);
+            int slot = block(b);
+            int pos = (int) (p - ((long) b << blockBits));
+            int len = (int) Math.min(blockSize - pos, hi - p);
+            Unsafe.getUnsafe().copyMemory(cacheAddresses[slot] + pos, stitchAddress + (p - offset), len);
+            p += len;
+        }
+        lastLo = offset;
+        lastHi = offset + size;
+        return lastAddress = stitchAddress;
+    }
+
+    @Override
+    public int getAddressSize(long offset) {
+        if (offset >= lastLo && offset <= lastHi) {
+            return (int) (Math.min(lastHi, size) - offset);
+        }
+        return 0;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new JournalRuntimeException("Cannot close file", e);
+        }
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            cache[i] = ByteBuffers.release(cache[i]);
+            cachedBlocks[i] = -1;
+        }
+        stitch = ByteBuffers.release(stitch);
+        lastLo = lastHi = -1;
+    }
+
+    @Override
+    public long getAppendOffset() {
+        return size;
+    }
+
+    @Override
+    public void setAppendOffset(long offset) {
+        if (offset != size) {
+            throw new JournalRuntimeException("Compressed file is read-only: %s", file);
+        }
+    }
+
+    @Override
+    public void compact() {
+    }
+
+    @Override
+    public void force() {
+    }
+
+    @Override
+    public void prepareSync() {
+    }
+
+    @Override
+    public void sync() {
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getName() + "[file=" + file + ", size=" + size + "]";
+    }
+
+    private int slotOf(long address) {
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            if (cacheAddresses[i] == address) {
+                return i;
+            }
+        }
+        throw new JournalRuntimeException("Block is not cached: %s", file);
+    }
+
+    private int block(int blockIndex) {
+        if (blockIndex >= offsets.length - 1) {
+            throw new JournalRuntimeException("Offset is beyond end of %s", file);
+        }
+        int victim = 0;
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            if (cachedBlocks[i] == blockIndex) {
+                cacheUse[i] = ++useCount;
+                return i;
+            }
+            if (cacheUse[i] < cacheUse[victim]) {
+                victim = i;
+            }
+        }
+
+        if (cache[victim] == null) {
+            cache[victim] = ByteBuffer.allocateDirect(blockSize).order(ByteOrder.LITTLE_ENDIAN);
+            cacheAddresses[victim] = ((DirectBuffer) cache[victim]).address();
+        }
+        if (lastAddress == cacheAddresses[victim]) {
+            lastLo = lastHi = -1;
+        }
+
+        int len = (int) (offsets[blockIndex + 1] - offsets[blockIndex]);
+        if (encoded == null || encoded.length < len) {
+            encoded = new byte[len];
+        }
+        try {
+            readFully(channel, ByteBuffer.wrap(encoded, 0, len), offsets[blockIndex]);
+        } catch (IOException e) {
+            throw new JournalRuntimeException("Cannot read block %d of %s", e, blockIndex, file);
+        }
+        int blockLen = (int) Math.min(blockSize, size - ((long) blockIndex << blockBits));
+        BlockCodec.decode(encoded, len, cache[victim], blockLen);
+        cachedBlocks[victim] = blockIndex;
+        cacheUse[victim] = ++useCount;
+        return victim;
+    }
+
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        readFully(channel, buf, position);
+    }
+}
@@ -66,6 +66,20 @@ public class FixedColumn extends AbstractColumn {
         Unsafe.getUnsafe().copyMemory(obj, offset, null, getAddress(), width);
     }
 
+    /**
+     * Appends values of rows lo..hi (inclusive) of another column of same width.
+     *
+     * @param from column to copy values from
+     * @param lo   first row to copy
+     * @param hi   last row to copy
+     */
+    public void copy(FixedColumn from, long lo, long hi) {
+        long offset = mappedFile.getAppendOffset();
+        long len = (hi - lo + 1) * width;
+        copyBytes(from.mappedFile, from.getOffset(lo), len, offset);
+        preCommit(offset + len);
+    }
+
     public void putNull() {
         Unsafe.getUnsafe().setMemory(getAddress(), width, (byte) 0);
     }
@@ -110,6 +124,19 @@ public class FixedColumn extends AbstractColumn {
         preCommit(size * width);
     }
 
+    /**
+     * Appends long values of rows lo..hi of another column, each moved by delta. Used to copy
+     * offsets of variable length values.
+     */
+    void copyOffsets(FixedColumn from, long lo, long hi, long delta) {
+        long offset = mappedFile.getAppendOffset();
+        for (long row = lo; row <= hi; row++) {
+            Unsafe.getUnsafe().putLong(mappedFile.getAddress(offset, 8), from.getLong(row) + delta);
+            offset += 8;
+        }
+        preCommit(offset);
+    }
+
     long getAddress() {
         long appendOffset = mappedFile.getAppendOffset();
         preCommit(appendOffset + width);
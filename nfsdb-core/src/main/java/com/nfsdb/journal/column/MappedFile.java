@@ -40,4 +40,16 @@ public interface MappedFile extends Closeable {
     void compact() throws JournalException;
 
     void force();
+
+    /**
+     * Hands buffers written to since last force() or prepareSync() over to sync(). Called by thread that
+     * writes to the file, buffers stay mapped until they are flushed.
+     */
+    void prepareSync();
+
+    /**
+     * Flushes buffers collected by prepareSync() and then file metadata, so that it can be called by thread
+     * other than the one writing to the file.
+     */
+    void sync();
 }
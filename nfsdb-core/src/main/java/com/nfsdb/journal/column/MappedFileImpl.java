@@ -17,6 +17,7 @@
 package com.nfsdb.journal.column;
 
 import com.nfsdb.journal.JournalMode;
+import com.nfsdb.journal.concurrent.PageMapper;
 import com.nfsdb.journal.exceptions.JournalException;
 import com.nfsdb.journal.exceptions.JournalNoSuchFileException;
 import com.nfsdb.journal.exceptions.JournalRuntimeException;
@@ -27,25 +28,46 @@ import com.nfsdb.journal.utils.Lists;
 import com.nfsdb.journal.utils.Unsafe;
 import sun.nio.ch.DirectBuffer;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class MappedFileImpl implements MappedFile {
 
+    /**
+     * Extension of file next to linked file, which names directory of base file and offset below which
+     * bytes are read from base file. See {@link #link(File, File, long, int)}.
+     */
+    public static final String BASE_EXTENSION = ".base";
+    // smallest shared prefix linked file is created for
+    public static final long MIN_LINK_SIZE = 1024 * 1024;
     private static final Logger LOGGER = Logger.getLogger(MappedFileImpl.class);
+    // read-ahead window boundaries in bytes
+    private static final int MIN_READ_AHEAD = 1 << 20;
+    private static final int MAX_READ_AHEAD = 1 << 26;
     private final File file;
     private final JournalMode mode;
     private final int bitHint;
     // reserve first 8 bytes in the file for storing pointer to logical end of file
     // so the actual data begins from "dataOffset"
     private final int dataOffset = 8;
+    // page mapped ahead of writer by PageMapper thread
+    private final AtomicReference<PreMappedBuffer> preMapped = new AtomicReference<>();
+    // buffers collected by prepareSync() for sync() on another thread, guarded by this
+    private final List<MappedByteBuffer> syncBuffers = new ArrayList<>();
     private FileChannel channel;
     private MappedByteBuffer offsetBuffer;
     private List<MappedByteBuffer> buffers;
@@ -56,6 +78,19 @@ public class MappedFileImpl implements MappedFile {
     private long cachedAppendOffset = -1;
     private long cachedAddress;
     private long offsetDirectAddr;
+    private PageMapper pageMapper;
+    // range of buffers handed out since last force(), only these can have been written to
+    private int dirtyLo = Integer.MAX_VALUE;
+    private int dirtyHi = -1;
+    // number of pages PageMapper is asked to touch ahead of reader, grows when reader outruns mapper
+    private int readAhead;
+    private int readAheadHi;
+    private int lastReadIndex;
+    // highest page touched by PageMapper thread
+    private volatile int touchedHi = -1;
+    // pages below baseHi of linked file are mapped from base file
+    private MappedFileImpl base;
+    private long baseHi;
 
     public MappedFileImpl(File file, int bitHint, JournalMode mode) throws JournalException {
         this.file = file;
@@ -99,20 +134,171 @@ public class MappedFileImpl implements MappedFile {
         }
     }
 
+    public void setPageMapper(PageMapper pageMapper) {
+        this.pageMapper = pageMapper;
+    }
+
+    /**
+     * Maps and touches pages ahead of consumer. This method is called by PageMapper thread.
+     * <p/>
+     * Writers get buffer of given index mapped and handed over, so that they can pick it up without incurring
+     * cost of mapping and page faults. Readers get given range of pages touched via single mapping, which
+     * is released straight away and leaves data in OS page cache.
+     *
+     * @param bufferIndex index of first buffer to map.
+     * @param depth       number of buffers to map.
+     * @throws JournalException if file size cannot be established.
+     */
+    public synchronized void preMap(int bufferIndex, int depth) throws JournalException {
+        if (channel == null || !channel.isOpen()) {
+            return;
+        }
+
+        long bufferSize = 1L << bitHint;
+        long offset = bufferIndex * bufferSize;
+
+        switch (mode) {
+            case READ:
+            case BULK_READ:
+                long len = Math.min(depth * bufferSize, size() - dataOffset - offset);
+                if (len > 0) {
+                    ByteBuffers.release(mapBufferInternal(offset, (int) len).load());
+                }
+                touchedHi = bufferIndex + depth - 1;
+                break;
+            default:
+                PreMappedBuffer b = preMapped.get();
+                if (b != null) {
+                    if (b.index >= bufferIndex) {
+                        return;
+                    }
+                    // writer has moved on without using this buffer
+                    if (preMapped.compareAndSet(b, null)) {
+                        ByteBuffers.release(b.buffer);
+                    }
+                }
+
+                MappedByteBuffer buffer = mapBufferInternal(offset, (int) bufferSize);
+                buffer.load();
+                if (!preMapped.compareAndSet(null, new PreMappedBuffer(bufferIndex, buffer))) {
+                    ByteBuffers.release(buffer);
+                }
+        }
+    }
+
+    /**
+     * Creates file, which shares pages that cannot change with file of previous partition version. Pages below
+     * the one given offset falls on are read from source file, the rest of source file is copied. File is copied
+     * whole when there is less than MIN_LINK_SIZE to share, which is not worth keeping previous version for.
+     * <p/>
+     * Linked file always refers to file that has the pages rather than to another linked file: when source is
+     * linked, target shares no more than source does and with the same base file. No file is more than one link
+     * away from its pages and versions between base and current one can be deleted.
+     * <p/>
+     * Linked file must not be written to below offset and source file must not be deleted or changed until
+     * linked file is either deleted or materialized, see {@link #materialize(File)}.
+     *
+     * @param source  file of current partition version.
+     * @param target  file to create in directory next to that of source file.
+     * @param offset  first byte of target that can change.
+     * @param bitHint page size bits both files are mapped with.
+     * @throws JournalException if either file cannot be accessed.
+     */
+    public static void link(File source, File target, long offset, int bitHint) throws JournalException {
+        long hi = (offset >>> bitHint) << bitHint;
+        File base = source;
+        Base b = readBase(source);
+        if (b != null) {
+            base = b.file;
+            hi = Math.min(hi, b.hi);
+        }
+        if (hi < MIN_LINK_SIZE) {
+            hi = 0;
+        }
+
+        try (FileChannel out = new RandomAccessFile(target, "rw").getChannel()) {
+            long size = copyHeader(source, out);
+            copyRange(source, hi, size - hi, out, hi);
+        } catch (IOException e) {
+            throw new JournalException("Cannot link %s to %s", e, target, source);
+        }
+
+        if (hi > 0) {
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(baseFile(target)))) {
+                out.writeUTF(base.getParentFile().getName());
+                out.writeLong(hi);
+            } catch (IOException e) {
+                throw new JournalException("Cannot write %s", e, baseFile(target));
+            }
+        }
+    }
+
+    /**
+     * @param file file that may have been created by {@link #link(File, File, long, int)}.
+     * @return file given file reads pages from or null if file is not linked.
+     * @throws JournalException if link cannot be read.
+     */
+    public static File getBase(File file) throws JournalException {
+        Base b = readBase(file);
+        return b == null ? null : b.file;
+    }
+
+    /**
+     * Copies pages linked file reads from its base into file itself, so that base is no longer needed.
+     *
+     * @param file linked file, files that are not linked are left as they are.
+     * @throws JournalException if either file cannot be accessed.
+     */
+    public static void materialize(File file) throws JournalException {
+        Base b = readBase(file);
+        if (b == null) {
+            return;
+        }
+        try (FileChannel out = new RandomAccessFile(file, "rw").getChannel()) {
+            copyRange(b.file, 0, b.hi, out, 0);
+            out.force(false);
+        } catch (IOException e) {
+            throw new JournalException("Cannot materialize %s", e, file);
+        }
+        Files.deleteOrException(baseFile(file));
+    }
+
+    /**
+     * Copies file whichever way it is stored, copy of linked file has all of its pages.
+     *
+     * @param from file to copy.
+     * @param to   file to create.
+     * @throws JournalException if either file cannot be accessed.
+     */
+    public static void copy(File from, File to) throws JournalException {
+        try (FileChannel out = new FileOutputStream(to).getChannel()) {
+            copyRange(from, 0, copyHeader(from, out), out, 0);
+        } catch (IOException e) {
+            throw new JournalException("Cannot copy %s to %s", e, from, to);
+        }
+    }
+
     public void delete() {
         close();
         Files.delete(file);
+        Files.delete(baseFile(file));
     }
 
     @Override
-    public void close() {
+    public synchronized void close() {
         try {
+            forceSyncBuffers();
             unmap();
             channel.close();
         } catch (IOException e) {
             throw new JournalRuntimeException("Cannot close file", e);
         }
         offsetBuffer = ByteBuffers.release(offsetBuffer);
+        if (base != null) {
+            base.close();
+            base = null;
+            baseHi = 0;
+        }
     }
 
     @Override
@@ -135,6 +321,20 @@ public class MappedFileImpl implements MappedFile {
         Unsafe.getUnsafe().putLong(offsetDirectAddr, cachedAppendOffset = offset);
     }
 
+    /**
+     * @return index of first buffer next force() flushes, Integer.MAX_VALUE when there is nothing to flush.
+     */
+    int getDirtyLo() {
+        return dirtyLo;
+    }
+
+    /**
+     * @return index of last buffer next force() flushes, -1 when there is nothing to flush.
+     */
+    int getDirtyHi() {
+        return dirtyHi;
+    }
+
     @Override
     public void compact() throws JournalException {
         close();
@@ -159,10 +359,15 @@ public class MappedFileImpl implements MappedFile {
         return this.file.getAbsolutePath();
     }
 
+    /**
+     * Flushes buffers that have been accessed since previous call to this method. Cost of force is
+     * proportional to amount of data written since last force rather than to size of file.
+     */
     public void force() {
+        forceSyncBuffers();
         int stitchesSize = stitches.size();
         offsetBuffer.force();
-        for (int i = 0, buffersSize = buffers.size(); i < buffersSize; i++) {
+        for (int i = Math.max(dirtyLo, 0), hi = Math.min(dirtyHi + 1, buffers.size()); i < hi; i++) {
             MappedByteBuffer b = buffers.get(i);
             if (b != null) {
                 b.force();
@@ -175,6 +380,89 @@ public class MappedFileImpl implements MappedFile {
                 }
             }
         }
+
+        // cached buffer can be written to without calling getBufferInternal(), drop it so that
+        // next access marks its buffer dirty again
+        cachedBuffer = null;
+        cachedBufferLo = cachedBufferHi = -1;
+        dirtyLo = Integer.MAX_VALUE;
+        dirtyHi = -1;
+    }
+
+    @Override
+    public synchronized void prepareSync() {
+        addSyncBuffer(offsetBuffer);
+        int stitchesSize = stitches.size();
+        for (int i = Math.max(dirtyLo, 0), hi = Math.min(dirtyHi + 1, buffers.size()); i < hi; i++) {
+            addSyncBuffer(buffers.get(i));
+            if (i < stitchesSize) {
+                ByteBufferWrapper s = stitches.get(i);
+                if (s != null) {
+                    addSyncBuffer(s.getByteBuffer());
+                }
+            }
+        }
+
+        // same as force(), next access to cached buffer has to mark it dirty again
+        cachedBuffer = null;
+        cachedBufferLo = cachedBufferHi = -1;
+        dirtyLo = Integer.MAX_VALUE;
+        dirtyHi = -1;
+    }
+
+    @Override
+    public void sync() {
+        FileChannel ch;
+        synchronized (this) {
+            ch = channel;
+            for (int i = 0, sz = syncBuffers.size(); i < sz; i++) {
+                syncBuffers.get(i).force();
+            }
+            syncBuffers.clear();
+        }
+
+        // data is on disk by now, channel force is left with file metadata such as its length
+        try {
+            try {
+                ch.force(true);
+            } catch (ClosedChannelException e) {
+                // file has been closed or reopened by its owner, which forced collected buffers before unmapping them;
+                // file that no longer exists has been dropped by its owner and must not be recreated
+                if (file.exists()) {
+                    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                        raf.getChannel().force(true);
+                    } catch (FileNotFoundException ignore) {
+                        // deleted since exists() check
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new JournalRuntimeException("Cannot sync %s", e, file.getAbsolutePath());
+        }
+    }
+
+    private void addSyncBuffer(MappedByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        // MappedByteBuffer.equals() compares content, buffers are told apart by identity
+        for (int i = 0, sz = syncBuffers.size(); i < sz; i++) {
+            if (syncBuffers.get(i) == buffer) {
+                return;
+            }
+        }
+        syncBuffers.add(buffer);
+    }
+
+    /**
+     * Forces buffers collected for sync(). Must be called before any of them is unmapped, otherwise
+     * sync() would have nothing to force them through.
+     */
+    private synchronized void forceSyncBuffers() {
+        for (int i = 0, sz = syncBuffers.size(); i < sz; i++) {
+            syncBuffers.get(i).force();
+        }
+        syncBuffers.clear();
     }
 
     private long allocateAddress(long offset, int size) {
@@ -194,16 +482,38 @@ public class MappedFileImpl implements MappedFile {
 
         Lists.advance(buffers, bufferIndex);
 
+        if (bufferIndex < dirtyLo) {
+            dirtyLo = bufferIndex;
+        }
+
+        if (bufferIndex > dirtyHi) {
+            dirtyHi = bufferIndex;
+        }
+
         MappedByteBuffer buffer = buffers.get(bufferIndex);
 
         if (buffer != null && buffer.limit() < bufferPos) {
+            forceSyncBuffers();
             buffer = ByteBuffers.release(buffer);
         }
 
         if (buffer == null) {
-            buffer = mapBufferInternal(bufferOffset, bufferSize);
+            buffer = takePreMapped(bufferIndex);
+            if (buffer == null) {
+                buffer = mapBufferInternal(bufferOffset, bufferSize);
+            }
             assert bufferSize > 0;
             buffers.set(bufferIndex, buffer);
+            if (pageMapper != null) {
+                switch (mode) {
+                    case READ:
+                    case BULK_READ:
+                        readAhead(bufferIndex);
+                        break;
+                    default:
+                        pageMapper.preMap(this, bufferIndex + 1, 1);
+                }
+            }
             switch (mode) {
                 case BULK_READ:
                 case BULK_APPEND:
@@ -211,6 +521,7 @@ public class MappedFileImpl implements MappedFile {
                     // this is to prevent OS paging large files.
                     cachedBuffer = null;
                     cachedBufferLo = cachedBufferHi = -1;
+                    forceSyncBuffers();
                     int ssz = stitches.size();
                     for (int i = bufferIndex - 1; i >= 0; i--) {
                         MappedByteBuffer b = buffers.get(i);
@@ -245,6 +556,7 @@ public class MappedFileImpl implements MappedFile {
                 // it could be too small for the size
                 // if that's the case - discard the existing stitch and create a larger one.
                 if (bufferWrapper.getOffset() != stitchOffset || bufferWrapper.getByteBuffer().limit() < size) {
+                    forceSyncBuffers();
                     bufferWrapper.release();
                     bufferWrapper = null;
                 } else {
@@ -262,6 +574,39 @@ public class MappedFileImpl implements MappedFile {
         return buffer;
     }
 
+    private MappedByteBuffer takePreMapped(int bufferIndex) {
+        PreMappedBuffer b = preMapped.get();
+        if (b != null && b.index == bufferIndex && preMapped.compareAndSet(b, null)) {
+            return b.buffer;
+        }
+        return null;
+    }
+
+    private void readAhead(int bufferIndex) {
+        int lo;
+        if (readAhead == 0 || bufferIndex < lastReadIndex) {
+            // first read or reader went back
+            readAhead = Math.max(1, MIN_READ_AHEAD >> bitHint);
+            lo = bufferIndex + 1;
+        } else {
+            lo = Math.max(bufferIndex + 1, readAheadHi);
+        }
+        lastReadIndex = bufferIndex;
+
+        // there is enough requested ahead of reader
+        if (lo - bufferIndex > readAhead / 2) {
+            return;
+        }
+
+        // mapper hasn't got to the page reader is on, so reader is faster and needs deeper read-ahead
+        if (touchedHi < bufferIndex && readAheadHi > bufferIndex && readAhead < (MAX_READ_AHEAD >> bitHint)) {
+            readAhead <<= 1;
+        }
+
+        readAheadHi = bufferIndex + 1 + readAhead;
+        pageMapper.preMap(this, lo, readAheadHi - lo);
+    }
+
     private long size() throws JournalException {
         try {
             return channel.size();
@@ -281,6 +626,78 @@ public class MappedFileImpl implements MappedFile {
                 m = "rw";
         }
         openInternal(m);
+
+        Base b = readBase(file);
+        if (b != null) {
+            base = new MappedFileImpl(b.file, bitHint, JournalMode.READ);
+            baseHi = b.hi;
+        }
+    }
+
+    private static File baseFile(File file) {
+        return new File(file.getParentFile(), file.getName() + BASE_EXTENSION);
+    }
+
+    private static Base readBase(File file) throws JournalException {
+        File f = baseFile(file);
+        if (!f.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(f))) {
+            File dir = new File(file.getParentFile().getParentFile(), in.readUTF());
+            return new Base(new File(dir, file.getName()), in.readLong());
+        } catch (IOException e) {
+            throw new JournalException("Cannot read %s", e, f);
+        }
+    }
+
+    /**
+     * Copies 8-byte header, which holds logical size of file.
+     *
+     * @return logical size of file.
+     */
+    private static long copyHeader(File from, FileChannel out) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel in = new RandomAccessFile(from, "r").getChannel()) {
+            while (header.hasRemaining()) {
+                if (in.read(header, header.position()) < 0) {
+                    throw new IOException("Unexpected end of " + from);
+                }
+            }
+        }
+        header.flip();
+        while (header.hasRemaining()) {
+            out.write(header, header.position());
+        }
+        return header.getLong(0);
+    }
+
+    /**
+     * Copies bytes of file, which can be linked, to the same offset of another file.
+     */
+    private static void copyRange(File from, long offset, long len, FileChannel out, long outOffset) throws IOException, JournalException {
+        Base b = readBase(from);
+        if (b != null && offset < b.hi) {
+            long n = Math.min(len, b.hi - offset);
+            copyRange(b.file, offset, n, out, outOffset);
+            offset += n;
+            outOffset += n;
+            len -= n;
+        }
+
+        if (len > 0) {
+            try (FileChannel in = new RandomAccessFile(from, "r").getChannel()) {
+                out.position(outOffset + 8);
+                while (len > 0) {
+                    long n = in.transferTo(offset + 8, len, out);
+                    if (n <= 0) {
+                        throw new IOException("Unexpected end of " + from);
+                    }
+                    offset += n;
+                    len -= n;
+                }
+            }
+        }
     }
 
     private void openInternal(String mode) throws JournalException {
@@ -312,6 +729,10 @@ public class MappedFileImpl implements MappedFile {
     }
 
     private MappedByteBuffer mapBufferInternal(long offset, int size) {
+        if (offset < baseHi) {
+            return base.mapBufferInternal(offset, size);
+        }
+
         long actualOffset = offset + dataOffset;
 
         try {
@@ -354,9 +775,37 @@ public class MappedFileImpl implements MappedFile {
                 b.release();
             }
         }
+        PreMappedBuffer b = preMapped.getAndSet(null);
+        if (b != null) {
+            ByteBuffers.release(b.buffer);
+        }
+        touchedHi = -1;
+        readAhead = readAheadHi = lastReadIndex = 0;
         cachedBuffer = null;
         cachedBufferLo = cachedBufferHi = -1;
+        dirtyLo = Integer.MAX_VALUE;
+        dirtyHi = -1;
         buffers.clear();
         stitches.clear();
     }
+
+    private static class Base {
+        private final File file;
+        private final long hi;
+
+        private Base(File file, long hi) {
+            this.file = file;
+            this.hi = hi;
+        }
+    }
+
+    private static class PreMappedBuffer {
+        private final int index;
+        private final MappedByteBuffer buffer;
+
+        private PreMappedBuffer(int index, MappedByteBuffer buffer) {
+            this.index = index;
+            this.buffer = buffer;
+        }
+    }
 }
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal.column;
+
+import com.nfsdb.journal.exceptions.JournalRuntimeException;
+import com.nfsdb.journal.utils.ByteBuffers;
+import com.nfsdb.journal.utils.Unsafe;
+import sun.nio.ch.DirectBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Read-only file of column, which partition does not have on disk. Column added to journal after partition
+ * was written reads as nulls from one page of memory, which is either filled with same byte or, for row
+ * offsets of variable column, with sequence of longs.
+ */
+public class NullMappedFile implements MappedFile {
+    private static final int PAGE_SIZE = 4096;
+    private final long size;
+    private final byte fill;
+    private final long step;
+    private ByteBuffer page;
+    private long address;
+    // first offset of sequence page holds
+    private long pageLo = -1;
+
+    private NullMappedFile(long size, byte fill, long step) {
+        this.size = size;
+        this.fill = fill;
+        this.step = step;
+    }
+
+    /**
+     * File of given size every byte of which is the same.
+     *
+     * @param size size of file in bytes.
+     * @param fill value of each byte.
+     * @return read-only file.
+     */
+    public static NullMappedFile fill(long size, byte fill) {
+        return new NullMappedFile(size, fill, 0);
+    }
+
+    /**
+     * File of longs 0, step, 2 * step, ... such as offsets of variable column rows of same length.
+     *
+     * @param count number of longs.
+     * @param step  difference between adjacent longs.
+     * @return read-only file.
+     */
+    public static NullMappedFile sequence(long count, long step) {
+        return new NullMappedFile(count * 8, (byte) 0, step);
+    }
+
+    @Override
+    public ByteBuffer getBuffer(long offset, int size) {
+        long a = getAddress(offset, size);
+        ByteBuffer result = page.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        result.limit((int) Math.min(PAGE_SIZE, a - address + this.size - offset));
+        result.position((int) (a - address));
+        return result;
+    }
+
+    @Override
+    public long getAddress(long offset, int size) {
+        if (size > PAGE_SIZE) {
+            throw new JournalRuntimeException("Cannot read %d bytes of null column", size);
+        }
+
+        if (page == null) {
+            page = ByteBuffer.allocateDirect(PAGE_SIZE);
+            address = ((DirectBuffer) page).address();
+            Unsafe.getUnsafe().setMemory(address, PAGE_SIZE, fill);
+        }
+
+        if (step == 0) {
+            return address;
+        }
+
+        long lo = offset & ~7L;
+        if (lo != pageLo) {
+            long value = (lo >>> 3) * step;
+            for (int i = 0; i < PAGE_SIZE; i += 8) {
+                Unsafe.getUnsafe().putLong(address + i, value);
+                value += step;
+            }
+            pageLo = lo;
+        }
+        return address + offset - lo;
+    }
+
+    @Override
+    public int getAddressSize(long offset) {
+        return (int) Math.max(0, Math.min(PAGE_SIZE - (step == 0 ? 0 : offset & 7), size - offset));
+    }
+
+    @Override
+    public void close() {
+        page = ByteBuffers.release(page);
+        pageLo = -1;
+    }
+
+    @Override
+    public long getAppendOffset() {
+        return size;
+    }
+
+    @Override
+    public void setAppendOffset(long offset) {
+        if (offset != size) {
+            throw new JournalRuntimeException("Null column is read-only");
+        }
+    }
+
+    @Override
+    public void compact() {
+    }
+
+    @Override
+    public void force() {
+    }
+
+    @Override
+    public void prepareSync() {
+    }
+
+    @Override
+    public void sync() {
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getName() + "[size=" + size + "]";
+    }
+}
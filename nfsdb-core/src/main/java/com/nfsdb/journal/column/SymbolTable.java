@@ -31,6 +31,7 @@ import com.nfsdb.journal.utils.Lists;
 import java.io.Closeable;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.List;
 
 public class SymbolTable implements Closeable {
 
@@ -234,6 +235,11 @@ public class SymbolTable implements Closeable {
         index.force();
     }
 
+    public void getMappedFiles(List<MappedFile> files) {
+        data.getMappedFiles(files);
+        index.getMappedFiles(files);
+    }
+
     private void cache(int key, String value) {
         if (noCache) {
             return;
@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.util.List;
 
 
 public class VariableColumn extends AbstractColumn {
@@ -47,12 +48,25 @@ public class VariableColumn extends AbstractColumn {
         indexColumn.commit();
     }
 
+    @Override
+    public void discard() {
+        binOut.offset = -1;
+        super.discard();
+        indexColumn.discard();
+    }
+
     @Override
     public void force() {
         super.force();
         indexColumn.force();
     }
 
+    @Override
+    public void getMappedFiles(List<MappedFile> files) {
+        super.getMappedFiles(files);
+        indexColumn.getMappedFiles(files);
+    }
+
     @Override
     public void close() {
         indexColumn.close();
@@ -111,6 +125,67 @@ public class VariableColumn extends AbstractColumn {
         return true;
     }
 
+    /**
+     * @param localRowID row ID.
+     * @param prefix     prefix to look for.
+     * @return true when value of row is not null and starts with prefix.
+     */
+    public boolean startsWith(long localRowID, CharSequence prefix) {
+        long offset = indexColumn.getLong(localRowID);
+        int len = Unsafe.getUnsafe().getInt(mappedFile.getAddress(offset, 4));
+        int l = prefix.length();
+
+        if (len < l) {
+            return false;
+        }
+
+        long address = mappedFile.getAddress(offset + 4, l * 2);
+        for (int i = 0; i < l; i++) {
+            if (Unsafe.getUnsafe().getChar(address) != prefix.charAt(i)) {
+                return false;
+            }
+            address += 2;
+        }
+        return true;
+    }
+
+    /**
+     * Looks for substring in value of row without copying value out of mapped file.
+     *
+     * @param localRowID row ID.
+     * @param part       substring to look for.
+     * @return true when value of row is not null and contains part.
+     */
+    public boolean contains(long localRowID, CharSequence part) {
+        long offset = indexColumn.getLong(localRowID);
+        int len = Unsafe.getUnsafe().getInt(mappedFile.getAddress(offset, 4));
+        int l = part.length();
+
+        if (len < l) {
+            return false;
+        }
+
+        if (l == 0) {
+            return true;
+        }
+
+        long address = mappedFile.getAddress(offset + 4, len * 2);
+        char first = part.charAt(0);
+        for (int p = 0, hi = len - l; p <= hi; p++) {
+            if (Unsafe.getUnsafe().getChar(address + p * 2L) != first) {
+                continue;
+            }
+            int i = 1;
+            while (i < l && Unsafe.getUnsafe().getChar(address + (p + i) * 2L) == part.charAt(i)) {
+                i++;
+            }
+            if (i == l) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public long putStr(CharSequence value) {
         if (value == null) {
             return putNull();
@@ -135,6 +210,23 @@ public class VariableColumn extends AbstractColumn {
         this.indexColumn.compact();
     }
 
+    /**
+     * Appends values of rows lo..hi (inclusive) of another column. Data is copied in one go
+     * and row offsets are adjusted to new location.
+     *
+     * @param from column to copy values from
+     * @param lo   first row to copy
+     * @param hi   last row to copy
+     */
+    public void copy(VariableColumn from, long lo, long hi) {
+        long fromLo = from.getOffset(lo);
+        long fromHi = hi + 1 < from.size() ? from.getOffset(hi + 1) : from.getOffset();
+        long offset = getOffset();
+        copyBytes(from.mappedFile, fromLo, fromHi - fromLo, offset);
+        preCommit(offset + fromHi - fromLo);
+        indexColumn.copyOffsets(from.indexColumn, lo, hi, offset - fromLo);
+    }
+
     public FixedColumn getIndexColumn() {
         return indexColumn;
     }
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal.concurrent;
+
+import com.lmax.disruptor.BatchEventProcessor;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.RingBuffer;
+import com.nfsdb.journal.column.MappedFile;
+import com.nfsdb.journal.tx.TxFuture;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Makes durable commits on single I/O thread. Writers submit files their commit has touched together with
+ * transaction they have prepared and carry on, commits that arrive while I/O thread is busy are flushed
+ * together as one batch. Data files of the whole batch are flushed first, then transaction records are
+ * written and flushed, so that transaction neither becomes visible nor reaches disk ahead of data it refers
+ * to. Futures returned to writers complete once their commit is durable.
+ * <p/>
+ * Single service can be shared by any number of writers.
+ */
+public class GroupCommit {
+    private final RingBuffer<GroupCommitEvent> ringBuffer;
+    private final BatchEventProcessor<GroupCommitEvent> batchEventProcessor;
+    private final String name;
+    private ExecutorService executor;
+    private volatile boolean started = false;
+    // metrics, updated by I/O thread only
+    private volatile long commitCount;
+    private volatile long batchCount;
+    private volatile long maxBatchSize;
+    private volatile long totalLatency;
+    private volatile long maxLatency;
+
+    public GroupCommit(String name) {
+        this(name, 1024);
+    }
+
+    public GroupCommit(String name, int queueSize) {
+        this.name = name;
+        this.ringBuffer = RingBuffer.createMultiProducer(GroupCommitEvent.EVENT_FACTORY, queueSize, new BlockingWaitStrategy());
+        this.batchEventProcessor = new BatchEventProcessor<>(ringBuffer, ringBuffer.newBarrier(), new GroupCommitEventHandler(this));
+        ringBuffer.addGatingSequences(batchEventProcessor.getSequence());
+    }
+
+    public void start() {
+        if (!started) {
+            executor = Executors.newCachedThreadPool(new NamedDaemonThreadFactory("jj-group-commit-" + name, true));
+            executor.submit(batchEventProcessor);
+            started = true;
+        }
+    }
+
+    /**
+     * Stops I/O thread after all submitted commits have been flushed.
+     */
+    public void halt() {
+        if (started) {
+            started = false;
+            while (!batchEventProcessor.isRunning()) {
+                Thread.yield();
+            }
+
+            while (batchEventProcessor.getSequence().get() < ringBuffer.getCursor()) {
+                Thread.yield();
+            }
+
+            do {
+                batchEventProcessor.halt();
+            } while (batchEventProcessor.isRunning());
+
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * Queues commit to be made durable. Caller will block when queue is full.
+     *
+     * @param files data files of commit, such as columns, indexes and symbol tables.
+     * @param task  transaction, its record is written after data files are flushed.
+     * @return future, which completes when transaction record is flushed.
+     */
+    public TxFuture submit(List<MappedFile> files, GroupCommitTask task) {
+        GroupCommitFuture future = new GroupCommitFuture();
+        long seq = ringBuffer.next();
+        GroupCommitEvent event = ringBuffer.get(seq);
+        event.files = files;
+        event.task = task;
+        event.future = future;
+        event.timestamp = System.nanoTime();
+        ringBuffer.publish(seq);
+        return future;
+    }
+
+    public long getCommitCount() {
+        return commitCount;
+    }
+
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    public long getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public double getAverageBatchSize() {
+        long b = batchCount;
+        return b == 0 ? 0 : (double) commitCount / b;
+    }
+
+    /**
+     * @return average time in nanoseconds between commit submission and commit becoming durable.
+     */
+    public long getAverageLatency() {
+        long c = commitCount;
+        return c == 0 ? 0 : totalLatency / c;
+    }
+
+    /**
+     * @return maximum time in nanoseconds between commit submission and commit becoming durable.
+     */
+    public long getMaxLatency() {
+        return maxLatency;
+    }
+
+    void recordBatch(int size) {
+        batchCount++;
+        if (size > maxBatchSize) {
+            maxBatchSize = size;
+        }
+    }
+
+    void recordCommit(long latency) {
+        commitCount++;
+        totalLatency += latency;
+        if (latency > maxLatency) {
+            maxLatency = latency;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal.concurrent;
+
+import com.lmax.disruptor.EventFactory;
+import com.nfsdb.journal.column.MappedFile;
+
+import java.util.List;
+
+class GroupCommitEvent {
+    public static final EventFactory<GroupCommitEvent> EVENT_FACTORY = new EventFactory<GroupCommitEvent>() {
+        @Override
+        public GroupCommitEvent newInstance() {
+            return new GroupCommitEvent();
+        }
+    };
+
+    List<MappedFile> files;
+    GroupCommitTask task;
+    GroupCommitFuture future;
+    long timestamp;
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal.concurrent;
+
+import com.lmax.disruptor.EventHandler;
+import com.nfsdb.journal.column.MappedFile;
+import com.nfsdb.journal.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+class GroupCommitEventHandler implements EventHandler<GroupCommitEvent> {
+    private static final Logger LOGGER = Logger.getLogger(GroupCommitEventHandler.class);
+    private final GroupCommit groupCommit;
+    private final Set<MappedFile> files = new HashSet<>();
+    private final Set<MappedFile> txFiles = new HashSet<>();
+    private final List<GroupCommitTask> tasks = new ArrayList<>();
+    private final List<GroupCommitFuture> futures = new ArrayList<>();
+    private final List<Long> timestamps = new ArrayList<>();
+
+    public GroupCommitEventHandler(GroupCommit groupCommit) {
+        this.groupCommit = groupCommit;
+    }
+
+    @Override
+    public void onEvent(GroupCommitEvent event, long sequence, boolean endOfBatch) throws Exception {
+        // same file can be shared by several commits of the batch, it is flushed once
+        files.addAll(event.files);
+        tasks.add(event.task);
+        futures.add(event.future);
+        timestamps.add(event.timestamp);
+
+        event.files = null;
+        event.task = null;
+        event.future = null;
+
+        if (endOfBatch) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        boolean durable = true;
+        try {
+            for (MappedFile f : files) {
+                f.sync();
+            }
+            // transactions go last, they must not be on disk ahead of their data
+            for (int i = 0, sz = tasks.size(); i < sz; i++) {
+                GroupCommitTask task = tasks.get(i);
+                task.writeTx();
+                txFiles.add(task.getTxFile());
+            }
+            for (MappedFile f : txFiles) {
+                // transaction log is written on this thread
+                f.prepareSync();
+                f.sync();
+            }
+        } catch (Throwable e) {
+            LOGGER.error("Group commit failed", e);
+            durable = false;
+        }
+
+        long now = System.nanoTime();
+        groupCommit.recordBatch(futures.size());
+        for (int i = 0, sz = futures.size(); i < sz; i++) {
+            try {
+                tasks.get(i).onComplete(durable);
+            } catch (Throwable e) {
+                LOGGER.error("Group commit listener failed", e);
+            }
+            groupCommit.recordCommit(now - timestamps.get(i));
+            futures.get(i).complete(durable);
+        }
+
+        files.clear();
+        txFiles.clear();
+        tasks.clear();
+        futures.clear();
+        timestamps.clear();
+    }
+}
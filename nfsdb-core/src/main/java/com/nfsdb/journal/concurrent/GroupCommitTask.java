@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal.concurrent;
+
+import com.nfsdb.journal.column.MappedFile;
+
+/**
+ * Transaction handed over to group commit service. Methods are called on I/O thread, in order in which
+ * transactions were submitted.
+ */
+public interface GroupCommitTask {
+
+    /**
+     * Writes out transaction record. Called once data files of transaction have been flushed.
+     */
+    void writeTx();
+
+    /**
+     * @return transaction log file, it is flushed after writeTx().
+     */
+    MappedFile getTxFile();
+
+    /**
+     * Called when transaction record is flushed, or when transaction could not be made durable. In which case
+     * its record may not have been written.
+     *
+     * @param durable true if transaction is on disk.
+     */
+    void onComplete(boolean durable);
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal.concurrent;
+
+import com.nfsdb.journal.JournalMode;
+import com.nfsdb.journal.JournalWriter;
+import com.nfsdb.journal.Partition;
+import com.nfsdb.journal.column.CompressedFile;
+import com.nfsdb.journal.column.FixedColumn;
+import com.nfsdb.journal.column.VariableColumn;
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.exceptions.JournalRuntimeException;
+import com.nfsdb.journal.factory.configuration.ColumnMetadata;
+import com.nfsdb.journal.factory.configuration.CompositeIndexMetadata;
+import com.nfsdb.journal.factory.configuration.JournalMetadata;
+import com.nfsdb.journal.index.BitmapIndex;
+import com.nfsdb.journal.index.KVIndex;
+import com.nfsdb.journal.index.SortedIndex;
+import com.nfsdb.journal.index.StringIndex;
+import com.nfsdb.journal.index.Trigrams;
+import com.nfsdb.journal.locks.Lock;
+import com.nfsdb.journal.locks.LockManager;
+import com.nfsdb.journal.logging.Logger;
+import com.nfsdb.journal.utils.Checksum;
+import com.nfsdb.journal.utils.Files;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rebuilds indexes of sealed partitions on fork-join pool. Indexes are never rebuilt in place: each partition is
+ * branched into a temp directory, see {@link JournalWriter#branchPartition(Partition, File, File)}, and each
+ * (partition, indexed column) pair is a task, which reads column files and writes index files of the branch. Tasks
+ * do not share state with writer, so writer can carry on appending to its active partition and both writer and
+ * readers can query sealed partitions, which keep their old indexes until rebuild is complete. Partitions are
+ * processed in groups, no more than maxOpenPartitions partitions have files open at any time.
+ * <p/>
+ * join() must be called by writer thread. It waits for rebuild to complete and makes branches next versions of
+ * their partitions in one transaction, so that readers switch to rebuilt indexes atomically on refresh.
+ */
+public class IndexBuilder<T> {
+    private static final Logger LOGGER = Logger.getLogger(IndexBuilder.class);
+    private final JournalWriter<T> writer;
+    private final List<Partition<T>> partitions;
+    private final int[] columns;
+    private final int maxOpenPartitions;
+    private final int parallelism;
+    private final AtomicInteger completedTaskCount = new AtomicInteger();
+    private final List<File> sources = new ArrayList<>();
+    private final List<File> branches = new ArrayList<>();
+    private final List<Lock> locks = new ArrayList<>();
+    private ForkJoinPool pool;
+    private ForkJoinTask<?> task;
+
+    /**
+     * @param writer            writer that owns partitions.
+     * @param partitions        partitions to rebuild indexes of, partitions that are rewritten before rebuild is
+     *                          complete keep indexes of their new version.
+     * @param parallelism       number of threads.
+     * @param maxOpenPartitions maximum number of partitions to rebuild at the same time.
+     */
+    public IndexBuilder(JournalWriter<T> writer, List<Partition<T>> partitions, int parallelism, int maxOpenPartitions) {
+        this.writer = writer;
+        this.partitions = partitions;
+        this.maxOpenPartitions = maxOpenPartitions;
+        this.parallelism = parallelism;
+
+        JournalMetadata<T> m = writer.getMetadata();
+        int count = 0;
+        for (int i = 0; i < m.getColumnCount(); i++) {
+            if (m.getColumnMetadata(i).indexed || m.getColumnMetadata(i).bitmapIndexed || m.getColumnMetadata(i).sortedIndexed
+                    || m.getColumnMetadata(i).exactIndexed || m.getColumnMetadata(i).ngramIndexed) {
+                count++;
+            }
+        }
+        // composite indexes take slots past the last column
+        this.columns = new int[count + m.getCompositeIndexCount()];
+        int k = 0;
+        for (int i = 0; i < m.getColumnCount(); i++) {
+            if (m.getColumnMetadata(i).indexed || m.getColumnMetadata(i).bitmapIndexed || m.getColumnMetadata(i).sortedIndexed
+                    || m.getColumnMetadata(i).exactIndexed || m.getColumnMetadata(i).ngramIndexed) {
+                columns[k++] = i;
+            }
+        }
+        for (int i = 0; i < m.getCompositeIndexCount(); i++) {
+            columns[k++] = m.getColumnCount() + i;
+        }
+    }
+
+    /**
+     * Picks branch directories and starts rebuild, builder that has been started already is left as it is.
+     *
+     * @return this builder.
+     * @throws JournalException if branch directories cannot be locked.
+     */
+    public IndexBuilder<T> start() throws JournalException {
+        if (task == null) {
+            for (int i = 0, sz = partitions.size(); i < sz; i++) {
+                Lock lock = writer.lockBranch(partitions.get(i));
+                locks.add(lock);
+                sources.add(partitions.get(i).getPartitionDir());
+                branches.add(lock.getLocation());
+            }
+            pool = new ForkJoinPool(parallelism);
+            task = pool.submit(new RebuildAll());
+        }
+        return this;
+    }
+
+    public boolean isDone() {
+        return task != null && task.isDone();
+    }
+
+    public int getPartitionCount() {
+        return partitions.size();
+    }
+
+    public int getTaskCount() {
+        return partitions.size() * columns.length;
+    }
+
+    public int getCompletedTaskCount() {
+        return completedTaskCount.get();
+    }
+
+    /**
+     * Waits for rebuild to complete, switches partitions to their branches and shuts down pool threads. Builder
+     * that was never started owns no threads. Rows writer appended since its last commit are committed together
+     * with partition switch.
+     *
+     * @throws JournalException if any of indexes could not be rebuilt, partitions keep their old indexes in this case.
+     */
+    public void join() throws JournalException {
+        try {
+            start();
+            task.get();
+            writer.commitBranches(partitions, sources, branches);
+        } catch (InterruptedException e) {
+            throw new JournalException("Interrupted while rebuilding indexes of %s", e, writer);
+        } catch (ExecutionException e) {
+            throw new JournalException("Cannot rebuild indexes of %s", e.getCause(), writer);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            for (int i = 0, sz = locks.size(); i < sz; i++) {
+                // branches that have become partition versions are no longer there
+                Files.delete(branches.get(i));
+                LockManager.release(locks.get(i));
+            }
+            locks.clear();
+        }
+    }
+
+    private void rebuild(File dir, int columnIndex) throws JournalException {
+        JournalMetadata<T> m = writer.getMetadata();
+        if (columnIndex >= m.getColumnCount()) {
+            rebuildComposite(dir, m.getCompositeIndex(columnIndex - m.getColumnCount()));
+            return;
+        }
+        ColumnMetadata meta = m.getColumnMetadata(columnIndex);
+
+        if (meta.exactIndexed || meta.ngramIndexed) {
+            rebuildString(dir, meta);
+            if (!meta.indexed) {
+                return;
+            }
+        }
+
+        try (FixedColumn col = new FixedColumn(CompressedFile.open(new File(dir, meta.name + ".d"), meta.bitHint, JournalMode.BULK_READ), meta.size)) {
+            if (meta.indexed) {
+                File base = m.getColumnIndexBase(dir, columnIndex);
+                KVIndex.delete(base);
+                try (KVIndex index = new KVIndex(base, meta.distinctCountHint, m.getRecordHint(), m.getTxCountHint(), JournalMode.APPEND, 0)) {
+                    for (long localRowID = 0, sz = col.size(); localRowID < sz; localRowID++) {
+                        index.add(col.getInt(localRowID), localRowID);
+                    }
+                    index.commit();
+                }
+            }
+
+            if (meta.sortedIndexed) {
+                SortedIndex.write(new File(dir, meta.name), col, meta.type, col.size(), m.getRecordHint());
+            }
+
+            if (meta.bitmapIndexed) {
+                File base = new File(dir, meta.name);
+                BitmapIndex.delete(base);
+                try (BitmapIndex index = new BitmapIndex(base, m.getRecordHint(), JournalMode.APPEND)) {
+                    for (long localRowID = 0, sz = col.size(); localRowID < sz; localRowID++) {
+                        index.add(col.getInt(localRowID), localRowID);
+                    }
+                    index.commit();
+                }
+            }
+        }
+    }
+
+    private void rebuildString(File dir, ColumnMetadata meta) throws JournalException {
+        JournalMetadata<T> m = writer.getMetadata();
+        File base = new File(dir, meta.name);
+        File ngramBase = new File(dir, meta.name + ".tg");
+        StringIndex.delete(base);
+        KVIndex.delete(ngramBase);
+        StringIndex index = null;
+        KVIndex ngramIndex = null;
+        try (VariableColumn col = new VariableColumn(
+                CompressedFile.open(new File(dir, meta.name + ".d"), meta.bitHint, JournalMode.BULK_READ)
+                , CompressedFile.open(new File(dir, meta.name + ".i"), meta.indexBitHint, JournalMode.BULK_READ))) {
+            if (meta.exactIndexed) {
+                index = new StringIndex(base, m.getRecordHint(), JournalMode.APPEND);
+            }
+            if (meta.ngramIndexed) {
+                ngramIndex = new KVIndex(ngramBase, Trigrams.KEY_COUNT, (long) m.getRecordHint() * Math.max(1, meta.avgSize), m.getTxCountHint(), JournalMode.APPEND, 0);
+            }
+            Trigrams trigrams = new Trigrams();
+            for (long localRowID = 0, sz = col.size(); localRowID < sz; localRowID++) {
+                String s = col.getStr(localRowID);
+                if (index != null) {
+                    index.add(Checksum.hash64(s), localRowID);
+                }
+                if (ngramIndex != null) {
+                    trigrams.of(s);
+                    for (int k = 0, n = trigrams.size(); k < n; k++) {
+                        ngramIndex.add(trigrams.get(k), localRowID);
+                    }
+                }
+            }
+            if (index != null) {
+                index.commit();
+            }
+            if (ngramIndex != null) {
+                ngramIndex.commit();
+            }
+        } finally {
+            if (index != null) {
+                index.close();
+            }
+            if (ngramIndex != null) {
+                ngramIndex.close();
+            }
+        }
+    }
+
+    private void rebuildComposite(File dir, CompositeIndexMetadata composite) throws JournalException {
+        JournalMetadata<T> m = writer.getMetadata();
+        FixedColumn cols[] = new FixedColumn[composite.columnIndexes.length];
+        try {
+            for (int i = 0; i < cols.length; i++) {
+                ColumnMetadata meta = m.getColumnMetadata(composite.columnIndexes[i]);
+                cols[i] = new FixedColumn(CompressedFile.open(new File(dir, meta.name + ".d"), meta.bitHint, JournalMode.BULK_READ), meta.size);
+            }
+
+            File base = new File(dir, composite.name);
+            KVIndex.delete(base);
+            int values[] = new int[cols.length];
+            try (KVIndex index = new KVIndex(base, composite.distinctCountHint, m.getRecordHint(), m.getTxCountHint(), JournalMode.APPEND, 0)) {
+                for (long localRowID = 0, sz = cols[0].size(); localRowID < sz; localRowID++) {
+                    for (int i = 0; i < cols.length; i++) {
+                        values[i] = cols[i].getInt(localRowID);
+                    }
+                    index.add(composite.getKey(values), localRowID);
+                }
+                index.commit();
+            }
+        } finally {
+            for (int i = 0; i < cols.length; i++) {
+                if (cols[i] != null) {
+                    cols[i].close();
+                }
+            }
+        }
+    }
+
+    private class RebuildAll extends RecursiveAction {
+        @Override
+        protected void compute() {
+            for (int lo = 0, n = partitions.size(); lo < n; lo += maxOpenPartitions) {
+                List<RebuildPartition> tasks = new ArrayList<>();
+                for (int i = lo, hi = Math.min(n, lo + maxOpenPartitions); i < hi; i++) {
+                    tasks.add(new RebuildPartition(i));
+                }
+                invokeAll(tasks);
+                LOGGER.info("Rebuilt indexes [%d/%d] of %s", completedTaskCount.get(), getTaskCount(), writer.getLocation());
+            }
+        }
+    }
+
+    private class RebuildPartition extends RecursiveAction {
+        private final int index;
+
+        private RebuildPartition(int index) {
+            this.index = index;
+        }
+
+        @Override
+        protected void compute() {
+            File dir = branches.get(index);
+            try {
+                writer.branchPartition(partitions.get(index), sources.get(index), dir);
+            } catch (JournalException e) {
+                throw new JournalRuntimeException(e);
+            }
+            List<RebuildColumn> tasks = new ArrayList<>();
+            for (int k = 0; k < columns.length; k++) {
+                tasks.add(new RebuildColumn(dir, columns[k]));
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    private class RebuildColumn extends RecursiveAction {
+        private final File dir;
+        private final int columnIndex;
+
+        private RebuildColumn(File dir, int columnIndex) {
+            this.dir = dir;
+            this.columnIndex = columnIndex;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                rebuild(dir, columnIndex);
+                completedTaskCount.incrementAndGet();
+            } catch (JournalException e) {
+                throw new JournalRuntimeException(e);
+            }
+        }
+    }
+}
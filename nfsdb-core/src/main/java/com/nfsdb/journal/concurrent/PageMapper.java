@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal.concurrent;
+
+import com.lmax.disruptor.BatchEventProcessor;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.InsufficientCapacityException;
+import com.lmax.disruptor.RingBuffer;
+import com.nfsdb.journal.column.MappedFileImpl;
+import com.nfsdb.journal.factory.configuration.ColumnMetadata;
+import com.nfsdb.journal.factory.configuration.JournalMetadata;
+import com.nfsdb.journal.logging.Logger;
+import com.nfsdb.journal.utils.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Background helper of append path. Maps and pre-touches the page that follows the one writer is currently
+ * appending to, so that page boundary crossing costs writer a pointer swap instead of mmap() and page faults.
+ * Mapper also creates directory and column files of the next partition ahead of interval boundary.
+ * <p/>
+ * All requests are best effort. When mapper falls behind writer does the work itself.
+ */
+public class PageMapper {
+    private static final Logger LOGGER = Logger.getLogger(PageMapper.class);
+    private final JournalMetadata<?> metadata;
+    private final String name;
+    private final RingBuffer<PageMapperEvent> ringBuffer = RingBuffer.createSingleProducer(PageMapperEvent.EVENT_FACTORY, 1024, new BlockingWaitStrategy());
+    private final BatchEventProcessor<PageMapperEvent> batchEventProcessor;
+    private ExecutorService executor;
+    private volatile boolean started = false;
+    // directory of next partition, which mapper is allowed to create
+    private File pendingPartitionDir;
+
+    public PageMapper(JournalMetadata<?> metadata, String name) {
+        this.metadata = metadata;
+        this.name = name;
+        this.batchEventProcessor = new BatchEventProcessor<>(ringBuffer, ringBuffer.newBarrier(), new PageMapperEventHandler(this));
+        ringBuffer.addGatingSequences(batchEventProcessor.getSequence());
+    }
+
+    public void start() {
+        if (!started) {
+            executor = Executors.newCachedThreadPool(new NamedDaemonThreadFactory("jj-mapper-" + name, true));
+            executor.submit(batchEventProcessor);
+            started = true;
+        }
+    }
+
+    public void halt() {
+        if (started) {
+            started = false;
+            while (!batchEventProcessor.isRunning()) {
+                Thread.yield();
+            }
+
+            do {
+                batchEventProcessor.halt();
+            } while (batchEventProcessor.isRunning());
+
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * Requests page of given index to be mapped ahead of writer or reader.
+     *
+     * @param file        file to map page of.
+     * @param bufferIndex index of page.
+     * @param depth       number of pages to touch, starting from bufferIndex.
+     */
+    public void preMap(MappedFileImpl file, int bufferIndex, int depth) {
+        if (started) {
+            try {
+                long seq = ringBuffer.tryNext();
+                PageMapperEvent event = ringBuffer.get(seq);
+                event.file = file;
+                event.bufferIndex = bufferIndex;
+                event.depth = depth;
+                event.partitionDir = null;
+                ringBuffer.publish(seq);
+            } catch (InsufficientCapacityException ignore) {
+                // mapper is behind, consumer will map page itself
+            }
+        }
+    }
+
+    /**
+     * Requests directory and column files of next partition to be created ahead of writer. Directory that
+     * was requested earlier and isn't used by writer is removed, so that there is never a gap in partition
+     * directories.
+     *
+     * @param current directory of partition writer is appending to.
+     * @param next    directory of partition writer is going to append to next, null if there is none.
+     */
+    public void prepareNextPartition(File current, File next) {
+        synchronized (this) {
+            if (pendingPartitionDir != null && !pendingPartitionDir.equals(current) && !pendingPartitionDir.equals(next)) {
+                Files.delete(pendingPartitionDir);
+            }
+            pendingPartitionDir = next;
+        }
+
+        if (next != null && started) {
+            try {
+                long seq = ringBuffer.tryNext();
+                PageMapperEvent event = ringBuffer.get(seq);
+                event.file = null;
+                event.partitionDir = next;
+                ringBuffer.publish(seq);
+            } catch (InsufficientCapacityException ignore) {
+                // writer will create partition itself
+            }
+        }
+    }
+
+    /**
+     * Removes directory of next partition if one has been created and not yet used by writer.
+     */
+    public void cancelNextPartition() {
+        prepareNextPartition(null, null);
+    }
+
+    synchronized void createPartition(File dir) throws IOException {
+        if (!dir.equals(pendingPartitionDir) || dir.exists()) {
+            return;
+        }
+
+        if (!dir.mkdirs()) {
+            LOGGER.info("Could not create %s", dir);
+            return;
+        }
+
+        for (int i = 0, n = metadata.getColumnCount(); i < n; i++) {
+            ColumnMetadata m = metadata.getColumnMetadata(i);
+            extend(new File(dir, m.name + ".d"), m.bitHint);
+            switch (m.type) {
+                case STRING:
+                case BINARY:
+                    extend(new File(dir, m.name + ".i"), m.indexBitHint);
+                    break;
+            }
+        }
+        LOGGER.debug("Created %s", dir);
+    }
+
+    private static void extend(File file, int bitHint) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // first 8 bytes are reserved for append offset, see MappedFileImpl
+            long len = 8 + (1L << bitHint);
+            if (raf.length() < len) {
+                raf.setLength(len);
+            }
+        }
+    }
+}
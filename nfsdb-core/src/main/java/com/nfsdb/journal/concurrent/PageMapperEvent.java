@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal.concurrent;
+
+import com.lmax.disruptor.EventFactory;
+import com.nfsdb.journal.column.MappedFileImpl;
+
+import java.io.File;
+
+public class PageMapperEvent {
+    public static final EventFactory<PageMapperEvent> EVENT_FACTORY = new EventFactory<PageMapperEvent>() {
+        @Override
+        public PageMapperEvent newInstance() {
+            return new PageMapperEvent();
+        }
+    };
+
+    MappedFileImpl file;
+    int bufferIndex;
+    int depth;
+    File partitionDir;
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal.concurrent;
+
+import com.lmax.disruptor.EventHandler;
+import com.nfsdb.journal.logging.Logger;
+
+class PageMapperEventHandler implements EventHandler<PageMapperEvent> {
+    private static final Logger LOGGER = Logger.getLogger(PageMapperEventHandler.class);
+    private final PageMapper mapper;
+
+    public PageMapperEventHandler(PageMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public void onEvent(PageMapperEvent event, long sequence, boolean endOfBatch) throws Exception {
+        try {
+            if (event.partitionDir != null) {
+                mapper.createPartition(event.partitionDir);
+            } else if (event.file != null) {
+                event.file.preMap(event.bufferIndex, event.depth);
+            }
+        } catch (Throwable e) {
+            // mapper is best effort, consumer will map whatever is missing on its own
+            LOGGER.info("Page mapper failed", e);
+        } finally {
+            event.file = null;
+            event.partitionDir = null;
+        }
+    }
+}
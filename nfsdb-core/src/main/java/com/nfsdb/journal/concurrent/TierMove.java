@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal.concurrent;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * Copy of sealed partition to slower volume or to compressed format. Mover copies files in background, writer
+ * makes copy current once it is complete and source has not changed in the meantime.
+ */
+public class TierMove {
+    public final String name;
+    public final int version;
+    public final File source;
+    public final File target;
+    // sum of file sizes and last modification times of source when move was requested
+    public final long stamp;
+    // codecs of column files to be compressed on the way by file name, null to copy files as they are
+    public final Map<String, Byte> codecs;
+    volatile boolean complete;
+
+    public TierMove(String name, int version, File source, File target) {
+        this(name, version, source, target, null);
+    }
+
+    public TierMove(String name, int version, File source, File target, Map<String, Byte> codecs) {
+        this.name = name;
+        this.version = version;
+        this.source = source;
+        this.target = target;
+        this.codecs = codecs;
+        this.stamp = stamp(source);
+    }
+
+    public static long stamp(File dir) {
+        long result = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                result = 31 * result + files[i].length();
+                result = 31 * result + files[i].lastModified();
+            }
+        }
+        return result;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+}
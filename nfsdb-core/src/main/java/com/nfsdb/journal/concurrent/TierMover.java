@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal.concurrent;
+
+import com.lmax.disruptor.BatchEventProcessor;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.InsufficientCapacityException;
+import com.lmax.disruptor.RingBuffer;
+import com.nfsdb.journal.column.CompressedFile;
+import com.nfsdb.journal.column.MappedFileImpl;
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.utils.Files;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies sealed partitions to secondary volume or compresses them on background thread. Copy rate is throttled,
+ * so that moving cold data does not starve writer and readers of I/O. Moves that are done, whether complete
+ * or not, are picked up by writer.
+ */
+public class TierMover {
+    private static final long CHUNK_SIZE = 1024 * 1024;
+    private static final long MAX_NAP = TimeUnit.MILLISECONDS.toNanos(50);
+    private final String name;
+    private final long bytesPerSecond;
+    private final RingBuffer<TierMoverEvent> ringBuffer = RingBuffer.createSingleProducer(TierMoverEvent.EVENT_FACTORY, 64, new BlockingWaitStrategy());
+    private final BatchEventProcessor<TierMoverEvent> batchEventProcessor;
+    private final Queue<TierMove> done = new ConcurrentLinkedQueue<>();
+    private ExecutorService executor;
+    private volatile boolean started = false;
+
+    /**
+     * @param name           name of journal, used to name mover thread.
+     * @param bytesPerSecond maximum copy rate, 0 for unlimited.
+     */
+    public TierMover(String name, long bytesPerSecond) {
+        this.name = name;
+        this.bytesPerSecond = bytesPerSecond;
+        this.batchEventProcessor = new BatchEventProcessor<>(ringBuffer, ringBuffer.newBarrier(), new TierMoverEventHandler(this));
+        ringBuffer.addGatingSequences(batchEventProcessor.getSequence());
+    }
+
+    public void start() {
+        if (!started) {
+            executor = Executors.newCachedThreadPool(new NamedDaemonThreadFactory("jj-tier-" + name, true));
+            executor.submit(batchEventProcessor);
+            started = true;
+        }
+    }
+
+    /**
+     * Stops mover. Copy in progress is abandoned and its target removed.
+     */
+    public void halt() {
+        if (started) {
+            started = false;
+            while (!batchEventProcessor.isRunning()) {
+                Thread.yield();
+            }
+
+            do {
+                batchEventProcessor.halt();
+            } while (batchEventProcessor.isRunning());
+
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * Requests partition to be copied.
+     *
+     * @param move partition and target directory.
+     * @return false if mover is not running or too far behind to accept move.
+     */
+    public boolean move(TierMove move) {
+        if (!started) {
+            return false;
+        }
+        try {
+            long seq = ringBuffer.tryNext();
+            ringBuffer.get(seq).move = move;
+            ringBuffer.publish(seq);
+            return true;
+        } catch (InsufficientCapacityException ignore) {
+            return false;
+        }
+    }
+
+    /**
+     * @return move that mover has finished with or null.
+     */
+    public TierMove poll() {
+        return done.poll();
+    }
+
+    public boolean hasDone() {
+        return !done.isEmpty();
+    }
+
+    void done(TierMove move) {
+        done.add(move);
+    }
+
+    void copy(File from, File to, Map<String, Byte> codecs) throws JournalException {
+        File[] files = from.listFiles();
+        if (files == null) {
+            throw new JournalException("Cannot list files in %s", from);
+        }
+        if (!to.exists() && !to.mkdirs()) {
+            throw new JournalException("Cannot create %s", to);
+        }
+
+        long start = System.nanoTime();
+        long copied = 0;
+        for (int i = 0; i < files.length; i++) {
+            if (!files[i].isFile() || files[i].getName().endsWith(MappedFileImpl.BASE_EXTENSION)) {
+                continue;
+            }
+            if (!started) {
+                throw new JournalException("Mover halted while copying %s", from);
+            }
+
+            Byte codec = codecs == null ? null : codecs.get(files[i].getName());
+            if (MappedFileImpl.getBase(files[i]) != null) {
+                // file of rewritten partition reads unchanged pages from previous version, copy has all pages
+                File target = new File(to, files[i].getName());
+                MappedFileImpl.copy(files[i], target);
+                if (codec != null) {
+                    CompressedFile.compress(target, CompressedFile.compressedFile(target), codec);
+                    Files.deleteOrException(target);
+                }
+                copied += files[i].length();
+                throttle(start, copied);
+                continue;
+            }
+
+            if (codec != null) {
+                CompressedFile.compress(files[i], CompressedFile.compressedFile(new File(to, files[i].getName())), codec);
+                copied += files[i].length();
+                throttle(start, copied);
+                continue;
+            }
+
+            File target = new File(to, files[i].getName());
+            try (FileChannel in = new FileInputStream(files[i]).getChannel(); FileChannel out = new FileOutputStream(target).getChannel()) {
+                long size = in.size();
+                long pos = 0;
+                while (pos < size) {
+                    if (!started) {
+                        throw new JournalException("Mover halted while copying %s", from);
+                    }
+                    long n = in.transferTo(pos, Math.min(CHUNK_SIZE, size - pos), out);
+                    pos += n;
+                    copied += n;
+                    throttle(start, copied);
+                }
+            } catch (IOException e) {
+                throw new JournalException("Cannot copy %s to %s", e, files[i], target);
+            }
+        }
+    }
+
+    private void throttle(long start, long copied) throws JournalException {
+        if (bytesPerSecond > 0) {
+            long due = start + copied * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+            long wait;
+            // short naps, so that halt() does not wait for throttled copy
+            while (started && (wait = due - System.nanoTime()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(Math.min(wait, MAX_NAP));
+                } catch (InterruptedException e) {
+                    throw new JournalException("Interrupted while copying", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal.concurrent;
+
+import com.lmax.disruptor.EventHandler;
+import com.nfsdb.journal.logging.Logger;
+import com.nfsdb.journal.utils.Files;
+
+class TierMoverEventHandler implements EventHandler<TierMoverEvent> {
+    private static final Logger LOGGER = Logger.getLogger(TierMoverEventHandler.class);
+    private final TierMover mover;
+
+    public TierMoverEventHandler(TierMover mover) {
+        this.mover = mover;
+    }
+
+    @Override
+    public void onEvent(TierMoverEvent event, long sequence, boolean endOfBatch) throws Exception {
+        TierMove move = event.move;
+        event.move = null;
+        try {
+            mover.copy(move.source, move.target, move.codecs);
+            move.complete = true;
+        } catch (Throwable e) {
+            // partition stays where it is, writer discards incomplete move
+            LOGGER.info("Could not move " + move.source + " to " + move.target, e);
+            Files.delete(move.target);
+        } finally {
+            mover.done(move);
+        }
+    }
+}
@@ -41,10 +41,10 @@ public class JournalMetadataException extends JournalException {
         sep();
 
         b();
-        boolean diff = mo.getPartitionType() != mn.getPartitionType();
+        boolean diff = mo.getPartitionType() != mn.getPartitionType() || mo.getPartitionWidth() != mn.getPartitionWidth();
         pad(FIRST_COL_PAD, (diff ? "*" : "") + "Partition by");
-        pad(mo.getPartitionType().name());
-        pad(mn.getPartitionType().name());
+        pad(partitionBy(mo));
+        pad(partitionBy(mn));
         e();
         sep();
 
@@ -86,6 +86,10 @@ public class JournalMetadataException extends JournalException {
         LOGGER.error(b.toString());
     }
 
+    private static String partitionBy(JournalMetadata m) {
+        return m.getPartitionWidth() > 1 ? m.getPartitionWidth() + " " + m.getPartitionType().name() : m.getPartitionType().name();
+    }
+
     private void pad(String value) {
         pad(DEFAULT_COL_PAD, value);
     }
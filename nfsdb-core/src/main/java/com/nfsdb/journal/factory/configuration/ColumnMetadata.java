@@ -31,6 +31,13 @@ public class ColumnMetadata {
     public int distinctCountHint;
     public String sameAs;
     public boolean noCache = false;
+    public boolean bitmapIndexed = false;
+    public boolean sortedIndexed = false;
+    public boolean exactIndexed = false;
+    public boolean bloomFiltered = false;
+    public boolean ngramIndexed = false;
+    // schema version column was added in, 0 for columns journal was created with
+    public int version = 0;
 
     @Override
     public String toString() {
@@ -46,6 +53,12 @@ public class ColumnMetadata {
                 ", distinctCountHint=" + distinctCountHint +
                 ", sameAs='" + sameAs + '\'' +
                 ", noCache=" + noCache +
+                ", bitmapIndexed*=" + bitmapIndexed +
+                ", sortedIndexed*=" + sortedIndexed +
+                ", exactIndexed*=" + exactIndexed +
+                ", bloomFiltered*=" + bloomFiltered +
+                ", ngramIndexed*=" + ngramIndexed +
+                ", version=" + version +
                 '}';
     }
 
@@ -61,6 +74,12 @@ public class ColumnMetadata {
         this.distinctCountHint = from.distinctCountHint;
         this.sameAs = from.sameAs;
         this.noCache = from.noCache;
+        this.bitmapIndexed = from.bitmapIndexed;
+        this.sortedIndexed = from.sortedIndexed;
+        this.exactIndexed = from.exactIndexed;
+        this.bloomFiltered = from.bloomFiltered;
+        this.ngramIndexed = from.ngramIndexed;
+        this.version = from.version;
     }
 
     public void write(HugeBuffer buf) {
@@ -89,6 +108,55 @@ public class ColumnMetadata {
         noCache = buf.getBool();
     }
 
+    /**
+     * Attributes added after original metadata layout are written after journal metadata, so that
+     * metadata files of older journals read them back as defaults.
+     *
+     * @param buf     metadata buffer.
+     * @param version version of metadata extension that attributes were added in.
+     */
+    public void writeExt(HugeBuffer buf, int version) {
+        switch (version) {
+            case 1:
+                buf.put(bitmapIndexed);
+                break;
+            case 3:
+                buf.put(sortedIndexed);
+                break;
+            case 4:
+                buf.put(exactIndexed);
+                buf.put(bloomFiltered);
+                break;
+            case 5:
+                buf.put(ngramIndexed);
+                break;
+            case 7:
+                buf.put(this.version);
+                break;
+        }
+    }
+
+    public void readExt(HugeBuffer buf, int version) {
+        switch (version) {
+            case 1:
+                bitmapIndexed = buf.getBool();
+                break;
+            case 3:
+                sortedIndexed = buf.getBool();
+                break;
+            case 4:
+                exactIndexed = buf.getBool();
+                bloomFiltered = buf.getBool();
+                break;
+            case 5:
+                ngramIndexed = buf.getBool();
+                break;
+            case 7:
+                this.version = buf.getInt();
+                break;
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -102,6 +170,12 @@ public class ColumnMetadata {
                 && indexBitHint == that.indexBitHint
                 && indexed == that.indexed
                 && noCache == that.noCache
+                && bitmapIndexed == that.bitmapIndexed
+                && sortedIndexed == that.sortedIndexed
+                && exactIndexed == that.exactIndexed
+                && bloomFiltered == that.bloomFiltered
+                && ngramIndexed == that.ngramIndexed
+                && version == that.version
                 && size == that.size
                 && name.equals(that.name)
                 && !(sameAs != null ? !sameAs.equals(that.sameAs) : that.sameAs != null)
@@ -121,6 +195,12 @@ public class ColumnMetadata {
         result = 31 * result + distinctCountHint;
         result = 31 * result + (sameAs != null ? sameAs.hashCode() : 0);
         result = 31 * result + (noCache ? 1 : 0);
+        result = 31 * result + (bitmapIndexed ? 1 : 0);
+        result = 31 * result + (sortedIndexed ? 1 : 0);
+        result = 31 * result + (exactIndexed ? 1 : 0);
+        result = 31 * result + (bloomFiltered ? 1 : 0);
+        result = 31 * result + (ngramIndexed ? 1 : 0);
+        result = 31 * result + version;
         return result;
     }
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal.factory.configuration;
+
+import com.nfsdb.journal.column.ColumnType;
+import com.nfsdb.journal.column.HugeBuffer;
+import com.nfsdb.journal.exceptions.JournalConfigurationException;
+import com.nfsdb.journal.utils.Checksum;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index over combination of two or more SYMBOL or INT columns. Index key is hash of column values, so
+ * rows found via index have to be checked against actual values.
+ */
+public class CompositeIndexMetadata {
+    public String name;
+    public String columns[];
+    public int columnIndexes[];
+    public int distinctCountHint;
+
+    public int getKey(int values[]) {
+        return Checksum.hash(values, distinctCountHint);
+    }
+
+    public void write(HugeBuffer buf) {
+        buf.put(distinctCountHint);
+        buf.put(columns.length);
+        for (int i = 0; i < columns.length; i++) {
+            buf.put(columns[i]);
+        }
+    }
+
+    public void read(HugeBuffer buf) {
+        distinctCountHint = buf.getInt();
+        columns = new String[buf.getInt()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = buf.getStr();
+        }
+        name = nameOf(columns);
+    }
+
+    public void copy(CompositeIndexMetadata from) {
+        this.name = from.name;
+        this.columns = from.columns;
+        this.columnIndexes = from.columnIndexes;
+        this.distinctCountHint = from.distinctCountHint;
+    }
+
+    static CompositeIndexMetadata create(int valueCountHint, String columns[]) {
+        if (columns.length < 2) {
+            throw new JournalConfigurationException("Composite index needs at least two columns: %s", Arrays.toString(columns));
+        }
+        CompositeIndexMetadata m = new CompositeIndexMetadata();
+        m.columns = columns.clone();
+        m.name = nameOf(columns);
+        m.distinctCountHint = valueCountHint;
+        return m;
+    }
+
+    /**
+     * Checks declared indexes against columns and works out default value count hints, which are product of
+     * column hints limited the same way as default hints of indexed columns.
+     */
+    static CompositeIndexMetadata[] build(List<CompositeIndexMetadata> declared, ColumnMetadata columns[], int recordCountHint) {
+        CompositeIndexMetadata result[] = new CompositeIndexMetadata[declared.size()];
+        for (int i = 0; i < result.length; i++) {
+            CompositeIndexMetadata m = new CompositeIndexMetadata();
+            m.copy(declared.get(i));
+            long product = 1;
+            for (int k = 0; k < m.columns.length; k++) {
+                ColumnMetadata c = null;
+                for (int n = 0; n < columns.length; n++) {
+                    if (columns[n].name.equals(m.columns[k])) {
+                        c = columns[n];
+                        break;
+                    }
+                }
+                if (c == null) {
+                    throw new JournalConfigurationException("No such column: %s", m.columns[k]);
+                }
+                if (c.type != ColumnType.SYMBOL && c.type != ColumnType.INT) {
+                    throw new JournalConfigurationException("Composite index column must be SYMBOL or INT: %s", c.name);
+                }
+                product *= Math.max(2, c.distinctCountHint);
+            }
+            if (m.distinctCountHint <= 1) {
+                m.distinctCountHint = (int) Math.min(product, Math.max(2, (int) (recordCountHint * 0.01)));
+            }
+            result[i] = m;
+        }
+        return result;
+    }
+
+    static String nameOf(String columns[]) {
+        java.lang.StringBuilder b = new java.lang.StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                b.append('+');
+            }
+            b.append(columns[i]);
+        }
+        return b.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        CompositeIndexMetadata that = (CompositeIndexMetadata) o;
+
+        return distinctCountHint == that.distinctCountHint
+                && Arrays.equals(columns, that.columns);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Arrays.hashCode(columns);
+        result = 31 * result + distinctCountHint;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "CompositeIndexMetadata{" +
+                "columns*=" + Arrays.toString(columns) +
+                ", distinctCountHint*=" + distinctCountHint +
+                '}';
+    }
+}
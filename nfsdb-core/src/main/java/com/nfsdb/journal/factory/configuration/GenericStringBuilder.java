@@ -31,6 +31,33 @@ public class GenericStringBuilder extends AbstractGenericMetadataBuilder {
         return this;
     }
 
+    /**
+     * Keeps full 64-bit hashes of values next to row IDs, so that equality lookup reads only rows of
+     * matching hashes.
+     */
+    public GenericStringBuilder exactIndex() {
+        this.meta.exactIndexed = true;
+        return this;
+    }
+
+    /**
+     * Writes Bloom filter of column values when partition is sealed, lookups skip partitions that
+     * cannot contain value.
+     */
+    public GenericStringBuilder bloomFilter() {
+        this.meta.bloomFiltered = true;
+        return this;
+    }
+
+    /**
+     * Indexes rows by trigrams of their values, so that substring and prefix searches only read rows
+     * that contain all trigrams of pattern.
+     */
+    public GenericStringBuilder ngramIndex() {
+        this.meta.ngramIndexed = true;
+        return this;
+    }
+
     public GenericStringBuilder buckets(int buckets) {
         this.meta.distinctCountHint = buckets;
         return this;
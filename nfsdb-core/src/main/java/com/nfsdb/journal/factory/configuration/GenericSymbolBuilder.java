@@ -45,6 +45,18 @@ public class GenericSymbolBuilder extends AbstractGenericMetadataBuilder {
         return this;
     }
 
+    /**
+     * Adds bitmap index to column. Bitmap index suits columns with few distinct values and lets
+     * predicates on several such columns be combined without reading row IDs, see BitmapRowSource.
+     * It can be declared alongside regular index.
+     *
+     * @return this builder.
+     */
+    public GenericSymbolBuilder bitmapIndex() {
+        this.meta.bitmapIndexed = true;
+        return this;
+    }
+
     public GenericSymbolBuilder noCache() {
         this.meta.noCache = true;
         return this;
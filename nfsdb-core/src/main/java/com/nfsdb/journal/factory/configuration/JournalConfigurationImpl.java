@@ -46,10 +46,14 @@ public class JournalConfigurationImpl implements JournalConfiguration {
         JournalMetadata<T> mo = readMetadata(journalLocation);
         JournalMetadata<T> mn = builder.location(journalLocation).build();
 
-        if (mo == null || eq(Checksum.getChecksum(mo), Checksum.getChecksum(mn))) {
+        if (mo == null) {
             return mn;
         }
 
+        if (eq(Checksum.getChecksum(mo), Checksum.getChecksum(mn))) {
+            return copyVersions(mo, mn);
+        }
+
         throw new JournalMetadataException(mo, mn);
     }
 
@@ -101,9 +105,9 @@ public class JournalConfigurationImpl implements JournalConfiguration {
             // check if in-app meta matches on-disk meta
             if (eq(Checksum.getChecksum(mo), Checksum.getChecksum(mn))) {
                 if (mn.getModelClass() == null) {
-                    return (JournalMetadata<T>) new JournalStructure(mn).recordCountHint(key.getRecordHint()).location(journalLocation).build();
+                    return copyVersions(mo, (JournalMetadata<T>) new JournalStructure(mn).recordCountHint(key.getRecordHint()).location(journalLocation).build());
                 }
-                return new JournalMetadataBuilder<>(mn).location(journalLocation).recordCountHint(key.getRecordHint()).build();
+                return copyVersions(mo, new JournalMetadataBuilder<>(mn).location(journalLocation).recordCountHint(key.getRecordHint()).build());
             }
 
             throw new JournalMetadataException(mo, mn);
@@ -141,6 +145,8 @@ public class JournalConfigurationImpl implements JournalConfiguration {
                 case DAY:
                 case MONTH:
                 case YEAR:
+                case HOUR:
+                case MINUTE:
                     builder.partitionBy(key.getPartitionType());
                     break;
                 case DEFAULT:
@@ -211,6 +217,17 @@ public class JournalConfigurationImpl implements JournalConfiguration {
         return null;
     }
 
+    /**
+     * Versions of columns added to existing journal are known to on-disk metadata only. Checksum does not
+     * cover them, so that in-app metadata, which declares such columns, is still accepted.
+     */
+    private static <T> JournalMetadata<T> copyVersions(JournalMetadata<T> from, JournalMetadata<T> to) {
+        for (int i = 0, n = to.getColumnCount(); i < n; i++) {
+            to.getColumnMetadata(i).version = from.getColumnMetadata(i).version;
+        }
+        return to;
+    }
+
     private String getLocation(JournalKey key) {
         if (key.getLocation() != null) {
             return key.getLocation();
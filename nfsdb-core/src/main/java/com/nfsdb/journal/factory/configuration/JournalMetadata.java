@@ -37,6 +37,13 @@ public interface JournalMetadata<T> {
 
     PartitionType getPartitionType();
 
+    /**
+     * Number of partition type units each partition spans, e.g. 15 for journal partitioned by 15 minutes.
+     *
+     * @return partition width, 1 for calendar partition types.
+     */
+    int getPartitionWidth();
+
     int getColumnCount();
 
     ColumnMetadata getTimestampColumnMetadata();
@@ -49,10 +56,37 @@ public interface JournalMetadata<T> {
 
     File getColumnIndexBase(File partitionDir, int columnIndex);
 
+    int getCompositeIndexCount();
+
+    CompositeIndexMetadata getCompositeIndex(int index);
+
+    /**
+     * Finds composite index that can answer query constrained on given columns.
+     *
+     * @param columnIndexes constrained columns.
+     * @return index of composite index, all columns of which are constrained, or -1. Index over more columns wins.
+     */
+    int findCompositeIndex(int columnIndexes[]);
+
     long getOpenFileTTL();
 
     int getLag();
 
+    /**
+     * Number of most recent partition periods writer keeps, older partitions are dropped as append moves
+     * on to new partition. 0 keeps all partitions.
+     *
+     * @return retention in units of partition type.
+     */
+    int getRetention();
+
+    /**
+     * Schema version, which is incremented by every column writer adds to existing journal.
+     *
+     * @return version of most recently added column or 0 when journal has columns it was created with.
+     */
+    int getVersion();
+
     int getRecordHint();
 
     int getTxCountHint();
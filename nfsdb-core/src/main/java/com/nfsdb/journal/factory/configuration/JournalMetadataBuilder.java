@@ -21,6 +21,7 @@ import com.nfsdb.journal.collections.ObjIntHashMap;
 import com.nfsdb.journal.column.ColumnType;
 import com.nfsdb.journal.exceptions.JournalConfigurationException;
 import com.nfsdb.journal.utils.ByteBuffers;
+import com.nfsdb.journal.utils.Dates;
 import com.nfsdb.journal.utils.Unsafe;
 
 import java.io.File;
@@ -38,11 +39,14 @@ public class JournalMetadataBuilder<T> implements JMetadataBuilder<T> {
     private String location;
     private int tsColumnIndex = -1;
     private PartitionType partitionBy = PartitionType.NONE;
+    private int partitionWidth = 1;
     private int recordCountHint = 100000;
     private int txCountHint = -1;
     private String key;
     private long openFileTTL = TimeUnit.MINUTES.toMillis(3);
     private int lag = -1;
+    private int retention = 0;
+    private final List<CompositeIndexMetadata> compositeIndexes = new ArrayList<>();
 
     public JournalMetadataBuilder(Class<T> modelClass) {
         this.modelClass = modelClass;
@@ -55,11 +59,18 @@ public class JournalMetadataBuilder<T> implements JMetadataBuilder<T> {
         this.location = model.getLocation();
         this.tsColumnIndex = model.getTimestampColumnIndex();
         this.partitionBy = model.getPartitionType();
+        this.partitionWidth = model.getPartitionWidth();
         this.recordCountHint = model.getRecordHint();
         this.txCountHint = model.getTxCountHint();
         this.key = model.getKeyQuiet();
         this.openFileTTL = model.getOpenFileTTL();
         this.lag = model.getLag();
+        this.retention = model.getRetention();
+        for (int i = 0; i < model.getCompositeIndexCount(); i++) {
+            CompositeIndexMetadata m = new CompositeIndexMetadata();
+            m.copy(model.getCompositeIndex(i));
+            compositeIndexes.add(m);
+        }
         for (int i = 0; i < model.getColumnCount(); i++) {
             ColumnMetadata from = model.getColumnMetadata(i);
             ColumnMetadata to = columnMetadata.get(from.name);
@@ -113,9 +124,23 @@ public class JournalMetadataBuilder<T> implements JMetadataBuilder<T> {
 
     @Override
     public JournalMetadataBuilder<T> partitionBy(PartitionType type) {
-        if (type != PartitionType.DEFAULT) {
+        if (type != PartitionType.DEFAULT && type != partitionBy) {
             this.partitionBy = type;
+            this.partitionWidth = 1;
+        }
+        return this;
+    }
+
+    /**
+     * Partitions journal by given number of hours or minutes, e.g. partitionBy(PartitionType.MINUTE, 15).
+     * Width must divide day exactly.
+     */
+    public JournalMetadataBuilder<T> partitionBy(PartitionType type, int width) {
+        if (!Dates.isValidPartitionWidth(type, width)) {
+            throw new JournalConfigurationException("Invalid partition width %d for %s", width, type);
         }
+        this.partitionBy = type;
+        this.partitionWidth = width;
         return this;
     }
 
@@ -147,10 +172,47 @@ public class JournalMetadataBuilder<T> implements JMetadataBuilder<T> {
         return this;
     }
 
+    /**
+     * Keeps given number of most recent partition periods, e.g. days of journal partitioned by DAY.
+     * Writer drops whole partitions that fall behind as it moves on to new partition.
+     */
+    public JournalMetadataBuilder<T> retention(int count) {
+        this.retention = count;
+        return this;
+    }
+
     public String getLocation() {
         return location;
     }
 
+    /**
+     * Declares index over combination of SYMBOL or INT columns. Queries that constrain all of these columns use
+     * composite index instead of index of one column and filter on others.
+     *
+     * @param columns two or more column names.
+     * @return this builder.
+     */
+    public JournalMetadataBuilder<T> compositeIndex(String... columns) {
+        return compositeIndex(0, columns);
+    }
+
+    public JournalMetadataBuilder<T> compositeIndex(int valueCountHint, String... columns) {
+        compositeIndexes.add(CompositeIndexMetadata.create(valueCountHint, columns));
+        return this;
+    }
+
+    /**
+     * Declares sorted index on INT, LONG, DOUBLE or DATE column. Sorted index is built when partition is
+     * sealed and turns range predicates on the column into binary search.
+     *
+     * @param name column name.
+     * @return this builder.
+     */
+    public JournalMetadataBuilder<T> sortedIndex(String name) {
+        getMeta(name).sortedIndexed = true;
+        return this;
+    }
+
     public JournalMetadata<T> build() {
 
         // default tx count hint
@@ -179,6 +241,18 @@ public class JournalMetadataBuilder<T> implements JMetadataBuilder<T> {
                 meta.distinctCountHint = (int) (recordCountHint * 0.2); //20%
             }
 
+            if (meta.sortedIndexed) {
+                switch (meta.type) {
+                    case INT:
+                    case LONG:
+                    case DOUBLE:
+                    case DATE:
+                        break;
+                    default:
+                        throw new JournalConfigurationException("Sorted index is not supported on %s column: %s", meta.type, meta.name);
+                }
+            }
+
             switch (meta.type) {
                 case STRING:
                     meta.size = meta.avgSize + 4;
@@ -204,13 +278,16 @@ public class JournalMetadataBuilder<T> implements JMetadataBuilder<T> {
                 , key
                 , location
                 , partitionBy
+                , partitionWidth
                 , metadata
                 , tsColumnIndex
                 , openFileTTL
                 , recordCountHint
                 , txCountHint
                 , lag
+                , retention
                 , false
+                , CompositeIndexMetadata.build(compositeIndexes, metadata, recordCountHint)
         );
     }
 
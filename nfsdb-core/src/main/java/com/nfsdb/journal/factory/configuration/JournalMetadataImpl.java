@@ -31,10 +31,14 @@ import java.util.Arrays;
 
 public class JournalMetadataImpl<T> implements JournalMetadata<T> {
 
+    // version of column attributes written after original metadata layout, files without them read 0
+    private static final int EXT_VERSION = 8;
+
     private final String id;
     private final Class<T> modelClass;
     private final String location;
     private final PartitionType partitionBy;
+    private final int partitionWidth;
     private final int columnCount;
     private final ColumnMetadata timestampMetadata;
     private final Constructor<T> constructor;
@@ -46,7 +50,9 @@ public class JournalMetadataImpl<T> implements JournalMetadata<T> {
     private final ObjIntHashMap<String> columnIndexLookup;
     private final int timestampColumnIndex;
     private final int lag;
+    private final int retention;
     private final boolean partialMapping;
+    private final CompositeIndexMetadata[] compositeIndexes;
 
     public JournalMetadataImpl(
             String id
@@ -55,18 +61,22 @@ public class JournalMetadataImpl<T> implements JournalMetadata<T> {
             , String key
             , String location
             , PartitionType partitionBy
+            , int partitionWidth
             , ColumnMetadata[] columnMetadata
             , int timestampColumnIndex
             , long openFileTTL
             , int ioBlockRecordCount
             , int ioBlockTxCount
             , int lag
+            , int retention
             , boolean partialMapping
+            , CompositeIndexMetadata[] compositeIndexes
     ) {
         this.id = id;
         this.modelClass = modelClass;
         this.location = location;
         this.partitionBy = partitionBy;
+        this.partitionWidth = partitionWidth;
         this.columnMetadata = new ColumnMetadata[columnMetadata.length];
         System.arraycopy(columnMetadata, 0, this.columnMetadata, 0, columnMetadata.length);
         this.columnCount = columnMetadata.length;
@@ -82,7 +92,10 @@ public class JournalMetadataImpl<T> implements JournalMetadata<T> {
             columnIndexLookup.put(columnMetadata[i].name, i);
         }
         this.lag = lag;
+        this.retention = retention;
         this.partialMapping = partialMapping;
+        this.compositeIndexes = compositeIndexes;
+        resolveCompositeIndexes();
     }
 
     public JournalMetadataImpl(HugeBuffer buf) {
@@ -110,6 +123,44 @@ public class JournalMetadataImpl<T> implements JournalMetadata<T> {
         ioBlockTxCount = buf.getInt();
         key = buf.getStr();
         lag = buf.getInt();
+        int ext = buf.getInt();
+        if (ext >= 1) {
+            for (int i = 0; i < columnCount; i++) {
+                columnMetadata[i].readExt(buf, 1);
+            }
+        }
+        if (ext >= 2) {
+            compositeIndexes = new CompositeIndexMetadata[buf.getInt()];
+            for (int i = 0; i < compositeIndexes.length; i++) {
+                compositeIndexes[i] = new CompositeIndexMetadata();
+                compositeIndexes[i].read(buf);
+            }
+        } else {
+            compositeIndexes = new CompositeIndexMetadata[0];
+        }
+        if (ext >= 3) {
+            for (int i = 0; i < columnCount; i++) {
+                columnMetadata[i].readExt(buf, 3);
+            }
+        }
+        if (ext >= 4) {
+            for (int i = 0; i < columnCount; i++) {
+                columnMetadata[i].readExt(buf, 4);
+            }
+        }
+        if (ext >= 5) {
+            for (int i = 0; i < columnCount; i++) {
+                columnMetadata[i].readExt(buf, 5);
+            }
+        }
+        retention = ext >= 6 ? buf.getInt() : 0;
+        if (ext >= 7) {
+            for (int i = 0; i < columnCount; i++) {
+                columnMetadata[i].readExt(buf, 7);
+            }
+        }
+        partitionWidth = ext >= 8 ? buf.getInt() : 1;
+        resolveCompositeIndexes();
         constructor = null;
         partialMapping = false;
     }
@@ -129,6 +180,38 @@ public class JournalMetadataImpl<T> implements JournalMetadata<T> {
         buf.put(ioBlockTxCount);
         buf.put(key);
         buf.put(lag);
+        buf.put(EXT_VERSION);
+        for (int i = 0; i < columnMetadata.length; i++) {
+            columnMetadata[i].writeExt(buf, 1);
+        }
+        buf.put(compositeIndexes.length);
+        for (int i = 0; i < compositeIndexes.length; i++) {
+            compositeIndexes[i].write(buf);
+        }
+        for (int i = 0; i < columnMetadata.length; i++) {
+            columnMetadata[i].writeExt(buf, 3);
+        }
+        for (int i = 0; i < columnMetadata.length; i++) {
+            columnMetadata[i].writeExt(buf, 4);
+        }
+        for (int i = 0; i < columnMetadata.length; i++) {
+            columnMetadata[i].writeExt(buf, 5);
+        }
+        buf.put(retention);
+        for (int i = 0; i < columnMetadata.length; i++) {
+            columnMetadata[i].writeExt(buf, 7);
+        }
+        buf.put(partitionWidth);
+    }
+
+    private void resolveCompositeIndexes() {
+        for (int i = 0; i < compositeIndexes.length; i++) {
+            CompositeIndexMetadata m = compositeIndexes[i];
+            m.columnIndexes = new int[m.columns.length];
+            for (int k = 0; k < m.columns.length; k++) {
+                m.columnIndexes[k] = getColumnIndex(m.columns[k]);
+            }
+        }
     }
 
     @Override
@@ -169,6 +252,11 @@ public class JournalMetadataImpl<T> implements JournalMetadata<T> {
         return partitionBy;
     }
 
+    @Override
+    public int getPartitionWidth() {
+        return partitionWidth;
+    }
+
     @Override
     public int getColumnCount() {
         return columnCount;
@@ -207,6 +295,41 @@ public class JournalMetadataImpl<T> implements JournalMetadata<T> {
         return new File(partitionDir, meta.name);
     }
 
+    @Override
+    public int getCompositeIndexCount() {
+        return compositeIndexes.length;
+    }
+
+    @Override
+    public CompositeIndexMetadata getCompositeIndex(int index) {
+        return compositeIndexes[index];
+    }
+
+    @Override
+    public int findCompositeIndex(int columnIndexes[]) {
+        int result = -1;
+        for (int i = 0; i < compositeIndexes.length; i++) {
+            int cols[] = compositeIndexes[i].columnIndexes;
+            if (result != -1 && cols.length <= compositeIndexes[result].columnIndexes.length) {
+                continue;
+            }
+            boolean covered = true;
+            for (int k = 0; k < cols.length && covered; k++) {
+                covered = false;
+                for (int n = 0; n < columnIndexes.length; n++) {
+                    if (columnIndexes[n] == cols[k]) {
+                        covered = true;
+                        break;
+                    }
+                }
+            }
+            if (covered) {
+                result = i;
+            }
+        }
+        return result;
+    }
+
     @Override
     public long getOpenFileTTL() {
         return openFileTTL;
@@ -217,6 +340,20 @@ public class JournalMetadataImpl<T> implements JournalMetadata<T> {
         return this.lag;
     }
 
+    @Override
+    public int getRetention() {
+        return retention;
+    }
+
+    @Override
+    public int getVersion() {
+        int version = 0;
+        for (int i = 0; i < columnMetadata.length; i++) {
+            version = Math.max(version, columnMetadata[i].version);
+        }
+        return version;
+    }
+
     @Override
     public int getRecordHint() {
         return ioBlockRecordCount;
@@ -260,13 +397,16 @@ public class JournalMetadataImpl<T> implements JournalMetadata<T> {
                 && ioBlockRecordCount == that.ioBlockRecordCount
                 && ioBlockTxCount == that.ioBlockTxCount
                 && lag == that.lag
+                && retention == that.retention
                 && openFileTTL == that.openFileTTL
                 && timestampColumnIndex == that.timestampColumnIndex
                 && Arrays.equals(columnMetadata, that.columnMetadata)
+                && Arrays.equals(compositeIndexes, that.compositeIndexes)
                 && id.equals(that.id)
                 && !(key != null ? !key.equals(that.key) : that.key != null)
                 && !(location != null ? !location.equals(that.location) : that.location != null)
                 && partitionBy == that.partitionBy
+                && partitionWidth == that.partitionWidth
                 && !(timestampMetadata != null ? !timestampMetadata.equals(that.timestampMetadata) : that.timestampMetadata != null);
 
     }
@@ -276,6 +416,7 @@ public class JournalMetadataImpl<T> implements JournalMetadata<T> {
         int result = id.hashCode();
         result = 31 * result + (location != null ? location.hashCode() : 0);
         result = 31 * result + partitionBy.hashCode();
+        result = 31 * result + partitionWidth;
         result = 31 * result + columnCount;
         result = 31 * result + (timestampMetadata != null ? timestampMetadata.hashCode() : 0);
         result = 31 * result + (int) (openFileTTL ^ (openFileTTL >>> 32));
@@ -285,6 +426,8 @@ public class JournalMetadataImpl<T> implements JournalMetadata<T> {
         result = 31 * result + Arrays.hashCode(columnMetadata);
         result = 31 * result + timestampColumnIndex;
         result = 31 * result + lag;
+        result = 31 * result + retention;
+        result = 31 * result + Arrays.hashCode(compositeIndexes);
         return result;
     }
 
@@ -293,8 +436,10 @@ public class JournalMetadataImpl<T> implements JournalMetadata<T> {
         return "JournalMetaImpl{" +
                 "SHA='" + Base64._printBase64Binary(Checksum.getChecksum(this)) + '\'' +
                 ", partitionBy=" + partitionBy +
+                ", partitionWidth=" + partitionWidth +
                 ", columnCount=" + columnCount +
                 ", columnMetadata=" + Arrays.toString(columnMetadata) +
+                ", compositeIndexes=" + Arrays.toString(compositeIndexes) +
                 '}';
     }
 }
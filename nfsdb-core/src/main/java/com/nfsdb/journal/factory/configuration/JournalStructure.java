@@ -22,6 +22,7 @@ import com.nfsdb.journal.column.ColumnType;
 import com.nfsdb.journal.exceptions.JournalConfigurationException;
 import com.nfsdb.journal.logging.Logger;
 import com.nfsdb.journal.utils.ByteBuffers;
+import com.nfsdb.journal.utils.Dates;
 import com.nfsdb.journal.utils.Unsafe;
 
 import java.io.File;
@@ -40,11 +41,14 @@ public class JournalStructure implements JMetadataBuilder<Object> {
     private String location;
     private int tsColumnIndex = -1;
     private PartitionType partitionBy = PartitionType.NONE;
+    private int partitionWidth = 1;
     private int recordCountHint = 100000;
     private int txCountHint = -1;
     private String key;
     private long openFileTTL = TimeUnit.MINUTES.toMillis(3);
     private int lag = -1;
+    private int retention = 0;
+    private final List<CompositeIndexMetadata> compositeIndexes = new ArrayList<>();
     private Class<Object> modelClass;
     private Constructor<Object> constructor;
     private boolean partialMapping = false;
@@ -57,11 +61,18 @@ public class JournalStructure implements JMetadataBuilder<Object> {
         this.location = model.getLocation();
         this.tsColumnIndex = model.getTimestampColumnIndex();
         this.partitionBy = model.getPartitionType();
+        this.partitionWidth = model.getPartitionWidth();
         this.recordCountHint = model.getRecordHint();
         this.txCountHint = model.getTxCountHint();
         this.key = model.getKeyQuiet();
         this.openFileTTL = model.getOpenFileTTL();
         this.lag = model.getLag();
+        this.retention = model.getRetention();
+        for (int i = 0; i < model.getCompositeIndexCount(); i++) {
+            CompositeIndexMetadata m = new CompositeIndexMetadata();
+            m.copy(model.getCompositeIndex(i));
+            compositeIndexes.add(m);
+        }
         for (int i = 0; i < model.getColumnCount(); i++) {
             ColumnMetadata from = model.getColumnMetadata(i);
             ColumnMetadata to = new ColumnMetadata();
@@ -118,12 +129,26 @@ public class JournalStructure implements JMetadataBuilder<Object> {
     }
 
     public JournalStructure partitionBy(PartitionType type) {
-        if (type != PartitionType.DEFAULT) {
+        if (type != PartitionType.DEFAULT && type != partitionBy) {
             this.partitionBy = type;
+            this.partitionWidth = 1;
         }
         return this;
     }
 
+    /**
+     * Partitions journal by given number of hours or minutes, e.g. partitionBy(PartitionType.MINUTE, 15).
+     * Width must divide day exactly.
+     */
+    public JournalStructure partitionBy(PartitionType type, int width) {
+        if (!Dates.isValidPartitionWidth(type, width)) {
+            throw new JournalConfigurationException("Invalid partition width %d for %s", width, type);
+        }
+        this.partitionBy = type;
+        this.partitionWidth = width;
+        return this;
+    }
+
     public JournalStructure recordCountHint(int count) {
         if (count > 0) {
             this.recordCountHint = count;
@@ -151,10 +176,69 @@ public class JournalStructure implements JMetadataBuilder<Object> {
         return this;
     }
 
+    /**
+     * Keeps given number of most recent partition periods, e.g. days of journal partitioned by DAY.
+     * Writer drops whole partitions that fall behind as it moves on to new partition.
+     */
+    public JournalStructure retention(int count) {
+        this.retention = count;
+        return this;
+    }
+
     public String getLocation() {
         return location;
     }
 
+    /**
+     * Declares index over combination of SYMBOL or INT columns. Queries that constrain all of these columns use
+     * composite index instead of index of one column and filter on others.
+     *
+     * @param columns two or more column names.
+     * @return this builder.
+     */
+    public JournalStructure compositeIndex(String... columns) {
+        return compositeIndex(0, columns);
+    }
+
+    public JournalStructure compositeIndex(int valueCountHint, String... columns) {
+        compositeIndexes.add(CompositeIndexMetadata.create(valueCountHint, columns));
+        return this;
+    }
+
+    /**
+     * Declares sorted index on INT, LONG, DOUBLE or DATE column. Sorted index is built when partition is
+     * sealed and turns range predicates on the column into binary search.
+     *
+     * @param name column name.
+     * @return this builder.
+     */
+    public JournalStructure sortedIndex(String name) {
+        int index = nameToIndexMap.get(name);
+        if (index == -1) {
+            throw new JournalConfigurationException("No such column: %s", name);
+        }
+        metadata.get(index).sortedIndexed = true;
+        return this;
+    }
+
+    /**
+     * Adds column to structure of existing journal. Column is stamped with next schema version, partitions
+     * written before it have no file for the column and read it as nulls.
+     *
+     * @param name column name.
+     * @param type column type.
+     * @return this builder.
+     */
+    public JournalStructure addColumn(String name, ColumnType type) {
+        int version = 0;
+        for (int i = 0, sz = metadata.size(); i < sz; i++) {
+            version = Math.max(version, metadata.get(i).version);
+        }
+        $meta(name, type);
+        metadata.get(metadata.size() - 1).version = version + 1;
+        return this;
+    }
+
     public JournalMetadata<Object> build() {
 
         // default tx count hint
@@ -179,6 +263,18 @@ public class JournalStructure implements JMetadataBuilder<Object> {
                 meta.distinctCountHint = (int) (recordCountHint * 0.2); //20%
             }
 
+            if (meta.sortedIndexed) {
+                switch (meta.type) {
+                    case INT:
+                    case LONG:
+                    case DOUBLE:
+                    case DATE:
+                        break;
+                    default:
+                        throw new JournalConfigurationException("Sorted index is not supported on %s column: %s", meta.type, meta.name);
+                }
+            }
+
             switch (meta.type) {
                 case STRING:
                     meta.size = meta.avgSize + 4;
@@ -204,13 +300,16 @@ public class JournalStructure implements JMetadataBuilder<Object> {
                 , key
                 , location
                 , partitionBy
+                , partitionWidth
                 , m
                 , tsColumnIndex
                 , openFileTTL
                 , recordCountHint
                 , txCountHint
                 , lag
+                , retention
                 , partialMapping
+                , CompositeIndexMetadata.build(compositeIndexes, m, recordCountHint)
         );
     }
 
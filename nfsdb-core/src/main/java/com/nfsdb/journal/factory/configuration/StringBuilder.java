@@ -28,6 +28,33 @@ public class StringBuilder<T> extends AbstractMetadataBuilder<T> {
         return this;
     }
 
+    /**
+     * Keeps full 64-bit hashes of values next to row IDs, so that equality lookup reads only rows of
+     * matching hashes.
+     */
+    public StringBuilder<T> exactIndex() {
+        this.meta.exactIndexed = true;
+        return this;
+    }
+
+    /**
+     * Writes Bloom filter of column values when partition is sealed, lookups skip partitions that
+     * cannot contain value.
+     */
+    public StringBuilder<T> bloomFilter() {
+        this.meta.bloomFiltered = true;
+        return this;
+    }
+
+    /**
+     * Indexes rows by trigrams of their values, so that substring and prefix searches only read rows
+     * that contain all trigrams of pattern.
+     */
+    public StringBuilder<T> ngramIndex() {
+        this.meta.ngramIndexed = true;
+        return this;
+    }
+
     public StringBuilder<T> buckets(int buckets) {
         this.meta.distinctCountHint = buckets;
         return this;
@@ -49,6 +49,18 @@ public class SymbolBuilder<T> extends AbstractMetadataBuilder<T> {
         return this;
     }
 
+    /**
+     * Adds bitmap index to column. Bitmap index suits columns with few distinct values and lets
+     * predicates on several such columns be combined without reading row IDs, see BitmapRowSource.
+     * It can be declared alongside regular index.
+     *
+     * @return this builder.
+     */
+    public SymbolBuilder<T> bitmapIndex() {
+        this.meta.bitmapIndexed = true;
+        return this;
+    }
+
     public SymbolBuilder<T> noCache() {
         this.meta.noCache = true;
         return this;
@@ -0,0 +1,650 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal.index;
+
+import com.nfsdb.journal.JournalMode;
+import com.nfsdb.journal.column.MappedFile;
+import com.nfsdb.journal.column.MappedFileImpl;
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.exceptions.JournalRuntimeException;
+import com.nfsdb.journal.utils.ByteBuffers;
+import com.nfsdb.journal.utils.Files;
+import com.nfsdb.journal.utils.Unsafe;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index that keeps a compressed bitmap of row IDs per key. It suits columns with few distinct values, where
+ * KVIndex would store a long per row, and lets predicates be combined with word-level operations.
+ * <p/>
+ * Rows are split into chunks of CHUNK_ROWS and each key has one container per chunk. Container is stored in
+ * whichever of three forms is smallest: sorted array of 16-bit row offsets, plain bitmap or list of runs.
+ * Index is append-only. Last chunk is kept uncompressed in memory by writer. Commit rewrites it into one of two
+ * reusable areas, the one last transaction does not reference, so that readers of last transaction are not
+ * disturbed. File grows only when chunk is sealed or outgrows its area, not with number of commits.
+ */
+public class BitmapIndex implements Closeable {
+
+    /*
+        struct bdata {
+           long txOffset
+           struct tx {
+                long rowCount
+                long chunkCount
+                long chunkTableOffset
+                long chunkTableCapacity
+                long openChunkDirectoryOffset
+                long openArea
+                long areaOffset[2]
+                long areaCapacity[2]
+           } tx[2]
+           struct container {
+                long payload[]
+           }
+           struct chunkDirectory {
+                long slotCount
+                struct slot {
+                     long header      // type << 48 | runCount << 32 | cardinality
+                     long payloadOffset
+                }
+           }
+           long chunkTable[chunkTableCapacity]
+        }
+
+        key is stored in slot key + 1 to accommodate null symbol key of -1. Array container packs four
+        16-bit row offsets per long, run container packs two [start << 16 | length - 1] ints per long.
+
+        tx records alternate between two fixed places. Sealed chunks are appended once and their directory
+        offsets kept in chunk table, which is copied to twice the capacity when full. Containers and directory
+        of last chunk are rewritten on every commit into area other than openArea of last tx, area is moved
+        to end of file when chunk no longer fits.
+    */
+
+    public static final int CHUNK_BITS = 16;
+    public static final int CHUNK_ROWS = 1 << CHUNK_BITS;
+    public static final int CHUNK_WORDS = CHUNK_ROWS >>> 6;
+    private static final int TYPE_ARRAY = 1;
+    private static final int TYPE_BITMAP = 2;
+    private static final int TYPE_RUN = 3;
+    private static final long TX_ADDRESS_OFFSET = 0;
+    private static final long TX_SIZE = 80;
+    private static final long TX_A = TX_ADDRESS_OFFSET + 8;
+    private static final long TX_B = TX_A + TX_SIZE;
+    private static final long HEADER_SIZE = TX_B + TX_SIZE;
+    private final MappedFileImpl data;
+    private final long scratch[] = new long[CHUNK_WORDS];
+    private final long areaOffsets[] = new long[2];
+    private final long areaCapacities[] = new long[2];
+    private long txAddress;
+    private long tableOffset;
+    private long tableCapacity;
+    private int openArea = -1;
+    private long chunkDirs[] = new long[16];
+    private int chunkCount;
+    private long rowCount;
+    // last chunk of writer, uncompressed bitmap and cardinality per key slot
+    private long openSlots[][] = new long[0][];
+    private int openCards[] = new int[0];
+    private int openChunk = -1;
+    private long slotEntries[] = new long[0];
+    // encoded containers of chunk being written
+    private long chunkBuf[] = new long[CHUNK_WORDS];
+    private int chunkBufLen;
+    private boolean inTransaction = false;
+
+    public BitmapIndex(File baseName, long recordCountHint, JournalMode mode) throws JournalException {
+        this.data = new MappedFileImpl(
+                new File(baseName.getParentFile(), baseName.getName() + ".b")
+                , ByteBuffers.getBitHint(8, (int) Math.max(CHUNK_WORDS, Math.min(Integer.MAX_VALUE / 8, recordCountHint >>> 6)))
+                , mode
+        );
+
+        if (data.getAppendOffset() > 0) {
+            refresh();
+        } else if (mode == JournalMode.APPEND || mode == JournalMode.BULK_APPEND) {
+            putLong(TX_ADDRESS_OFFSET, 0);
+            data.setAppendOffset(HEADER_SIZE);
+        }
+    }
+
+    public static void delete(File base) {
+        Files.delete(new File(base.getParentFile(), base.getName() + ".b"));
+    }
+
+    /**
+     * Adds row ID to bitmap of key. Row IDs must not be smaller than those in chunks that have been
+     * moved past.
+     *
+     * @param key   key, -1 stands for null.
+     * @param rowID row ID.
+     */
+    public void add(int key, long rowID) {
+        int chunk = (int) (rowID >>> CHUNK_BITS);
+        if (openChunk == -1) {
+            loadOpenChunk();
+        }
+
+        if (chunk < openChunk) {
+            throw new JournalRuntimeException("Row ID %d is behind last chunk of %s", rowID, this);
+        }
+
+        while (openChunk < chunk) {
+            sealChunk(openChunk, writeOpenChunk(-1));
+            clearOpenChunk();
+            openChunk++;
+        }
+
+        long words[] = getOpenSlot(key + 1);
+        int bit = (int) (rowID & (CHUNK_ROWS - 1));
+        long mask = 1L << bit;
+        if ((words[bit >>> 6] & mask) == 0) {
+            words[bit >>> 6] |= mask;
+            openCards[key + 1]++;
+        }
+
+        if (rowID >= rowCount) {
+            rowCount = rowID + 1;
+        }
+        inTransaction = true;
+    }
+
+    public void commit() {
+        if (inTransaction) {
+            int count = rowCount == 0 ? 0 : (int) ((rowCount - 1) >>> CHUNK_BITS) + 1;
+            long dir = 0;
+            int area = -1;
+            if (count > 0) {
+                area = openArea == 0 ? 1 : 0;
+                dir = writeOpenChunk(area);
+                if (dir == 0) {
+                    area = -1;
+                }
+                setChunkDir(count - 1, dir);
+            }
+            long tx = txAddress == TX_A ? TX_B : TX_A;
+            putLong(tx, rowCount);
+            putLong(tx + 8, count);
+            putLong(tx + 16, tableOffset);
+            putLong(tx + 24, tableCapacity);
+            putLong(tx + 32, dir);
+            putLong(tx + 40, area);
+            putLong(tx + 48, areaOffsets[0]);
+            putLong(tx + 56, areaOffsets[1]);
+            putLong(tx + 64, areaCapacities[0]);
+            putLong(tx + 72, areaCapacities[1]);
+            putLong(TX_ADDRESS_OFFSET, tx);
+            txAddress = tx;
+            openArea = area;
+            chunkCount = count;
+            inTransaction = false;
+        }
+    }
+
+    /**
+     * Re-reads last committed state. Writer state of last chunk is dropped and reloaded on next add.
+     */
+    public void refresh() {
+        commit();
+        long tx = data.getAppendOffset() > 0 ? getLong(TX_ADDRESS_OFFSET) : 0;
+        txAddress = tx;
+        if (tx == 0) {
+            rowCount = 0;
+            chunkCount = 0;
+            tableOffset = 0;
+            tableCapacity = 0;
+            openArea = -1;
+            Arrays.fill(areaOffsets, 0);
+            Arrays.fill(areaCapacities, 0);
+        } else {
+            rowCount = getLong(tx);
+            chunkCount = (int) getLong(tx + 8);
+            tableOffset = getLong(tx + 16);
+            tableCapacity = getLong(tx + 24);
+            openArea = (int) getLong(tx + 40);
+            areaOffsets[0] = getLong(tx + 48);
+            areaOffsets[1] = getLong(tx + 56);
+            areaCapacities[0] = getLong(tx + 64);
+            areaCapacities[1] = getLong(tx + 72);
+            if (chunkDirs.length < chunkCount) {
+                chunkDirs = new long[chunkCount];
+            }
+            if (chunkCount > 0) {
+                copyLongs(tableOffset, chunkDirs, chunkCount - 1);
+                chunkDirs[chunkCount - 1] = getLong(tx + 32);
+            }
+        }
+        openChunk = -1;
+    }
+
+    /**
+     * Removes rows from given row ID onwards and commits.
+     *
+     * @param size number of rows to keep.
+     */
+    public void truncate(long size) {
+        if (size >= rowCount) {
+            return;
+        }
+
+        int count = size == 0 ? 0 : (int) ((size - 1) >>> CHUNK_BITS) + 1;
+        if (openChunk != count - 1 || count == 0) {
+            clearOpenChunk();
+            if (count > 0) {
+                openChunk = count - 1;
+                loadChunk(openChunk);
+            } else {
+                openChunk = 0;
+            }
+        }
+
+        if (count > 0) {
+            int from = (int) (size - ((long) openChunk << CHUNK_BITS));
+            for (int i = 0; i < openSlots.length; i++) {
+                long words[] = openSlots[i];
+                if (words != null && openCards[i] > 0) {
+                    clearFrom(words, from);
+                    openCards[i] = cardinality(words);
+                }
+            }
+        }
+
+        rowCount = size;
+        inTransaction = true;
+        commit();
+    }
+
+    /**
+     * Sets bits of rows of given key and chunk in words. Bit n of words stands for row
+     * chunk * CHUNK_ROWS + n, bits of other keys are left untouched.
+     *
+     * @param key   key.
+     * @param chunk chunk number.
+     * @param words array of CHUNK_WORDS longs.
+     */
+    public void or(int key, int chunk, long words[]) {
+        int slot = key + 1;
+        if (chunk == openChunk) {
+            if (slot < openSlots.length && openCards[slot] > 0) {
+                long src[] = openSlots[slot];
+                for (int i = 0; i < CHUNK_WORDS; i++) {
+                    words[i] |= src[i];
+                }
+            }
+            return;
+        }
+
+        // writer can have chunks it moved past but not committed yet
+        if (chunk >= getChunkCount() || chunk < 0) {
+            return;
+        }
+
+        long dir = chunkDirs[chunk];
+        if (dir == 0 || slot >= getLong(dir)) {
+            return;
+        }
+
+        long header = getLong(dir + 8 + slot * 16L);
+        if (header != 0) {
+            decode(header, getLong(dir + 16 + slot * 16L), words);
+        }
+    }
+
+    /**
+     * @return number of chunks, last of which can be partially filled.
+     */
+    public int getChunkCount() {
+        return rowCount == 0 ? 0 : (int) ((rowCount - 1) >>> CHUNK_BITS) + 1;
+    }
+
+    public long size() {
+        return rowCount;
+    }
+
+    public void force() {
+        data.force();
+    }
+
+    public void getMappedFiles(List<MappedFile> files) {
+        files.add(data);
+    }
+
+    public void compact() throws JournalException {
+        data.compact();
+    }
+
+    @Override
+    public void close() {
+        data.close();
+    }
+
+    @Override
+    public String toString() {
+        return "BitmapIndex{" +
+                "file=" + data +
+                ", rowCount=" + rowCount +
+                ", chunkCount=" + chunkCount +
+                '}';
+    }
+
+    private static int countRuns(long words[]) {
+        int runs = 0;
+        long carry = 0;
+        for (int i = 0; i < CHUNK_WORDS; i++) {
+            long w = words[i];
+            // bit starts a run when bit before it is clear
+            runs += Long.bitCount(w & ~((w << 1) | carry));
+            carry = w >>> 63;
+        }
+        return runs;
+    }
+
+    private static int cardinality(long words[]) {
+        int n = 0;
+        for (int i = 0; i < CHUNK_WORDS; i++) {
+            n += Long.bitCount(words[i]);
+        }
+        return n;
+    }
+
+    private static int nextSetBit(long words[], int from) {
+        int i = from >>> 6;
+        if (i >= CHUNK_WORDS) {
+            return -1;
+        }
+        long w = words[i] & (-1L << from);
+        while (w == 0) {
+            if (++i == CHUNK_WORDS) {
+                return -1;
+            }
+            w = words[i];
+        }
+        return (i << 6) + Long.numberOfTrailingZeros(w);
+    }
+
+    private static int nextClearBit(long words[], int from) {
+        int i = from >>> 6;
+        long w = ~words[i] & (-1L << from);
+        while (w == 0) {
+            if (++i == CHUNK_WORDS) {
+                return CHUNK_ROWS;
+            }
+            w = ~words[i];
+        }
+        return (i << 6) + Long.numberOfTrailingZeros(w);
+    }
+
+    private static void setRange(long words[], int from, int to) {
+        int lo = from >>> 6;
+        int hi = (to - 1) >>> 6;
+        long loMask = -1L << from;
+        long hiMask = -1L >>> -to;
+        if (lo == hi) {
+            words[lo] |= loMask & hiMask;
+        } else {
+            words[lo] |= loMask;
+            for (int i = lo + 1; i < hi; i++) {
+                words[i] = -1L;
+            }
+            words[hi] |= hiMask;
+        }
+    }
+
+    private static void clearFrom(long words[], int from) {
+        int i = from >>> 6;
+        if (i < CHUNK_WORDS) {
+            words[i] &= ~(-1L << from);
+            Arrays.fill(words, i + 1, CHUNK_WORDS, 0);
+        }
+    }
+
+    private long[] getOpenSlot(int slot) {
+        if (slot >= openSlots.length) {
+            int n = Math.max(slot + 1, openSlots.length * 2);
+            openSlots = Arrays.copyOf(openSlots, n);
+            openCards = Arrays.copyOf(openCards, n);
+        }
+        long words[] = openSlots[slot];
+        if (words == null) {
+            words = openSlots[slot] = new long[CHUNK_WORDS];
+        }
+        return words;
+    }
+
+    private void clearOpenChunk() {
+        for (int i = 0; i < openSlots.length; i++) {
+            if (openCards[i] > 0) {
+                Arrays.fill(openSlots[i], 0);
+                openCards[i] = 0;
+            }
+        }
+    }
+
+    private void loadOpenChunk() {
+        clearOpenChunk();
+        if (chunkCount == 0) {
+            openChunk = 0;
+        } else {
+            openChunk = chunkCount - 1;
+            loadChunk(openChunk);
+        }
+    }
+
+    private void loadChunk(int chunk) {
+        long dir = chunkDirs[chunk];
+        if (dir == 0) {
+            return;
+        }
+        for (int slot = 0, n = (int) getLong(dir); slot < n; slot++) {
+            long header = getLong(dir + 8 + slot * 16L);
+            if (header != 0) {
+                decode(header, getLong(dir + 16 + slot * 16L), getOpenSlot(slot));
+                openCards[slot] = (int) header;
+            }
+        }
+    }
+
+    private void setChunkDir(int chunk, long offset) {
+        if (chunk >= chunkDirs.length) {
+            chunkDirs = Arrays.copyOf(chunkDirs, Math.max(chunk + 1, chunkDirs.length * 2));
+        }
+        chunkDirs[chunk] = offset;
+    }
+
+    /**
+     * Records directory of chunk writer moved past in chunk table. Entries from last committed open chunk
+     * onwards are not referenced by readers, so they are written in place, full table is copied first.
+     */
+    private void sealChunk(int chunk, long offset) {
+        setChunkDir(chunk, offset);
+        if (chunk >= tableCapacity) {
+            long capacity = Math.max(Math.max(16, tableCapacity * 2), chunk + 1);
+            long table = data.getAppendOffset();
+            data.setAppendOffset(table + capacity * 8);
+            copyLongs(chunkDirs, table, chunk);
+            tableOffset = table;
+            tableCapacity = capacity;
+        }
+        putLong(tableOffset + chunk * 8L, offset);
+    }
+
+    /**
+     * Writes containers of open chunk followed by chunk directory.
+     *
+     * @param area area to write chunk into or -1 to append chunk to end of file.
+     * @return offset of chunk directory or 0 when chunk is empty.
+     */
+    private long writeOpenChunk(int area) {
+        int n = openSlots.length;
+        while (n > 0 && openCards[n - 1] == 0) {
+            n--;
+        }
+
+        if (n == 0) {
+            return 0;
+        }
+
+        if (slotEntries.length < n * 2) {
+            slotEntries = new long[n * 2];
+        }
+
+        chunkBufLen = 0;
+        for (int slot = 0; slot < n; slot++) {
+            int card = openCards[slot];
+            if (card == 0) {
+                slotEntries[slot * 2] = 0;
+                slotEntries[slot * 2 + 1] = 0;
+            } else {
+                encode(openSlots[slot], card, slot);
+            }
+        }
+
+        long size = chunkBufLen * 8L + 8 + n * 16L;
+        long offset;
+        if (area == -1) {
+            offset = data.getAppendOffset();
+            data.setAppendOffset(offset + size);
+        } else {
+            if (areaCapacities[area] < size) {
+                areaCapacities[area] = Math.max(size, areaCapacities[area] * 2);
+                areaOffsets[area] = data.getAppendOffset();
+                data.setAppendOffset(areaOffsets[area] + areaCapacities[area]);
+            }
+            offset = areaOffsets[area];
+        }
+
+        copyLongs(chunkBuf, offset, chunkBufLen);
+        for (int slot = 0; slot < n; slot++) {
+            if (slotEntries[slot * 2] != 0) {
+                slotEntries[slot * 2 + 1] += offset;
+            }
+        }
+        long dir = offset + chunkBufLen * 8L;
+        putLong(dir, n);
+        copyLongs(slotEntries, dir + 8, n * 2);
+        return dir;
+    }
+
+    private void encode(long words[], int card, int slot) {
+        int runs = countRuns(words);
+        int runLen = (runs + 1) >>> 1;
+        int arrayLen = (card + 3) >>> 2;
+        int type;
+        int len;
+        long src[] = scratch;
+
+        if (runLen <= arrayLen && runLen < CHUNK_WORDS) {
+            type = TYPE_RUN;
+            len = runLen;
+            Arrays.fill(scratch, 0, len, 0);
+            int k = 0;
+            for (int lo = nextSetBit(words, 0); lo != -1; k++) {
+                int hi = nextClearBit(words, lo);
+                scratch[k >>> 1] |= (((long) lo << 16) | (hi - lo - 1)) << ((k & 1) << 5);
+                lo = hi < CHUNK_ROWS ? nextSetBit(words, hi) : -1;
+            }
+        } else if (arrayLen < CHUNK_WORDS) {
+            type = TYPE_ARRAY;
+            len = arrayLen;
+            Arrays.fill(scratch, 0, len, 0);
+            int k = 0;
+            for (int i = 0; i < CHUNK_WORDS; i++) {
+                long w = words[i];
+                while (w != 0) {
+                    scratch[k >>> 2] |= (long) ((i << 6) + Long.numberOfTrailingZeros(w)) << ((k & 3) << 4);
+                    w &= w - 1;
+                    k++;
+                }
+            }
+        } else {
+            type = TYPE_BITMAP;
+            len = CHUNK_WORDS;
+            src = words;
+        }
+
+        if (chunkBufLen + len > chunkBuf.length) {
+            chunkBuf = Arrays.copyOf(chunkBuf, Math.max(chunkBufLen + len, chunkBuf.length * 2));
+        }
+        System.arraycopy(src, 0, chunkBuf, chunkBufLen, len);
+
+        // offset relative to start of chunk until chunk is placed
+        slotEntries[slot * 2] = ((long) type << 48) | ((long) runs << 32) | card;
+        slotEntries[slot * 2 + 1] = chunkBufLen * 8L;
+        chunkBufLen += len;
+    }
+
+    private void decode(long header, long offset, long words[]) {
+        int card = (int) header;
+        switch ((int) (header >>> 48)) {
+            case TYPE_BITMAP:
+                copyLongs(offset, scratch, CHUNK_WORDS);
+                for (int i = 0; i < CHUNK_WORDS; i++) {
+                    words[i] |= scratch[i];
+                }
+                break;
+            case TYPE_ARRAY:
+                copyLongs(offset, scratch, (card + 3) >>> 2);
+                for (int k = 0; k < card; k++) {
+                    int v = (int) (scratch[k >>> 2] >>> ((k & 3) << 4)) & 0xFFFF;
+                    words[v >>> 6] |= 1L << v;
+                }
+                break;
+            case TYPE_RUN:
+                int runs = (int) (header >>> 32) & 0xFFFF;
+                copyLongs(offset, scratch, (runs + 1) >>> 1);
+                for (int k = 0; k < runs; k++) {
+                    int v = (int) (scratch[k >>> 1] >>> ((k & 1) << 5));
+                    int lo = v >>> 16;
+                    setRange(words, lo, lo + (v & 0xFFFF) + 1);
+                }
+                break;
+            default:
+                throw new JournalRuntimeException("Unknown container type %d in %s", header >>> 48, this);
+        }
+    }
+
+    private void copyLongs(long offset, long dst[], int count) {
+        long len = count * 8L;
+        for (long p = 0; p < len; ) {
+            long address = data.getAddress(offset + p, 8);
+            long l = Math.min(data.getAddressSize(offset + p), len - p);
+            Unsafe.getUnsafe().copyMemory(null, address, dst, Unsafe.getLongArrayOffset() + p, l);
+            p += l;
+        }
+    }
+
+    private void copyLongs(long src[], long offset, int count) {
+        long len = count * 8L;
+        for (long p = 0; p < len; ) {
+            long address = data.getAddress(offset + p, 8);
+            long l = Math.min(data.getAddressSize(offset + p), len - p);
+            Unsafe.getUnsafe().copyMemory(src, Unsafe.getLongArrayOffset() + p, null, address, l);
+            p += l;
+        }
+    }
+
+    private long getLong(long offset) {
+        return Unsafe.getUnsafe().getLong(data.getAddress(offset, 8));
+    }
+
+    private void putLong(long offset, long value) {
+        Unsafe.getUnsafe().putLong(data.getAddress(offset, 8), value);
+    }
+}
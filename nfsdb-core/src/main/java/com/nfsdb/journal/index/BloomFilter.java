@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal.index;
+
+import com.nfsdb.journal.JournalMode;
+import com.nfsdb.journal.column.MappedFileImpl;
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.utils.ByteBuffers;
+import com.nfsdb.journal.utils.Files;
+import com.nfsdb.journal.utils.Unsafe;
+
+import java.io.Closeable;
+import java.io.File;
+
+/**
+ * Bloom filter of 64-bit value hashes of first size() rows of partition column. Filter is written in one go when
+ * partition is sealed and tells for certain that value does not occur in those rows. Filter has BITS_PER_ROW bits
+ * per row and uses HASH_COUNT probes derived from two halves of hash, which gives about 1% false positives.
+ */
+public class BloomFilter implements Closeable {
+
+    /*
+        struct bfdata {
+           long rowCount
+           long wordCount     // power of 2
+           long words[wordCount]
+        }
+    */
+
+    private static final int BITS_PER_ROW = 10;
+    private static final int HASH_COUNT = 7;
+    private final MappedFileImpl data;
+    private final long size;
+    private final long bitMask;
+
+    public BloomFilter(File base) throws JournalException {
+        this.data = new MappedFileImpl(file(base), ByteBuffers.getBitHint(8, 1 << 16), JournalMode.READ);
+        this.size = getLong(0);
+        this.bitMask = (getLong(8) << 6) - 1;
+    }
+
+    public static boolean exists(File base) {
+        return file(base).exists();
+    }
+
+    public static void delete(File base) {
+        Files.delete(file(base));
+    }
+
+    /**
+     * Writes filter of given hashes. New file replaces existing one once it is complete.
+     *
+     * @param base   base name of filter.
+     * @param hashes hashes of column values, see com.nfsdb.journal.utils.Checksum#hash64(CharSequence)
+     * @param count  number of hashes, which is also number of rows filter covers.
+     * @throws JournalException if filter cannot be written.
+     */
+    public static void write(File base, long hashes[], int count) throws JournalException {
+        long bits = Math.max(64, (long) count * BITS_PER_ROW);
+        int wordCount = (int) (Long.highestOneBit(bits - 1) >>> 5);
+        long words[] = new long[wordCount];
+        long mask = ((long) wordCount << 6) - 1;
+        for (int i = 0; i < count; i++) {
+            long h = hashes[i];
+            long h1 = h;
+            long h2 = (h >>> 32) | 1;
+            for (int k = 0; k < HASH_COUNT; k++) {
+                long bit = (h1 + k * h2) & mask;
+                words[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+
+        File tmp = new File(base.getParentFile(), base.getName() + ".bf.tmp");
+        Files.delete(tmp);
+        MappedFileImpl dst = new MappedFileImpl(tmp, ByteBuffers.getBitHint(8, wordCount + 2), JournalMode.APPEND);
+        try {
+            putLong(dst, 0, count);
+            putLong(dst, 8, wordCount);
+            for (int i = 0; i < wordCount; i++) {
+                putLong(dst, 16 + i * 8L, words[i]);
+            }
+            dst.setAppendOffset(16 + wordCount * 8L);
+            dst.force();
+            dst.compact();
+        } finally {
+            dst.close();
+        }
+
+        File to = file(base);
+        if (!tmp.renameTo(to)) {
+            throw new JournalException("Cannot rename %s to %s", tmp, to);
+        }
+    }
+
+    /**
+     * @param hash hash of value.
+     * @return false when none of first size() rows has value of this hash.
+     */
+    public boolean mightContain(long hash) {
+        long h2 = (hash >>> 32) | 1;
+        for (int k = 0; k < HASH_COUNT; k++) {
+            long bit = (hash + k * h2) & bitMask;
+            if ((getLong(16 + (bit >>> 6) * 8) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public void close() {
+        data.close();
+    }
+
+    private static File file(File base) {
+        return new File(base.getParentFile(), base.getName() + ".bf");
+    }
+
+    private static void putLong(MappedFileImpl file, long offset, long value) {
+        Unsafe.getUnsafe().putLong(file.getAddress(offset, 8), value);
+    }
+
+    private long getLong(long offset) {
+        return Unsafe.getUnsafe().getLong(data.getAddress(offset, 8));
+    }
+}
@@ -18,6 +18,7 @@ package com.nfsdb.journal.index;
 
 import com.nfsdb.journal.JournalMode;
 import com.nfsdb.journal.collections.DirectLongList;
+import com.nfsdb.journal.column.MappedFile;
 import com.nfsdb.journal.column.MappedFileImpl;
 import com.nfsdb.journal.exceptions.JournalException;
 import com.nfsdb.journal.exceptions.JournalRuntimeException;
@@ -27,6 +28,8 @@ import com.nfsdb.journal.utils.Unsafe;
 
 import java.io.Closeable;
 import java.io.File;
+import java.util.Arrays;
+import java.util.List;
 
 public class KVIndex implements Closeable {
 
@@ -41,13 +44,53 @@ public class KVIndex implements Closeable {
                  long rowCount
            }
         }
+
+        sealed (compact) index keeps everything in kData, rData is not used. Row IDs of each key are stored
+        in ascending order in one contiguous array that follows key entries:
+        struct kdata{
+           long format = FORMAT_COMPACT
+           long firstEntryOffset
+           long keyBlockSize
+           long maxValue
+           struct kdataEntry {
+                 long offsetOfFirstRowID
+                 long rowCount
+           }
+           long rowIDs[]
+        }
+
+        packed index has the same header and key entries, but row IDs of each key are split into frames of
+        PackedFrames.FRAME_LEN values. Skip table of key allows decoding any frame without touching others:
+        struct keyRowIDs {
+           struct skipEntry {
+                 long firstRowID
+                 long frameOffset
+           }
+           struct frame {
+                 long bitsPerDelta
+                 long packedDeltas[]
+           }
+        }
     */
 
     private static final int ENTRY_SIZE = 16;
+    // format marker in place of rowBlockLen
+    private static final long FORMAT_COMPACT = -1;
+    private static final long FORMAT_PACKED = -2;
+    private final File baseName;
+    private final JournalMode mode;
+    private final int bitHint;
+    // kData page size, compact cursor reads row IDs a page at a time
+    private int kDataBitHint;
     int rowBlockSize;
     int rowBlockLen;
     long firstEntryOffset;
-    private final IndexCursor cachedCursor = new IndexCursor();
+    private final BlockCursor blockCursor = new BlockCursor();
+    private final CompactCursor compactCursor = new CompactCursor();
+    private final PackedCursor packedCursor = new PackedCursor();
+    private final RangeCursor rangeCursor = new RangeCursor();
+    private final long frameValues[] = new long[PackedFrames.FRAME_LEN];
+    private final long frameWords[] = new long[PackedFrames.FRAME_LEN];
     private MappedFileImpl kData;
     // storage for rows
     // block structure is [ rowid1, rowid2 ..., rowidn, prevBlockOffset]
@@ -57,17 +100,38 @@ public class KVIndex implements Closeable {
     private long keyBlockSizeOffset;
     private long maxValue;
     private boolean inTransaction = false;
+    private boolean compact = false;
+    private boolean packed = false;
 
     public KVIndex(File baseName, long keyCountHint, long recordCountHint, int txCountHint, JournalMode mode, long txAddress) throws JournalException {
-        int bitHint = (int) Math.min(Integer.MAX_VALUE, Math.max(keyCountHint, 1));
+        this.baseName = baseName;
+        this.mode = mode;
+        this.bitHint = (int) Math.min(Integer.MAX_VALUE, Math.max(keyCountHint, 1));
         this.rowBlockLen = (int) Math.min(134217728, Math.max(recordCountHint / bitHint, 1));
-        this.kData = new MappedFileImpl(new File(baseName.getParentFile(), baseName.getName() + ".k"), ByteBuffers.getBitHint(8, bitHint * txCountHint), mode);
+        this.kDataBitHint = ByteBuffers.getBitHint(8, bitHint * txCountHint);
+        this.kData = new MappedFileImpl(new File(baseName.getParentFile(), baseName.getName() + ".k"), kDataBitHint, mode);
         this.keyBlockAddressOffset = 8;
 
         this.keyBlockSizeOffset = 16;
         this.keyBlockSize = 0;
         this.maxValue = 0;
 
+        long format = kData.getAppendOffset() > 0 ? getLong(kData, 0) : 0;
+        if (format == FORMAT_COMPACT || format == FORMAT_PACKED) {
+            // sealed index is immutable, there is nothing to rollback to
+            this.compact = true;
+            this.packed = format == FORMAT_PACKED;
+            // key file was sized for key entries, map it in pages that fit row IDs instead
+            this.kDataBitHint = ByteBuffers.getBitHint(8, (int) Math.min(Integer.MAX_VALUE / 8, kData.getAppendOffset() / 8));
+            this.kData.close();
+            this.kData = new MappedFileImpl(new File(baseName.getParentFile(), baseName.getName() + ".k"), kDataBitHint, mode);
+            this.keyBlockSize = getLong(kData, keyBlockSizeOffset);
+            this.maxValue = getLong(kData, keyBlockSizeOffset + 8);
+            this.firstEntryOffset = keyBlockSizeOffset + 16;
+            this.rowBlockSize = rowBlockLen * 8 + 8;
+            return;
+        }
+
         if (kData.getAppendOffset() > 0) {
             this.rowBlockLen = (int) getLong(kData, 0);
             this.keyBlockSizeOffset = txAddress == 0 ? getLong(kData, keyBlockAddressOffset) : txAddress;
@@ -89,6 +153,27 @@ public class KVIndex implements Closeable {
     public static void delete(File base) {
         Files.delete(new File(base.getParentFile(), base.getName() + ".k"));
         Files.delete(new File(base.getParentFile(), base.getName() + ".r"));
+        Files.delete(new File(base.getParentFile(), base.getName() + ".r" + MappedFileImpl.BASE_EXTENSION));
+    }
+
+    /**
+     * Replaces index files with compact index previously written by #writeCompact. Key file is renamed over
+     * and row file, which compact index does not use, is deleted. Indexes that are open keep reading their
+     * original files until they are closed.
+     *
+     * @param compactBase base name of compact index.
+     * @param base        base name of index to be replaced.
+     * @throws JournalException if files cannot be renamed.
+     */
+    public static void replace(File compactBase, File base) throws JournalException {
+        File from = new File(compactBase.getParentFile(), compactBase.getName() + ".k");
+        File to = new File(base.getParentFile(), base.getName() + ".k");
+        if (!from.renameTo(to)) {
+            throw new JournalException("Cannot rename %s to %s", from, to);
+        }
+        Files.delete(new File(base.getParentFile(), base.getName() + ".r"));
+        Files.delete(new File(base.getParentFile(), base.getName() + ".r" + MappedFileImpl.BASE_EXTENSION));
+        Files.delete(new File(compactBase.getParentFile(), compactBase.getName() + ".r"));
     }
 
     /**
@@ -99,6 +184,10 @@ public class KVIndex implements Closeable {
      */
     public void add(int key, long value) {
 
+        if (compact) {
+            unseal();
+        }
+
         if (!inTransaction) {
             tx();
         }
@@ -150,6 +239,9 @@ public class KVIndex implements Closeable {
     }
 
     public void setTxAddress(long txAddress) {
+        if (compact) {
+            return;
+        }
         if (txAddress == 0) {
             refresh();
         } else {
@@ -161,6 +253,9 @@ public class KVIndex implements Closeable {
     }
 
     public void refresh() {
+        if (compact) {
+            return;
+        }
         commit();
         this.keyBlockSizeOffset = getLong(kData, keyBlockAddressOffset);
         this.keyBlockSize = getLong(kData, keyBlockSizeOffset);
@@ -179,9 +274,176 @@ public class KVIndex implements Closeable {
     }
 
     public void force() {
+        // row blocks go first, key entries point to them
+        if (rData != null) {
+            rData.force();
+        }
         kData.force();
     }
 
+    public void getMappedFiles(List<MappedFile> files) {
+        files.add(kData);
+        if (rData != null) {
+            files.add(rData);
+        }
+    }
+
+    /**
+     * Sealed index stores row IDs of each key in one contiguous array. It is written by #writeCompact once
+     * partition is no longer appended to. Adding values to sealed index converts it back to block layout.
+     *
+     * @return true if index is sealed.
+     */
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * Packed index is sealed index that stores row IDs as bit-packed deltas.
+     *
+     * @return true if row IDs are packed.
+     */
+    public boolean isPacked() {
+        return packed;
+    }
+
+    public void writeCompact(File compactBase) throws JournalException {
+        writeCompact(compactBase, false);
+    }
+
+    /**
+     * Writes committed content of this index in compact layout under new base name. This index remains
+     * unchanged, use #replace to swap files over.
+     *
+     * @param compactBase base name of compact index.
+     * @param pack        when true row IDs are stored as bit-packed deltas, which makes index several
+     *                    times smaller at cost of decoding.
+     * @throws JournalException if compact index cannot be written.
+     */
+    public void writeCompact(File compactBase, boolean pack) throws JournalException {
+        long keyCount = keyBlockSize / ENTRY_SIZE;
+        long rowCount = 0;
+        for (long i = 0; i < keyCount; i++) {
+            rowCount += getLong(kData, firstEntryOffset + i * ENTRY_SIZE + 8);
+        }
+
+        long rowOffset = 32 + keyCount * ENTRY_SIZE;
+        MappedFileImpl dst = new MappedFileImpl(new File(compactBase.getParentFile(), compactBase.getName() + ".k"),
+                ByteBuffers.getBitHint(8, (int) Math.min(Integer.MAX_VALUE / 8, keyCount * 2 + rowCount + 4)), JournalMode.APPEND);
+        try (DirectLongList values = new DirectLongList()) {
+            putLong(dst, 0, pack ? FORMAT_PACKED : FORMAT_COMPACT);
+            putLong(dst, 8, 16);
+            putLong(dst, 16, keyBlockSize);
+            putLong(dst, 24, maxValue);
+            for (long i = 0; i < keyCount; i++) {
+                long count = getLong(kData, firstEntryOffset + i * ENTRY_SIZE + 8);
+                putLong(dst, 32 + i * ENTRY_SIZE, rowOffset);
+                putLong(dst, 32 + i * ENTRY_SIZE + 8, count);
+                if (count == 0) {
+                    continue;
+                }
+                getValues(firstEntryOffset + i * ENTRY_SIZE, values);
+                if (pack) {
+                    rowOffset = writeFrames(dst, rowOffset, values, count);
+                } else {
+                    for (int k = 0; k < count; k++) {
+                        putLong(dst, rowOffset, values.get(k));
+                        rowOffset += 8;
+                    }
+                }
+            }
+            dst.setAppendOffset(rowOffset);
+            dst.force();
+        } finally {
+            dst.close();
+        }
+    }
+
+    /**
+     * Writes index for new version of partition, which keeps values below given size. Row file of new index is
+     * linked to pages of this one, see MappedFileImpl.link(), so that row blocks are not copied and this index
+     * is never written to. Tail blocks that new index adds to are copied to end of its own row file. Key file of
+     * new index has committed key block only.
+     *
+     * @param targetBase base name of index in directory of new partition version.
+     * @param size       number of rows new partition version keeps.
+     * @throws JournalException if files of new index cannot be written.
+     */
+    public void branch(File targetBase, long size) throws JournalException {
+        File k = new File(targetBase.getParentFile(), targetBase.getName() + ".k");
+        if (compact) {
+            // sealed index is unsealed into its own row file when it is truncated or added to
+            Files.copy(new File(baseName.getParentFile(), baseName.getName() + ".k"), k);
+            return;
+        }
+
+        // row file of new version shares pages of this one and is never written to below them
+        int rDataBitHint = ByteBuffers.getBitHint(rowBlockSize, bitHint);
+        File r = new File(targetBase.getParentFile(), targetBase.getName() + ".r");
+        MappedFileImpl.link(new File(baseName.getParentFile(), baseName.getName() + ".r"), r, rData.getAppendOffset(), rDataBitHint);
+        MappedFileImpl dst = new MappedFileImpl(k, kDataBitHint, JournalMode.APPEND);
+        MappedFileImpl dstR = null;
+        try {
+            dstR = new MappedFileImpl(r, rDataBitHint, JournalMode.APPEND);
+            long sz = 0;
+            for (long offset = 0; offset < keyBlockSize; offset += ENTRY_SIZE) {
+                long rowBlockOffset = getLong(kData, firstEntryOffset + offset);
+                long rowCount = getLong(kData, firstEntryOffset + offset + 8);
+                int len = (int) (rowCount % rowBlockLen);
+
+                if (len == 0) {
+                    len = rowBlockLen;
+                }
+                while (rowBlockOffset > 0) {
+                    long addr = rData.getAddress(rowBlockOffset - rowBlockSize, rowBlockSize);
+                    int pos = 0;
+                    long max = -1;
+                    while (pos < len) {
+                        long v = Unsafe.getUnsafe().getLong(addr);
+                        if (v >= size) {
+                            break;
+                        }
+                        addr += 8;
+                        pos++;
+                        max = v;
+                    }
+
+                    if (max >= sz) {
+                        sz = max + 1;
+                    }
+
+                    if (pos == 0) {
+                        rowBlockOffset = getLong(rData, rowBlockOffset - 8);
+                        rowCount -= len;
+                        len = rowBlockLen;
+                    } else {
+                        if (pos < rowBlockLen) {
+                            // tail block is added to, it is copied out of shared pages
+                            rowBlockOffset = copyBlock(rowBlockOffset, dstR);
+                        }
+                        rowCount -= len - pos;
+                        break;
+                    }
+                }
+                putLong(dst, 32 + offset, rowBlockOffset);
+                putLong(dst, 32 + offset + 8, rowCount);
+            }
+
+            putLong(dst, 0, rowBlockLen);
+            putLong(dst, 8, 16);
+            putLong(dst, 16, keyBlockSize);
+            putLong(dst, 24, sz);
+            dst.setAppendOffset(32 + keyBlockSize);
+            dstR.force();
+            dst.force();
+        } finally {
+            dst.close();
+            if (dstR != null) {
+                dstR.close();
+            }
+        }
+    }
+
     /**
      * Searches for indexed value of a key. This method will lookup newest values much faster then oldest.
      * If either key doesn't exist in index or value index is out of bounds an exception will be thrown.
@@ -200,6 +462,15 @@ public class KVIndex implements Closeable {
             throw new JournalRuntimeException("Index out of bounds: %d, max: %d", i, rowCount - 1);
         }
 
+        if (packed) {
+            decodeFrame(rowBlockOffset, rowCount, i >>> PackedFrames.FRAME_BITS, frameValues, frameWords);
+            return frameValues[i & (PackedFrames.FRAME_LEN - 1)];
+        }
+
+        if (compact) {
+            return getLong(kData, rowBlockOffset + 8L * i);
+        }
+
         int rowBlockCount = (int) (rowCount / rowBlockLen + 1);
         if (rowCount % rowBlockLen == 0) {
             rowBlockCount--;
@@ -267,6 +538,12 @@ public class KVIndex implements Closeable {
         long address = keyAddressOrError(key);
         long rowBlockOffset = Unsafe.getUnsafe().getLong(address);
         long rowCount = Unsafe.getUnsafe().getLong(address + 8);
+        if (packed) {
+            return getValueQuick(key, (int) (rowCount - 1));
+        }
+        if (compact) {
+            return getLong(kData, rowBlockOffset + 8 * (rowCount - 1));
+        }
         int cellIndex = (int) ((rowCount - 1) % rowBlockLen);
         return getLong(rData, rowBlockOffset - rowBlockSize + 8 * cellIndex);
     }
@@ -304,6 +581,10 @@ public class KVIndex implements Closeable {
         if (keyOffset >= firstEntryOffset + keyBlockSize) {
             return;
         }
+        getValues(keyOffset, values);
+    }
+
+    private void getValues(long keyOffset, DirectLongList values) {
         long address = kData.getAddress(keyOffset, ENTRY_SIZE);
         long rowBlockOffset = Unsafe.getUnsafe().getLong(address);
         long rowCount = Unsafe.getUnsafe().getLong(address + 8);
@@ -311,6 +592,23 @@ public class KVIndex implements Closeable {
         values.reset((int) rowCount);
         values.setPos((int) rowCount);
 
+        if (packed) {
+            for (int f = 0, p = 0; p < rowCount; f++) {
+                int n = decodeFrame(rowBlockOffset, rowCount, f, frameValues, frameWords);
+                for (int i = 0; i < n; i++) {
+                    values.set(p++, frameValues[i]);
+                }
+            }
+            return;
+        }
+
+        if (compact) {
+            for (int i = 0; i < rowCount; i++) {
+                values.set(i, getLong(kData, rowBlockOffset + 8L * i));
+            }
+            return;
+        }
+
         int rowBlockCount = (int) (rowCount / rowBlockLen) + 1;
         int len = (int) (rowCount % rowBlockLen);
         if (len == 0) {
@@ -333,7 +631,37 @@ public class KVIndex implements Closeable {
     }
 
     public IndexCursor cachedCursor(int key) {
-        return this.cachedCursor.setKey(key);
+        if (compact) {
+            return packed ? packedCursor.setKey(key) : compactCursor.setKey(key);
+        }
+        return blockCursor.setKey(key);
+    }
+
+    /**
+     * Cursor over values of key that are within [lo, hi] range. As with #cachedCursor values are returned
+     * newest first. Range boundaries are found by binary search, so cost of this cursor does not depend on
+     * number of values outside of range. Same cursor instance is reused between calls.
+     *
+     * @param key key value
+     * @param lo  smallest value to return
+     * @param hi  largest value to return
+     * @return cursor
+     */
+    public RangeCursor cursor(int key, long lo, long hi) {
+        return rangeCursor.setKey(key, lo, hi, false);
+    }
+
+    /**
+     * Same as #cursor(int, long, long) except that values are returned in order they were added, which
+     * for row IDs is time order.
+     *
+     * @param key key value
+     * @param lo  smallest value to return
+     * @param hi  largest value to return
+     * @return cursor
+     */
+    public RangeCursor forwardCursor(int key, long lo, long hi) {
+        return rangeCursor.setKey(key, lo, hi, true);
     }
 
     /**
@@ -350,7 +678,9 @@ public class KVIndex implements Closeable {
      * Closes underlying files.
      */
     public void close() {
-        rData.close();
+        if (rData != null) {
+            rData.close();
+        }
         kData.close();
     }
 
@@ -362,10 +692,18 @@ public class KVIndex implements Closeable {
      */
     public void compact() throws JournalException {
         kData.compact();
-        rData.compact();
+        if (rData != null) {
+            rData.compact();
+        }
     }
 
     public void truncate(long size) {
+        if (compact) {
+            if (size >= maxValue) {
+                return;
+            }
+            unseal();
+        }
         long offset = firstEntryOffset;
         long sz = 0;
         while (offset < firstEntryOffset + keyBlockSize) {
@@ -415,6 +753,154 @@ public class KVIndex implements Closeable {
         commit();
     }
 
+    /**
+     * Converts sealed index back to block layout, so that values can be added to it. Contents of compact
+     * key file are buffered in memory and written back as if values were added in original order.
+     */
+    private void unseal() {
+        long keyCount = keyBlockSize / ENTRY_SIZE;
+        long rowCount = 0;
+        for (long i = 0; i < keyCount; i++) {
+            rowCount += getLong(kData, firstEntryOffset + i * ENTRY_SIZE + 8);
+        }
+
+        try (DirectLongList counts = new DirectLongList(keyCount);
+             DirectLongList values = new DirectLongList(rowCount);
+             DirectLongList keyValues = new DirectLongList()) {
+            for (long i = 0; i < keyCount; i++) {
+                long count = getLong(kData, firstEntryOffset + i * ENTRY_SIZE + 8);
+                counts.add(count);
+                if (count > 0) {
+                    getValues(firstEntryOffset + i * ENTRY_SIZE, keyValues);
+                    values.add(keyValues);
+                }
+            }
+
+            this.rData = new MappedFileImpl(new File(baseName.getParentFile(), baseName.getName() + ".r"), ByteBuffers.getBitHint(rowBlockSize, bitHint), mode);
+            rData.setAppendOffset(0);
+
+            // key entries are not initialised when added, clear compact layout out of their way
+            for (long offset = 32, hi = kData.getAppendOffset(); offset < hi; offset += 8) {
+                putLong(kData, offset, 0);
+            }
+
+            this.compact = false;
+            this.packed = false;
+            this.keyBlockSizeOffset = 16;
+            this.keyBlockSize = 0;
+            this.maxValue = 0;
+            this.firstEntryOffset = keyBlockSizeOffset + 16;
+            putLong(kData, 0, this.rowBlockLen);
+            putLong(kData, keyBlockAddressOffset, keyBlockSizeOffset);
+            putLong(kData, keyBlockSizeOffset, keyBlockSize);
+            putLong(kData, keyBlockSizeOffset + 8, maxValue);
+            kData.setAppendOffset(8 + 8 + 8 + 8);
+
+            long p = 0;
+            for (long i = 0; i < keyCount; i++) {
+                for (long k = 0, n = counts.get(i); k < n; k++) {
+                    add((int) (i - 1), values.get(p++));
+                }
+            }
+            commit();
+        } catch (JournalException e) {
+            throw new JournalRuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes row IDs of key as skip table followed by packed frames.
+     *
+     * @return offset of first byte after written frames.
+     */
+    private long writeFrames(MappedFileImpl dst, long offset, DirectLongList values, long count) {
+        int frameCount = (int) ((count + PackedFrames.FRAME_LEN - 1) >>> PackedFrames.FRAME_BITS);
+        long frameOffset = offset + frameCount * 16L;
+        for (int f = 0; f < frameCount; f++) {
+            long lo = (long) f << PackedFrames.FRAME_BITS;
+            int n = (int) Math.min(PackedFrames.FRAME_LEN, count - lo);
+            for (int i = 0; i < n; i++) {
+                frameValues[i] = values.get(lo + i);
+            }
+            int width = PackedFrames.width(frameValues, n);
+            int wordCount = PackedFrames.wordCount(n, width);
+            PackedFrames.pack(frameValues, n, width, frameWords);
+
+            putLong(dst, offset + f * 16L, frameValues[0]);
+            putLong(dst, offset + f * 16L + 8, frameOffset);
+            putLong(dst, frameOffset, width);
+            copyLongs(frameWords, dst, frameOffset + 8, wordCount);
+            frameOffset += 8 + wordCount * 8L;
+        }
+        return frameOffset;
+    }
+
+    /**
+     * Decodes frame of packed row IDs.
+     *
+     * @param offset offset of key's skip table.
+     * @param count  number of row IDs of key.
+     * @param frame  index of frame to decode.
+     * @return number of values in frame.
+     */
+    private int decodeFrame(long offset, long count, int frame, long values[], long words[]) {
+        long skipOffset = offset + frame * 16L;
+        long frameOffset = getLong(kData, skipOffset + 8);
+        int n = (int) Math.min(PackedFrames.FRAME_LEN, count - ((long) frame << PackedFrames.FRAME_BITS));
+        int width = (int) getLong(kData, frameOffset);
+        copyLongs(kData, frameOffset + 8, words, PackedFrames.wordCount(n, width));
+        PackedFrames.unpack(getLong(kData, skipOffset), words, width, n, values);
+        return n;
+    }
+
+    /**
+     * Copies row block to end of given row file.
+     *
+     * @return offset of copy.
+     */
+    private long copyBlock(long rowBlockOffset, MappedFileImpl to) {
+        long offset = to.getAppendOffset() + rowBlockSize;
+        to.setAppendOffset(offset);
+
+        long srcOffset = rowBlockOffset - rowBlockSize;
+        long dstOffset = offset - rowBlockSize;
+        int size = rowBlockSize;
+        while (size > 0) {
+            long src = rData.getAddress(srcOffset, 1);
+            int srcLen = rData.getAddressSize(srcOffset);
+
+            long dst = to.getAddress(dstOffset, 1);
+            int dstLen = to.getAddressSize(dstOffset);
+
+            int len = Math.min(size, Math.min(srcLen, dstLen));
+            Unsafe.getUnsafe().copyMemory(src, dst, len);
+            size -= len;
+            srcOffset += len;
+            dstOffset += len;
+        }
+        return offset;
+    }
+
+    private void copyLongs(MappedFileImpl storage, long offset, long dst[], int count) {
+        long len = count * 8L;
+        for (long p = 0; p < len; ) {
+            long address = storage.getAddress(offset + p, 8);
+            long l = Math.min(storage.getAddressSize(offset + p), len - p);
+            Unsafe.getUnsafe().copyMemory(null, address, dst, Unsafe.getLongArrayOffset() + p, l);
+            p += l;
+        }
+    }
+
+    private void copyLongs(long src[], MappedFileImpl storage, long offset, int count) {
+        long len = count * 8L;
+        for (long p = 0; p < len; ) {
+            long address = storage.getAddress(offset + p, 8);
+            long l = Math.min(storage.getAddressSize(offset + p), len - p);
+            Unsafe.getUnsafe().copyMemory(src, Unsafe.getLongArrayOffset() + p, null, address, l);
+            p += l;
+        }
+    }
+
     private long getLong(MappedFileImpl storage, long offset) {
         return Unsafe.getUnsafe().getLong(storage.getAddress(offset, 8));
     }
@@ -463,14 +949,346 @@ public class KVIndex implements Closeable {
         return kData.getAddress(keyOffset, ENTRY_SIZE);
     }
 
-    public class IndexCursor implements Cursor {
+    public interface IndexCursor extends Cursor {
+        long size();
+
+        /**
+         * Skips row IDs greater than rowID, so that #next returns largest remaining row ID that is less than
+         * or equal to rowID. Cursor never moves back to row IDs it has skipped.
+         *
+         * @param rowID row ID to seek to.
+         */
+        void seek(long rowID);
+    }
+
+    private class CompactCursor implements IndexCursor {
+        private long offset;
+        private long remainingRowCount;
+        private long size;
+        // row IDs between lo and address are mapped
+        private long address;
+        private long lo;
+
+        public CompactCursor setKey(int key) {
+            this.remainingRowCount = 0;
+            this.size = 0;
+
+            if (key < 0) {
+                return this;
+            }
+
+            long keyOffset = getKeyOffset(key);
+            if (keyOffset >= firstEntryOffset + keyBlockSize) {
+                return this;
+            }
+
+            long addr = kData.getAddress(keyOffset, ENTRY_SIZE);
+            this.offset = Unsafe.getUnsafe().getLong(addr);
+            this.size = this.remainingRowCount = Unsafe.getUnsafe().getLong(addr + 8);
+            this.address = this.lo = 0;
+            return this;
+        }
+
+        public boolean hasNext() {
+            return remainingRowCount > 0;
+        }
+
+        public void seek(long rowID) {
+            long l = 0;
+            long h = remainingRowCount;
+            while (l < h) {
+                long mid = (l + h) >>> 1;
+                if (getLong(kData, offset + mid * 8) <= rowID) {
+                    l = mid + 1;
+                } else {
+                    h = mid;
+                }
+            }
+            remainingRowCount = l;
+            address = lo = 0;
+        }
+
+        public long next() {
+            if (address == lo) {
+                long hi = offset + remainingRowCount * 8;
+                long pageLo = ((hi - 1) >>> kDataBitHint) << kDataBitHint;
+                long chunkLo = pageLo > offset ? pageLo : offset;
+                this.lo = kData.getAddress(chunkLo, (int) (hi - chunkLo));
+                this.address = lo + hi - chunkLo;
+            }
+            remainingRowCount--;
+            return Unsafe.getUnsafe().getLong(address -= 8);
+        }
+
+        public long size() {
+            return size;
+        }
+    }
+
+    public class RangeCursor implements Cursor {
+        private final long values[] = new long[PackedFrames.FRAME_LEN];
+        private final long words[] = new long[PackedFrames.FRAME_LEN];
+        // offsets of row blocks within range, oldest first
+        private long blocks[] = new long[16];
+        private int firstBlock;
+        private int currentBlock;
+        private long blockAddress;
+        private int decodedFrame;
+        private long offset;
+        private long count;
+        private long pos;
+        private long end;
+        private boolean forward;
+
+        public boolean hasNext() {
+            return pos < end;
+        }
+
+        public long next() {
+            return forward ? valueAt(pos++) : valueAt(--end);
+        }
+
+        /**
+         * @return number of values within range
+         */
+        public long size() {
+            return pos < end ? end - pos : 0;
+        }
+
+        private RangeCursor setKey(int key, long lo, long hi, boolean forward) {
+            this.pos = this.end = 0;
+            this.forward = forward;
+
+            if (key < 0 || lo > hi) {
+                return this;
+            }
+
+            long keyOffset = getKeyOffset(key);
+            if (keyOffset >= firstEntryOffset + keyBlockSize) {
+                return this;
+            }
+
+            long addr = kData.getAddress(keyOffset, ENTRY_SIZE);
+            this.offset = Unsafe.getUnsafe().getLong(addr);
+            this.count = Unsafe.getUnsafe().getLong(addr + 8);
+            this.currentBlock = -1;
+            this.decodedFrame = -1;
+
+            if (count == 0) {
+                return this;
+            }
+
+            if (packed) {
+                this.pos = lowerBound(lo, frameRangeLo(lo), frameRangeHi(lo));
+                this.end = upperBound(hi, frameRangeLo(hi), frameRangeHi(hi));
+            } else if (compact) {
+                this.pos = lowerBound(lo, 0, count);
+                this.end = upperBound(hi, 0, count);
+            } else {
+                // walk block chain from newest to oldest block, remembering blocks that may hold values within range
+                int blockCount = (int) ((count + rowBlockLen - 1) / rowBlockLen);
+                long rowBlockOffset = this.offset;
+                int n = 0;
+                int b = blockCount - 1;
+                int lastBlock = -1;
+                while (b >= 0) {
+                    long first = getLong(rData, rowBlockOffset - rowBlockSize);
+                    if (first <= hi) {
+                        if (n == blocks.length) {
+                            blocks = Arrays.copyOf(blocks, n * 2);
+                        }
+                        blocks[n++] = rowBlockOffset;
+                        if (lastBlock == -1) {
+                            lastBlock = b;
+                        }
+                    }
+                    if (first <= lo || b == 0) {
+                        break;
+                    }
+                    rowBlockOffset = getLong(rData, rowBlockOffset - 8);
+                    b--;
+                }
+
+                if (n == 0) {
+                    return this;
+                }
+
+                // oldest block first
+                for (int i = 0, j = n - 1; i < j; i++, j--) {
+                    long t = blocks[i];
+                    blocks[i] = blocks[j];
+                    blocks[j] = t;
+                }
+                this.firstBlock = b;
+                this.pos = lowerBound(lo, (long) b * rowBlockLen, Math.min(count, (long) (b + 1) * rowBlockLen));
+                this.end = upperBound(hi, (long) lastBlock * rowBlockLen, Math.min(count, (long) (lastBlock + 1) * rowBlockLen));
+            }
+            return this;
+        }
+
+        // first value index of frame that starts at or before value
+        private long frameRangeLo(long value) {
+            int l = 0;
+            int h = (int) ((count + PackedFrames.FRAME_LEN - 1) >>> PackedFrames.FRAME_BITS);
+            while (l < h) {
+                int mid = (l + h) >>> 1;
+                if (getLong(kData, offset + mid * 16L) <= value) {
+                    l = mid + 1;
+                } else {
+                    h = mid;
+                }
+            }
+            return l == 0 ? 0 : (long) (l - 1) << PackedFrames.FRAME_BITS;
+        }
+
+        private long frameRangeHi(long value) {
+            return Math.min(count, frameRangeLo(value) + PackedFrames.FRAME_LEN);
+        }
+
+        // index of first value in [l, h) that is not less than value, h if there is no such value
+        private long lowerBound(long value, long l, long h) {
+            while (l < h) {
+                long mid = (l + h) >>> 1;
+                if (valueAt(mid) < value) {
+                    l = mid + 1;
+                } else {
+                    h = mid;
+                }
+            }
+            return l;
+        }
+
+        // index of first value in [l, h) that is greater than value, h if there is no such value
+        private long upperBound(long value, long l, long h) {
+            while (l < h) {
+                long mid = (l + h) >>> 1;
+                if (valueAt(mid) <= value) {
+                    l = mid + 1;
+                } else {
+                    h = mid;
+                }
+            }
+            return l;
+        }
+
+        private long valueAt(long i) {
+            if (packed) {
+                int frame = (int) (i >>> PackedFrames.FRAME_BITS);
+                if (frame != decodedFrame) {
+                    decodeFrame(offset, count, frame, values, words);
+                    decodedFrame = frame;
+                }
+                return values[(int) (i & (PackedFrames.FRAME_LEN - 1))];
+            }
+
+            if (compact) {
+                return getLong(kData, offset + i * 8);
+            }
+
+            int block = (int) (i / rowBlockLen);
+            if (block != currentBlock) {
+                blockAddress = rData.getAddress(blocks[block - firstBlock] - rowBlockSize, rowBlockSize);
+                currentBlock = block;
+            }
+            return Unsafe.getUnsafe().getLong(blockAddress + (i - (long) block * rowBlockLen) * 8);
+        }
+    }
+
+    private class PackedCursor implements IndexCursor {
+        private final long values[] = new long[PackedFrames.FRAME_LEN];
+        private final long words[] = new long[PackedFrames.FRAME_LEN];
+        private long offset;
+        private long size;
+        // frames below this one are yet to be decoded
+        private int frame;
+        // remaining values of decoded frame
+        private int pos;
+
+        public PackedCursor setKey(int key) {
+            this.size = 0;
+            this.frame = 0;
+            this.pos = 0;
+
+            if (key < 0) {
+                return this;
+            }
+
+            long keyOffset = getKeyOffset(key);
+            if (keyOffset >= firstEntryOffset + keyBlockSize) {
+                return this;
+            }
+
+            long addr = kData.getAddress(keyOffset, ENTRY_SIZE);
+            this.offset = Unsafe.getUnsafe().getLong(addr);
+            this.size = Unsafe.getUnsafe().getLong(addr + 8);
+            this.frame = (int) ((size + PackedFrames.FRAME_LEN - 1) >>> PackedFrames.FRAME_BITS);
+            return this;
+        }
+
+        public boolean hasNext() {
+            return pos > 0 || frame > 0;
+        }
+
+        public long next() {
+            if (pos == 0) {
+                pos = decodeFrame(offset, size, --frame, values, words);
+            }
+            return values[--pos];
+        }
+
+        public void seek(long rowID) {
+            if (pos > 0 && values[0] <= rowID) {
+                pos = upperBound(pos, rowID);
+                return;
+            }
+
+            // last frame starting at or before rowID
+            int l = 0;
+            int h = frame;
+            while (l < h) {
+                int mid = (l + h) >>> 1;
+                if (getLong(kData, offset + mid * 16L) <= rowID) {
+                    l = mid + 1;
+                } else {
+                    h = mid;
+                }
+            }
+
+            if (l == 0) {
+                frame = pos = 0;
+            } else {
+                frame = l - 1;
+                pos = upperBound(decodeFrame(offset, size, frame, values, words), rowID);
+            }
+        }
+
+        public long size() {
+            return size;
+        }
+
+        private int upperBound(int n, long rowID) {
+            int l = 0;
+            int h = n;
+            while (l < h) {
+                int mid = (l + h) >>> 1;
+                if (values[mid] <= rowID) {
+                    l = mid + 1;
+                } else {
+                    h = mid;
+                }
+            }
+            return l;
+        }
+    }
+
+    private class BlockCursor implements IndexCursor {
         private int remainingBlockCount;
         private int remainingRowCount;
         private long rowBlockOffset;
         private long size;
         private long address;
 
-        public IndexCursor setKey(int key) {
+        public BlockCursor setKey(int key) {
             this.remainingBlockCount = 0;
             this.remainingRowCount = 0;
 
@@ -519,6 +1337,32 @@ public class KVIndex implements Closeable {
             }
         }
 
+        public void seek(long rowID) {
+            if (!hasNext()) {
+                return;
+            }
+
+            // step back to block that starts at or before rowID
+            while (remainingBlockCount > 0 && (remainingRowCount == 0 || Unsafe.getUnsafe().getLong(address) > rowID)) {
+                remainingBlockCount--;
+                this.rowBlockOffset = Unsafe.getUnsafe().getLong(address + rowBlockLen * 8);
+                this.address = rData.getAddress(rowBlockOffset - rowBlockSize, rowBlockSize);
+                this.remainingRowCount = rowBlockLen;
+            }
+
+            int l = 0;
+            int h = remainingRowCount;
+            while (l < h) {
+                int mid = (l + h) >>> 1;
+                if (Unsafe.getUnsafe().getLong(address + mid * 8) <= rowID) {
+                    l = mid + 1;
+                } else {
+                    h = mid;
+                }
+            }
+            remainingRowCount = l;
+        }
+
         public long size() {
             return size;
         }
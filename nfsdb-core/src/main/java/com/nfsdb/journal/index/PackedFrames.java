@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal.index;
+
+/**
+ * Bit-packs frames of ascending row IDs. Frame is stored as differences between adjacent values, each using
+ * same number of bits, which is enough to fit the largest difference in frame. First value of frame is not
+ * packed, it is kept in skip table of key instead.
+ */
+final class PackedFrames {
+    static final int FRAME_LEN = 128;
+    static final int FRAME_BITS = 7;
+
+    private PackedFrames() {
+    }
+
+    /**
+     * @param values frame values in ascending order.
+     * @param n      number of values in frame.
+     * @return number of bits required to store difference between adjacent values.
+     */
+    static int width(long values[], int n) {
+        long max = 0;
+        for (int i = 1; i < n; i++) {
+            max |= values[i] - values[i - 1];
+        }
+        return 64 - Long.numberOfLeadingZeros(max);
+    }
+
+    static int wordCount(int n, int width) {
+        return (int) (((long) (n - 1) * width + 63) >>> 6);
+    }
+
+    static void pack(long values[], int n, int width, long words[]) {
+        for (int i = 0, c = wordCount(n, width); i < c; i++) {
+            words[i] = 0;
+        }
+        long bit = 0;
+        for (int i = 1; i < n; i++, bit += width) {
+            long delta = values[i] - values[i - 1];
+            int word = (int) (bit >>> 6);
+            int shift = (int) (bit & 63);
+            words[word] |= delta << shift;
+            if (shift + width > 64) {
+                words[word + 1] |= delta >>> (64 - shift);
+            }
+        }
+    }
+
+    static void unpack(long first, long words[], int width, int n, long values[]) {
+        long mask = width == 64 ? -1L : (1L << width) - 1;
+        long bit = 0;
+        values[0] = first;
+        for (int i = 1; i < n; i++, bit += width) {
+            int word = (int) (bit >>> 6);
+            int shift = (int) (bit & 63);
+            long delta = words[word] >>> shift;
+            if (shift + width > 64) {
+                delta |= words[word + 1] << (64 - shift);
+            }
+            values[i] = values[i - 1] + (delta & mask);
+        }
+    }
+}
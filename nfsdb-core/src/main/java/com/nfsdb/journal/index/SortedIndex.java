@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal.index;
+
+import com.nfsdb.journal.JournalMode;
+import com.nfsdb.journal.column.ColumnType;
+import com.nfsdb.journal.column.FixedColumn;
+import com.nfsdb.journal.column.MappedFileImpl;
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.exceptions.JournalRuntimeException;
+import com.nfsdb.journal.utils.ByteBuffers;
+import com.nfsdb.journal.utils.Files;
+import com.nfsdb.journal.utils.Unsafe;
+
+import java.io.Closeable;
+import java.io.File;
+
+/**
+ * Index of numeric column that keeps (value, row ID) pairs sorted by value, so that range predicate is answered
+ * by two binary searches. Index is written in one go, normally when partition is sealed, and covers rows
+ * [0, size()). Rows appended after index was written are not in index and have to be scanned.
+ * <p/>
+ * Values are stored as longs that order the same way as column values, see #toKey(double).
+ */
+public class SortedIndex implements Closeable {
+
+    /*
+        struct sdata {
+           long rowCount
+           struct entry {
+                long key
+                long rowID
+           } [rowCount]
+        }
+
+        entries are ordered by key and then by row ID.
+    */
+
+    private static final int ENTRY_SIZE = 16;
+    private final MappedFileImpl data;
+    private final long size;
+
+    public SortedIndex(File base, int recordCountHint) throws JournalException {
+        this.data = new MappedFileImpl(file(base), bitHint(recordCountHint), JournalMode.READ);
+        this.size = getLong(0);
+    }
+
+    public static boolean exists(File base) {
+        return file(base).exists();
+    }
+
+    public static void delete(File base) {
+        Files.delete(file(base));
+    }
+
+    /**
+     * Writes index of first rowCount rows of column. New file replaces existing one only once it is complete,
+     * indexes that are open keep reading their original file until they are closed.
+     *
+     * @param base            base name of index.
+     * @param column          INT, LONG, DOUBLE or DATE column.
+     * @param type            type of column.
+     * @param rowCount        number of rows to index.
+     * @param recordCountHint record count hint of journal.
+     * @throws JournalException if index cannot be written.
+     */
+    public static void write(File base, FixedColumn column, ColumnType type, long rowCount, int recordCountHint) throws JournalException {
+        if (rowCount > Integer.MAX_VALUE) {
+            throw new JournalException("Too many rows to sort: %d", rowCount);
+        }
+
+        int n = (int) rowCount;
+        long keys[] = new long[n];
+        long rows[] = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = toKey(column, type, i);
+            rows[i] = i;
+        }
+        sort(keys, rows, 0, n - 1);
+
+        File tmp = new File(base.getParentFile(), base.getName() + ".s.tmp");
+        Files.delete(tmp);
+        MappedFileImpl dst = new MappedFileImpl(tmp, bitHint(recordCountHint), JournalMode.APPEND);
+        try {
+            putLong(dst, 0, n);
+            for (int i = 0; i < n; i++) {
+                putLong(dst, 8 + (long) i * ENTRY_SIZE, keys[i]);
+                putLong(dst, 16 + (long) i * ENTRY_SIZE, rows[i]);
+            }
+            dst.setAppendOffset(8 + (long) n * ENTRY_SIZE);
+            dst.force();
+            dst.compact();
+        } finally {
+            dst.close();
+        }
+
+        File to = file(base);
+        if (!tmp.renameTo(to)) {
+            throw new JournalException("Cannot rename %s to %s", tmp, to);
+        }
+    }
+
+    public static long toKey(FixedColumn column, ColumnType type, long localRowID) {
+        switch (type) {
+            case INT:
+                return column.getInt(localRowID);
+            case LONG:
+            case DATE:
+                return column.getLong(localRowID);
+            case DOUBLE:
+                return toKey(column.getDouble(localRowID));
+            default:
+                throw new JournalRuntimeException("Unsupported column type: %s", type);
+        }
+    }
+
+    /**
+     * Maps double onto long such that keys compare as their doubles do. Negative zero sorts before
+     * positive zero and NaN after positive infinity.
+     *
+     * @param value double value.
+     * @return sortable key.
+     */
+    public static long toKey(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits < 0 ? bits ^ Long.MAX_VALUE : bits;
+    }
+
+    /**
+     * Converts lower bound of range into key of column type. Fractional bound of INT or LONG column is rounded up.
+     *
+     * @param type  column type.
+     * @param value inclusive lower bound.
+     * @return inclusive lower bound key.
+     */
+    public static long lowerKey(ColumnType type, double value) {
+        return type == ColumnType.DOUBLE ? toKey(value) : (long) Math.ceil(value);
+    }
+
+    /**
+     * Converts upper bound of range into key of column type. Fractional bound of INT or LONG column is rounded down.
+     *
+     * @param type  column type.
+     * @param value inclusive upper bound.
+     * @return inclusive upper bound key.
+     */
+    public static long upperKey(ColumnType type, double value) {
+        return type == ColumnType.DOUBLE ? toKey(value) : (long) Math.floor(value);
+    }
+
+    public static long toKey(ColumnType type, long value) {
+        return type == ColumnType.DOUBLE ? toKey((double) value) : value;
+    }
+
+    /**
+     * @return number of rows in index, which are rows [0, size()) of partition.
+     */
+    public long size() {
+        return size;
+    }
+
+    public long getKey(long index) {
+        return getLong(8 + index * ENTRY_SIZE);
+    }
+
+    public long getRowID(long index) {
+        return getLong(16 + index * ENTRY_SIZE);
+    }
+
+    /**
+     * @param key key to search for.
+     * @return position of first entry with key not less than given key, or size() when there is none.
+     */
+    public long lowerBound(long key) {
+        long lo = 0;
+        long hi = size;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (getKey(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @param key key to search for.
+     * @return position of first entry with key greater than given key, or size() when there is none.
+     */
+    public long upperBound(long key) {
+        long lo = 0;
+        long hi = size;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (getKey(mid) <= key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    @Override
+    public void close() {
+        data.close();
+    }
+
+    @Override
+    public String toString() {
+        return "SortedIndex{" +
+                "file=" + data +
+                ", size=" + size +
+                '}';
+    }
+
+    private static File file(File base) {
+        return new File(base.getParentFile(), base.getName() + ".s");
+    }
+
+    private static int bitHint(int recordCountHint) {
+        return ByteBuffers.getBitHint(ENTRY_SIZE, Math.max(recordCountHint, 1024));
+    }
+
+    private static void putLong(MappedFileImpl file, long offset, long value) {
+        Unsafe.getUnsafe().putLong(file.getAddress(offset, 8), value);
+    }
+
+    private static void sort(long keys[], long rows[], int lo, int hi) {
+        while (hi - lo > 16) {
+            int mid = (lo + hi) >>> 1;
+            long pivotKey = keys[mid];
+            long pivotRow = rows[mid];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (keys[i] < pivotKey || (keys[i] == pivotKey && rows[i] < pivotRow)) {
+                    i++;
+                }
+                while (keys[j] > pivotKey || (keys[j] == pivotKey && rows[j] > pivotRow)) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, rows, i++, j--);
+                }
+            }
+            // recurse into smaller half to keep stack shallow
+            if (j - lo < hi - i) {
+                sort(keys, rows, lo, j);
+                lo = i;
+            } else {
+                sort(keys, rows, i, hi);
+                hi = j;
+            }
+        }
+
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int k = i; k > lo && (keys[k - 1] > keys[k] || (keys[k - 1] == keys[k] && rows[k - 1] > rows[k])); k--) {
+                swap(keys, rows, k, k - 1);
+            }
+        }
+    }
+
+    private static void swap(long keys[], long rows[], int a, int b) {
+        long k = keys[a];
+        keys[a] = keys[b];
+        keys[b] = k;
+        long r = rows[a];
+        rows[a] = rows[b];
+        rows[b] = r;
+    }
+
+    private long getLong(long offset) {
+        return Unsafe.getUnsafe().getLong(data.getAddress(offset, 8));
+    }
+}
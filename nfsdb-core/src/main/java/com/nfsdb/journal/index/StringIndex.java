@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal.index;
+
+import com.nfsdb.journal.JournalMode;
+import com.nfsdb.journal.column.MappedFile;
+import com.nfsdb.journal.column.MappedFileImpl;
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.utils.ByteBuffers;
+import com.nfsdb.journal.utils.Files;
+import com.nfsdb.journal.utils.Unsafe;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.List;
+
+/**
+ * Equality index of string column. Index is an open addressing hash table of (64-bit hash, row ID) pairs with
+ * linear probing, so that lookup reads one or two pages of index and only those rows of column whose hash
+ * matches in full. Table is at most half full, when it fills up it is rehashed into table of twice the capacity
+ * appended to same file.
+ * <p/>
+ * Writer adds entries into live table in place. Entry becomes visible once its row ID is set, readers
+ * that see entry of row past their transaction have to skip it, same as with BitmapIndex. Entries of rows
+ * that have been rolled back without truncate can remain in table, so rows have to be verified against column
+ * value anyway.
+ */
+public class StringIndex implements Closeable {
+
+    /*
+        struct hdata {
+           long txOffset
+           struct table {
+                struct slot {
+                     long hash
+                     long rowID + 1     // 0 is empty slot
+                } [capacity]
+           }
+           struct tx {
+                long rowCount
+                long tableOffset
+                long capacity
+                long entryCount
+           }
+        }
+
+        tables and tx records are appended, only table of last tx is live.
+    */
+
+    private static final long TX_ADDRESS_OFFSET = 0;
+    private static final int SLOT_SIZE = 16;
+    private static final int MIN_CAPACITY = 1024;
+    private final MappedFileImpl data;
+    private final int initialCapacity;
+    private final IndexCursor cursor = new IndexCursor();
+    private long rowCount;
+    private long tableOffset;
+    private long capacity;
+    private long mask;
+    private long entryCount;
+    private boolean inTransaction = false;
+
+    public StringIndex(File base, int recordCountHint, JournalMode mode) throws JournalException {
+        this.initialCapacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.min(recordCountHint, 1 << 20)) * 2);
+        this.data = new MappedFileImpl(file(base), ByteBuffers.getBitHint(SLOT_SIZE, initialCapacity), mode);
+
+        if (data.getAppendOffset() > 0) {
+            refresh();
+        } else if (mode == JournalMode.APPEND || mode == JournalMode.BULK_APPEND) {
+            putLong(TX_ADDRESS_OFFSET, 0);
+            data.setAppendOffset(TX_ADDRESS_OFFSET + 8);
+        }
+    }
+
+    public static void delete(File base) {
+        Files.delete(file(base));
+    }
+
+    public void add(long hash, long rowID) {
+        if ((entryCount + 1) * 2 > capacity) {
+            rehash(Math.max(initialCapacity, capacity * 2), Long.MAX_VALUE);
+        }
+        insert(hash, rowID);
+        entryCount++;
+        if (rowID >= rowCount) {
+            rowCount = rowID + 1;
+        }
+        inTransaction = true;
+    }
+
+    public void commit() {
+        if (inTransaction) {
+            long tx = data.getAppendOffset();
+            putLong(tx, rowCount);
+            putLong(tx + 8, tableOffset);
+            putLong(tx + 16, capacity);
+            putLong(tx + 24, entryCount);
+            data.setAppendOffset(tx + 32);
+            putLong(TX_ADDRESS_OFFSET, tx);
+            inTransaction = false;
+        }
+    }
+
+    /**
+     * Re-reads last committed table.
+     */
+    public void refresh() {
+        commit();
+        long tx = data.getAppendOffset() > 0 ? getLong(TX_ADDRESS_OFFSET) : 0;
+        if (tx == 0) {
+            rowCount = 0;
+            tableOffset = 0;
+            capacity = 0;
+            entryCount = 0;
+        } else {
+            rowCount = getLong(tx);
+            tableOffset = getLong(tx + 8);
+            capacity = getLong(tx + 16);
+            entryCount = getLong(tx + 24);
+        }
+        mask = capacity - 1;
+    }
+
+    /**
+     * Removes entries of rows from given row ID onwards and commits. Table is rewritten without them
+     * because entries cannot be removed from probe sequence in place.
+     *
+     * @param size number of rows to keep.
+     */
+    public void truncate(long size) {
+        if (size >= rowCount) {
+            return;
+        }
+        if (capacity > 0) {
+            rehash(capacity, size);
+        }
+        rowCount = size;
+        inTransaction = true;
+        commit();
+    }
+
+    /**
+     * Cursor over row IDs of entries with given hash. Row IDs come in no particular order and belong to rows
+     * that have same hash, not necessarily same value.
+     *
+     * @param hash hash of value, see com.nfsdb.journal.utils.Checksum#hash64(CharSequence)
+     * @return cursor, which is reused by subsequent calls.
+     */
+    public IndexCursor cursor(long hash) {
+        return cursor.setHash(hash);
+    }
+
+    public long size() {
+        return rowCount;
+    }
+
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    public void force() {
+        data.force();
+    }
+
+    public void getMappedFiles(List<MappedFile> files) {
+        files.add(data);
+    }
+
+    public void compact() throws JournalException {
+        data.compact();
+    }
+
+    @Override
+    public void close() {
+        data.close();
+    }
+
+    @Override
+    public String toString() {
+        return "StringIndex{" +
+                "file=" + data +
+                ", rowCount=" + rowCount +
+                ", capacity=" + capacity +
+                ", entryCount=" + entryCount +
+                '}';
+    }
+
+    private static File file(File base) {
+        return new File(base.getParentFile(), base.getName() + ".h");
+    }
+
+    private void insert(long hash, long rowID) {
+        long slot = hash & mask;
+        while (getLong(tableOffset + slot * SLOT_SIZE + 8) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        long address = tableOffset + slot * SLOT_SIZE;
+        putLong(address, hash);
+        // row ID goes last, it is what makes slot visible to readers
+        putLong(address + 8, rowID + 1);
+    }
+
+    /**
+     * Copies entries of rows below rowLimit into new table of given capacity. Old table is left
+     * intact for readers until new one is committed.
+     */
+    private void rehash(long newCapacity, long rowLimit) {
+        long oldOffset = tableOffset;
+        long oldCapacity = capacity;
+
+        tableOffset = data.getAppendOffset();
+        capacity = newCapacity;
+        mask = newCapacity - 1;
+        data.setAppendOffset(tableOffset + newCapacity * SLOT_SIZE);
+        for (long p = tableOffset, hi = tableOffset + newCapacity * SLOT_SIZE; p < hi; p += 8) {
+            putLong(p, 0);
+        }
+
+        entryCount = 0;
+        for (long slot = 0; slot < oldCapacity; slot++) {
+            long address = oldOffset + slot * SLOT_SIZE;
+            long row = getLong(address + 8);
+            if (row != 0 && row - 1 < rowLimit) {
+                insert(getLong(address), row - 1);
+                entryCount++;
+            }
+        }
+        inTransaction = true;
+    }
+
+    private long getLong(long offset) {
+        return Unsafe.getUnsafe().getLong(data.getAddress(offset, 8));
+    }
+
+    private void putLong(long offset, long value) {
+        Unsafe.getUnsafe().putLong(data.getAddress(offset, 8), value);
+    }
+
+    public class IndexCursor implements Cursor {
+        private long hash;
+        private long slot;
+        private long rowID;
+        private long remaining;
+
+        @Override
+        public boolean hasNext() {
+            while (remaining-- > 0) {
+                long address = tableOffset + slot * SLOT_SIZE;
+                slot = (slot + 1) & mask;
+                long row = getLong(address + 8);
+                if (row == 0) {
+                    remaining = 0;
+                    return false;
+                }
+                if (getLong(address) == hash) {
+                    rowID = row - 1;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public long next() {
+            return rowID;
+        }
+
+        IndexCursor setHash(long hash) {
+            this.hash = hash;
+            this.slot = hash & mask;
+            this.remaining = capacity;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal.index;
+
+import java.util.Arrays;
+
+/**
+ * Distinct trigram keys of string. Trigram of three consecutive chars is hashed onto one of KEY_COUNT keys of
+ * KVIndex, so that index of keys lists rows that can contain trigram. Values shorter than three chars have no
+ * trigrams, which is fine as they cannot contain any pattern index is used for.
+ * <p/>
+ * Instance is reused between strings and is not thread-safe.
+ */
+public class Trigrams {
+
+    public static final int KEY_COUNT = 1 << 16;
+    private int keys[] = new int[64];
+    private int size;
+
+    public static int key(char a, char b, char c) {
+        long h = (((long) a) << 32 | ((long) b) << 16 | c) * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 48);
+    }
+
+    /**
+     * Collects sorted distinct keys of all trigrams of value.
+     *
+     * @param value string, can be null.
+     * @return this
+     */
+    public Trigrams of(CharSequence value) {
+        size = 0;
+        if (value == null || value.length() < 3) {
+            return this;
+        }
+
+        int n = value.length() - 2;
+        if (keys.length < n) {
+            keys = new int[Math.max(n, keys.length * 2)];
+        }
+
+        char a = value.charAt(0);
+        char b = value.charAt(1);
+        for (int i = 0; i < n; i++) {
+            char c = value.charAt(i + 2);
+            keys[i] = key(a, b, c);
+            a = b;
+            b = c;
+        }
+
+        Arrays.sort(keys, 0, n);
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || keys[i] != keys[i - 1]) {
+                keys[k++] = keys[i];
+            }
+        }
+        size = k;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int get(int index) {
+        return keys[index];
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal.lang.cst;
+
+/**
+ * Evaluates predicate over partition one chunk of BitmapIndex.CHUNK_ROWS rows at a time. Result is written
+ * into array of BitmapIndex.CHUNK_WORDS longs, where bit n stands for row chunk * CHUNK_ROWS + n. Bits of rows
+ * outside of partition slice are undefined, consumer has to mask them out.
+ */
+public interface BitmapSource {
+    void prepare(PartitionSlice slice);
+
+    void eval(int chunk, long words[]);
+
+    void reset();
+}
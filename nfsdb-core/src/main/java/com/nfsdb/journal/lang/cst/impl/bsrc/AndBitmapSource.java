@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal.lang.cst.impl.bsrc;
+
+import com.nfsdb.journal.index.BitmapIndex;
+import com.nfsdb.journal.lang.cst.BitmapSource;
+import com.nfsdb.journal.lang.cst.PartitionSlice;
+
+/**
+ * Rows that satisfy both sources. Right source is not evaluated for chunks where left one has no rows.
+ */
+public class AndBitmapSource implements BitmapSource {
+
+    private final BitmapSource left;
+    private final BitmapSource right;
+    private final long scratch[] = new long[BitmapIndex.CHUNK_WORDS];
+
+    public AndBitmapSource(BitmapSource left, BitmapSource right) {
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override
+    public void prepare(PartitionSlice slice) {
+        left.prepare(slice);
+        right.prepare(slice);
+    }
+
+    @Override
+    public void eval(int chunk, long words[]) {
+        left.eval(chunk, words);
+        long any = 0;
+        for (int i = 0; i < BitmapIndex.CHUNK_WORDS; i++) {
+            any |= words[i];
+        }
+
+        if (any != 0) {
+            right.eval(chunk, scratch);
+            for (int i = 0; i < BitmapIndex.CHUNK_WORDS; i++) {
+                words[i] &= scratch[i];
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        left.reset();
+        right.reset();
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal.lang.cst.impl.bsrc;
+
+import com.nfsdb.journal.index.BitmapIndex;
+import com.nfsdb.journal.lang.cst.BitmapSource;
+import com.nfsdb.journal.lang.cst.PartitionSlice;
+
+/**
+ * Rows that do not satisfy source.
+ */
+public class NotBitmapSource implements BitmapSource {
+
+    private final BitmapSource source;
+
+    public NotBitmapSource(BitmapSource source) {
+        this.source = source;
+    }
+
+    @Override
+    public void prepare(PartitionSlice slice) {
+        source.prepare(slice);
+    }
+
+    @Override
+    public void eval(int chunk, long words[]) {
+        source.eval(chunk, words);
+        for (int i = 0; i < BitmapIndex.CHUNK_WORDS; i++) {
+            words[i] = ~words[i];
+        }
+    }
+
+    @Override
+    public void reset() {
+        source.reset();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal.lang.cst.impl.bsrc;
+
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.exceptions.JournalRuntimeException;
+import com.nfsdb.journal.index.BitmapIndex;
+import com.nfsdb.journal.lang.cst.BitmapSource;
+import com.nfsdb.journal.lang.cst.KeyCursor;
+import com.nfsdb.journal.lang.cst.KeySource;
+import com.nfsdb.journal.lang.cst.PartitionSlice;
+import com.nfsdb.journal.lang.cst.impl.ref.StringRef;
+
+import java.util.Arrays;
+
+/**
+ * Rows where symbol is equal to any of keys of key source.
+ */
+public class SymbolBitmapSource implements BitmapSource {
+
+    private final StringRef symbol;
+    private final KeySource keySource;
+    private BitmapIndex index;
+    private int keys[] = new int[8];
+    private int keyCount;
+
+    public SymbolBitmapSource(StringRef symbol, KeySource keySource) {
+        this.symbol = symbol;
+        this.keySource = keySource;
+    }
+
+    @Override
+    public void prepare(PartitionSlice slice) {
+        try {
+            this.index = slice.partition.getBitmapIndexForColumn(symbol.value);
+        } catch (JournalException e) {
+            throw new JournalRuntimeException(e);
+        }
+
+        keyCount = 0;
+        KeyCursor cursor = keySource.cursor(slice);
+        while (cursor.hasNext()) {
+            if (keyCount == keys.length) {
+                keys = Arrays.copyOf(keys, keyCount * 2);
+            }
+            keys[keyCount++] = cursor.next();
+        }
+    }
+
+    @Override
+    public void eval(int chunk, long words[]) {
+        Arrays.fill(words, 0);
+        for (int i = 0; i < keyCount; i++) {
+            index.or(keys[i], chunk, words);
+        }
+    }
+
+    @Override
+    public void reset() {
+        keySource.reset();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal.lang.cst.impl.fltr;
+
+import com.nfsdb.journal.Partition;
+import com.nfsdb.journal.column.AbstractColumn;
+import com.nfsdb.journal.column.VariableColumn;
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.exceptions.JournalRuntimeException;
+import com.nfsdb.journal.index.Cursor;
+import com.nfsdb.journal.index.KVIndex;
+import com.nfsdb.journal.index.Trigrams;
+import com.nfsdb.journal.lang.cst.Choice;
+import com.nfsdb.journal.lang.cst.PartitionSlice;
+import com.nfsdb.journal.lang.cst.RowAcceptor;
+import com.nfsdb.journal.lang.cst.RowFilter;
+import com.nfsdb.journal.lang.cst.impl.ref.StringRef;
+
+import java.util.Arrays;
+
+/**
+ * Base of substring filters of string column. When column has trigram index and pattern is at least three chars
+ * long, rows of slice that have all trigrams of pattern are marked in bitmap up front, other rows are skipped
+ * without reading their values. Candidates are then verified against column.
+ */
+abstract class AbstractNgramRowFilter implements RowFilter, RowAcceptor {
+    private final StringRef column;
+    private final StringRef value;
+    // cost of verifying candidate row relative to reading one row ID of index
+    private static final int VERIFY_COST = 16;
+    private final Trigrams trigrams = new Trigrams();
+    private VariableColumn columnRef;
+    private String pattern;
+    private long words[] = new long[0];
+    private long tmp[] = new long[0];
+    private long keys[] = new long[0];
+    private boolean indexed;
+    private long lo;
+    private long hi;
+
+    AbstractNgramRowFilter(StringRef column, StringRef value) {
+        this.column = column;
+        this.value = value;
+    }
+
+    @Override
+    public RowAcceptor acceptor(PartitionSlice a) {
+        try {
+            Partition partition = a.partition.open();
+            int columnIndex = partition.getJournal().getMetadata().getColumnIndex(column.value);
+            AbstractColumn col = partition.getAbstractColumn(columnIndex);
+            if (!(col instanceof VariableColumn)) {
+                throw new JournalRuntimeException("Invalid column type");
+            }
+            columnRef = (VariableColumn) col;
+            pattern = value.value;
+            lo = a.lo;
+            hi = a.calcHi ? partition.size() - 1 : a.hi;
+            indexed = pattern != null
+                    && partition.getJournal().getMetadata().getColumnMetadata(columnIndex).ngramIndexed
+                    && trigrams.of(pattern).size() > 0
+                    && lo <= hi;
+            if (indexed) {
+                mark(partition.getNgramIndexForColumn(columnIndex));
+            }
+            return this;
+        } catch (JournalException e) {
+            throw new JournalRuntimeException(e);
+        }
+    }
+
+    @Override
+    public Choice accept(long localRowID) {
+        if (pattern == null) {
+            return Choice.SKIP;
+        }
+
+        if (indexed && localRowID >= lo && localRowID <= hi) {
+            long bit = localRowID - lo;
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return Choice.SKIP;
+            }
+        }
+        return matches(columnRef, localRowID, pattern) ? Choice.PICK : Choice.SKIP;
+    }
+
+    abstract boolean matches(VariableColumn column, long localRowID, String pattern);
+
+    private void mark(KVIndex index) {
+        int wordCount = (int) ((hi - lo) >>> 6) + 1;
+        if (words.length < wordCount) {
+            words = new long[wordCount];
+            tmp = new long[wordCount];
+        }
+
+        int n = trigrams.size();
+        if (keys.length < n) {
+            keys = new long[n];
+        }
+        // rarest trigrams first, they narrow candidates the most for the least work
+        for (int i = 0; i < n; i++) {
+            keys[i] = ((long) index.getValueCount(trigrams.get(i))) << 32 | trigrams.get(i);
+        }
+        Arrays.sort(keys, 0, n);
+
+        set(index, (int) keys[0], words, wordCount);
+        long candidates = keys[0] >>> 32;
+        for (int i = 1; i < n && candidates > 0; i++) {
+            // once reading row IDs of trigram costs more than verifying candidates, stop narrowing
+            if ((keys[i] >>> 32) > candidates * VERIFY_COST) {
+                break;
+            }
+            set(index, (int) keys[i], tmp, wordCount);
+            candidates = 0;
+            for (int w = 0; w < wordCount; w++) {
+                candidates += Long.bitCount(words[w] &= tmp[w]);
+            }
+        }
+    }
+
+    private void set(KVIndex index, int key, long bits[], int wordCount) {
+        Arrays.fill(bits, 0, wordCount, 0);
+        Cursor cursor = index.cursor(key, lo, hi);
+        while (cursor.hasNext()) {
+            long bit = cursor.next() - lo;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+}
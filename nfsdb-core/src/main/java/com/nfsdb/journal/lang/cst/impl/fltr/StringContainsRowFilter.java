@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal.lang.cst.impl.fltr;
+
+import com.nfsdb.journal.column.VariableColumn;
+import com.nfsdb.journal.lang.cst.impl.ref.StringRef;
+
+/**
+ * Rows where value of string column contains substring. Rows are narrowed down by trigram index of column,
+ * when there is one.
+ */
+public class StringContainsRowFilter extends AbstractNgramRowFilter {
+
+    public StringContainsRowFilter(StringRef column, StringRef value) {
+        super(column, value);
+    }
+
+    @Override
+    boolean matches(VariableColumn column, long localRowID, String pattern) {
+        return column.contains(localRowID, pattern);
+    }
+}
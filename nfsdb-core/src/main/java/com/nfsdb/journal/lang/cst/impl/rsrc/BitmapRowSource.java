@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal.lang.cst.impl.rsrc;
+
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.exceptions.JournalRuntimeException;
+import com.nfsdb.journal.index.BitmapIndex;
+import com.nfsdb.journal.lang.cst.BitmapSource;
+import com.nfsdb.journal.lang.cst.PartitionSlice;
+import com.nfsdb.journal.lang.cst.RowCursor;
+import com.nfsdb.journal.lang.cst.RowSource;
+
+/**
+ * Returns rows of bitmap source in ascending order. Source is evaluated one chunk at a time, so that
+ * combination of predicates costs a few word operations per 64 rows regardless of how many rows match.
+ */
+public class BitmapRowSource implements RowSource, RowCursor {
+
+    private final BitmapSource source;
+    private final long words[] = new long[BitmapIndex.CHUNK_WORDS];
+    private long lo;
+    private long hi;
+    private int chunk;
+    private int hiChunk;
+    private int wordIndex;
+    private long word;
+
+    public BitmapRowSource(BitmapSource source) {
+        this.source = source;
+    }
+
+    @Override
+    public RowCursor cursor(PartitionSlice slice) {
+        try {
+            this.hi = slice.calcHi ? slice.partition.open().size() - 1 : slice.hi;
+        } catch (JournalException e) {
+            throw new JournalRuntimeException(e);
+        }
+        this.lo = slice.lo;
+        source.prepare(slice);
+        this.chunk = (int) (lo >>> BitmapIndex.CHUNK_BITS) - 1;
+        this.hiChunk = hi < lo ? chunk : (int) (hi >>> BitmapIndex.CHUNK_BITS);
+        this.wordIndex = BitmapIndex.CHUNK_WORDS;
+        this.word = 0;
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (word == 0) {
+            if (++wordIndex < BitmapIndex.CHUNK_WORDS) {
+                word = words[wordIndex];
+            } else if (chunk < hiChunk) {
+                evalChunk(++chunk);
+                wordIndex = -1;
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long next() {
+        long rowID = ((long) chunk << BitmapIndex.CHUNK_BITS) + (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+        word &= word - 1;
+        return rowID;
+    }
+
+    @Override
+    public void reset() {
+        source.reset();
+    }
+
+    private void evalChunk(int chunk) {
+        source.eval(chunk, words);
+
+        long first = (long) chunk << BitmapIndex.CHUNK_BITS;
+        if (lo > first) {
+            int n = (int) (lo - first);
+            for (int i = 0; i < n >>> 6; i++) {
+                words[i] = 0;
+            }
+            words[n >>> 6] &= -1L << n;
+        }
+
+        if (hi < first + BitmapIndex.CHUNK_ROWS - 1) {
+            int n = (int) (hi - first);
+            words[n >>> 6] &= -1L >>> (63 - (n & 63));
+            for (int i = (n >>> 6) + 1; i < BitmapIndex.CHUNK_WORDS; i++) {
+                words[i] = 0;
+            }
+        }
+    }
+}
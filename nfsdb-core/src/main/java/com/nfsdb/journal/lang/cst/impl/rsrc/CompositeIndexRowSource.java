@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal.lang.cst.impl.rsrc;
+
+import com.nfsdb.journal.Partition;
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.exceptions.JournalRuntimeException;
+import com.nfsdb.journal.factory.configuration.CompositeIndexMetadata;
+import com.nfsdb.journal.factory.configuration.JournalMetadata;
+import com.nfsdb.journal.index.KVIndex;
+import com.nfsdb.journal.lang.cst.*;
+import com.nfsdb.journal.lang.cst.impl.ref.StringRef;
+
+import java.util.Arrays;
+
+/**
+ * Rows where each of columns has one of keys of its key source. When journal has composite index over some of
+ * columns, combinations of their keys are looked up in that index, otherwise index of first indexed column is used.
+ * Either way rows are checked against all key sources, so hash collisions of composite keys are filtered out.
+ * Rows column index has not caught up with yet are scanned.
+ */
+public class CompositeIndexRowSource implements RowSource, RowCursor {
+
+    private final StringRef columns[];
+    private final KeySource keySources[];
+    private final int columnIndexes[];
+    private final int keys[][];
+    private int lookupKeys[];
+    private int lookupKeyCount;
+    private int lookupKeyIndex;
+    private KVIndex index;
+    private KVIndex.RangeCursor indexCursor;
+    private Partition partition;
+    private long lo;
+    private long hi;
+    private long indexedHi;
+    private long tailRowID;
+    private long nextRowID;
+
+    public CompositeIndexRowSource(StringRef columns[], KeySource keySources[]) {
+        if (columns.length != keySources.length) {
+            throw new JournalRuntimeException("Expected key source for each column: %s", Arrays.toString(columns));
+        }
+        this.columns = columns;
+        this.keySources = keySources;
+        this.columnIndexes = new int[columns.length];
+        this.keys = new int[columns.length][];
+    }
+
+    @Override
+    public RowCursor cursor(PartitionSlice slice) {
+        try {
+            this.partition = slice.partition.open();
+            this.lo = slice.lo;
+            this.hi = slice.calcHi ? partition.size() - 1 : slice.hi;
+
+            JournalMetadata<?> m = partition.getJournal().getMetadata();
+            for (int i = 0; i < columns.length; i++) {
+                columnIndexes[i] = m.getColumnIndex(columns[i].value);
+                keys[i] = keys(keySources[i].cursor(slice), keySources[i].size());
+            }
+
+            int c = m.findCompositeIndex(columnIndexes);
+            if (c == -1) {
+                int col = firstIndexedColumn(m);
+                this.index = partition.getIndexForColumn(columnIndexes[col]);
+                this.lookupKeys = keys[col];
+                this.lookupKeyCount = lookupKeys.length;
+                this.indexedHi = Math.min(hi, partition.getIndexedSize(columnIndexes[col]) - 1);
+            } else {
+                this.index = partition.getCompositeIndex(c);
+                hashKeys(m.getCompositeIndex(c));
+                this.indexedHi = hi;
+            }
+            this.tailRowID = Math.max(lo, indexedHi + 1);
+
+            this.lookupKeyIndex = 0;
+            this.indexCursor = null;
+        } catch (JournalException e) {
+            throw new JournalRuntimeException(e);
+        }
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (true) {
+            if (indexCursor != null) {
+                while (indexCursor.hasNext()) {
+                    long localRowID = indexCursor.next();
+                    if (matches(localRowID)) {
+                        nextRowID = localRowID;
+                        return true;
+                    }
+                }
+            }
+
+            if (lookupKeyIndex == lookupKeyCount) {
+                while (tailRowID <= hi) {
+                    long localRowID = tailRowID++;
+                    if (matches(localRowID)) {
+                        nextRowID = localRowID;
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            int key = lookupKeys[lookupKeyIndex++];
+            indexCursor = index.contains(key) ? index.cursor(key, lo, indexedHi) : null;
+        }
+    }
+
+    @Override
+    public long next() {
+        return nextRowID;
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < keySources.length; i++) {
+            keySources[i].reset();
+        }
+    }
+
+    private boolean matches(long localRowID) {
+        for (int i = 0; i < columnIndexes.length; i++) {
+            if (Arrays.binarySearch(keys[i], partition.getInt(localRowID, columnIndexes[i])) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int firstIndexedColumn(JournalMetadata<?> m) {
+        for (int i = 0; i < columnIndexes.length; i++) {
+            if (m.getColumnMetadata(columnIndexes[i]).indexed) {
+                return i;
+            }
+        }
+        throw new JournalRuntimeException("Neither index nor composite index found for: %s", Arrays.toString(columns));
+    }
+
+    /**
+     * Works out distinct composite index keys for all combinations of column keys.
+     */
+    private void hashKeys(CompositeIndexMetadata composite) {
+        int n = composite.columnIndexes.length;
+        int sources[] = new int[n];
+        int count = 1;
+        for (int i = 0; i < n; i++) {
+            for (int k = 0; k < columnIndexes.length; k++) {
+                if (columnIndexes[k] == composite.columnIndexes[i]) {
+                    sources[i] = k;
+                    break;
+                }
+            }
+            count *= keys[sources[i]].length;
+        }
+
+        if (lookupKeys == null || lookupKeys.length < count) {
+            lookupKeys = new int[count];
+        }
+
+        int positions[] = new int[n];
+        int values[] = new int[n];
+        for (int p = 0; p < count; p++) {
+            for (int i = 0, r = p; i < n; i++) {
+                int len = keys[sources[i]].length;
+                positions[i] = r % len;
+                r /= len;
+                values[i] = keys[sources[i]][positions[i]];
+            }
+            lookupKeys[p] = composite.getKey(values);
+        }
+
+        // distinct hashes, each row is then found once
+        Arrays.sort(lookupKeys, 0, count);
+        int distinct = 0;
+        for (int p = 0; p < count; p++) {
+            if (distinct == 0 || lookupKeys[distinct - 1] != lookupKeys[p]) {
+                lookupKeys[distinct++] = lookupKeys[p];
+            }
+        }
+        lookupKeyCount = distinct;
+    }
+
+    private static int[] keys(KeyCursor cursor, int size) {
+        int result[] = new int[size];
+        int n = 0;
+        while (cursor.hasNext()) {
+            if (n == result.length) {
+                result = Arrays.copyOf(result, Math.max(4, n * 2));
+            }
+            result[n++] = cursor.next();
+        }
+        result = n == result.length ? result : Arrays.copyOf(result, n);
+        Arrays.sort(result);
+        return result;
+    }
+}
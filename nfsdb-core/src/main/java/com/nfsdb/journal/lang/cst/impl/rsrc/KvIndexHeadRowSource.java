@@ -16,6 +16,7 @@
 
 package com.nfsdb.journal.lang.cst.impl.rsrc;
 
+import com.nfsdb.journal.Partition;
 import com.nfsdb.journal.exceptions.JournalException;
 import com.nfsdb.journal.exceptions.JournalRuntimeException;
 import com.nfsdb.journal.index.KVIndex;
@@ -37,6 +38,11 @@ public class KvIndexHeadRowSource implements RowSource, RowCursor {
     private KVIndex index;
     private long lo;
     private long hi;
+    private Partition partition;
+    private int columnIndex;
+    // rows past indexed watermark are scanned before index
+    private long tailLo;
+    private long tailRowID;
     private int keyIndex;
     private KVIndex.IndexCursor indexCursor;
     private long localRowID;
@@ -80,6 +86,10 @@ public class KvIndexHeadRowSource implements RowSource, RowCursor {
             this.index = slice.partition.getIndexForColumn(column.value);
             this.lo = slice.lo;
             this.hi = slice.calcHi ? slice.partition.open().size() - 1 : slice.hi;
+            this.partition = slice.partition;
+            this.columnIndex = partition.getJournal().getMetadata().getColumnIndex(column.value);
+            this.tailLo = Math.max(lo, partition.getIndexedSize(columnIndex));
+            this.tailRowID = hi;
             this.keyIndex = 0;
             return this;
         } catch (JournalException e) {
@@ -120,6 +130,19 @@ public class KvIndexHeadRowSource implements RowSource, RowCursor {
     private boolean hasNextKey() {
         while (this.keyIndex < keyCount) {
 
+            // rows appended with indexing deferred are newer than indexed ones
+            while (indexCursor == null && remainingCounts[keyIndex] > 0 && tailRowID >= tailLo) {
+                long r = tailRowID--;
+                if (partition.getIndexKey(r, columnIndex) == remainingKeys[keyIndex] && (rowAcceptor == null || rowAcceptor.accept(r) == Choice.PICK)) {
+                    if (remainingOffsets[keyIndex] == 0) {
+                        remainingCounts[keyIndex]--;
+                        localRowID = r;
+                        return true;
+                    }
+                    remainingOffsets[keyIndex]--;
+                }
+            }
+
             // running first time for keyIndex?
             if (indexCursor == null) {
                 indexCursor = index.cachedCursor(remainingKeys[this.keyIndex]);
@@ -135,6 +158,7 @@ public class KvIndexHeadRowSource implements RowSource, RowCursor {
                     // this is a good rowid
                     if (localRowID <= hi && (rowAcceptor == null || rowAcceptor.accept(localRowID) == Choice.PICK)) {
                         if (o == 0) {
+                            remainingOffsets[keyIndex] = 0;
                             remainingCounts[keyIndex] = cnt - 1;
                             return true;
                         } else {
@@ -149,6 +173,7 @@ public class KvIndexHeadRowSource implements RowSource, RowCursor {
             }
             this.keyIndex++;
             this.indexCursor = null;
+            this.tailRowID = hi;
         }
 
         return false;
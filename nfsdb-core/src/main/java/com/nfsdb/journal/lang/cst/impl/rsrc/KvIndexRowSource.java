@@ -16,6 +16,7 @@
 
 package com.nfsdb.journal.lang.cst.impl.rsrc;
 
+import com.nfsdb.journal.Partition;
 import com.nfsdb.journal.exceptions.JournalException;
 import com.nfsdb.journal.exceptions.JournalRuntimeException;
 import com.nfsdb.journal.index.Cursor;
@@ -32,8 +33,13 @@ public class KvIndexRowSource implements RowSource, RowCursor {
     private KeyCursor keyCursor;
     private long lo;
     private long hi;
-    private boolean full;
-    private long rowid;
+    private Partition partition;
+    private int columnIndex;
+    private int key;
+    // rows past indexed watermark are scanned, newest first as index returns them
+    private long indexedHi;
+    private long tailRowID;
+    private long rowID;
 
     public KvIndexRowSource(StringRef symbol, KeySource keySource) {
         this.symbol = symbol;
@@ -46,9 +52,12 @@ public class KvIndexRowSource implements RowSource, RowCursor {
             this.index = slice.partition.getIndexForColumn(symbol.value);
             this.keyCursor = this.keySource.cursor(slice);
             this.indexCursor = null;
-            this.full = slice.lo == 0 && slice.calcHi;
             this.lo = slice.lo;
             this.hi = slice.calcHi ? slice.partition.open().size() - 1 : slice.hi;
+            this.partition = slice.partition;
+            this.columnIndex = partition.getJournal().getMetadata().getColumnIndex(symbol.value);
+            this.indexedHi = Math.min(hi, partition.getIndexedSize(columnIndex) - 1);
+            this.tailRowID = hi;
         } catch (JournalException e) {
             throw new JournalRuntimeException(e);
         }
@@ -63,26 +72,28 @@ public class KvIndexRowSource implements RowSource, RowCursor {
         }
 
         if (indexCursor == null) {
-            this.indexCursor = index.cachedCursor(keyCursor.next());
+            this.key = keyCursor.next();
+            this.indexCursor = index.cursor(key, lo, indexedHi);
         }
 
-        if (full) {
-            return indexCursor.hasNext();
-        } else {
-            while (indexCursor.hasNext()) {
-                long rowid = indexCursor.next();
-                if (rowid >= lo && rowid <= hi) {
-                    this.rowid = rowid;
-                    return true;
-                }
+        while (tailRowID > indexedHi && tailRowID >= lo) {
+            long localRowID = tailRowID--;
+            if (partition.getIndexKey(localRowID, columnIndex) == key) {
+                rowID = localRowID;
+                return true;
             }
-            return false;
         }
+
+        if (indexCursor.hasNext()) {
+            rowID = indexCursor.next();
+            return true;
+        }
+        return false;
     }
 
     @Override
     public long next() {
-        return full ? indexCursor.next() : this.rowid;
+        return rowID;
     }
 
     @Override
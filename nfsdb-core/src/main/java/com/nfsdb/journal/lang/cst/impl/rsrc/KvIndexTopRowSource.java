@@ -16,6 +16,7 @@
 
 package com.nfsdb.journal.lang.cst.impl.rsrc;
 
+import com.nfsdb.journal.Partition;
 import com.nfsdb.journal.exceptions.JournalException;
 import com.nfsdb.journal.exceptions.JournalRuntimeException;
 import com.nfsdb.journal.index.KVIndex;
@@ -32,6 +33,9 @@ public class KvIndexTopRowSource implements RowSource, RowCursor {
     private KeyCursor keyCursor;
     private long lo;
     private long hi;
+    private Partition partition;
+    private int columnIndex;
+    private long indexedSize;
     private KVIndex.IndexCursor indexCursor;
     private long localRowID;
     private RowAcceptor rowAcceptor;
@@ -49,6 +53,9 @@ public class KvIndexTopRowSource implements RowSource, RowCursor {
             this.index = slice.partition.getIndexForColumn(column.value);
             this.lo = slice.lo;
             this.hi = slice.calcHi ? slice.partition.open().size() - 1 : slice.hi;
+            this.partition = slice.partition;
+            this.columnIndex = partition.getJournal().getMetadata().getColumnIndex(column.value);
+            this.indexedSize = partition.getIndexedSize(columnIndex);
             this.keyCursor = keySource.cursor(slice);
             return this;
         } catch (JournalException e) {
@@ -63,7 +70,16 @@ public class KvIndexTopRowSource implements RowSource, RowCursor {
             return false;
         }
 
-        indexCursor = index.cachedCursor(keyCursor.next());
+        int key = keyCursor.next();
+
+        // rows appended with indexing deferred are newer than indexed ones
+        for (localRowID = hi; localRowID >= Math.max(lo, indexedSize); localRowID--) {
+            if (partition.getIndexKey(localRowID, columnIndex) == key && (rowAcceptor == null || rowAcceptor.accept(localRowID) == Choice.PICK)) {
+                return true;
+            }
+        }
+
+        indexCursor = index.cachedCursor(key);
         while (indexCursor.hasNext()) {
             localRowID = indexCursor.next();
             if (localRowID >= lo && localRowID <= hi && (rowAcceptor == null || rowAcceptor.accept(localRowID) == Choice.PICK)) {
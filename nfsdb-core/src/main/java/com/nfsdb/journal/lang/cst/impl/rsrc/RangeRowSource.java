@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal.lang.cst.impl.rsrc;
+
+import com.nfsdb.journal.Partition;
+import com.nfsdb.journal.collections.DirectLongList;
+import com.nfsdb.journal.column.ColumnType;
+import com.nfsdb.journal.column.FixedColumn;
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.exceptions.JournalRuntimeException;
+import com.nfsdb.journal.factory.configuration.ColumnMetadata;
+import com.nfsdb.journal.index.SortedIndex;
+import com.nfsdb.journal.lang.cst.PartitionSlice;
+import com.nfsdb.journal.lang.cst.RowCursor;
+import com.nfsdb.journal.lang.cst.RowSource;
+import com.nfsdb.journal.lang.cst.impl.ref.StringRef;
+
+/**
+ * Rows where value of INT, LONG, DOUBLE or DATE column is within inclusive range. Rows covered by sorted index
+ * of partition are found by binary search and come out in value order, unless ordered flag asks for them to be
+ * sorted by row ID. Rows past sorted index, as well as all rows of column without one, are scanned.
+ */
+public class RangeRowSource implements RowSource, RowCursor {
+
+    private final StringRef column;
+    private final long lo;
+    private final long hi;
+    private final double loDouble;
+    private final double hiDouble;
+    private final boolean doubleBounds;
+    private final boolean ordered;
+    private final DirectLongList rows = new DirectLongList();
+    private FixedColumn col;
+    private ColumnType type;
+    private SortedIndex index;
+    private long loKey;
+    private long hiKey;
+    private long sliceLo;
+    private long sliceHi;
+    private long pos;
+    private long posHi;
+    private int rowPos;
+    private long tailRow;
+    private long nextRowID;
+
+    public RangeRowSource(StringRef column, long lo, long hi) {
+        this(column, lo, hi, false);
+    }
+
+    public RangeRowSource(StringRef column, long lo, long hi, boolean ordered) {
+        this.column = column;
+        this.lo = lo;
+        this.hi = hi;
+        this.loDouble = 0;
+        this.hiDouble = 0;
+        this.doubleBounds = false;
+        this.ordered = ordered;
+    }
+
+    public RangeRowSource(StringRef column, double lo, double hi) {
+        this(column, lo, hi, false);
+    }
+
+    public RangeRowSource(StringRef column, double lo, double hi, boolean ordered) {
+        this.column = column;
+        this.lo = 0;
+        this.hi = 0;
+        this.loDouble = lo;
+        this.hiDouble = hi;
+        this.doubleBounds = true;
+        this.ordered = ordered;
+    }
+
+    @Override
+    public RowCursor cursor(PartitionSlice slice) {
+        try {
+            Partition partition = slice.partition.open();
+            int columnIndex = partition.getJournal().getMetadata().getColumnIndex(column.value);
+            ColumnMetadata m = partition.getJournal().getMetadata().getColumnMetadata(columnIndex);
+            this.type = m.type;
+            this.col = (FixedColumn) partition.getAbstractColumn(columnIndex);
+            this.index = m.sortedIndexed ? partition.getSortedIndexForColumn(columnIndex) : null;
+            this.sliceLo = slice.lo;
+            this.sliceHi = slice.calcHi ? partition.size() - 1 : slice.hi;
+        } catch (JournalException e) {
+            throw new JournalRuntimeException(e);
+        }
+
+        this.loKey = doubleBounds ? SortedIndex.lowerKey(type, loDouble) : SortedIndex.toKey(type, lo);
+        this.hiKey = doubleBounds ? SortedIndex.upperKey(type, hiDouble) : SortedIndex.toKey(type, hi);
+
+        if (index == null || loKey > hiKey) {
+            this.pos = this.posHi = 0;
+            this.tailRow = loKey > hiKey ? sliceHi + 1 : sliceLo;
+        } else {
+            this.pos = index.lowerBound(loKey);
+            this.posHi = index.upperBound(hiKey);
+            this.tailRow = Math.max(sliceLo, index.size());
+        }
+
+        if (ordered && pos < posHi) {
+            rows.reset();
+            for (long p = pos; p < posHi; p++) {
+                long rowID = index.getRowID(p);
+                if (rowID >= sliceLo && rowID <= sliceHi) {
+                    rows.add(rowID);
+                }
+            }
+            rows.sort();
+            pos = posHi;
+        } else {
+            rows.reset();
+        }
+        this.rowPos = 0;
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (rowPos < rows.size()) {
+            nextRowID = rows.get(rowPos++);
+            return true;
+        }
+
+        while (pos < posHi) {
+            long rowID = index.getRowID(pos++);
+            if (rowID >= sliceLo && rowID <= sliceHi) {
+                nextRowID = rowID;
+                return true;
+            }
+        }
+
+        while (tailRow <= sliceHi) {
+            long rowID = tailRow++;
+            long key = SortedIndex.toKey(col, type, rowID);
+            if (key >= loKey && key <= hiKey) {
+                nextRowID = rowID;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long next() {
+        return nextRowID;
+    }
+
+    @Override
+    public void reset() {
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal.lang.cst.impl.rsrc;
+
+import com.nfsdb.journal.Partition;
+import com.nfsdb.journal.collections.DirectLongList;
+import com.nfsdb.journal.column.VariableColumn;
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.exceptions.JournalRuntimeException;
+import com.nfsdb.journal.factory.configuration.ColumnMetadata;
+import com.nfsdb.journal.index.BloomFilter;
+import com.nfsdb.journal.index.StringIndex;
+import com.nfsdb.journal.lang.cst.PartitionSlice;
+import com.nfsdb.journal.lang.cst.RowCursor;
+import com.nfsdb.journal.lang.cst.RowSource;
+import com.nfsdb.journal.lang.cst.impl.ref.StringRef;
+import com.nfsdb.journal.utils.Checksum;
+
+/**
+ * Rows where string column equals value, in row ID order. Bloom filter of partition, when there is one, rules out
+ * rows it covers without touching index. Exact index yields rows with matching 64-bit hash, which are then
+ * compared to value. Column without exact index is scanned.
+ */
+public class StringIndexRowSource implements RowSource, RowCursor {
+
+    private final StringRef column;
+    private final StringRef value;
+    private final DirectLongList rows = new DirectLongList();
+    private VariableColumn col;
+    private int rowPos;
+    private long tailRow;
+    private long hi;
+    private long nextRowID;
+
+    public StringIndexRowSource(StringRef column, StringRef value) {
+        this.column = column;
+        this.value = value;
+    }
+
+    @Override
+    public RowCursor cursor(PartitionSlice slice) {
+        rows.reset();
+        rowPos = 0;
+        try {
+            Partition partition = slice.partition.open();
+            int columnIndex = partition.getJournal().getMetadata().getColumnIndex(column.value);
+            ColumnMetadata m = partition.getJournal().getMetadata().getColumnMetadata(columnIndex);
+            long lo = slice.lo;
+            this.col = (VariableColumn) partition.getAbstractColumn(columnIndex);
+            this.hi = slice.calcHi ? partition.size() - 1 : slice.hi;
+            this.tailRow = lo;
+
+            long hash = Checksum.hash64(value.value);
+
+            if (m.bloomFiltered) {
+                BloomFilter filter = partition.getBloomFilterForColumn(columnIndex);
+                if (filter != null && !filter.mightContain(hash)) {
+                    lo = tailRow = Math.max(lo, filter.size());
+                }
+            }
+
+            if (m.exactIndexed && lo <= hi) {
+                StringIndex index = partition.getStringIndexForColumn(columnIndex);
+                StringIndex.IndexCursor cursor = index.cursor(hash);
+                while (cursor.hasNext()) {
+                    long rowID = cursor.next();
+                    if (rowID >= lo && rowID <= hi && matches(rowID)) {
+                        rows.add(rowID);
+                    }
+                }
+                rows.sort();
+                tailRow = Math.max(lo, index.size());
+            }
+        } catch (JournalException e) {
+            throw new JournalRuntimeException(e);
+        }
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (rowPos < rows.size()) {
+            nextRowID = rows.get(rowPos++);
+            return true;
+        }
+
+        while (tailRow <= hi) {
+            long rowID = tailRow++;
+            if (matches(rowID)) {
+                nextRowID = rowID;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long next() {
+        return nextRowID;
+    }
+
+    @Override
+    public void reset() {
+    }
+
+    private boolean matches(long rowID) {
+        return value.value == null ? col.getStr(rowID) == null : col.cmpStr(rowID, value.value);
+    }
+}
@@ -86,7 +86,7 @@ public final class Lock {
         refCount.decrementAndGet();
     }
 
-    File getLocation() {
+    public File getLocation() {
         return location;
     }
 
@@ -88,8 +88,12 @@ public final class LockManager {
         if (storedExclusiveLock == lock) {
             lock.decrementRefCount();
             if (lock.getRefCount() <= 0) {
+                // lock file of failed lock belongs to whoever holds it
+                boolean valid = lock.isValid();
                 lock.release();
-                lock.delete();
+                if (valid) {
+                    lock.delete();
+                }
                 locks.remove(exclusiveKey);
                 LOGGER.trace("Exclusive lock released: %s", lock);
             }
@@ -18,6 +18,7 @@ package com.nfsdb.journal.net.comsumer;
 
 import com.nfsdb.journal.JournalWriter;
 import com.nfsdb.journal.Partition;
+import com.nfsdb.journal.PartitionType;
 import com.nfsdb.journal.exceptions.JournalException;
 import com.nfsdb.journal.exceptions.JournalNetworkException;
 import com.nfsdb.journal.exceptions.JournalRuntimeException;
@@ -90,12 +91,14 @@ public class JournalDeltaConsumer extends AbstractChannelConsumer {
         journalServerStateConsumer.read(channel);
         if (journalServerStateConsumer.isComplete()) {
 
-            journal.beginTx();
-
             try {
                 if (state == null) {
                     state = journalServerStateConsumer.getValue();
+                    addColumns(state);
+                    journal.beginTx();
                     createPartitions(state);
+                } else {
+                    journal.beginTx();
                 }
 
                 if (state.isSymbolTables()) {
@@ -158,12 +161,43 @@ public class JournalDeltaConsumer extends AbstractChannelConsumer {
         }
     }
 
+    /**
+     * Adds columns server journal has been given since it was created. Writer reopens its partitions,
+     * so that partition consumers are created anew.
+     */
+    private void addColumns(JournalServerState metadata) throws JournalException {
+        for (int i = 0, n = metadata.getAddedColumnCount(); i < n; i++) {
+            String name = metadata.getAddedColumnName(i);
+            if (!hasColumn(name)) {
+                journal.addColumn(name, metadata.getAddedColumnType(i));
+                partitionDeltaConsumers.clear();
+                lagPartitionDeltaConsumer = null;
+            }
+        }
+    }
+
+    private boolean hasColumn(String name) {
+        for (int i = 0, n = journal.getMetadata().getColumnCount(); i < n; i++) {
+            if (journal.getMetadata().getColumnMetadata(i).name.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void createPartitions(JournalServerState metadata) throws JournalException {
         int pc = journal.nonLagPartitionCount();
         for (int i = 0; i < metadata.getNonLagPartitionCount(); i++) {
             JournalServerState.PartitionMetadata partitionMetadata = metadata.getMeta(i);
             if (partitionMetadata.getPartitionIndex() >= pc) {
                 Interval interval = Dates.interval(partitionMetadata.getIntervalStart(), partitionMetadata.getIntervalEnd());
+                // partition directories are named after local partitioning, which has to match server
+                if (journal.getMetadata().getPartitionType() != PartitionType.NONE) {
+                    Interval local = Dates.intervalForDate(interval.getStartMillis(), journal.getMetadata().getPartitionType(), journal.getMetadata().getPartitionWidth());
+                    if (local.getStartMillis() != interval.getStartMillis() || local.getEndMillis() != interval.getEndMillis()) {
+                        throw new JournalException("Server partition %s does not match partitioning of %s", interval, journal);
+                    }
+                }
                 journal.createPartition(interval, partitionMetadata.getPartitionIndex());
             }
         }
@@ -16,6 +16,7 @@
 
 package com.nfsdb.journal.net.comsumer;
 
+import com.nfsdb.journal.column.ColumnType;
 import com.nfsdb.journal.net.AbstractMutableObjectConsumer;
 import com.nfsdb.journal.net.model.JournalServerState;
 
@@ -23,7 +24,7 @@ import java.nio.ByteBuffer;
 
 public class JournalServerStateConsumer extends AbstractMutableObjectConsumer<JournalServerState> {
 
-    private char lagPartitionNameChars[];
+    private char nameChars[];
 
     @Override
     protected JournalServerState newInstance() {
@@ -41,19 +42,27 @@ public class JournalServerStateConsumer extends AbstractMutableObjectConsumer<Jo
             obj.addPartitionMetadata(buffer.getInt(), buffer.getLong(), buffer.getLong(), buffer.get());
         }
 
-        int len = buffer.getChar();
-        if (len > 0) {
-            if (lagPartitionNameChars == null || lagPartitionNameChars.length < len) {
-                lagPartitionNameChars = new char[len];
-            }
-            for (int i = 0; i < len; i++) {
-                lagPartitionNameChars[i] = buffer.getChar();
-            }
-            obj.setLagPartitionName(new String(lagPartitionNameChars, 0, len));
-        } else {
-            obj.setLagPartitionName(null);
+        obj.setLagPartitionName(readString(buffer));
+        obj.setLagPartitionMetadata(buffer.getInt(), buffer.getLong(), buffer.getLong(), buffer.get());
+
+        int columnCount = buffer.getInt();
+        for (int i = 0; i < columnCount; i++) {
+            String name = readString(buffer);
+            obj.addColumn(name, ColumnType.values()[buffer.get()]);
         }
+    }
 
-        obj.setLagPartitionMetadata(buffer.getInt(), buffer.getLong(), buffer.getLong(), buffer.get());
+    private String readString(ByteBuffer buffer) {
+        int len = buffer.getChar();
+        if (len == 0) {
+            return null;
+        }
+        if (nameChars == null || nameChars.length < len) {
+            nameChars = new char[len];
+        }
+        for (int i = 0; i < len; i++) {
+            nameChars[i] = buffer.getChar();
+        }
+        return new String(nameChars, 0, len);
     }
 }
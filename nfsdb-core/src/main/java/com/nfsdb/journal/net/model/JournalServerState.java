@@ -16,6 +16,7 @@
 
 package com.nfsdb.journal.net.model;
 
+import com.nfsdb.journal.column.ColumnType;
 import com.nfsdb.journal.utils.Lists;
 
 import java.util.ArrayList;
@@ -24,6 +25,9 @@ public class JournalServerState {
 
     private final ArrayList<PartitionMetadata> partitionMetadata = new ArrayList<>();
     private final PartitionMetadata lagPartitionMetadata = new PartitionMetadata();
+    // columns added to journal after it was created, client adds ones it does not have
+    private final ArrayList<String> addedColumnNames = new ArrayList<>();
+    private final ArrayList<ColumnType> addedColumnTypes = new ArrayList<>();
     private boolean symbolTables = false;
     private int nonLagPartitionCount = 0;
     private int addIndex = 0;
@@ -71,8 +75,27 @@ public class JournalServerState {
         return lagPartitionMetadata;
     }
 
+    public void addColumn(String name, ColumnType type) {
+        addedColumnNames.add(name);
+        addedColumnTypes.add(type);
+    }
+
+    public int getAddedColumnCount() {
+        return addedColumnNames.size();
+    }
+
+    public String getAddedColumnName(int index) {
+        return addedColumnNames.get(index);
+    }
+
+    public ColumnType getAddedColumnType(int index) {
+        return addedColumnTypes.get(index);
+    }
+
     public void reset() {
         nonLagPartitionCount = 0;
+        addedColumnNames.clear();
+        addedColumnTypes.clear();
         addIndex = 0;
         symbolTables = false;
         lagPartitionMetadata.partitionIndex = -1;
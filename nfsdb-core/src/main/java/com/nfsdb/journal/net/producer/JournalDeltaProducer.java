@@ -20,6 +20,8 @@ import com.nfsdb.journal.Journal;
 import com.nfsdb.journal.Partition;
 import com.nfsdb.journal.exceptions.JournalException;
 import com.nfsdb.journal.exceptions.JournalNetworkException;
+import com.nfsdb.journal.factory.configuration.ColumnMetadata;
+import com.nfsdb.journal.factory.configuration.JournalMetadata;
 import com.nfsdb.journal.logging.Logger;
 import com.nfsdb.journal.net.ChannelProducer;
 import com.nfsdb.journal.net.model.JournalClientState;
@@ -40,9 +42,11 @@ public class JournalDeltaProducer implements ChannelProducer {
     private final List<PartitionDeltaProducer> partitionDeltaProducerCache = new ArrayList<>();
     private final JournalSymbolTableProducer journalSymbolTableProducer;
     private PartitionDeltaProducer lagPartitionDeltaProducer;
+    private JournalMetadata metadata;
 
     public JournalDeltaProducer(Journal journal) {
         this.journal = journal;
+        this.metadata = journal.getMetadata();
         journalSymbolTableProducer = new JournalSymbolTableProducer(journal);
     }
 
@@ -50,6 +54,13 @@ public class JournalDeltaProducer implements ChannelProducer {
 
         journal.refresh();
 
+        // journal that picked up added columns has reopened its partitions
+        if (metadata != journal.getMetadata()) {
+            metadata = journal.getMetadata();
+            partitionDeltaProducerCache.clear();
+            lagPartitionDeltaProducer = null;
+        }
+
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Journal %s size: %d", journal.getLocation(), journal.size());
         }
@@ -62,6 +73,13 @@ public class JournalDeltaProducer implements ChannelProducer {
         journalSymbolTableProducer.configure(status);
         journalServerState.setSymbolTables(journalSymbolTableProducer.hasContent());
 
+        for (int i = 0, n = metadata.getColumnCount(); i < n; i++) {
+            ColumnMetadata m = metadata.getColumnMetadata(i);
+            if (m.version > 0) {
+                journalServerState.addColumn(m.name, m.type);
+            }
+        }
+
         // get non lag partition information
         int nonLagPartitionCount = journal.nonLagPartitionCount();
         if (status.getMaxRowID() == -1) {
@@ -28,9 +28,14 @@ public class JournalServerStateProducer extends AbstractObjectProducer<JournalSe
 
     @Override
     protected int getBufferSize(JournalServerState value) {
-        return 4 + 1 + value.getNonLagPartitionCount() * SUMMARY_RECORD_SIZE
+        int size = 4 + 1 + value.getNonLagPartitionCount() * SUMMARY_RECORD_SIZE
                 + 2 + (value.getLagPartitionName() != null ? 2 * value.getLagPartitionName().length() : 0)
-                + SUMMARY_RECORD_SIZE;
+                + SUMMARY_RECORD_SIZE
+                + 4;
+        for (int i = 0, n = value.getAddedColumnCount(); i < n; i++) {
+            size += 2 + 2 * value.getAddedColumnName(i).length() + 1 /* type */;
+        }
+        return size;
     }
 
     @Override
@@ -49,5 +54,10 @@ public class JournalServerStateProducer extends AbstractObjectProducer<JournalSe
         buffer.putLong(value.getLagPartitionMetadata().getIntervalStart());
         buffer.putLong(value.getLagPartitionMetadata().getIntervalEnd());
         buffer.put(value.getLagPartitionMetadata().getEmpty());
+        buffer.putInt(value.getAddedColumnCount());
+        for (int i = 0, n = value.getAddedColumnCount(); i < n; i++) {
+            ByteBuffers.putStringW(buffer, value.getAddedColumnName(i));
+            buffer.put((byte) value.getAddedColumnType(i).ordinal());
+        }
     }
 }
@@ -18,7 +18,7 @@ package com.nfsdb.journal.net.protocol;
 
 public final class Version {
 
-    public static final int PROTOCOL_VERSION = 2;
+    public static final int PROTOCOL_VERSION = 3;
 
     private Version() {
     }
@@ -30,6 +30,15 @@ public interface QueryAll<T> extends Iterable<T> {
 
     long size();
 
+    /**
+     * Number of rows within interval. Partitions are counted by their size, only those at interval boundaries
+     * need binary search on timestamp.
+     *
+     * @param interval interval.
+     * @return number of rows.
+     */
+    long size(Interval interval);
+
     JournalPeekingIterator<T> bufferedIterator();
 
     JournalRowBufferedIterator<T> bufferedRowIterator();
@@ -26,7 +26,54 @@ public interface QueryAllBuilder<T> {
 
     QueryAllBuilder<T> filter(String symbol, String value);
 
+    /**
+     * Limits result to rows where value of INT, LONG or DATE column is within inclusive range. When column has
+     * sorted index and range is narrower than symbol values, rows are found via sorted index.
+     *
+     * @param column column name.
+     * @param lo     inclusive lower bound.
+     * @param hi     inclusive upper bound.
+     * @return this builder.
+     */
+    QueryAllBuilder<T> filter(String column, long lo, long hi);
+
+    /**
+     * Limits result to rows where value of DOUBLE column is within inclusive range, otherwise same as
+     * #filter(String, long, long).
+     *
+     * @param column column name.
+     * @param lo     inclusive lower bound.
+     * @param hi     inclusive upper bound.
+     * @return this builder.
+     */
+    QueryAllBuilder<T> filter(String column, double lo, double hi);
+
     void resetFilter();
 
+    /**
+     * Number of rows of query. Without filters rows are counted from symbol index, rows themselves are not read.
+     *
+     * @return number of rows.
+     * @throws JournalException if partitions or indexes cannot be opened.
+     */
+    long count() throws JournalException;
+
+    /**
+     * Number of rows of each symbol value query was built for, in order values were given. Values that do not
+     * exist in journal have zero count.
+     *
+     * @return counts by symbol value.
+     * @throws JournalException if partitions or indexes cannot be opened.
+     */
+    long[] countByKey() throws JournalException;
+
+    /**
+     * Number of rows of query in each partition.
+     *
+     * @return counts by partition index.
+     * @throws JournalException if partitions or indexes cannot be opened.
+     */
+    long[] countByPartition() throws JournalException;
+
     UnorderedResultSet<T> asResultSet() throws JournalException;
 }
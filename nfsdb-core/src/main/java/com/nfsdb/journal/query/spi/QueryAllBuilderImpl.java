@@ -18,9 +18,14 @@ package com.nfsdb.journal.query.spi;
 
 import com.nfsdb.journal.Journal;
 import com.nfsdb.journal.UnorderedResultSet;
+import com.nfsdb.journal.utils.Rows;
 import com.nfsdb.journal.collections.DirectIntList;
+import com.nfsdb.journal.collections.DirectLongList;
+import com.nfsdb.journal.column.ColumnType;
 import com.nfsdb.journal.column.SymbolTable;
 import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.exceptions.JournalRuntimeException;
+import com.nfsdb.journal.index.SortedIndex;
 import com.nfsdb.journal.query.api.QueryAllBuilder;
 import org.joda.time.Interval;
 
@@ -33,7 +38,12 @@ public class QueryAllBuilderImpl<T> implements QueryAllBuilder<T> {
     private final DirectIntList symbolKeys = new DirectIntList();
     private final List<String> filterSymbols = new ArrayList<>();
     private final DirectIntList filterSymbolKeys = new DirectIntList();
+    private final List<String> rangeColumns = new ArrayList<>();
+    private final DirectLongList rangeLoKeys = new DirectLongList();
+    private final DirectLongList rangeHiKeys = new DirectLongList();
     private String symbol;
+    // keys of all symbol values in order they were given, including those that were not found
+    private int valueKeys[] = new int[0];
     private Interval interval;
 
     public QueryAllBuilderImpl(Journal<T> journal) {
@@ -48,18 +58,20 @@ public class QueryAllBuilderImpl<T> implements QueryAllBuilder<T> {
 
     @Override
     public UnorderedResultSet<T> asResultSet() throws JournalException {
-        return journal.iteratePartitionsDesc(new QueryAllResultSetBuilder<T>(interval, symbol, symbolKeys, filterSymbols, filterSymbolKeys));
+        return journal.iteratePartitionsDesc(new QueryAllResultSetBuilder<T>(interval, symbol, symbolKeys, filterSymbols, filterSymbolKeys, rangeColumns, rangeLoKeys, rangeHiKeys));
     }
 
     public void setSymbol(String symbol, String... values) {
         this.symbol = symbol;
         SymbolTable symbolTable = journal.getSymbolTable(symbol);
         this.symbolKeys.reset();
+        this.valueKeys = new int[values.length];
         for (int i = 0; i < values.length; i++) {
             int key = symbolTable.getQuick(values[i]);
             if (key != SymbolTable.VALUE_NOT_FOUND) {
                 symbolKeys.add(key);
             }
+            valueKeys[i] = key;
         }
     }
 
@@ -72,13 +84,138 @@ public class QueryAllBuilderImpl<T> implements QueryAllBuilder<T> {
         return this;
     }
 
+    @Override
+    public QueryAllBuilder<T> filter(String column, long lo, long hi) {
+        ColumnType type = getRangeColumnType(column);
+        addRange(column, SortedIndex.toKey(type, lo), SortedIndex.toKey(type, hi));
+        return this;
+    }
+
+    @Override
+    public QueryAllBuilder<T> filter(String column, double lo, double hi) {
+        ColumnType type = getRangeColumnType(column);
+        addRange(column, SortedIndex.lowerKey(type, lo), SortedIndex.upperKey(type, hi));
+        return this;
+    }
+
     @Override
     public void resetFilter() {
         filterSymbols.clear();
         filterSymbolKeys.reset();
+        rangeColumns.clear();
+        rangeLoKeys.reset();
+        rangeHiKeys.reset();
+    }
+
+    @Override
+    public long count() throws JournalException {
+        long total = 0;
+        for (long c : countByKey()) {
+            total += c;
+        }
+        return total;
+    }
+
+    @Override
+    public long[] countByKey() throws JournalException {
+        long result[] = new long[valueKeys.length];
+        long counts[][] = counts();
+        for (int p = 0; p < counts.length; p++) {
+            for (int k = 0; k < result.length; k++) {
+                result[k] += counts[p][k];
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public long[] countByPartition() throws JournalException {
+        long counts[][] = counts();
+        long result[] = new long[counts.length];
+        for (int p = 0; p < counts.length; p++) {
+            for (int k = 0; k < counts[p].length; k++) {
+                result[p] += counts[p][k];
+            }
+        }
+        return result;
     }
 
     public void setInterval(Interval interval) {
         this.interval = interval;
     }
+
+    private ColumnType getRangeColumnType(String column) {
+        ColumnType type = journal.getMetadata().getColumnMetadata(column).type;
+        switch (type) {
+            case INT:
+            case LONG:
+            case DOUBLE:
+            case DATE:
+                return type;
+            default:
+                throw new JournalRuntimeException("Range filter is not supported on %s column: %s", type, column);
+        }
+    }
+
+    /**
+     * Counts of rows per partition and symbol value. Without filters counts come from symbol index, otherwise
+     * rows of result set are counted.
+     */
+    private long[][] counts() throws JournalException {
+        if (filterSymbols.isEmpty() && rangeColumns.isEmpty()) {
+            return journal.iteratePartitions(new QueryAllCountBuilder<T>(interval, symbol, valueKeys, journal.getPartitionCount()));
+        }
+
+        // values given more than once are queried once, so that result set does not repeat their rows,
+        // and count of each value is then copied to every position it was given at
+        int distinct[] = new int[valueKeys.length];
+        int distinctCount = 0;
+        long distinctCounts[][];
+        try (DirectIntList keys = new DirectIntList()) {
+            for (int key : valueKeys) {
+                if (key != SymbolTable.VALUE_NOT_FOUND && indexOf(distinct, distinctCount, key) < 0) {
+                    distinct[distinctCount++] = key;
+                    keys.add(key);
+                }
+            }
+
+            distinctCounts = new long[journal.getPartitionCount()][distinctCount];
+            UnorderedResultSet<T> rs = journal.iteratePartitionsDesc(new QueryAllResultSetBuilder<T>(interval, symbol, keys, filterSymbols, filterSymbolKeys, rangeColumns, rangeLoKeys, rangeHiKeys));
+            int columnIndex = journal.getMetadata().getColumnIndex(symbol);
+            for (int i = 0, sz = rs.size(); i < sz; i++) {
+                long rowID = rs.getRowID(i);
+                int p = Rows.toPartitionIndex(rowID);
+                int d = indexOf(distinct, distinctCount, journal.getPartition(p, true).getInt(Rows.toLocalRowID(rowID), columnIndex));
+                if (d >= 0) {
+                    distinctCounts[p][d]++;
+                }
+            }
+        }
+
+        long counts[][] = new long[distinctCounts.length][valueKeys.length];
+        for (int k = 0; k < valueKeys.length; k++) {
+            int d = indexOf(distinct, distinctCount, valueKeys[k]);
+            if (d >= 0) {
+                for (int p = 0; p < counts.length; p++) {
+                    counts[p][k] = distinctCounts[p][d];
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static int indexOf(int keys[], int count, int key) {
+        for (int i = 0; i < count; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void addRange(String column, long loKey, long hiKey) {
+        rangeColumns.add(column);
+        rangeLoKeys.add(loKey);
+        rangeHiKeys.add(hiKey);
+    }
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal.query.spi;
+
+import com.nfsdb.journal.AbstractResultSetBuilder;
+import com.nfsdb.journal.Partition;
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.index.KVIndex;
+import org.joda.time.Interval;
+
+/**
+ * Counts rows of symbol keys per partition without reading rows. Partitions that are within interval as a whole
+ * are counted from key entries of index. Boundary partitions are cut by binary search on timestamp, as with
+ * result set builders, and counted by range-limited index seek. Rows appended with indexing deferred, past
+ * index watermark, are counted by scanning symbol column.
+ * <p/>
+ * Result is array of counts per partition index, each holding count per key in same order as keys.
+ */
+public class QueryAllCountBuilder<T> extends AbstractResultSetBuilder<T, long[][]> {
+    private final String symbol;
+    private final int keys[];
+    private final long counts[][];
+    private KVIndex index;
+    private int columnIndex = -1;
+
+    /**
+     * @param interval       interval to count rows of, null for all rows.
+     * @param symbol         indexed symbol column.
+     * @param keys           symbol keys, negative keys are not counted.
+     * @param partitionCount number of partitions of journal.
+     */
+    public QueryAllCountBuilder(Interval interval, String symbol, int keys[], int partitionCount) {
+        super(interval);
+        this.symbol = symbol;
+        this.keys = keys;
+        this.counts = new long[partitionCount][keys.length];
+    }
+
+    @Override
+    public Accept accept(Partition<T> partition) throws JournalException {
+        super.accept(partition);
+        this.index = partition.open().getIndexForColumn(symbol);
+        if (columnIndex == -1) {
+            columnIndex = partition.getJournal().getMetadata().getColumnIndex(symbol);
+        }
+        return Accept.CONTINUE;
+    }
+
+    @Override
+    public void read(long lo, long hi) {
+        long row[] = counts[partition.getPartitionIndex()];
+        long indexedHi = Math.min(hi, index.size() - 1);
+        // index is behind partition when indexing is deferred and ahead of it for writer with uncommitted rows
+        boolean whole = lo == 0 && hi == partition.size() - 1 && index.size() == hi + 1;
+        for (int k = 0; k < keys.length; k++) {
+            int key = keys[k];
+            if (key < 0) {
+                continue;
+            }
+            if (whole) {
+                row[k] += index.getValueCount(key);
+            } else if (lo <= indexedHi) {
+                row[k] += index.cursor(key, lo, indexedHi).size();
+            }
+        }
+
+        for (long localRowID = Math.max(lo, indexedHi + 1); localRowID <= hi; localRowID++) {
+            int key = partition.getInt(localRowID, columnIndex);
+            for (int k = 0; k < keys.length; k++) {
+                if (keys[k] == key && key >= 0) {
+                    row[k]++;
+                }
+            }
+        }
+    }
+
+    @Override
+    public long[][] getResult() {
+        return counts;
+    }
+}
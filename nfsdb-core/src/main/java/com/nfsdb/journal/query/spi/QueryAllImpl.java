@@ -16,6 +16,7 @@
 
 package com.nfsdb.journal.query.spi;
 
+import com.nfsdb.journal.AbstractResultSetBuilder;
 import com.nfsdb.journal.Journal;
 import com.nfsdb.journal.OrderedResultSet;
 import com.nfsdb.journal.OrderedResultSetBuilder;
@@ -62,6 +63,27 @@ public class QueryAllImpl<T> implements QueryAll<T> {
         }
     }
 
+    @Override
+    public long size(Interval interval) {
+        try {
+            return journal.iteratePartitions(new AbstractResultSetBuilder<T, Long>(interval) {
+                private long count;
+
+                @Override
+                public void read(long lo, long hi) {
+                    count += hi - lo + 1;
+                }
+
+                @Override
+                public Long getResult() {
+                    return count;
+                }
+            });
+        } catch (JournalException e) {
+            throw new JournalRuntimeException(e);
+        }
+    }
+
     @Override
     public QueryAllBuilder<T> withKeys(String... values) {
         return withSymValues(journal.getMetadata().getKey(), values);
@@ -20,12 +20,19 @@ import com.nfsdb.journal.Partition;
 import com.nfsdb.journal.UnorderedResultSetBuilder;
 import com.nfsdb.journal.collections.DirectIntList;
 import com.nfsdb.journal.collections.DirectLongList;
+import com.nfsdb.journal.column.ColumnType;
+import com.nfsdb.journal.column.FixedColumn;
 import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.exceptions.JournalRuntimeException;
+import com.nfsdb.journal.factory.configuration.CompositeIndexMetadata;
+import com.nfsdb.journal.factory.configuration.JournalMetadata;
 import com.nfsdb.journal.index.Cursor;
 import com.nfsdb.journal.index.KVIndex;
+import com.nfsdb.journal.index.SortedIndex;
 import com.nfsdb.journal.utils.Rows;
 import org.joda.time.Interval;
 
+import java.util.Collections;
 import java.util.List;
 
 public class QueryAllResultSetBuilder<T> extends UnorderedResultSetBuilder<T> {
@@ -35,27 +42,65 @@ public class QueryAllResultSetBuilder<T> extends UnorderedResultSetBuilder<T> {
     final private String symbol;
     private KVIndex index;
     private KVIndex[] searchIndices;
+    private int symbolColumnIndex = -1;
+    private int[] filterColumnIndexes;
+    // composite index of symbol and each of filter columns, null when there is none
+    private CompositeIndexMetadata[] composites;
+    private int[] compositeIndexNos;
+    private KVIndex[] compositeIndices;
+    private final int[] compositeValues = new int[2];
+    private final List<String> rangeColumns;
+    private final DirectLongList rangeLoKeys;
+    private final DirectLongList rangeHiKeys;
+    private int[] rangeColumnIndexes;
+    private ColumnType[] rangeTypes;
+    private FixedColumn[] rangeFixedColumns;
 
     public QueryAllResultSetBuilder(Interval interval, String symbol, DirectIntList symbolKeys, List<String> filterSymbols, DirectIntList filterSymbolKeys) {
+        this(interval, symbol, symbolKeys, filterSymbols, filterSymbolKeys, Collections.<String>emptyList(), null, null);
+    }
+
+    /**
+     * @param rangeColumns columns of range filters.
+     * @param rangeLoKeys  inclusive lower bounds of range filters as sorted index keys.
+     * @param rangeHiKeys  inclusive upper bounds of range filters as sorted index keys.
+     */
+    public QueryAllResultSetBuilder(Interval interval, String symbol, DirectIntList symbolKeys, List<String> filterSymbols, DirectIntList filterSymbolKeys,
+                                    List<String> rangeColumns, DirectLongList rangeLoKeys, DirectLongList rangeHiKeys) {
         super(interval);
         this.symbol = symbol;
         this.symbolKeys = symbolKeys;
         this.filterSymbols = filterSymbols;
         this.filterSymbolKeys = filterSymbolKeys;
+        this.rangeColumns = rangeColumns;
+        this.rangeLoKeys = rangeLoKeys;
+        this.rangeHiKeys = rangeHiKeys;
     }
 
     @Override
     public Accept accept(Partition<T> partition) throws JournalException {
         super.accept(partition);
         this.index = partition.open().getIndexForColumn(symbol);
+        if (symbolColumnIndex == -1) {
+            resolveCompositeIndexes(partition.getJournal().getMetadata());
+            resolveRangeColumns(partition.getJournal().getMetadata());
+        }
+        for (int r = 0; r < rangeColumnIndexes.length; r++) {
+            rangeFixedColumns[r] = (FixedColumn) partition.getAbstractColumn(rangeColumnIndexes[r]);
+        }
 
-        // check if partition has at least one symbol value
+        // check if partition has at least one symbol value, rows past index watermark can have any
         if (symbolKeys.size() > 0) {
+            boolean tail = index.size() < partition.size();
             for (int i = 0, sz = symbolKeys.size(); i < sz; i++) {
-                if (index.contains(symbolKeys.get(i))) {
+                if (tail || index.contains(symbolKeys.get(i))) {
                     searchIndices = new KVIndex[filterSymbols.size()];
                     for (int k = 0; k < filterSymbols.size(); k++) {
-                        searchIndices[k] = partition.getIndexForColumn(filterSymbols.get(k));
+                        if (composites[k] == null) {
+                            searchIndices[k] = partition.getIndexForColumn(filterSymbols.get(k));
+                        } else {
+                            compositeIndices[k] = partition.getCompositeIndex(compositeIndexNos[k]);
+                        }
                     }
                     return Accept.CONTINUE;
                 }
@@ -67,37 +112,215 @@ public class QueryAllResultSetBuilder<T> extends UnorderedResultSetBuilder<T> {
 
     @Override
     public void read(long lo, long hi) {
+        if (searchIndices.length == 0 && rangeColumnIndexes.length > 0 && readSorted(lo, hi)) {
+            return;
+        }
+
+        long indexedHi = Math.min(hi, getIndexedSize() - 1);
+        if (lo <= indexedHi) {
+            readIndexed(lo, indexedHi);
+        }
+        for (long localRowID = Math.max(lo, indexedHi + 1); localRowID <= hi; localRowID++) {
+            readUnindexed(localRowID);
+        }
+    }
+
+    private void readIndexed(long lo, long hi) {
         for (int i = 0, sz = symbolKeys.size(); i < sz; i++) {
             int symbolKey = symbolKeys.get(i);
             if (index.contains(symbolKey)) {
                 if (searchIndices.length > 0) {
                     for (int k = 0; k < searchIndices.length; k++) {
-                        if (searchIndices[k].contains(filterSymbolKeys.get(k))) {
+                        if (composites[k] != null) {
+                            readComposite(k, symbolKey, lo, hi);
+                        } else if (searchIndices[k].contains(filterSymbolKeys.get(k))) {
                             DirectLongList searchLocalRowIDs = searchIndices[k].getValues(filterSymbolKeys.get(k));
 
-                            Cursor cursor = index.cachedCursor(symbolKey);
+                            Cursor cursor = index.cursor(symbolKey, lo, hi);
                             while (cursor.hasNext()) {
                                 long localRowID = cursor.next();
-                                if (localRowID < lo) {
-                                    break;
-                                }
-                                if (localRowID <= hi && searchLocalRowIDs.binarySearch(localRowID) >= 0) {
-                                    result.add(Rows.toRowID(partition.getPartitionIndex(), localRowID));
+                                if (searchLocalRowIDs.binarySearch(localRowID) >= 0) {
+                                    add(localRowID);
                                 }
                             }
                         }
                     }
                 } else {
-                    KVIndex.IndexCursor cursor = index.cachedCursor(symbolKey);
-                    result.setCapacity((int) cursor.size());
+                    KVIndex.RangeCursor cursor = index.cursor(symbolKey, lo, hi);
+                    result.addCapacity(cursor.size());
                     while (cursor.hasNext()) {
-                        long localRowID = cursor.next();
-                        if (localRowID >= lo && localRowID <= hi) {
-                            result.add(Rows.toRowID(partition.getPartitionIndex(), localRowID));
-                        }
+                        add(cursor.next());
                     }
                 }
             }
         }
     }
+
+    /**
+     * Composite index finds rows of symbol and filter value pair directly, instead of intersecting
+     * rows of two indexes. Rows are then checked against column values, because composite key is a hash.
+     */
+    private void resolveCompositeIndexes(JournalMetadata<?> m) {
+        symbolColumnIndex = m.getColumnIndex(symbol);
+        int n = filterSymbols.size();
+        filterColumnIndexes = new int[n];
+        composites = new CompositeIndexMetadata[n];
+        compositeIndexNos = new int[n];
+        compositeIndices = new KVIndex[n];
+        int pair[] = new int[2];
+        pair[0] = symbolColumnIndex;
+        for (int k = 0; k < n; k++) {
+            pair[1] = filterColumnIndexes[k] = m.getColumnIndex(filterSymbols.get(k));
+            int idx = pair[0] == pair[1] ? -1 : m.findCompositeIndex(pair);
+            if (idx != -1 && m.getCompositeIndex(idx).columnIndexes.length == 2) {
+                composites[k] = m.getCompositeIndex(idx);
+                compositeIndexNos[k] = idx;
+            }
+        }
+    }
+
+    private void readComposite(int k, int symbolKey, long lo, long hi) {
+        CompositeIndexMetadata c = composites[k];
+        int filterKey = filterSymbolKeys.get(k);
+        boolean symbolFirst = c.columnIndexes[0] == symbolColumnIndex;
+        compositeValues[0] = symbolFirst ? symbolKey : filterKey;
+        compositeValues[1] = symbolFirst ? filterKey : symbolKey;
+        int key = c.getKey(compositeValues);
+        if (compositeIndices[k].contains(key)) {
+            KVIndex.RangeCursor cursor = compositeIndices[k].cursor(key, lo, hi);
+            while (cursor.hasNext()) {
+                long localRowID = cursor.next();
+                if (partition.getInt(localRowID, symbolColumnIndex) == symbolKey && partition.getInt(localRowID, filterColumnIndexes[k]) == filterKey) {
+                    add(localRowID);
+                }
+            }
+        }
+    }
+
+    private void resolveRangeColumns(JournalMetadata<?> m) {
+        int n = rangeColumns.size();
+        rangeColumnIndexes = new int[n];
+        rangeTypes = new ColumnType[n];
+        rangeFixedColumns = new FixedColumn[n];
+        for (int r = 0; r < n; r++) {
+            rangeColumnIndexes[r] = m.getColumnIndex(rangeColumns.get(r));
+            rangeTypes[r] = m.getColumnMetadata(rangeColumnIndexes[r]).type;
+        }
+    }
+
+    private void add(long localRowID) {
+        for (int r = 0; r < rangeColumnIndexes.length; r++) {
+            long key = SortedIndex.toKey(rangeFixedColumns[r], rangeTypes[r], localRowID);
+            if (key < rangeLoKeys.get(r) || key > rangeHiKeys.get(r)) {
+                return;
+            }
+        }
+        result.add(Rows.toRowID(partition.getPartitionIndex(), localRowID));
+    }
+
+    /**
+     * Finds rows via sorted index of range column when range matches fewer rows than symbol keys do. Rows past
+     * sorted index are scanned.
+     *
+     * @return false when symbol index is the better choice.
+     */
+    private boolean readSorted(long lo, long hi) {
+        try {
+            long symbolCount = 0;
+            for (int i = 0, sz = symbolKeys.size(); i < sz; i++) {
+                if (index.contains(symbolKeys.get(i))) {
+                    symbolCount += index.getValueCount(symbolKeys.get(i));
+                }
+            }
+
+            SortedIndex best = null;
+            long bestLo = 0;
+            long bestHi = 0;
+            long bestCount = symbolCount;
+            for (int r = 0; r < rangeColumnIndexes.length; r++) {
+                if (!partition.getJournal().getMetadata().getColumnMetadata(rangeColumnIndexes[r]).sortedIndexed) {
+                    continue;
+                }
+                SortedIndex si = partition.getSortedIndexForColumn(rangeColumnIndexes[r]);
+                if (si == null) {
+                    continue;
+                }
+                long pLo = si.lowerBound(rangeLoKeys.get(r));
+                long pHi = si.upperBound(rangeHiKeys.get(r));
+                long count = Math.max(0, pHi - pLo) + Math.max(0, hi - Math.max(lo, si.size()) + 1);
+                if (count < bestCount) {
+                    best = si;
+                    bestLo = pLo;
+                    bestHi = pHi;
+                    bestCount = count;
+                }
+            }
+
+            if (best == null) {
+                return false;
+            }
+
+            for (long p = bestLo; p < bestHi; p++) {
+                long localRowID = best.getRowID(p);
+                if (localRowID >= lo && localRowID <= hi && isSymbolKey(partition.getInt(localRowID, symbolColumnIndex))) {
+                    add(localRowID);
+                }
+            }
+            for (long localRowID = Math.max(lo, best.size()); localRowID <= hi; localRowID++) {
+                if (isSymbolKey(partition.getInt(localRowID, symbolColumnIndex))) {
+                    add(localRowID);
+                }
+            }
+            return true;
+        } catch (JournalException e) {
+            throw new JournalRuntimeException(e);
+        }
+    }
+
+    /**
+     * Rows up to watermark of symbol and filter indexes can be found via indexes, rows past it
+     * were appended with indexing deferred.
+     */
+    private long getIndexedSize() {
+        long result = index.size();
+        for (int k = 0; k < searchIndices.length; k++) {
+            if (searchIndices[k] != null) {
+                result = Math.min(result, searchIndices[k].size());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks row against symbol keys and filters the same way index lookups do, including
+     * row being added once per symbol key and filter it matches.
+     */
+    private void readUnindexed(long localRowID) {
+        int key = partition.getInt(localRowID, symbolColumnIndex);
+        for (int i = 0, sz = symbolKeys.size(); i < sz; i++) {
+            if (symbolKeys.get(i) != key) {
+                continue;
+            }
+
+            if (filterColumnIndexes.length == 0) {
+                add(localRowID);
+                continue;
+            }
+
+            for (int k = 0; k < filterColumnIndexes.length; k++) {
+                if (partition.getInt(localRowID, filterColumnIndexes[k]) == filterSymbolKeys.get(k)) {
+                    add(localRowID);
+                }
+            }
+        }
+    }
+
+    private boolean isSymbolKey(int key) {
+        for (int i = 0, sz = symbolKeys.size(); i < sz; i++) {
+            if (symbolKeys.get(i) == key) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
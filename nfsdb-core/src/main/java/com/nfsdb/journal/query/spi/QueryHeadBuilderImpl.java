@@ -24,12 +24,15 @@ import com.nfsdb.journal.collections.DirectIntList;
 import com.nfsdb.journal.collections.DirectLongList;
 import com.nfsdb.journal.column.SymbolTable;
 import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.factory.configuration.CompositeIndexMetadata;
+import com.nfsdb.journal.factory.configuration.JournalMetadata;
 import com.nfsdb.journal.index.KVIndex;
 import com.nfsdb.journal.query.api.QueryHeadBuilder;
 import com.nfsdb.journal.utils.Rows;
 import org.joda.time.Interval;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 public class QueryHeadBuilderImpl<T> implements QueryHeadBuilder<T> {
@@ -119,12 +122,22 @@ public class QueryHeadBuilderImpl<T> implements QueryHeadBuilder<T> {
         zone2Keys.reset(symbolKeys.size());
         zone1Keys.add(symbolKeys);
 
+        // in strict mode latest row of each symbol has to be checked against filters, composite index cannot find it
+        final int filterColumnIndexes[] = new int[filterSymbols.size()];
+        for (int i = 0; i < filterColumnIndexes.length; i++) {
+            filterColumnIndexes[i] = journal.getMetadata().getColumnIndex(filterSymbols.get(i));
+        }
+        final int compositeIndexNo = strict ? -1 : findCompositeIndex(filterColumnIndexes);
+        final CompositeIndexMetadata composite = compositeIndexNo == -1 ? null : journal.getMetadata().getCompositeIndex(compositeIndexNo);
+
         return journal.iteratePartitionsDesc(
                 new UnorderedResultSetBuilder<T>(interval) {
                     private final KVIndex filterKVIndexes[] = new KVIndex[filterSymbolKeys.size()];
                     private final DirectLongList filterSymbolRows[] = new DirectLongList[filterSymbolKeys.size()];
                     private DirectIntList keys = zone1Keys;
                     private DirectIntList remainingKeys = zone2Keys;
+                    private final int compositeValues[] = composite == null ? null : new int[composite.columnIndexes.length];
+                    private final BitSet pendingKeys = new BitSet();
 
                     {
                         for (int i = 0; i < filterSymbolRows.length; i++) {
@@ -140,8 +153,26 @@ public class QueryHeadBuilderImpl<T> implements QueryHeadBuilder<T> {
 
                     @Override
                     public void read(long lo, long hi) throws JournalException {
+                        if (composite != null) {
+                            readComposite(lo, hi);
+                            return;
+                        }
+
                         KVIndex index = partition.getIndexForColumn(symbolColumnIndex);
 
+                        // rows past index watermark were appended with indexing deferred, latest of them are scanned
+                        long indexedSize = index.size();
+                        for (int i = 0; i < filterSymbols.size(); i++) {
+                            indexedSize = Math.min(indexedSize, partition.getIndexForColumn(filterSymbols.get(i)).size());
+                        }
+                        if (indexedSize <= hi) {
+                            readUnindexed(Math.max(lo, indexedSize), hi);
+                            if (keys.size() == 0 || indexedSize <= lo) {
+                                return;
+                            }
+                            hi = indexedSize - 1;
+                        }
+
                         boolean filterOk = true;
                         for (int i = 0; i < filterSymbols.size(); i++) {
                             filterKVIndexes[i] = partition.getIndexForColumn(filterSymbols.get(i));
@@ -197,13 +228,124 @@ public class QueryHeadBuilderImpl<T> implements QueryHeadBuilder<T> {
                                     remainingKeys.add(key);
                                 }
                             }
-                            DirectIntList temp = keys;
-                            keys = remainingKeys;
-                            remainingKeys = temp;
-                            remainingKeys.reset();
+                            swapKeys();
+                        }
+                    }
+
+                    private void readComposite(long lo, long hi) throws JournalException {
+                        KVIndex index = partition.getCompositeIndex(compositeIndexNo);
+                        for (int k = 0; k < keys.size(); k++) {
+                            int key = keys.get(k);
+                            boolean found = false;
+
+                            for (int i = 0; i < compositeValues.length; i++) {
+                                int col = composite.columnIndexes[i];
+                                compositeValues[i] = col == symbolColumnIndex ? key : filterSymbolKeys.get(indexOf(filterColumnIndexes, col));
+                            }
+
+                            KVIndex.IndexCursor cursor = index.cachedCursor(composite.getKey(compositeValues));
+                            while (cursor.hasNext()) {
+                                long localRowID = cursor.next();
+                                if (localRowID <= hi && localRowID >= lo && (partition.getPartitionIndex() > minPartitionIndex || localRowID > minLocalRowID)) {
+                                    if (matches(localRowID, key)) {
+                                        result.add(Rows.toRowID(partition.getPartitionIndex(), localRowID));
+                                        found = true;
+                                        break;
+                                    }
+                                } else if (localRowID < lo || (partition.getPartitionIndex() <= minPartitionIndex && localRowID <= minLocalRowID)) {
+                                    found = true;
+                                    break;
+                                }
+                            }
+
+                            if (!found) {
+                                remainingKeys.add(key);
+                            }
                         }
+                        swapKeys();
+                    }
+
+                    private void readUnindexed(long lo, long hi) {
+                        pendingKeys.clear();
+                        for (int k = 0; k < keys.size(); k++) {
+                            if (keys.get(k) >= 0) {
+                                pendingKeys.set(keys.get(k));
+                            }
+                        }
+
+                        for (long localRowID = hi; localRowID >= lo; localRowID--) {
+                            if (partition.getPartitionIndex() <= minPartitionIndex && localRowID <= minLocalRowID) {
+                                break;
+                            }
+                            int key = partition.getInt(localRowID, symbolColumnIndex);
+                            if (key >= 0 && pendingKeys.get(key)) {
+                                boolean matches = matches(localRowID, key);
+                                if (matches) {
+                                    result.add(Rows.toRowID(partition.getPartitionIndex(), localRowID));
+                                }
+                                if (matches || strict) {
+                                    pendingKeys.clear(key);
+                                }
+                            }
+                        }
+
+                        for (int k = 0; k < keys.size(); k++) {
+                            int key = keys.get(k);
+                            if (key < 0 || pendingKeys.get(key)) {
+                                remainingKeys.add(key);
+                            }
+                        }
+                        swapKeys();
+                    }
+
+                    private boolean matches(long localRowID, int key) {
+                        if (partition.getInt(localRowID, symbolColumnIndex) != key) {
+                            return false;
+                        }
+                        for (int i = 0; i < filterColumnIndexes.length; i++) {
+                            if (partition.getInt(localRowID, filterColumnIndexes[i]) != filterSymbolKeys.get(i)) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+
+                    private void swapKeys() {
+                        DirectIntList temp = keys;
+                        keys = remainingKeys;
+                        remainingKeys = temp;
+                        remainingKeys.reset();
                     }
                 }
         );
     }
+
+    /**
+     * Finds composite index over symbol column and some of filter columns.
+     *
+     * @param filterColumnIndexes receives column indexes of filter symbols.
+     * @return composite index number or -1 when there is none.
+     */
+    private int findCompositeIndex(int filterColumnIndexes[]) {
+        if (filterColumnIndexes.length == 0) {
+            return -1;
+        }
+        JournalMetadata<T> m = journal.getMetadata();
+        int constrained[] = new int[filterColumnIndexes.length + 1];
+        constrained[0] = symbolColumnIndex;
+        for (int i = 0; i < filterColumnIndexes.length; i++) {
+            constrained[i + 1] = filterColumnIndexes[i] = m.getColumnIndex(filterSymbols.get(i));
+        }
+        int idx = m.findCompositeIndex(constrained);
+        return idx == -1 || indexOf(m.getCompositeIndex(idx).columnIndexes, symbolColumnIndex) == -1 ? -1 : idx;
+    }
+
+    private static int indexOf(int values[], int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
 }
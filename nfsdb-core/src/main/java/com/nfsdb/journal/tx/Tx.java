@@ -46,6 +46,14 @@ public class Tx {
     public long indexPointers[];
     // 2 + 8 * lagIndexPointers.len
     public long lagIndexPointers[];
+    // 4 + 4 * partitionVersions.len, versions of rewritten partitions by partition index
+    public int partitionVersions[];
+    // 4, number of partitions dropped by retention, partition indexes of row ids are relative to it
+    public int partitionIndexBase;
+    // 8, start of first partition kept by retention, directories before it are not part of journal
+    public long partitionTimestampLo;
+    // 4, schema version of journal, readers reload metadata when writer adds columns
+    public int metadataVersion;
 
     @Override
     public String toString() {
@@ -62,6 +70,10 @@ public class Tx {
                 ", symbolTableIndexPointers=" + Arrays.toString(symbolTableIndexPointers) +
                 ", indexPointers=" + Arrays.toString(indexPointers) +
                 ", lagIndexPointers=" + Arrays.toString(lagIndexPointers) +
+                ", partitionVersions=" + Arrays.toString(partitionVersions) +
+                ", partitionIndexBase=" + partitionIndexBase +
+                ", partitionTimestampLo=" + partitionTimestampLo +
+                ", metadataVersion=" + metadataVersion +
                 "}";
     }
 }
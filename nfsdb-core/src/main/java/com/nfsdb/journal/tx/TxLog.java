@@ -18,6 +18,7 @@ package com.nfsdb.journal.tx;
 
 import com.nfsdb.journal.JournalMode;
 import com.nfsdb.journal.column.HugeBuffer;
+import com.nfsdb.journal.column.MappedFile;
 import com.nfsdb.journal.exceptions.JournalException;
 import com.nfsdb.journal.factory.configuration.Constants;
 import com.nfsdb.journal.utils.Unsafe;
@@ -26,6 +27,13 @@ import java.io.File;
 
 public class TxLog {
 
+    // set in command byte of records, which carry partition versions
+    private static final byte FLAG_PARTITION_VERSIONS = 0x40;
+    // set in command byte of records, which carry partition index base
+    private static final byte FLAG_PARTITION_BASE = 0x20;
+    // set in command byte of records, which carry metadata version
+    private static final byte FLAG_METADATA_VERSION = 0x10;
+
     private long address = 0;
     private HugeBuffer mf;
 
@@ -59,7 +67,7 @@ public class TxLog {
         long offset = Math.max(9, mf.getAppendOffset());
         mf.setPos(offset);
         mf.put(tx.prevTxAddress);
-        mf.put(tx.command);
+        mf.put((byte) (tx.command | FLAG_PARTITION_VERSIONS | FLAG_PARTITION_BASE | FLAG_METADATA_VERSION));
         mf.put(System.nanoTime());
         mf.put(tx.journalMaxRowID);
         mf.put(tx.lastPartitionTimestamp);
@@ -69,6 +77,10 @@ public class TxLog {
         mf.put(tx.symbolTableIndexPointers);
         mf.put(tx.indexPointers);
         mf.put(tx.lagIndexPointers);
+        mf.put(tx.partitionVersions);
+        mf.put(tx.partitionIndexBase);
+        mf.put(tx.partitionTimestampLo);
+        mf.put(tx.metadataVersion);
         // write out tx address
         address = mf.getPos();
         setTxAddress(offset);
@@ -83,6 +95,10 @@ public class TxLog {
         mf.force();
     }
 
+    public MappedFile getMappedFile() {
+        return mf;
+    }
+
     public long getTxAddress() {
         long a = mf.getAddress(0, 9);
 
@@ -127,7 +143,8 @@ public class TxLog {
         tx.address = address;
         mf.setPos(address);
         tx.prevTxAddress = mf.getLong();
-        tx.command = mf.get();
+        byte command = mf.get();
+        tx.command = (byte) (command & ~(FLAG_PARTITION_VERSIONS | FLAG_PARTITION_BASE | FLAG_METADATA_VERSION));
         tx.timestamp = mf.getLong();
         tx.journalMaxRowID = mf.getLong();
         tx.lastPartitionTimestamp = mf.getLong();
@@ -137,5 +154,15 @@ public class TxLog {
         tx.symbolTableIndexPointers = mf.get(tx.symbolTableIndexPointers);
         tx.indexPointers = mf.get(tx.indexPointers);
         tx.lagIndexPointers = mf.get(tx.lagIndexPointers);
+        // records written before partition versions were introduced do not have the flag
+        tx.partitionVersions = (command & FLAG_PARTITION_VERSIONS) == 0 ? null : mf.get((int[]) null);
+        if ((command & FLAG_PARTITION_BASE) == 0) {
+            tx.partitionIndexBase = 0;
+            tx.partitionTimestampLo = 0;
+        } else {
+            tx.partitionIndexBase = mf.getInt();
+            tx.partitionTimestampLo = mf.getLong();
+        }
+        tx.metadataVersion = (command & FLAG_METADATA_VERSION) == 0 ? 0 : mf.getInt();
     }
 }
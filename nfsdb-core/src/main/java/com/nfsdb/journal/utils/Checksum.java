@@ -18,6 +18,7 @@ package com.nfsdb.journal.utils;
 
 import com.nfsdb.journal.exceptions.JournalRuntimeException;
 import com.nfsdb.journal.factory.configuration.ColumnMetadata;
+import com.nfsdb.journal.factory.configuration.CompositeIndexMetadata;
 import com.nfsdb.journal.factory.configuration.JournalMetadata;
 
 import java.nio.ByteBuffer;
@@ -45,6 +46,9 @@ public final class Checksum {
             }
             buf.clear();
             flushBuf(md, buf, metadata.getPartitionType().name().length() * 2).put(metadata.getPartitionType().name().getBytes(Files.UTF_8));
+            if (metadata.getPartitionWidth() > 1) {
+                flushBuf(md, buf, 4).putInt(metadata.getPartitionWidth());
+            }
             for (int i = 0; i < metadata.getColumnCount(); i++) {
                 ColumnMetadata m = metadata.getColumnMetadata(i);
                 flushBuf(md, buf, m.name.length() * 2).put(m.name.getBytes(Files.UTF_8));
@@ -55,6 +59,27 @@ public final class Checksum {
                 if (m.sameAs != null) {
                     flushBuf(md, buf, m.sameAs.length() * 2).put(m.sameAs.getBytes(Files.UTF_8));
                 }
+                // attributes added later only count when set, checksums of existing journals stay the same
+                if (m.bitmapIndexed) {
+                    flushBuf(md, buf, 1).put((byte) 2);
+                }
+                if (m.sortedIndexed) {
+                    flushBuf(md, buf, 1).put((byte) 3);
+                }
+                if (m.exactIndexed) {
+                    flushBuf(md, buf, 1).put((byte) 4);
+                }
+                if (m.bloomFiltered) {
+                    flushBuf(md, buf, 1).put((byte) 5);
+                }
+                if (m.ngramIndexed) {
+                    flushBuf(md, buf, 1).put((byte) 6);
+                }
+            }
+            for (int i = 0; i < metadata.getCompositeIndexCount(); i++) {
+                CompositeIndexMetadata m = metadata.getCompositeIndex(i);
+                flushBuf(md, buf, m.name.length() * 2).put(m.name.getBytes(Files.UTF_8));
+                flushBuf(md, buf, 4).putInt(m.distinctCountHint);
             }
             buf.flip();
             md.update(buf);
@@ -69,6 +94,38 @@ public final class Checksum {
         return s == null ? 0 : (s.hashCode() & 0xFFFFFFF) % M;
     }
 
+    /**
+     * 64-bit hash of string, FNV-1a over chars followed by murmur3 finalizer so that all bits depend on input.
+     * Null hashes to 0.
+     *
+     * @param s string.
+     * @return hash of string.
+     */
+    public static long hash64(CharSequence s) {
+        if (s == null) {
+            return 0;
+        }
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public static int hash(int values[], int M) {
+        int h = 0;
+        for (int i = 0; i < values.length; i++) {
+            h = 31 * h + values[i];
+        }
+        return (h & 0xFFFFFFF) % M;
+    }
+
     private Checksum() {
     }
 
@@ -25,6 +25,11 @@ import org.joda.time.Interval;
 
 public final class Dates {
 
+    private static final long MINUTE_MILLIS = 60000L;
+    private static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+    private static final int MINUTES_PER_DAY = 1440;
+    private static final int HOURS_PER_DAY = 24;
+
     public static DateTime utc(int year, int month, int day, int hour, int minute) {
         return new DateTime(year, month, day, hour, minute, DateTimeZone.UTC);
     }
@@ -66,7 +71,19 @@ public final class Dates {
     }
 
     public static Interval intervalForDirName(String name, PartitionType partitionType) {
+        return intervalForDirName(name, partitionType, 1);
+    }
+
+    /**
+     * Interval of partition directory name for partitions that span given number of partition type units,
+     * e.g. 15 for 15-minute partitions. Width is ignored for calendar partition types.
+     */
+    public static Interval intervalForDirName(String name, PartitionType partitionType, int width) {
         switch (partitionType) {
+            case HOUR:
+                return intervalForDate(Dates.utc(name + ":00:00.000Z").getMillis(), partitionType, width);
+            case MINUTE:
+                return intervalForDate(Dates.utc(name.substring(0, 13) + ':' + name.substring(14) + ":00.000Z").getMillis(), partitionType, width);
             case YEAR:
                 return intervalForDate(Dates.utc(name + "-01-01T00:00:00.000Z").getMillis(), partitionType);
             case MONTH:
@@ -83,12 +100,16 @@ public final class Dates {
     }
 
     public static Interval intervalForDate(long timestamp, PartitionType partitionType) {
+        return intervalForDate(timestamp, partitionType, 1);
+    }
+
+    public static Interval intervalForDate(long timestamp, PartitionType partitionType, int width) {
         switch (partitionType) {
             case NONE:
                 return new Interval(0, Long.MAX_VALUE, DateTimeZone.UTC);
             default:
-                long lo = intervalStart(timestamp, partitionType);
-                long hi = intervalEnd(lo, partitionType);
+                long lo = intervalStart(timestamp, partitionType, width);
+                long hi = intervalEnd(lo, partitionType, width);
                 return new Interval(lo, hi, DateTimeZone.UTC);
         }
     }
@@ -97,6 +118,30 @@ public final class Dates {
         return new DateTime(date, DateTimeZone.UTC);
     }
 
+    /**
+     * Moves timestamp by number of partition periods, e.g. days for DAY partitions.
+     */
+    public static long addPeriods(long timestamp, PartitionType partitionType, int count) {
+        return addPeriods(timestamp, partitionType, 1, count);
+    }
+
+    public static long addPeriods(long timestamp, PartitionType partitionType, int width, int count) {
+        switch (partitionType) {
+            case HOUR:
+                return timestamp + (long) count * width * HOUR_MILLIS;
+            case MINUTE:
+                return timestamp + (long) count * width * MINUTE_MILLIS;
+            case YEAR:
+                return Dates.utc(timestamp).plusYears(count).getMillis();
+            case MONTH:
+                return Dates.utc(timestamp).plusMonths(count).getMillis();
+            case DAY:
+                return Dates.utc(timestamp).plusDays(count).getMillis();
+            default:
+                return timestamp;
+        }
+    }
+
     public static String dirNameForIntervalStart(Interval interval, PartitionType partitionType) {
         switch (partitionType) {
             case YEAR:
@@ -105,12 +150,30 @@ public final class Dates {
                 return interval.getStart().toString("YYYY-MM");
             case DAY:
                 return interval.getStart().toString("YYYY-MM-dd");
+            case HOUR:
+                return interval.getStart().toString("YYYY-MM-dd'T'HH");
+            case MINUTE:
+                return interval.getStart().toString("YYYY-MM-dd'T'HH-mm");
             case NONE:
                 return "default";
         }
         return "";
     }
 
+    /**
+     * Checks that partitions of given width tile days exactly. Calendar partition types and NONE only have width of 1.
+     */
+    public static boolean isValidPartitionWidth(PartitionType partitionType, int width) {
+        switch (partitionType) {
+            case HOUR:
+                return width > 0 && HOURS_PER_DAY % width == 0;
+            case MINUTE:
+                return width > 0 && MINUTES_PER_DAY % width == 0;
+            default:
+                return width == 1;
+        }
+    }
+
     private Dates() {
     } // Prevent construction.
 
@@ -122,8 +185,12 @@ public final class Dates {
         return new Interval(start, endDateTime);
     }
 
-    private static long intervalStart(long timestamp, PartitionType partitionType) {
+    private static long intervalStart(long timestamp, PartitionType partitionType, int width) {
         switch (partitionType) {
+            case HOUR:
+                return floor(timestamp, width * HOUR_MILLIS);
+            case MINUTE:
+                return floor(timestamp, width * MINUTE_MILLIS);
             case YEAR:
                 return Dates.utc(timestamp).withMonthOfYear(1).withDayOfMonth(1).withTimeAtStartOfDay().getMillis();
             case MONTH:
@@ -134,8 +201,12 @@ public final class Dates {
         return 0;
     }
 
-    private static long intervalEnd(long start, PartitionType partitionType) {
+    private static long intervalEnd(long start, PartitionType partitionType, int width) {
         switch (partitionType) {
+            case HOUR:
+                return start + width * HOUR_MILLIS - 1;
+            case MINUTE:
+                return start + width * MINUTE_MILLIS - 1;
             case YEAR:
                 return Dates.utc(start).plusYears(1).getMillis() - 1;
             case MONTH:
@@ -145,4 +216,9 @@ public final class Dates {
         }
         return 0;
     }
+
+    private static long floor(long timestamp, long period) {
+        long r = timestamp % period;
+        return r < 0 ? timestamp - r - period : timestamp - r;
+    }
 }
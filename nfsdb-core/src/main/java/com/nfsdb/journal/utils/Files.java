@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 
 public final class Files {
@@ -52,6 +53,37 @@ public final class Files {
         }
     }
 
+    /**
+     * Copies regular files of one directory into another. Sub-directories are not copied.
+     *
+     * @param from source directory
+     * @param to   target directory, which must exist
+     * @throws JournalException if file cannot be copied
+     */
+    public static void copyDirContents(File from, File to) throws JournalException {
+        File[] files = from.listFiles();
+        if (files == null) {
+            throw new JournalException("Cannot list files in %s", from);
+        }
+        for (int i = 0; i < files.length; i++) {
+            if (files[i].isFile()) {
+                copy(files[i], new File(to, files[i].getName()));
+            }
+        }
+    }
+
+    public static void copy(File from, File to) throws JournalException {
+        try (FileChannel in = new FileInputStream(from).getChannel(); FileChannel out = new FileOutputStream(to).getChannel()) {
+            long size = in.size();
+            long pos = 0;
+            while (pos < size) {
+                pos += in.transferTo(pos, size - pos, out);
+            }
+        } catch (IOException e) {
+            throw new JournalException("Cannot copy %s to %s", e, from, to);
+        }
+    }
+
     public static void writeStringToFile(File file, String s) throws JournalException {
         try {
             try (FileOutputStream fos = new FileOutputStream(file)) {
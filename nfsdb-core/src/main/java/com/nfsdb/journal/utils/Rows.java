@@ -18,6 +18,11 @@ package com.nfsdb.journal.utils;
 
 public final class Rows {
 
+    /**
+     * Row id keeps partition index in upper 20 bits, journal cannot have more partitions than this.
+     */
+    public static final int MAX_PARTITION_INDEX = (1 << 20) - 1;
+
     public static long toRowID(int partitionIndex, long localRowID) {
         return (((long) partitionIndex) << 44L) + localRowID;
     }
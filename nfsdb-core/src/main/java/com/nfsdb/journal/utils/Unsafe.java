@@ -25,6 +25,7 @@ public final class Unsafe {
     private static final long BYTE_ARRAY_OFFSET;
     private static final long CHAR_ARRAY_OFFSET;
     private static final long INT_ARRAY_OFFSET;
+    private static final long LONG_ARRAY_OFFSET;
     private static final long OBJ_ARRAY_OFFSET;
 
     static {
@@ -35,6 +36,7 @@ public final class Unsafe {
             BYTE_ARRAY_OFFSET = UNSAFE.arrayBaseOffset(byte[].class);
             CHAR_ARRAY_OFFSET = UNSAFE.arrayBaseOffset(char[].class);
             INT_ARRAY_OFFSET = UNSAFE.arrayBaseOffset(int[].class);
+            LONG_ARRAY_OFFSET = UNSAFE.arrayBaseOffset(long[].class);
             OBJ_ARRAY_OFFSET = UNSAFE.arrayBaseOffset(Object[].class);
         } catch (Exception e) {
             throw new JournalRuntimeException(e);
@@ -60,6 +62,10 @@ public final class Unsafe {
         return INT_ARRAY_OFFSET;
     }
 
+    public static long getLongArrayOffset() {
+        return LONG_ARRAY_OFFSET;
+    }
+
     public static long getObjArrayOffset() {
         return OBJ_ARRAY_OFFSET;
     }
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal;
+
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.index.BitmapIndex;
+import com.nfsdb.journal.test.tools.AbstractTest;
+import com.nfsdb.journal.utils.Rnd;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+
+public class BitmapIndexTest extends AbstractTest {
+    private static final int totalRows = 200000;
+    private final Rnd rnd = new Rnd();
+    private File indexFile;
+
+    @Before
+    public void setup() throws JournalException {
+        indexFile = new File(factory.getConfiguration().getJournalBase(), "bitmap-test");
+    }
+
+    @Test
+    public void testAddAndReopen() throws JournalException {
+        int keys[] = generateKeys(totalRows, 0);
+        try (BitmapIndex index = new BitmapIndex(indexFile, totalRows, JournalMode.APPEND)) {
+            add(index, keys, 0, totalRows);
+            assertIndex(index, keys, totalRows);
+        }
+
+        try (BitmapIndex index = new BitmapIndex(indexFile, totalRows, JournalMode.READ)) {
+            assertIndex(index, keys, totalRows);
+        }
+    }
+
+    @Test
+    public void testSmallCommitsDoNotGrowFile() throws JournalException {
+        int rows = 150000;
+        int keys[] = generateKeys(rows, 0);
+        try (BitmapIndex index = new BitmapIndex(indexFile, rows, JournalMode.APPEND)) {
+            for (int i = 0; i < rows; i++) {
+                index.add(keys[i], i);
+                if (i % 10 == 0) {
+                    index.commit();
+                }
+            }
+            index.commit();
+            assertIndex(index, keys, rows);
+        }
+
+        // three chunks of six keys at most 8k each, sealed copies plus two areas of open chunk
+        Assert.assertTrue(new File(indexFile.getParentFile(), indexFile.getName() + ".b").length() < 1024 * 1024);
+
+        try (BitmapIndex index = new BitmapIndex(indexFile, rows, JournalMode.READ)) {
+            assertIndex(index, keys, rows);
+        }
+    }
+
+    @Test
+    public void testTruncate() throws JournalException {
+        int keys[] = generateKeys(totalRows, 0);
+        try (BitmapIndex index = new BitmapIndex(indexFile, totalRows, JournalMode.APPEND)) {
+            add(index, keys, 0, 150000);
+            index.truncate(100001);
+            assertIndex(index, keys, 100001);
+
+            // replace rows after truncation point with different keys
+            int other[] = generateKeys(totalRows, 1);
+            System.arraycopy(other, 100001, keys, 100001, totalRows - 100001);
+            add(index, keys, 100001, 130000);
+            assertIndex(index, keys, 130000);
+
+            index.truncate(0);
+            assertIndex(index, keys, 0);
+            add(index, keys, 0, 70000);
+            assertIndex(index, keys, 70000);
+        }
+
+        try (BitmapIndex index = new BitmapIndex(indexFile, totalRows, JournalMode.APPEND)) {
+            assertIndex(index, keys, 70000);
+            add(index, keys, 70000, totalRows);
+        }
+
+        try (BitmapIndex index = new BitmapIndex(indexFile, totalRows, JournalMode.READ)) {
+            assertIndex(index, keys, totalRows);
+        }
+    }
+
+    @Test
+    public void testUncommittedChunks() throws JournalException {
+        int keys[] = generateKeys(totalRows, 0);
+        try (BitmapIndex index = new BitmapIndex(indexFile, totalRows, JournalMode.APPEND)) {
+            for (int i = 0; i < totalRows; i++) {
+                index.add(keys[i], i);
+            }
+            // writer sees rows it has not committed
+            assertIndex(index, keys, totalRows);
+
+            try (BitmapIndex reader = new BitmapIndex(indexFile, totalRows, JournalMode.READ)) {
+                Assert.assertEquals(0, reader.size());
+            }
+
+            index.commit();
+        }
+    }
+
+    private int[] generateKeys(int count, int seed) {
+        int keys[] = new int[count];
+        for (int i = 0; i < count; i++) {
+            if (i % 1000 == seed) {
+                // sparse key
+                keys[i] = 4;
+            } else if (i % 777 == seed) {
+                keys[i] = -1;
+            } else if ((i / 5000) % 2 == seed) {
+                // long runs
+                keys[i] = 0;
+            } else {
+                keys[i] = rnd.nextPositiveInt() % 3 + 1;
+            }
+        }
+        return keys;
+    }
+
+    private void add(BitmapIndex index, int keys[], int lo, int hi) {
+        int commitAt = lo + rnd.nextPositiveInt() % 5000;
+        for (int i = lo; i < hi; i++) {
+            index.add(keys[i], i);
+            if (i == commitAt) {
+                index.commit();
+                commitAt += 1 + rnd.nextPositiveInt() % 5000;
+            }
+        }
+        index.commit();
+    }
+
+    private void assertIndex(BitmapIndex index, int keys[], int size) {
+        Assert.assertEquals(size, index.size());
+        Assert.assertEquals((size + BitmapIndex.CHUNK_ROWS - 1) / BitmapIndex.CHUNK_ROWS, index.getChunkCount());
+
+        long words[] = new long[BitmapIndex.CHUNK_WORDS];
+        for (int key = -1; key < 5; key++) {
+            for (int chunk = 0; chunk <= index.getChunkCount(); chunk++) {
+                Arrays.fill(words, 0);
+                index.or(key, chunk, words);
+                for (int bit = 0; bit < BitmapIndex.CHUNK_ROWS; bit++) {
+                    long row = (long) chunk * BitmapIndex.CHUNK_ROWS + bit;
+                    boolean expected = row < size && keys[(int) row] == key;
+                    if (expected != ((words[bit >>> 6] & (1L << bit)) != 0)) {
+                        Assert.fail("key " + key + ", row " + row + ", expected " + expected);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal;
+
+import com.nfsdb.journal.column.ColumnType;
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.factory.configuration.JournalStructure;
+import com.nfsdb.journal.lang.cst.JournalEntry;
+import com.nfsdb.journal.lang.cst.JournalSource;
+import com.nfsdb.journal.model.Quote;
+import com.nfsdb.journal.test.tools.AbstractTest;
+import com.nfsdb.journal.utils.Dates;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+
+public class ColumnAddTest extends AbstractTest {
+
+    private static final long DAY = 86400000L;
+    private static final long T0 = Dates.toMillis("2013-01-01T00:00:00.000Z");
+
+    @Test
+    public void testAddColumn() throws Exception {
+        JournalWriter w = makeWriter();
+        append(w, 0, 2, false);
+
+        w.addColumn("qty", ColumnType.INT);
+        w.addColumn("note", ColumnType.STRING);
+        Assert.assertEquals(2, w.getMetadata().getVersion());
+
+        append(w, 1, 3, true);
+
+        // partition written before columns were added does not get their files
+        File first = w.getPartition(0, false).getPartitionDir();
+        Assert.assertFalse(new File(first, "qty.d").exists());
+        Assert.assertFalse(new File(first, "note.d").exists());
+
+        Journal r = factory.reader("test");
+        Assert.assertEquals(5, r.getMetadata().getColumnCount());
+        assertRows(r, 4, 4);
+        Assert.assertFalse(new File(first, "qty.d").exists());
+    }
+
+    @Test
+    public void testReaderRefresh() throws Exception {
+        JournalWriter w = makeWriter();
+        append(w, 0, 2, false);
+
+        Journal r = factory.reader("test");
+        Assert.assertEquals(3, r.getMetadata().getColumnCount());
+        Assert.assertEquals(4, r.size());
+
+        w.addColumn("qty", ColumnType.INT);
+        w.addColumn("note", ColumnType.STRING);
+        append(w, 1, 3, true);
+
+        Assert.assertTrue(r.refresh());
+        Assert.assertEquals(5, r.getMetadata().getColumnCount());
+        assertRows(r, 4, 4);
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        JournalWriter w = makeWriter();
+        append(w, 0, 2, false);
+        w.addColumn("qty", ColumnType.INT);
+        w.addColumn("note", ColumnType.STRING);
+        w.close();
+
+        w = factory.writer("test");
+        Assert.assertEquals(5, w.getMetadata().getColumnCount());
+        Assert.assertEquals(2, w.getMetadata().getColumnMetadata("note").version);
+        append(w, 1, 3, true);
+
+        assertRows(factory.reader("test"), 4, 4);
+    }
+
+    @Test
+    public void testRejectColumns() throws Exception {
+        JournalWriter w = makeWriter();
+        append(w, 0, 1, false);
+
+        try {
+            w.addColumn("sym", ColumnType.INT);
+            Assert.fail();
+        } catch (JournalException ignore) {
+        }
+
+        try {
+            w.addColumn("other", ColumnType.SYMBOL);
+            Assert.fail();
+        } catch (JournalException ignore) {
+        }
+
+        w.entryWriter(T0 + DAY).append();
+        try {
+            w.addColumn("qty", ColumnType.INT);
+            Assert.fail();
+        } catch (JournalException ignore) {
+        }
+        w.commit();
+
+        JournalWriter<Quote> q = factory.writer(Quote.class);
+        try {
+            q.addColumn("qty", ColumnType.INT);
+            Assert.fail();
+        } catch (JournalException ignore) {
+        }
+    }
+
+    private JournalWriter makeWriter() throws JournalException {
+        return factory.writer(new JournalStructure("test") {{
+            $sym("sym");
+            $double("price");
+            $ts();
+            partitionBy(PartitionType.DAY);
+        }});
+    }
+
+    /**
+     * Appends two rows a day, new columns are given values when they exist.
+     */
+    private void append(JournalWriter w, int fromDay, int toDay, boolean withColumns) throws JournalException {
+        for (int day = fromDay; day < toDay; day++) {
+            for (int k = 0; k < 2; k++) {
+                long t = T0 + day * DAY + (withColumns ? 43200000L : 0) + k * 1000;
+                JournalEntryWriter e = w.entryWriter(t);
+                e.putSym(0, "S" + k);
+                e.putDouble(1, day + k * 0.5);
+                if (withColumns) {
+                    e.putInt(3, day * 10 + k);
+                    e.putStr(4, "n" + day + k);
+                }
+                e.append();
+            }
+        }
+        w.commit();
+    }
+
+    /**
+     * Rows written before columns were added, which are at start of day, read nulls. Rows written after
+     * read their values.
+     */
+    private void assertRows(Journal r, int oldRows, int newRows) {
+        JournalSource src = r.rows();
+        int old = 0;
+        int n = 0;
+        while (src.hasNext()) {
+            JournalEntry e = src.next();
+            long t = e.getDate(2) - T0;
+            if (t % DAY < 43200000L) {
+                Assert.assertEquals(0, e.getInt("qty"));
+                Assert.assertNull(e.getStr("note"));
+                old++;
+            } else {
+                int day = (int) (t / DAY);
+                int k = (int) ((t % DAY - 43200000L) / 1000);
+                Assert.assertEquals(day * 10 + k, e.getInt("qty"));
+                Assert.assertEquals("n" + day + k, e.getStr("note"));
+            }
+            n++;
+        }
+        Assert.assertEquals(oldRows, old);
+        Assert.assertEquals(oldRows + newRows, n);
+    }
+}
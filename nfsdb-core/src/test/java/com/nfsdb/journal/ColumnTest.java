@@ -135,6 +135,52 @@ public class ColumnTest {
         }
     }
 
+    @Test
+    public void testSyncDoesNotRecreateDeletedFile() throws JournalException {
+        MappedFile mf = new MappedFileImpl(dataFile, 22, JournalMode.APPEND);
+        try (FixedColumn col = new FixedColumn(mf, 4)) {
+            col.putInt(10);
+            col.commit();
+        }
+        Assert.assertTrue(Files.delete(dataFile));
+        mf.sync();
+        Assert.assertFalse(dataFile.exists());
+    }
+
+    @Test
+    public void testSyncOnOtherThread() throws Exception {
+        final MappedFile mf = new MappedFileImpl(dataFile, 10, JournalMode.APPEND);
+        try (FixedColumn col = new FixedColumn(mf, 8)) {
+            // spans several pages
+            for (int i = 0; i < 1000; i++) {
+                col.putLong(i);
+                col.commit();
+            }
+            mf.prepareSync();
+            Thread t = new Thread() {
+                @Override
+                public void run() {
+                    mf.sync();
+                }
+            };
+            t.start();
+            t.join();
+
+            // collected buffers that are still pending are forced by close before they are unmapped
+            col.putLong(1000);
+            col.commit();
+            mf.prepareSync();
+        }
+        mf.sync();
+
+        try (FixedColumn col = new FixedColumn(new MappedFileImpl(dataFile, 10, JournalMode.READ), 8)) {
+            Assert.assertEquals(1001, col.size());
+            for (int i = 0; i < 1001; i++) {
+                Assert.assertEquals(i, col.getLong(i));
+            }
+        }
+    }
+
     @Test
     public void testTruncate() throws JournalException {
 
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal;
+
+import com.nfsdb.journal.concurrent.IndexBuilder;
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.factory.configuration.JournalConfigurationBuilder;
+import com.nfsdb.journal.lang.cst.KeySource;
+import com.nfsdb.journal.lang.cst.PartitionSlice;
+import com.nfsdb.journal.lang.cst.RowCursor;
+import com.nfsdb.journal.lang.cst.RowSource;
+import com.nfsdb.journal.lang.cst.impl.ksrc.PartialSymbolKeySource;
+import com.nfsdb.journal.lang.cst.impl.ref.StringRef;
+import com.nfsdb.journal.lang.cst.impl.rsrc.CompositeIndexRowSource;
+import com.nfsdb.journal.model.Quote;
+import com.nfsdb.journal.test.tools.JournalTestFactory;
+import com.nfsdb.journal.test.tools.TestData;
+import com.nfsdb.journal.utils.Files;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class CompositeIndexTest {
+
+    @Rule
+    public final JournalTestFactory factory = new JournalTestFactory(
+            new JournalConfigurationBuilder() {{
+                // small hint makes keys of different pairs collide
+                $(Quote.class).partitionBy(PartitionType.MONTH).key("sym").compositeIndex(7, "sym", "ex")
+                        .$sym("sym").index().valueCountHint(15)
+                        .$sym("ex").index().valueCountHint(10)
+                        .$ts()
+                ;
+            }}.build(Files.makeTempDir())
+    );
+
+    private JournalWriter<Quote> w;
+
+    @Before
+    public void setUp() throws Exception {
+        w = factory.writer(Quote.class);
+        TestData.appendQuoteData2(w);
+        Assert.assertTrue(w.getPartitionCount() > 1);
+    }
+
+    @Test
+    public void testQueryAll() throws Exception {
+        assertQueryAll(w);
+        assertQueryAll(factory.reader(Quote.class));
+    }
+
+    @Test
+    public void testQueryHead() throws Exception {
+        assertQueryHead(w);
+        assertQueryHead(factory.reader(Quote.class));
+    }
+
+    @Test
+    public void testRowSource() throws Exception {
+        assertRowSource(w);
+        assertRowSource(factory.reader(Quote.class));
+    }
+
+    @Test
+    public void testRebuild() throws Exception {
+        w.rebuildIndexes();
+        assertQueryAll(w);
+
+        List<Partition<Quote>> partitions = new ArrayList<>();
+        for (int i = 0; i < w.getPartitionCount() - 1; i++) {
+            partitions.add(w.getPartition(i, true));
+        }
+        new IndexBuilder<>(w, partitions, 2, 1).join();
+        assertQueryAll(w);
+        assertRowSource(factory.reader(Quote.class));
+    }
+
+    @Test
+    public void testTruncateAndAppend() throws Exception {
+        Journal<Quote> r = factory.reader(Quote.class);
+        w.truncate();
+        TestData.appendQuoteData2(w);
+        w.commit();
+        Assert.assertTrue(r.refresh());
+        assertQueryAll(r);
+        assertQueryHead(r);
+    }
+
+    private void assertQueryAll(Journal<Quote> journal) throws JournalException {
+        String keys[] = {"BP.L", "TLW.L", "WTB.L"};
+        for (String ex : new String[]{"SK", "GR", "LXE"}) {
+            List<String> expected = new ArrayList<>();
+            for (Quote q : journal) {
+                if (Arrays.asList(keys).contains(q.getSym()) && ex.equals(q.getEx())) {
+                    expected.add(q.toString());
+                }
+            }
+            Assert.assertTrue(expected.size() > 0);
+
+            List<String> actual = new ArrayList<>();
+            for (Quote q : journal.query().all().withKeys(keys).filter("ex", ex).asResultSet().sort()) {
+                actual.add(q.toString());
+            }
+            Assert.assertEquals(expected, actual);
+        }
+    }
+
+    private void assertQueryHead(Journal<Quote> journal) throws JournalException {
+        List<String> expected = new ArrayList<>();
+        List<String> seen = new ArrayList<>();
+        for (int i = journal.getPartitionCount() - 1; i >= 0; i--) {
+            Partition<Quote> p = journal.getPartition(i, true);
+            for (long row = p.size() - 1; row >= 0; row--) {
+                Quote q = p.read(row);
+                if ("SK".equals(q.getEx()) && !seen.contains(q.getSym())) {
+                    seen.add(q.getSym());
+                    expected.add(q.toString());
+                }
+            }
+        }
+        Collections.sort(expected);
+
+        List<String> actual = new ArrayList<>();
+        for (Quote q : journal.query().head().withKeys().filter("ex", "SK").strict(false).asResultSet()) {
+            actual.add(q.toString());
+        }
+        Collections.sort(actual);
+        Assert.assertEquals(expected, actual);
+    }
+
+    private void assertRowSource(Journal<Quote> journal) throws JournalException {
+        final StringRef sym = new StringRef("sym");
+        final StringRef ex = new StringRef("ex");
+        RowSource src = new CompositeIndexRowSource(
+                new StringRef[]{sym, ex},
+                new KeySource[]{
+                        new PartialSymbolKeySource(sym, Arrays.asList("BP.L", "ADM.L", "XXX")),
+                        new PartialSymbolKeySource(ex, Arrays.asList("LXE", "SK"))
+                }
+        );
+
+        int total = 0;
+        for (int i = 0; i < journal.getPartitionCount(); i++) {
+            Partition<Quote> p = journal.getPartition(i, true);
+            List<Long> expected = new ArrayList<>();
+            for (long row = 0; row < p.size(); row++) {
+                Quote q = p.read(row);
+                if (("BP.L".equals(q.getSym()) || "ADM.L".equals(q.getSym())) && ("LXE".equals(q.getEx()) || "SK".equals(q.getEx()))) {
+                    expected.add(row);
+                }
+            }
+
+            PartitionSlice slice = new PartitionSlice();
+            slice.partition = p;
+            slice.lo = 0;
+            slice.calcHi = true;
+            List<Long> actual = new ArrayList<>();
+            RowCursor cursor = src.cursor(slice);
+            while (cursor.hasNext()) {
+                actual.add(cursor.next());
+            }
+            Collections.sort(actual);
+            Assert.assertEquals(expected, actual);
+            total += actual.size();
+        }
+        Assert.assertTrue(total > 0);
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal;
+
+import com.nfsdb.journal.column.ColumnType;
+import com.nfsdb.journal.column.CompressedFile;
+import com.nfsdb.journal.column.MappedFileImpl;
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.factory.configuration.JournalConfigurationBuilder;
+import com.nfsdb.journal.model.Quote;
+import com.nfsdb.journal.test.tools.JournalTestFactory;
+import com.nfsdb.journal.utils.Dates;
+import com.nfsdb.journal.utils.Files;
+import com.nfsdb.journal.utils.Unsafe;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class CompressedPartitionTest {
+
+    private static final int ROWS_PER_DAY = 2000;
+
+    @Rule
+    public final JournalTestFactory factory = new JournalTestFactory(
+            new JournalConfigurationBuilder() {{
+                $(Quote.class).partitionBy(PartitionType.DAY).recordCountHint(ROWS_PER_DAY).key("sym")
+                        .$sym("sym").index().valueCountHint(5)
+                        .$ts()
+                ;
+            }}.build(Files.makeTempDir())
+    );
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        dir = Files.makeTempDir();
+    }
+
+    @After
+    public void tearDown() {
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testDeltaDelta() throws Exception {
+        Random rnd = new Random(1);
+        File raw = new File(dir, "ts.d");
+        try (MappedFileImpl f = new MappedFileImpl(raw, 16, JournalMode.APPEND)) {
+            long t = System.currentTimeMillis();
+            for (int i = 0; i < 50000; i++) {
+                // mostly regular, with gaps and steps back now and then
+                t += i % 1000 == 0 ? -rnd.nextInt(1000000) : i % 97 == 0 ? rnd.nextInt(100000) : 1000 + rnd.nextInt(3);
+                Unsafe.getUnsafe().putLong(f.getAddress(i * 8, 8), i % 5000 == 0 ? rnd.nextLong() : t);
+            }
+            f.setAppendOffset(50000 * 8);
+        }
+        assertRoundTrip(raw, ColumnType.DATE, 8, true);
+    }
+
+    @Test
+    public void testXor() throws Exception {
+        Random rnd = new Random(2);
+        File raw = new File(dir, "bid.d");
+        try (MappedFileImpl f = new MappedFileImpl(raw, 16, JournalMode.APPEND)) {
+            double d = 100;
+            for (int i = 0; i < 50000; i++) {
+                d = i % 10 == 0 ? d : i % 1000 == 0 ? rnd.nextDouble() * Double.MAX_VALUE : d + rnd.nextInt(10) * 0.25;
+                Unsafe.getUnsafe().putDouble(f.getAddress(i * 8, 8), i == 777 ? Double.NaN : d);
+            }
+            f.setAppendOffset(50000 * 8);
+        }
+        assertRoundTrip(raw, ColumnType.DOUBLE, 8, false);
+    }
+
+    @Test
+    public void testBitPack() throws Exception {
+        Random rnd = new Random(3);
+        File raw = new File(dir, "sym.d");
+        try (MappedFileImpl f = new MappedFileImpl(raw, 16, JournalMode.APPEND)) {
+            for (int i = 0; i < 50001; i++) {
+                int v = i < 20000 ? 7 : i < 40000 ? rnd.nextInt(12) : i % 10000 == 0 ? Integer.MIN_VALUE : rnd.nextInt();
+                Unsafe.getUnsafe().putInt(f.getAddress(i * 4, 4), v);
+            }
+            f.setAppendOffset(50001 * 4);
+        }
+        assertRoundTrip(raw, ColumnType.SYMBOL, 4, false);
+    }
+
+    @Test
+    public void testLz() throws Exception {
+        Random rnd = new Random(4);
+        File raw = new File(dir, "str.d");
+        String words[] = {"alpha", "beta", "gamma", "delta", "epsilon"};
+        try (MappedFileImpl f = new MappedFileImpl(raw, 16, JournalMode.APPEND)) {
+            int n = 300000;
+            for (int i = 0; i < n; i++) {
+                byte b;
+                if (i > 200000) {
+                    // incompressible tail
+                    b = (byte) rnd.nextInt();
+                } else {
+                    String w = words[(i / 5) % words.length];
+                    b = i % 400 < 100 ? (byte) 'x' : (byte) w.charAt(i % w.length());
+                }
+                Unsafe.getUnsafe().putByte(f.getAddress(i, 1), b);
+            }
+            f.setAppendOffset(n);
+        }
+        assertRoundTrip(raw, ColumnType.STRING, 1, false);
+    }
+
+    @Test
+    public void testCompressSealedPartitions() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        Journal<Quote> r = factory.reader(Quote.class);
+        List<Quote> expected = new ArrayList<>();
+        for (int day = 0; day < 5; day++) {
+            append(w, day, expected);
+        }
+        long uncompressed = size(w.getPartition(0, true).getPartitionDir());
+        w.setCompression(2);
+        waitForCompression(w, 3);
+
+        File compressed = w.getPartition(0, true).getPartitionDir();
+        Assert.assertEquals(w.getLocation(), compressed.getParentFile());
+        Assert.assertEquals("2013-01-01.1", compressed.getName());
+        Assert.assertTrue(new File(compressed, "timestamp.d.z").exists());
+        Assert.assertFalse(new File(compressed, "timestamp.d").exists());
+        Assert.assertFalse(new File(w.getLocation(), "2013-01-01").exists());
+        Assert.assertTrue(size(compressed) < uncompressed / 2);
+
+        Assert.assertTrue(r.refresh());
+        assertQuotes(w, expected);
+        assertQuotes(r, expected);
+        assertQuotes(factory.reader(Quote.class), expected);
+    }
+
+    @Test
+    public void testOutOfOrderIntoCompressedPartition() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        List<Quote> expected = new ArrayList<>();
+        for (int day = 0; day < 4; day++) {
+            append(w, day, expected);
+        }
+        w.setCompression(2);
+        waitForCompression(w, 2);
+
+        Quote late = new Quote().setSym("S1").setMode("late").setBid(-1)
+                .setTimestamp(Dates.toMillis("2013-01-01T00:00:00.000Z") + 1500);
+        w.appendOutOfOrder(Arrays.asList(late));
+        expected.add(2, late);
+
+        File rewritten = w.getPartition(0, true).getPartitionDir();
+        Assert.assertEquals("2013-01-01.2", rewritten.getName());
+        Assert.assertTrue(new File(rewritten, "timestamp.d").exists());
+        Assert.assertFalse(new File(rewritten, "timestamp.d.z").exists());
+        assertQuotes(w, expected);
+        assertQuotes(factory.reader(Quote.class), expected);
+
+        // rewritten partition is compressed again on next partition switch
+        append(w, 4, expected);
+        waitForCompression(w, 3);
+        Assert.assertEquals("2013-01-01.3", w.getPartition(0, true).getPartitionDir().getName());
+        assertQuotes(factory.reader(Quote.class), expected);
+    }
+
+    private void assertRoundTrip(File raw, ColumnType type, int width, boolean indexFile) throws JournalException {
+        File z = CompressedFile.compressedFile(raw);
+        CompressedFile.compress(raw, z, CompressedFile.codecFor(type, indexFile));
+
+        try (MappedFileImpl expected = new MappedFileImpl(raw, 16, JournalMode.READ); CompressedFile actual = new CompressedFile(z)) {
+            long size = expected.getAppendOffset();
+            Assert.assertEquals(size, actual.getAppendOffset());
+            for (long o = 0; o + width <= size; o += width) {
+                Assert.assertEquals(value(expected.getAddress(o, width), width), value(actual.getAddress(o, width), width));
+            }
+
+            // random access and values that span blocks
+            Random rnd = new Random(5);
+            for (int i = 0; i < 10000; i++) {
+                long o = i % 2 == 0 ? (rnd.nextInt((int) (size / 65536)) + 1) * 65536L - 5 : (long) (rnd.nextDouble() * (size - 8));
+                Assert.assertEquals(value(expected.getAddress(o, 8), 8), value(actual.getAddress(o, 8), 8));
+            }
+        }
+
+        File restored = new File(dir, raw.getName() + ".restored");
+        CompressedFile.decompress(z, restored);
+        try (MappedFileImpl expected = new MappedFileImpl(raw, 16, JournalMode.READ); MappedFileImpl actual = new MappedFileImpl(restored, 16, JournalMode.READ)) {
+            Assert.assertEquals(expected.getAppendOffset(), actual.getAppendOffset());
+            for (long o = 0; o < expected.getAppendOffset(); o++) {
+                Assert.assertEquals(value(expected.getAddress(o, 1), 1), value(actual.getAddress(o, 1), 1));
+            }
+        }
+    }
+
+    private static long value(long address, int width) {
+        switch (width) {
+            case 1:
+                return Unsafe.getUnsafe().getByte(address);
+            case 4:
+                return Unsafe.getUnsafe().getInt(address);
+            default:
+                return Unsafe.getUnsafe().getLong(address);
+        }
+    }
+
+    private static long size(File dir) {
+        long result = 0;
+        File files[] = dir.listFiles();
+        Assert.assertNotNull(files);
+        for (int i = 0; i < files.length; i++) {
+            result += files[i].length();
+        }
+        return result;
+    }
+
+    private static void waitForCompression(JournalWriter<Quote> w, int count) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (true) {
+            w.commit();
+            int compressed = 0;
+            for (int i = 0; i < w.getPartitionCount(); i++) {
+                if (new File(w.getPartition(i, false).getPartitionDir(), "timestamp.d.z").exists()) {
+                    compressed++;
+                }
+            }
+            if (compressed == count) {
+                return;
+            }
+            Assert.assertTrue("Partitions have not been compressed", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static void append(JournalWriter<Quote> w, int day, List<Quote> expected) throws JournalException {
+        long t = Dates.toMillis("2013-01-01T00:00:00.000Z") + day * 86400000L;
+        Random rnd = new Random(day);
+        double bid = 100;
+        for (int i = 0; i < ROWS_PER_DAY; i++) {
+            bid += rnd.nextInt(5) * 0.25 - 0.5;
+            Quote q = new Quote()
+                    .setSym("S" + (i % 5))
+                    .setBid(bid)
+                    .setAsk(bid + 0.5)
+                    .setBidSize(rnd.nextInt(1000))
+                    .setAskSize(i)
+                    .setMode(i % 7 == 0 ? null : "mode" + rnd.nextInt(10))
+                    .setEx("LXE")
+                    .setTimestamp(t + i * 1000L + rnd.nextInt(3));
+            w.append(q);
+            expected.add(q);
+        }
+        w.commit();
+    }
+
+    private static void assertQuotes(Journal<Quote> journal, List<Quote> expected) throws JournalException {
+        Assert.assertEquals(expected.size(), journal.size());
+        int i = 0;
+        for (Quote q : journal) {
+            Assert.assertEquals(expected.get(i++), q);
+        }
+
+        Random rnd = new Random(6);
+        for (int k = 0; k < 1000; k++) {
+            int n = rnd.nextInt(expected.size());
+            long rowID = journal.query().all().asResultSet().getRowID(n);
+            Assert.assertEquals(expected.get(n), journal.read(rowID));
+        }
+
+        int s1 = 0;
+        for (int k = 0; k < expected.size(); k++) {
+            if ("S1".equals(expected.get(k).getSym())) {
+                s1++;
+            }
+        }
+        Assert.assertEquals(s1, journal.query().all().withKeys("S1").count());
+    }
+}
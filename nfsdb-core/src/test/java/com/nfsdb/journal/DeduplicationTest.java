@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal;
+
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.factory.configuration.JournalConfigurationBuilder;
+import com.nfsdb.journal.factory.configuration.JournalStructure;
+import com.nfsdb.journal.lang.cst.JournalEntry;
+import com.nfsdb.journal.lang.cst.JournalSource;
+import com.nfsdb.journal.model.Quote;
+import com.nfsdb.journal.test.tools.JournalTestFactory;
+import com.nfsdb.journal.utils.Dates;
+import com.nfsdb.journal.utils.Files;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class DeduplicationTest {
+
+    private static final long T0 = Dates.toMillis("2013-01-01T00:00:00.000Z");
+
+    @Rule
+    public final JournalTestFactory factory = new JournalTestFactory(
+            new JournalConfigurationBuilder() {{
+                $(Quote.class).partitionBy(PartitionType.DAY).recordCountHint(1000).key("sym")
+                        .$sym("sym").index().valueCountHint(5)
+                        .$sym("ex").valueCountHint(5)
+                        .$ts()
+                ;
+            }}.build(Files.makeTempDir())
+    );
+
+    @Test
+    public void testReplayIsDropped() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        w.setDeduplication(1, TimeUnit.HOURS, "sym");
+        append(w, 0, 100);
+        w.commit();
+
+        // feed replays last 30 rows and carries on
+        append(w, 70, 110);
+        w.commit();
+
+        assertQuotes(factory.reader(Quote.class), 110);
+    }
+
+    @Test
+    public void testSameTimestamp() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        w.setDeduplication(1, TimeUnit.HOURS, "sym", "ex");
+        w.append(quote("S1", "LN", 1, T0));
+        w.append(quote("S2", "LN", 2, T0));
+        w.append(quote("S1", "NY", 3, T0));
+        w.append(quote("S1", "LN", 4, T0));
+        w.append(quote("S2", "LN", 5, T0));
+        w.append(quote("S3", "LN", 6, T0));
+        w.commit();
+
+        Assert.assertEquals(4, w.size());
+        double bids[] = {1, 2, 3, 6};
+        int i = 0;
+        for (Quote q : factory.reader(Quote.class)) {
+            Assert.assertEquals(bids[i++], q.getBid(), 0);
+        }
+    }
+
+    @Test
+    public void testOutOfOrderRowIsRejected() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        w.setDeduplication(1, TimeUnit.HOURS, "sym");
+        append(w, 0, 10);
+        try {
+            w.append(quote("S9", null, 0, T0 + 5000));
+            Assert.fail();
+        } catch (JournalException ignore) {
+            // expected
+        }
+        append(w, 5, 12);
+        w.commit();
+        assertQuotes(factory.reader(Quote.class), 12);
+    }
+
+    @Test
+    public void testReplayAfterReopen() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        append(w, 0, 100);
+        w.close();
+
+        // rows written before writer started checking are looked up in symbol index
+        w = factory.writer(Quote.class);
+        w.setDeduplication(1, TimeUnit.MINUTES, "sym");
+        append(w, 50, 120);
+        w.commit();
+        assertQuotes(factory.reader(Quote.class), 120);
+    }
+
+    @Test
+    public void testWindow() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        w.setDeduplication(10, TimeUnit.SECONDS, "sym");
+        append(w, 0, 5000);
+        w.commit();
+
+        // most of replayed rows are long out of window
+        append(w, 3000, 5100);
+        w.commit();
+        assertQuotes(factory.reader(Quote.class), 5100);
+    }
+
+    @Test
+    public void testRollback() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        w.setDeduplication(1, TimeUnit.HOURS, "sym");
+        append(w, 0, 10);
+        w.commit();
+        append(w, 10, 20);
+        w.rollback();
+
+        append(w, 5, 20);
+        w.commit();
+        assertQuotes(factory.reader(Quote.class), 20);
+    }
+
+    @Test
+    public void testEntryWriter() throws Exception {
+        JournalWriter w = factory.writer(new JournalStructure("book") {{
+            $sym("sym");
+            $str("venue");
+            $double("price");
+            $str("note");
+            $ts();
+            partitionBy(PartitionType.DAY);
+        }});
+        w.setDeduplication(1, TimeUnit.HOURS, "sym", "venue");
+
+        appendEntries(w, 0, 50);
+        w.commit();
+        appendEntries(w, 40, 60);
+        w.commit();
+        w.close();
+
+        // not indexed, rows written before writer started checking are found by timestamp
+        w = factory.writer("book");
+        w.setDeduplication(1, TimeUnit.HOURS, "sym", "venue");
+        appendEntries(w, 55, 70);
+        w.commit();
+
+        try {
+            JournalEntryWriter e = w.entryWriter(T0 + 10 * 1000);
+            e.putSym(0, "S0");
+            e.putStr(1, "XX");
+            e.append();
+            Assert.fail();
+        } catch (JournalException ignore) {
+            // expected
+        }
+
+        appendEntries(w, 68, 72);
+        w.commit();
+
+        Journal r = factory.reader("book");
+        Assert.assertEquals(72, r.size());
+        JournalSource src = r.rows();
+        int n = 0;
+        while (src.hasNext()) {
+            JournalEntry e = src.next();
+            Assert.assertEquals("S" + (n % 3), e.getSym("sym"));
+            Assert.assertEquals(n % 2 == 0 ? "LN" : null, e.getStr("venue"));
+            Assert.assertEquals(n, e.getDouble("price"), 0);
+            Assert.assertEquals("note" + n, e.getStr("note"));
+            n++;
+        }
+        Assert.assertEquals(72, n);
+    }
+
+    private static void appendEntries(JournalWriter w, int lo, int hi) throws JournalException {
+        for (int i = lo; i < hi; i++) {
+            JournalEntryWriter e = w.entryWriter(T0 + i * 1000);
+            e.putSym(0, "S" + (i % 3));
+            if (i % 2 == 0) {
+                e.putStr(1, "LN");
+            }
+            e.putDouble(2, i);
+            e.putStr(3, "note" + i);
+            e.append();
+        }
+    }
+
+    private static void append(JournalWriter<Quote> w, int lo, int hi) throws JournalException {
+        for (int i = lo; i < hi; i++) {
+            w.append(quote("S" + (i % 5), i % 2 == 0 ? "LN" : null, i, T0 + i * 1000));
+        }
+    }
+
+    private static Quote quote(String sym, String ex, double bid, long timestamp) {
+        return new Quote().setSym(sym).setEx(ex).setBid(bid).setTimestamp(timestamp);
+    }
+
+    private static void assertQuotes(Journal<Quote> r, int count) throws JournalException {
+        Assert.assertEquals(count, r.size());
+        int i = 0;
+        for (Quote q : r) {
+            Assert.assertEquals(i, q.getBid(), 0);
+            Assert.assertEquals("S" + (i % 5), q.getSym());
+            i++;
+        }
+        Assert.assertEquals(count, i);
+        Assert.assertEquals((count + 3) / 5, r.query().all().withKeys("S1").count());
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal;
+
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.factory.configuration.JournalConfigurationBuilder;
+import com.nfsdb.journal.lang.cst.KeySource;
+import com.nfsdb.journal.lang.cst.PartitionSlice;
+import com.nfsdb.journal.lang.cst.RowCursor;
+import com.nfsdb.journal.lang.cst.RowSource;
+import com.nfsdb.journal.lang.cst.impl.ksrc.PartialSymbolKeySource;
+import com.nfsdb.journal.lang.cst.impl.ref.StringRef;
+import com.nfsdb.journal.lang.cst.impl.rsrc.KvIndexHeadRowSource;
+import com.nfsdb.journal.lang.cst.impl.rsrc.KvIndexRowSource;
+import com.nfsdb.journal.lang.cst.impl.rsrc.KvIndexTopRowSource;
+import com.nfsdb.journal.model.Quote;
+import com.nfsdb.journal.test.tools.JournalTestFactory;
+import com.nfsdb.journal.utils.Dates;
+import com.nfsdb.journal.utils.Files;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class DeferredIndexTest {
+
+    private static final int ROWS_PER_DAY = 600;
+    private static final int DAYS = 3;
+    private static final int BATCH_SIZE = 1000;
+    private static final String SYMBOLS[] = {"AGK.L", "BP.L", "TLW.L", "ABF.L", "LLOY.L", "BT-A.L", "WTB.L"};
+    private static final String EXCHANGES[] = {"LXE", "GR", "SK"};
+
+    @Rule
+    public final JournalTestFactory factory = new JournalTestFactory(
+            new JournalConfigurationBuilder() {{
+                $(Quote.class).partitionBy(PartitionType.DAY).recordCountHint(ROWS_PER_DAY).key("sym")
+                        .$sym("sym").index().valueCountHint(10)
+                        .$sym("ex").index().valueCountHint(5)
+                        .$ts()
+                ;
+            }}.build(Files.makeTempDir())
+    );
+
+    private JournalWriter<Quote> sync;
+    private JournalWriter<Quote> deferred;
+
+    @Before
+    public void setUp() throws Exception {
+        sync = factory.writer(Quote.class, "sync");
+        deferred = factory.writer(Quote.class, "deferred").setDeferredIndexing(BATCH_SIZE);
+        append(sync, 0, DAYS * ROWS_PER_DAY);
+        append(deferred, 0, DAYS * ROWS_PER_DAY);
+    }
+
+    @Test
+    public void testIndexBehind() throws Exception {
+        Journal<Quote> r = factory.reader(Quote.class, "deferred");
+        int sym = r.getMetadata().getColumnIndex("sym");
+        for (int i = 0; i < r.getPartitionCount(); i++) {
+            Partition<Quote> p = r.getPartition(i, true);
+            Assert.assertEquals(ROWS_PER_DAY, p.size());
+            if (i < r.getPartitionCount() - 1) {
+                // partitions append has moved on from are caught up
+                Assert.assertEquals(p.size(), p.getIndexedSize(sym));
+            } else {
+                Assert.assertTrue(p.getIndexedSize(sym) < p.size());
+                Assert.assertEquals(p.getIndexForColumn(sym).size(), p.getIndexedSize(sym));
+            }
+        }
+        assertQueries(factory.reader(Quote.class, "sync"), r);
+        assertQueries(sync, deferred);
+    }
+
+    @Test
+    public void testCatchUp() throws Exception {
+        Journal<Quote> r = factory.reader(Quote.class, "deferred");
+        deferred.catchUpIndexes();
+        deferred.commit();
+        Assert.assertTrue(r.refresh());
+
+        int sym = r.getMetadata().getColumnIndex("sym");
+        for (int i = 0; i < r.getPartitionCount(); i++) {
+            Partition<Quote> p = r.getPartition(i, true);
+            Assert.assertEquals(p.size(), p.getIndexedSize(sym));
+        }
+        assertQueries(factory.reader(Quote.class, "sync"), r);
+    }
+
+    @Test
+    public void testCatchUpOnCommit() throws Exception {
+        append(sync, DAYS * ROWS_PER_DAY, BATCH_SIZE);
+        append(deferred, DAYS * ROWS_PER_DAY, BATCH_SIZE);
+        Partition<Quote> p = deferred.getPartition(deferred.getPartitionCount() - 1, true);
+        Assert.assertTrue(p.size() - p.getIndexedSize(deferred.getMetadata().getColumnIndex("sym")) < BATCH_SIZE);
+        assertQueries(factory.reader(Quote.class, "sync"), factory.reader(Quote.class, "deferred"));
+    }
+
+    @Test
+    public void testSyncWriterCatchesUp() throws Exception {
+        deferred.close();
+        JournalWriter<Quote> w = factory.writer(Quote.class, "deferred");
+        append(w, DAYS * ROWS_PER_DAY, 10);
+        append(sync, DAYS * ROWS_PER_DAY, 10);
+
+        Journal<Quote> r = factory.reader(Quote.class, "deferred");
+        Partition<Quote> p = r.getPartition(r.getPartitionCount() - 1, true);
+        Assert.assertEquals(p.size(), p.getIndexedSize(r.getMetadata().getColumnIndex("sym")));
+        assertQueries(factory.reader(Quote.class, "sync"), r);
+    }
+
+    @Test
+    public void testSwitchToSync() throws Exception {
+        deferred.setDeferredIndexing(0);
+        append(deferred, DAYS * ROWS_PER_DAY, 10);
+        append(sync, DAYS * ROWS_PER_DAY, 10);
+
+        Partition<Quote> p = deferred.getPartition(deferred.getPartitionCount() - 1, true);
+        Assert.assertEquals(p.size(), p.getIndexedSize(deferred.getMetadata().getColumnIndex("ex")));
+        assertQueries(sync, deferred);
+    }
+
+    @Test
+    public void testRollback() throws Exception {
+        long t = Dates.toMillis("2013-01-01T00:00:00.000Z");
+        for (int i = 0; i < 10; i++) {
+            deferred.append(new Quote().setSym("BP.L").setEx("SK").setTimestamp(t + DAYS * 86400000L + i));
+        }
+        deferred.rollback();
+        assertQueries(factory.reader(Quote.class, "sync"), factory.reader(Quote.class, "deferred"));
+        assertQueries(sync, deferred);
+    }
+
+    private static void append(JournalWriter<Quote> w, int from, int count) throws JournalException {
+        long t = Dates.toMillis("2013-01-01T00:00:00.000Z");
+        long step = 86400000L / ROWS_PER_DAY;
+        for (int i = from; i < from + count; i++) {
+            w.append(new Quote()
+                    .setSym(SYMBOLS[(i * 7 + i / 5) % SYMBOLS.length])
+                    .setEx(EXCHANGES[i % EXCHANGES.length])
+                    .setTimestamp(t + i * step));
+            if (i % 250 == 0) {
+                w.commit();
+            }
+        }
+        w.commit();
+    }
+
+    private static void assertQueries(Journal<Quote> expected, Journal<Quote> actual) throws JournalException {
+        String keys[] = {"BP.L", "WTB.L", "LLOY.L"};
+        Assert.assertTrue(expected.query().all().withKeys(keys).count() > 0);
+        Assert.assertEquals(rows(expected.query().all().withKeys(keys).asResultSet()), rows(actual.query().all().withKeys(keys).asResultSet()));
+        Assert.assertEquals(
+                rows(expected.query().all().withKeys(keys).filter("ex", "GR").asResultSet()),
+                rows(actual.query().all().withKeys(keys).filter("ex", "GR").asResultSet())
+        );
+        Assert.assertArrayEquals(expected.query().all().withKeys(keys).countByKey(), actual.query().all().withKeys(keys).countByKey());
+        Assert.assertArrayEquals(expected.query().all().withKeys(keys).countByPartition(), actual.query().all().withKeys(keys).countByPartition());
+
+        Assert.assertEquals(rows(expected.query().head().withKeys().asResultSet()), rows(actual.query().head().withKeys().asResultSet()));
+        Assert.assertEquals(
+                rows(expected.query().head().withKeys().filter("ex", "SK").strict(false).asResultSet()),
+                rows(actual.query().head().withKeys().filter("ex", "SK").strict(false).asResultSet())
+        );
+        Assert.assertEquals(
+                rows(expected.query().head().withKeys().filter("ex", "SK").strict(true).asResultSet()),
+                rows(actual.query().head().withKeys().filter("ex", "SK").strict(true).asResultSet())
+        );
+
+        StringRef sym = new StringRef("sym");
+        for (int i = 0; i < expected.getPartitionCount(); i++) {
+            KeySource k1 = new PartialSymbolKeySource(sym, Arrays.asList("BP.L"));
+            KeySource k2 = new PartialSymbolKeySource(sym, Arrays.asList("BP.L"));
+            assertRowSource(new KvIndexRowSource(sym, k1), expected.getPartition(i, true), new KvIndexRowSource(sym, k2), actual.getPartition(i, true));
+            assertRowSource(new KvIndexHeadRowSource(sym, k1, 5, 1, null), expected.getPartition(i, true), new KvIndexHeadRowSource(sym, k2, 5, 1, null), actual.getPartition(i, true));
+            assertRowSource(new KvIndexTopRowSource(sym, k1, null), expected.getPartition(i, true), new KvIndexTopRowSource(sym, k2, null), actual.getPartition(i, true));
+        }
+    }
+
+    private static void assertRowSource(RowSource expected, Partition<Quote> expectedPartition, RowSource actual, Partition<Quote> actualPartition) {
+        Assert.assertEquals(rows(expected, expectedPartition), rows(actual, actualPartition));
+    }
+
+    private static List<Long> rows(RowSource src, Partition<Quote> partition) {
+        PartitionSlice slice = new PartitionSlice();
+        slice.partition = partition;
+        slice.lo = 0;
+        slice.calcHi = true;
+        List<Long> result = new ArrayList<>();
+        RowCursor cursor = src.cursor(slice);
+        while (cursor.hasNext()) {
+            result.add(cursor.next());
+        }
+        return result;
+    }
+
+    private static List<Long> rows(UnorderedResultSet<Quote> rs) {
+        List<Long> result = new ArrayList<>();
+        for (int i = 0, n = rs.size(); i < n; i++) {
+            result.add(rs.getRowID(i));
+        }
+        Collections.sort(result);
+        return result;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal;
+
+import com.nfsdb.journal.concurrent.GroupCommit;
+import com.nfsdb.journal.model.Quote;
+import com.nfsdb.journal.test.tools.AbstractTest;
+import com.nfsdb.journal.test.tools.TestUtils;
+import com.nfsdb.journal.tx.TxFuture;
+import com.nfsdb.journal.utils.Dates;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class GroupCommitTest extends AbstractTest {
+
+    @Test
+    public void testGroupCommit() throws Exception {
+        final int writerCount = 4;
+        final int commitCount = 50;
+        final int batchSize = 100;
+
+        GroupCommit groupCommit = new GroupCommit("test");
+        groupCommit.start();
+        try {
+            ExecutorService service = Executors.newCachedThreadPool();
+            final CountDownLatch latch = new CountDownLatch(writerCount);
+            final List<Throwable> exceptions = new CopyOnWriteArrayList<>();
+
+            for (int i = 0; i < writerCount; i++) {
+                final JournalWriter<Quote> w = factory.writer(Quote.class, "quote-gc-" + i).setGroupCommit(groupCommit);
+                service.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            long timestamp = Dates.toMillis("2013-10-05T10:00:00.000Z");
+                            TxFuture future = null;
+                            for (int k = 0; k < commitCount; k++) {
+                                TestUtils.generateQuoteData(w, batchSize, timestamp, 1000);
+                                timestamp += batchSize * 1000;
+                                future = w.commitDurableAsync();
+                            }
+                            Assert.assertNotNull(future);
+                            Assert.assertTrue(future.waitFor(10, TimeUnit.SECONDS));
+                        } catch (Throwable e) {
+                            exceptions.add(e);
+                        }
+                        latch.countDown();
+                    }
+                });
+            }
+
+            latch.await();
+            service.shutdown();
+            Assert.assertEquals(0, exceptions.size());
+            Assert.assertEquals(writerCount * commitCount, groupCommit.getCommitCount());
+            Assert.assertTrue(groupCommit.getBatchCount() > 0);
+            Assert.assertTrue(groupCommit.getMaxBatchSize() >= 1);
+
+            for (int i = 0; i < writerCount; i++) {
+                Assert.assertEquals(commitCount * batchSize, factory.reader(Quote.class, "quote-gc-" + i).size());
+            }
+        } finally {
+            groupCommit.halt();
+        }
+    }
+
+    @Test
+    public void testGroupCommitPublishesTxWhenDurable() throws Exception {
+        GroupCommit groupCommit = new GroupCommit("test");
+        JournalWriter<Quote> w = factory.writer(Quote.class).setGroupCommit(groupCommit);
+        try {
+            TestUtils.generateQuoteData(w, 100, Dates.toMillis("2013-10-05T10:00:00.000Z"), 1000);
+            // service is not started, transaction is queued and must not be visible
+            TxFuture future = w.commitDurableAsync();
+            Assert.assertNotNull(future);
+            Assert.assertFalse(future.waitFor(10, TimeUnit.MILLISECONDS));
+            Assert.assertEquals(0, factory.reader(Quote.class).size());
+
+            groupCommit.start();
+            Assert.assertTrue(future.waitFor(10, TimeUnit.SECONDS));
+            Assert.assertEquals(100, factory.reader(Quote.class).size());
+
+            // writer carries on while previous commit is pending, next commit waits for it
+            TestUtils.generateQuoteData(w, 50, Dates.toMillis("2013-10-05T12:00:00.000Z"), 1000);
+            future = w.commitDurableAsync();
+            TestUtils.generateQuoteData(w, 50, Dates.toMillis("2013-10-05T14:00:00.000Z"), 1000);
+            w.commit();
+            Assert.assertTrue(future.waitFor(0, TimeUnit.MILLISECONDS));
+            Assert.assertEquals(200, factory.reader(Quote.class).size());
+        } finally {
+            w.close();
+            groupCommit.halt();
+        }
+    }
+}
@@ -21,11 +21,14 @@ import com.nfsdb.journal.exceptions.JournalException;
 import com.nfsdb.journal.exceptions.JournalRuntimeException;
 import com.nfsdb.journal.index.KVIndex;
 import com.nfsdb.journal.test.tools.AbstractTest;
+import com.nfsdb.journal.utils.Rnd;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 public class IndexTest extends AbstractTest {
     private static final int totalKeys = 10;
@@ -320,6 +323,245 @@ public class IndexTest extends AbstractTest {
         }
     }
 
+    @Test
+    public void testCompact() throws Exception {
+        long expected[][] = {
+                {0, 3, 5, 6, 8, 10, 12, 14, 16, 22},
+                {1, 2, 4, 7, 9, 11, 17, 21, 33},
+                {},
+                {13, 15}
+        };
+        File compactFile = new File(indexFile.getParentFile(), indexFile.getName() + ".compact");
+        try (KVIndex index = new KVIndex(indexFile, 10, 60, 1, JournalMode.APPEND, 0)) {
+            putValues(expected, index);
+            index.add(-1, 18);
+            index.commit();
+            index.writeCompact(compactFile);
+        }
+        KVIndex.replace(compactFile, indexFile);
+        Assert.assertFalse(new File(indexFile.getParentFile(), indexFile.getName() + ".r").exists());
+
+        try (KVIndex index = new KVIndex(indexFile, 10, 60, 1, JournalMode.READ, 0)) {
+            Assert.assertTrue(index.isCompact());
+            Assert.assertEquals(34, index.size());
+            assertValues(expected, index);
+            Assert.assertEquals(0, index.getValueCount(4));
+            Assert.assertFalse(index.cachedCursor(5).hasNext());
+            Assert.assertEquals(22, index.lastValue(0));
+            Assert.assertEquals(7, index.getValueQuick(1, 3));
+        }
+
+        // appending to compact index converts it back to blocks
+        try (KVIndex index = new KVIndex(indexFile, 10, 60, 1, JournalMode.APPEND, 0)) {
+            index.add(3, 34);
+            index.commit();
+            Assert.assertFalse(index.isCompact());
+        }
+
+        expected[3] = new long[]{13, 15, 34};
+        try (KVIndex index = new KVIndex(indexFile, 10, 60, 1, JournalMode.READ, 0)) {
+            Assert.assertFalse(index.isCompact());
+            Assert.assertEquals(35, index.size());
+            assertValues(expected, index);
+            Assert.assertEquals(1, index.getValueCount(-1));
+        }
+    }
+
+    @Test
+    public void testCompactTruncate() throws Exception {
+        long expected[][] = {
+                {0, 3, 5, 6, 8, 10, 12, 14, 16, 22},
+                {1, 2, 4, 7, 9, 11, 17, 21, 33}
+        };
+        File compactFile = new File(indexFile.getParentFile(), indexFile.getName() + ".compact");
+        try (KVIndex index = new KVIndex(indexFile, 10, 60, 1, JournalMode.APPEND, 0)) {
+            putValues(expected, index);
+            index.commit();
+            index.writeCompact(compactFile);
+        }
+        KVIndex.replace(compactFile, indexFile);
+
+        try (KVIndex index = new KVIndex(indexFile, 10, 60, 1, JournalMode.APPEND, 0)) {
+            index.truncate(9);
+            Assert.assertFalse(index.isCompact());
+            Assert.assertEquals(9, index.size());
+            assertValues(new long[][]{{0, 3, 5, 6, 8}, {1, 2, 4, 7}}, index);
+        }
+    }
+
+    @Test
+    public void testPacked() throws Exception {
+        Rnd rnd = new Rnd();
+        long expected[][] = new long[3][];
+        expected[0] = new long[300];
+        expected[1] = new long[128];
+        expected[2] = new long[1];
+        long v = 0;
+        for (int i = 0; i < 300; i++) {
+            v += 1 + rnd.nextPositiveInt() % (i < 200 ? 100 : 100000);
+            expected[0][i] = v;
+        }
+        for (int i = 0; i < 128; i++) {
+            expected[1][i] = i * 3 + 1;
+        }
+        expected[2][0] = Long.MAX_VALUE / 2;
+
+        File compactFile = new File(indexFile.getParentFile(), indexFile.getName() + ".compact");
+        try (KVIndex index = new KVIndex(indexFile, 10, 60, 1, JournalMode.APPEND, 0)) {
+            putValues(expected, index);
+            index.commit();
+            index.writeCompact(compactFile, true);
+        }
+        KVIndex.replace(compactFile, indexFile);
+
+        try (KVIndex index = new KVIndex(indexFile, 10, 60, 1, JournalMode.READ, 0)) {
+            Assert.assertTrue(index.isPacked());
+            Assert.assertEquals(Long.MAX_VALUE / 2 + 1, index.size());
+            assertValues(expected, index);
+            for (int i = 0; i < expected.length; i++) {
+                Assert.assertEquals(expected[i][expected[i].length - 1], index.lastValue(i));
+                for (int k = 0; k < expected[i].length; k++) {
+                    Assert.assertEquals(expected[i][k], index.getValueQuick(i, k));
+                }
+            }
+            assertSeek(expected[0], index, 0);
+        }
+
+        try (KVIndex index = new KVIndex(indexFile, 10, 60, 1, JournalMode.APPEND, 0)) {
+            index.add(1, 1000);
+            index.commit();
+            Assert.assertFalse(index.isPacked());
+            Assert.assertEquals(129, index.getValueCount(1));
+            Assert.assertEquals(expected[0][299], index.getValueQuick(0, 299));
+        }
+    }
+
+    @Test
+    public void testSeek() throws Exception {
+        long values[] = new long[100];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i * 2 + 1;
+        }
+        File compactFile = new File(indexFile.getParentFile(), indexFile.getName() + ".compact");
+        // block layout with partial last block
+        try (KVIndex index = new KVIndex(indexFile, 10, 70, 1, JournalMode.APPEND, 0)) {
+            putValues(new long[][]{values}, index);
+            index.commit();
+            assertSeek(values, index, 0);
+            index.writeCompact(compactFile);
+        }
+        KVIndex.replace(compactFile, indexFile);
+        try (KVIndex index = new KVIndex(indexFile, 10, 70, 1, JournalMode.READ, 0)) {
+            Assert.assertTrue(index.isCompact());
+            assertSeek(values, index, 0);
+        }
+    }
+
+    @Test
+    public void testRangeCursor() throws Exception {
+        long expected[][] = new long[2][];
+        expected[0] = new long[500];
+        expected[1] = new long[3];
+        Rnd rnd = new Rnd();
+        long v = 10;
+        for (int i = 0; i < expected[0].length; i++) {
+            expected[0][i] = v;
+            v += 1 + rnd.nextPositiveInt() % 10;
+        }
+        expected[1] = new long[]{v + 1, v + 2, v + 3};
+
+        File compactFile = new File(indexFile.getParentFile(), indexFile.getName() + ".compact");
+        try (KVIndex index = new KVIndex(indexFile, 10, 300, 1, JournalMode.APPEND, 0)) {
+            putValues(expected, index);
+            index.commit();
+            assertRanges(expected, index);
+            index.writeCompact(compactFile);
+        }
+        KVIndex.replace(compactFile, indexFile);
+
+        try (KVIndex index = new KVIndex(indexFile, 10, 300, 1, JournalMode.APPEND, 0)) {
+            Assert.assertTrue(index.isCompact());
+            assertRanges(expected, index);
+            index.writeCompact(compactFile, true);
+        }
+        KVIndex.replace(compactFile, indexFile);
+
+        try (KVIndex index = new KVIndex(indexFile, 10, 300, 1, JournalMode.READ, 0)) {
+            Assert.assertTrue(index.isPacked());
+            assertRanges(expected, index);
+        }
+    }
+
+    private void assertRanges(long values[][], KVIndex index) {
+        long max = values[1][2];
+        long ranges[][] = {
+                {0, max + 10},
+                {0, 5},
+                {max + 1, max + 10},
+                {values[0][0], values[0][0]},
+                {values[0][7] + 1, values[0][8] - 1},
+                {values[0][127], values[0][128]},
+                {values[0][50] - 1, values[0][350] + 1},
+                {values[0][499], values[1][1]},
+                {values[0][3], Long.MAX_VALUE},
+                {20, 10}
+        };
+
+        for (long r[] : ranges) {
+            for (int key = 0; key < values.length; key++) {
+                List<Long> inRange = new ArrayList<>();
+                for (long x : values[key]) {
+                    if (x >= r[0] && x <= r[1]) {
+                        inRange.add(x);
+                    }
+                }
+
+                KVIndex.RangeCursor cursor = index.forwardCursor(key, r[0], r[1]);
+                Assert.assertEquals(inRange.size(), cursor.size());
+                for (int i = 0; i < inRange.size(); i++) {
+                    Assert.assertTrue(cursor.hasNext());
+                    Assert.assertEquals((long) inRange.get(i), cursor.next());
+                }
+                Assert.assertFalse(cursor.hasNext());
+
+                cursor = index.cursor(key, r[0], r[1]);
+                for (int i = inRange.size() - 1; i >= 0; i--) {
+                    Assert.assertTrue(cursor.hasNext());
+                    Assert.assertEquals((long) inRange.get(i), cursor.next());
+                }
+                Assert.assertFalse(cursor.hasNext());
+            }
+        }
+    }
+
+    private void assertSeek(long values[], KVIndex index, int key) {
+        KVIndex.IndexCursor cursor = index.cachedCursor(key);
+        // seek below smallest value exhausts cursor
+        cursor.seek(values[0] - 1);
+        Assert.assertFalse(cursor.hasNext());
+
+        for (int i = values.length - 1; i > 0; i -= 7) {
+            // seek between values lands on smaller one
+            cursor = index.cachedCursor(key);
+            cursor.seek(values[i] - 1);
+            Assert.assertTrue(cursor.hasNext());
+            Assert.assertEquals(values[i - 1], cursor.next());
+
+            cursor = index.cachedCursor(key);
+            cursor.seek(values[i]);
+            Assert.assertEquals(values[i], cursor.next());
+            // seek beyond current position does not move cursor back
+            cursor.seek(Long.MAX_VALUE);
+            Assert.assertEquals(values[i - 1], cursor.next());
+
+            int k = i - 1;
+            while (cursor.hasNext()) {
+                Assert.assertEquals(values[--k], cursor.next());
+            }
+            Assert.assertEquals(0, k);
+        }
+    }
+
     private void putValues(long values[][], KVIndex index) {
         for (int i = 0; i < values.length; i++) {
             for (int k = 0; k < values[i].length; k++) {
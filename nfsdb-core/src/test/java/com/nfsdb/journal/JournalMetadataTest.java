@@ -17,6 +17,7 @@
 package com.nfsdb.journal;
 
 import com.nfsdb.journal.column.HugeBuffer;
+import com.nfsdb.journal.exceptions.JournalConfigurationException;
 import com.nfsdb.journal.factory.configuration.JournalMetadataBuilder;
 import com.nfsdb.journal.factory.configuration.JournalMetadataImpl;
 import com.nfsdb.journal.model.Quote;
@@ -41,4 +42,121 @@ public class JournalMetadataTest {
         hb.close();
         Assert.assertEquals(m, metadata);
     }
+
+    @Test
+    public void testBitmapIndexWrite() throws Exception {
+        JournalMetadataBuilder<Quote> b = new JournalMetadataBuilder<>(Quote.class);
+        b.$sym("sym").bitmapIndex();
+        b.$sym("ex").index().valueCountHint(5);
+
+        HugeBuffer hb = new HugeBuffer(temp.newFile(), 10, JournalMode.APPEND);
+        JournalMetadataImpl m = (JournalMetadataImpl) b.build();
+        m.write(hb);
+        JournalMetadataImpl metadata = new JournalMetadataImpl(hb);
+        hb.close();
+        Assert.assertEquals(m, metadata);
+        Assert.assertTrue(metadata.getColumnMetadata(metadata.getColumnIndex("sym")).bitmapIndexed);
+        Assert.assertFalse(metadata.getColumnMetadata(metadata.getColumnIndex("ex")).bitmapIndexed);
+    }
+
+    @Test
+    public void testCompositeIndexWrite() throws Exception {
+        JournalMetadataBuilder<Quote> b = new JournalMetadataBuilder<>(Quote.class);
+        b.$sym("sym").index().valueCountHint(15);
+        b.$sym("ex").index().valueCountHint(5);
+        b.compositeIndex("sym", "ex");
+        b.compositeIndex(20, "ex", "askSize", "sym");
+
+        HugeBuffer hb = new HugeBuffer(temp.newFile(), 10, JournalMode.APPEND);
+        JournalMetadataImpl m = (JournalMetadataImpl) b.build();
+        m.write(hb);
+        JournalMetadataImpl metadata = new JournalMetadataImpl(hb);
+        hb.close();
+        Assert.assertEquals(m, metadata);
+        Assert.assertEquals(2, metadata.getCompositeIndexCount());
+        Assert.assertEquals("sym+ex", metadata.getCompositeIndex(0).name);
+        Assert.assertEquals(75, metadata.getCompositeIndex(0).distinctCountHint);
+        Assert.assertEquals(20, metadata.getCompositeIndex(1).distinctCountHint);
+
+        int sym = metadata.getColumnIndex("sym");
+        int ex = metadata.getColumnIndex("ex");
+        int askSize = metadata.getColumnIndex("askSize");
+        Assert.assertEquals(0, metadata.findCompositeIndex(new int[]{ex, sym}));
+        Assert.assertEquals(1, metadata.findCompositeIndex(new int[]{askSize, ex, sym}));
+        Assert.assertEquals(-1, metadata.findCompositeIndex(new int[]{ex, askSize}));
+    }
+
+    @Test(expected = JournalConfigurationException.class)
+    public void testCompositeIndexColumnType() throws Exception {
+        JournalMetadataBuilder<Quote> b = new JournalMetadataBuilder<>(Quote.class);
+        b.compositeIndex("sym", "bid");
+        b.build();
+    }
+
+    @Test
+    public void testSortedIndexWrite() throws Exception {
+        JournalMetadataBuilder<Quote> b = new JournalMetadataBuilder<>(Quote.class);
+        b.sortedIndex("bid").sortedIndex("askSize");
+
+        HugeBuffer hb = new HugeBuffer(temp.newFile(), 10, JournalMode.APPEND);
+        JournalMetadataImpl m = (JournalMetadataImpl) b.build();
+        m.write(hb);
+        JournalMetadataImpl metadata = new JournalMetadataImpl(hb);
+        hb.close();
+        Assert.assertEquals(m, metadata);
+        Assert.assertTrue(metadata.getColumnMetadata(metadata.getColumnIndex("bid")).sortedIndexed);
+        Assert.assertFalse(metadata.getColumnMetadata(metadata.getColumnIndex("ask")).sortedIndexed);
+    }
+
+    @Test(expected = JournalConfigurationException.class)
+    public void testSortedIndexColumnType() throws Exception {
+        new JournalMetadataBuilder<>(Quote.class).sortedIndex("sym").build();
+    }
+
+    @Test
+    public void testExactIndexWrite() throws Exception {
+        JournalMetadataBuilder<Quote> b = new JournalMetadataBuilder<>(Quote.class);
+        b.$str("mode").exactIndex().bloomFilter();
+        b.$str("ex").exactIndex();
+
+        HugeBuffer hb = new HugeBuffer(temp.newFile(), 10, JournalMode.APPEND);
+        JournalMetadataImpl m = (JournalMetadataImpl) b.build();
+        m.write(hb);
+        JournalMetadataImpl metadata = new JournalMetadataImpl(hb);
+        hb.close();
+        Assert.assertEquals(m, metadata);
+        Assert.assertTrue(metadata.getColumnMetadata(metadata.getColumnIndex("mode")).exactIndexed);
+        Assert.assertTrue(metadata.getColumnMetadata(metadata.getColumnIndex("mode")).bloomFiltered);
+        Assert.assertTrue(metadata.getColumnMetadata(metadata.getColumnIndex("ex")).exactIndexed);
+        Assert.assertFalse(metadata.getColumnMetadata(metadata.getColumnIndex("ex")).bloomFiltered);
+    }
+
+    @Test
+    public void testNgramIndexWrite() throws Exception {
+        JournalMetadataBuilder<Quote> b = new JournalMetadataBuilder<>(Quote.class);
+        b.$str("mode").ngramIndex();
+
+        HugeBuffer hb = new HugeBuffer(temp.newFile(), 10, JournalMode.APPEND);
+        JournalMetadataImpl m = (JournalMetadataImpl) b.build();
+        m.write(hb);
+        JournalMetadataImpl metadata = new JournalMetadataImpl(hb);
+        hb.close();
+        Assert.assertEquals(m, metadata);
+        Assert.assertTrue(metadata.getColumnMetadata(metadata.getColumnIndex("mode")).ngramIndexed);
+        Assert.assertFalse(metadata.getColumnMetadata(metadata.getColumnIndex("ex")).ngramIndexed);
+    }
+
+    @Test
+    public void testRetentionWrite() throws Exception {
+        JournalMetadataBuilder<Quote> b = new JournalMetadataBuilder<>(Quote.class);
+        b.partitionBy(PartitionType.DAY).retention(30);
+
+        HugeBuffer hb = new HugeBuffer(temp.newFile(), 10, JournalMode.APPEND);
+        JournalMetadataImpl m = (JournalMetadataImpl) b.build();
+        m.write(hb);
+        JournalMetadataImpl metadata = new JournalMetadataImpl(hb);
+        hb.close();
+        Assert.assertEquals(m, metadata);
+        Assert.assertEquals(30, metadata.getRetention());
+    }
 }
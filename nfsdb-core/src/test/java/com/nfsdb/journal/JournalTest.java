@@ -16,7 +16,9 @@
 
 package com.nfsdb.journal;
 
+import com.nfsdb.journal.column.MappedFileImpl;
 import com.nfsdb.journal.column.SymbolTable;
+import com.nfsdb.journal.concurrent.IndexBuilder;
 import com.nfsdb.journal.exceptions.JournalException;
 import com.nfsdb.journal.factory.JournalFactory;
 import com.nfsdb.journal.factory.configuration.JournalConfigurationBuilder;
@@ -36,6 +38,12 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.FileFilter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public class JournalTest extends AbstractTest {
@@ -66,6 +74,225 @@ public class JournalTest extends AbstractTest {
         Assert.assertEquals(35184372088864L, maxRowID);
     }
 
+    @Test
+    public void testAppendOutOfOrder() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        long start = Dates.toMillis("2013-09-01T00:00:00.000Z");
+        TestUtils.generateQuoteData(w, 1000, start, 2 * 3600 * 1000L);
+        w.commit();
+
+        Journal<Quote> r = factory.reader(Quote.class);
+        Assert.assertEquals(1000, r.size());
+        int partitionCount = r.getPartitionCount();
+
+        List<Quote> late = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            // into first two partitions and in-order tail
+            late.add(new Quote().setSym("BP.L").setTimestamp(start + (i * 17 + 1) * 3600 * 1000L));
+            late.add(new Quote().setSym("LATE.L").setTimestamp(start + 2000 * 3600 * 1000L + i));
+        }
+        Collections.shuffle(late);
+
+        w.appendOutOfOrder(late);
+        Assert.assertEquals(1100, w.size());
+        Assert.assertEquals(partitionCount, w.getPartitionCount());
+        Assert.assertTrue(new File(w.getLocation(), "2013-09.1").exists());
+        Assert.assertTrue(new File(w.getLocation(), "2013-10.1").exists());
+        Assert.assertFalse(new File(w.getLocation(), "2013-11.1").exists());
+
+        // reader keeps previous version until refresh
+        Assert.assertEquals(1000, r.size());
+        r.refresh();
+        Assert.assertEquals(1100, r.size());
+
+        long prev = Long.MIN_VALUE;
+        int bp = 0;
+        for (Quote q : r) {
+            Assert.assertTrue(q.getTimestamp() >= prev);
+            prev = q.getTimestamp();
+            if ("BP.L".equals(q.getSym())) {
+                bp++;
+            }
+        }
+        Assert.assertEquals(bp, r.query().all().withKeys("BP.L").asResultSet().size());
+        Assert.assertEquals(50, r.query().all().withKeys("LATE.L").asResultSet().size());
+
+        // versions survive reopen
+        w.close();
+        r.close();
+        JournalWriter<Quote> w2 = factory.writer(Quote.class);
+        Assert.assertEquals(1100, w2.size());
+        Assert.assertEquals(new File(w2.getLocation(), "2013-09.1"), w2.getPartition(0, false).getPartitionDir());
+        Assert.assertFalse(new File(w2.getLocation(), "2013-09").exists());
+        TestUtils.assertEquals(factory.reader(Quote.class), w2);
+    }
+
+    @Test
+    public void testAppendOutOfOrderLaggingReader() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        long start = Dates.toMillis("2013-09-01T00:00:00.000Z");
+        TestUtils.generateQuoteData(w, 1000, start, 2 * 3600 * 1000L);
+        w.commit();
+
+        Journal<Quote> r = factory.reader(Quote.class);
+        w.appendOutOfOrder(lateQuotes(start, 1));
+        r.refresh();
+        Assert.assertEquals(new File(r.getLocation(), "2013-09.1"), r.getPartition(0, false).getPartitionDir());
+
+        // reader opens timestamp column only and lags behind two out-of-order commits
+        Partition<Quote> p = r.getPartition(0, true);
+        long size = p.size();
+        long lastTimestamp = p.getTimestampColumn().getLong(size - 1);
+        List<Quote> expected = new ArrayList<>();
+        Journal<Quote> r2 = factory.reader(Quote.class);
+        for (Quote q : r2.getPartition(0, true)) {
+            expected.add(q);
+        }
+        r2.close();
+
+        w.appendOutOfOrder(lateQuotes(start, 2));
+        w.appendOutOfOrder(lateQuotes(start, 3));
+        Assert.assertTrue(new File(w.getLocation(), "2013-09.1").exists());
+        Assert.assertFalse(new File(w.getLocation(), "2013-09.2").exists());
+
+        // remaining columns open from version reader is on
+        Assert.assertEquals(size, p.size());
+        Assert.assertEquals(lastTimestamp, p.getTimestampColumn().getLong(size - 1));
+        for (int i = 0; i < size; i++) {
+            Assert.assertEquals(expected.get(i).toString(), p.read(i).toString());
+        }
+
+        // version is deleted once reader moves on
+        r.refresh();
+        Assert.assertEquals(1150, r.size());
+        w.appendOutOfOrder(lateQuotes(start, 4));
+        Assert.assertFalse(new File(w.getLocation(), "2013-09.1").exists());
+        Assert.assertTrue(new File(w.getLocation(), "2013-09.3").exists());
+        r.close();
+    }
+
+    @Test
+    public void testAppendOutOfOrderSharesUnchangedPages() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        long start = Dates.toMillis("2013-09-01T00:00:00.000Z");
+        // column and index files of several megabytes
+        TestUtils.generateQuoteData(w, 200000, start, 12 * 1000L);
+        w.commit();
+
+        List<Quote> expected = new ArrayList<>();
+        for (Quote q : w) {
+            expected.add(q);
+        }
+
+        File v0 = new File(w.getLocation(), "2013-09");
+        File v1 = new File(w.getLocation(), "2013-09.1");
+        File v2 = new File(w.getLocation(), "2013-09.2");
+
+        long symRowsSize = new File(v0, "sym.r").length();
+        appendLate(w, expected, start + 2000000 * 1000L);
+        Assert.assertEquals(new File(v0, "bid.d"), MappedFileImpl.getBase(new File(v1, "bid.d")));
+        Assert.assertEquals(new File(v0, "ask.d"), MappedFileImpl.getBase(new File(v1, "ask.d")));
+        Assert.assertEquals(new File(v0, "sym.r"), MappedFileImpl.getBase(new File(v1, "sym.r")));
+        // previous version is not written to
+        Assert.assertFalse(java.nio.file.Files.isSameFile(new File(v0, "sym.r").toPath(), new File(v1, "sym.r").toPath()));
+        Assert.assertEquals(symRowsSize, new File(v0, "sym.r").length());
+
+        try (Journal<Quote> r1 = factory.reader(Quote.class)) {
+            assertQuotes(expected, r1);
+
+            // earlier rows than before, new version links to file that has the pages rather than to v1
+            appendLate(w, expected, start + 1900000 * 1000L);
+            Assert.assertEquals(new File(v0, "bid.d"), MappedFileImpl.getBase(new File(v2, "bid.d")));
+            Assert.assertEquals(new File(v0, "sym.r"), MappedFileImpl.getBase(new File(v2, "sym.r")));
+            // r1 is still on v1
+            Assert.assertTrue(v1.exists());
+            try (Journal<Quote> r2 = factory.reader(Quote.class)) {
+                assertQuotes(expected, r2);
+            }
+        }
+
+        // version new version reads from survives reopen
+        w.close();
+        w = factory.writer(Quote.class);
+        Assert.assertTrue(v0.exists());
+        assertQuotes(expected, w);
+    }
+
+    @Test
+    public void testAppendOutOfOrderRepeatedlyKeepsOneBase() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        long start = Dates.toMillis("2013-09-01T00:00:00.000Z");
+        TestUtils.generateQuoteData(w, 200000, start, 12 * 1000L);
+        w.commit();
+
+        List<Quote> expected = new ArrayList<>();
+        for (Quote q : w) {
+            expected.add(q);
+        }
+
+        File v0 = new File(w.getLocation(), "2013-09");
+        FileFilter versions = new FileFilter() {
+            @Override
+            public boolean accept(File f) {
+                return f.isDirectory() && f.getName().startsWith("2013-09");
+            }
+        };
+        long openFiles = -1;
+        for (int k = 0; k < 10; k++) {
+            appendLate(w, expected, start + (2000000 - k * 20000) * 1000L);
+
+            // current version and the one it shares pages with
+            File current = w.getPartition(0, false).getPartitionDir();
+            Assert.assertEquals(new File(w.getLocation(), "2013-09." + (k + 1)), current);
+            Assert.assertEquals(2, w.getLocation().listFiles(versions).length);
+            Assert.assertTrue(v0.exists());
+
+            // no file is more than one link away from its pages
+            Assert.assertEquals(new File(v0, "bid.d"), MappedFileImpl.getBase(new File(current, "bid.d")));
+            for (File f : current.listFiles()) {
+                File base = MappedFileImpl.getBase(f);
+                if (base != null) {
+                    Assert.assertEquals(v0, base.getParentFile());
+                    Assert.assertNull(MappedFileImpl.getBase(base));
+                }
+            }
+
+            // reader opens the same number of files whichever version it is on
+            try (Journal<Quote> r = factory.reader(Quote.class)) {
+                assertQuotes(expected, r);
+                long n = getOpenFileCount();
+                if (openFiles == -1) {
+                    openFiles = n;
+                } else {
+                    Assert.assertTrue(n + " files open, " + openFiles + " expected", n <= openFiles);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAppendOutOfOrderRollback() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        long start = Dates.toMillis("2013-09-01T00:00:00.000Z");
+        TestUtils.generateQuoteData(w, 1000, start, 2 * 3600 * 1000L);
+        w.commit();
+
+        List<Quote> late = new ArrayList<>();
+        late.add(new Quote().setSym("BP.L").setTimestamp(start + 3600 * 1000L));
+        // before first partition
+        late.add(new Quote().setSym("BP.L").setTimestamp(start - 3600 * 1000L));
+
+        try {
+            w.appendOutOfOrder(late);
+            Assert.fail("Expected exception");
+        } catch (JournalException ignore) {
+            // ok
+        }
+        Assert.assertEquals(1000, w.size());
+        Assert.assertEquals(0, w.getPartitionVersion(0));
+        Assert.assertFalse(new File(w.getLocation(), "2013-09.1").exists());
+    }
+
     @Test
     public void testIncrementRowID() throws Exception {
         JournalWriter<Quote> w = factory.writer(Quote.class);
@@ -117,6 +344,37 @@ public class JournalTest extends AbstractTest {
         TestUtils.assertEquals(expected, r.query().all().asResultSet().subset(90, 100));
     }
 
+    @Test
+    public void testSelectOpensProjectedColumnsOnly() throws Exception {
+        try (JournalWriter<Quote> w = factory.writer(Quote.class)) {
+            TestUtils.generateQuoteData(w, 10000, Dates.toMillis("2013-10-05T10:00:00.000Z"), 10 * 60 * 1000);
+        }
+
+        Journal<Quote> r = factory.reader(Quote.class).select("sym", "bid");
+        int count = 0;
+        for (Quote q : r.bufferedIterator()) {
+            Assert.assertNotNull(q.getSym());
+            Assert.assertNull(q.getMode());
+            count++;
+        }
+        Assert.assertEquals(10000, count);
+        Assert.assertEquals(10, r.query().all().asResultSet().subset(0, 10).read().length);
+
+        int ask = r.getMetadata().getColumnIndex("ask");
+        int mode = r.getMetadata().getColumnIndex("mode");
+        int sym = r.getMetadata().getColumnIndex("sym");
+        int bid = r.getMetadata().getColumnIndex("bid");
+        Assert.assertTrue(r.getPartitionCount() > 1);
+        for (int i = 0; i < r.getPartitionCount(); i++) {
+            Partition<Quote> p = r.getPartition(i, false);
+            Assert.assertTrue(p.isOpen());
+            Assert.assertNull(p.columns[ask]);
+            Assert.assertNull(p.columns[mode]);
+            Assert.assertNotNull(p.columns[sym]);
+            Assert.assertNotNull(p.columns[bid]);
+        }
+    }
+
     @Test
     public void testReindex() throws JournalException {
         File path;
@@ -141,6 +399,115 @@ public class JournalTest extends AbstractTest {
         Assert.assertEquals(3, journal.query().head().withKeys().asResultSet().read().length);
     }
 
+    @Test
+    public void testReindexSealedInBackground() throws Exception {
+        File path;
+        try (JournalWriter<Quote> w = factory.writer(Quote.class)) {
+            TestData.appendQuoteData1(w);
+            TestData.appendQuoteData2(w);
+            path = w.getLocation();
+        }
+
+        int expected;
+        long ts;
+        try (Journal<Quote> r = factory.reader(Quote.class)) {
+            expected = r.query().all().withKeys("ALDW").asResultSet().size();
+        }
+
+        Files.deleteOrException(new File(path, "2013-02/sym.r"));
+        Files.deleteOrException(new File(path, "2013-02/sym.k"));
+
+        try (JournalWriter<Quote> w = factory.writer(Quote.class)) {
+            IndexBuilder<Quote> builder = w.rebuildSealedIndexes(2, 1);
+            Assert.assertEquals(w.getPartitionCount() - 1, builder.getPartitionCount());
+            // active partition remains writable while sealed ones are being rebuilt
+            ts = w.getMaxTimestamp() + 1;
+            w.append(new Quote().setSym("AMD").setTimestamp(ts));
+            w.commit();
+            builder.join();
+            Assert.assertTrue(builder.isDone());
+            Assert.assertEquals(builder.getTaskCount(), builder.getCompletedTaskCount());
+        }
+
+        try (Journal<Quote> r = factory.reader(Quote.class)) {
+            Assert.assertTrue(expected > 0);
+            Assert.assertEquals(expected, r.query().all().withKeys("ALDW").asResultSet().size());
+            Assert.assertEquals(ts, r.query().head().withKeys("AMD").asResultSet().read()[0].getTimestamp());
+        }
+    }
+
+    @Test
+    public void testReindexSealedSwitchesReadersOnJoin() throws Exception {
+        File path;
+        try (JournalWriter<Quote> w = factory.writer(Quote.class)) {
+            TestData.appendQuoteData1(w);
+            TestData.appendQuoteData2(w);
+            path = w.getLocation();
+        }
+
+        File v0 = new File(path, "2013-02");
+        long kLength = new File(v0, "sym.k").length();
+        long rLength = new File(v0, "sym.r").length();
+
+        try (Journal<Quote> r = factory.reader(Quote.class)) {
+            int expected = r.query().all().withKeys("ALDW").asResultSet().size();
+            Assert.assertTrue(expected > 0);
+
+            try (JournalWriter<Quote> w = factory.writer(Quote.class)) {
+                IndexBuilder<Quote> builder = w.rebuildSealedIndexes(2, 1);
+                // reader queries old version while indexes are rebuilt
+                Assert.assertEquals(expected, r.query().all().withKeys("ALDW").asResultSet().size());
+                builder.join();
+                Assert.assertEquals(expected, w.query().all().withKeys("ALDW").asResultSet().size());
+            }
+
+            // previous version is left as it was and reader, which has not refreshed, still uses it
+            Assert.assertEquals(kLength, new File(v0, "sym.k").length());
+            Assert.assertEquals(rLength, new File(v0, "sym.r").length());
+            Assert.assertEquals(v0, r.getPartition(0, true).getPartitionDir());
+            Assert.assertEquals(expected, r.query().all().withKeys("ALDW").asResultSet().size());
+
+            Assert.assertTrue(r.refresh());
+            Assert.assertEquals(new File(path, "2013-02.1"), r.getPartition(0, true).getPartitionDir());
+            Assert.assertEquals(expected, r.query().all().withKeys("ALDW").asResultSet().size());
+        }
+
+        File[] temp = path.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File f) {
+                return f.isDirectory() && f.getName().startsWith("temp");
+            }
+        });
+        Assert.assertNotNull(temp);
+        Assert.assertEquals(0, temp.length);
+    }
+
+    @Test
+    public void testCompactSealsIndexes() throws Exception {
+        int expected;
+        try (JournalWriter<Quote> w = factory.writer(Quote.class)) {
+            TestData.appendQuoteData2(w);
+            expected = w.query().all().withKeys("ADM.L").asResultSet().size();
+            w.compact();
+            Assert.assertFalse(new File(w.getLocation(), "2013-03/sym.r").exists());
+            Assert.assertTrue(new File(w.getLocation(), "2013-05/sym.r").exists());
+            Assert.assertEquals(expected, w.query().all().withKeys("ADM.L").asResultSet().size());
+        }
+
+        try (Journal<Quote> r = factory.reader(Quote.class)) {
+            Assert.assertEquals(expected, r.query().all().withKeys("ADM.L").asResultSet().size());
+            Assert.assertEquals("ADM.L", r.query().head().withKeys("ADM.L").asResultSet().read()[0].getSym());
+        }
+
+        // sealed partition still takes out-of-order rows
+        try (JournalWriter<Quote> w = factory.writer(Quote.class)) {
+            List<Quote> late = new ArrayList<>();
+            late.add(new Quote().setSym("ADM.L").setTimestamp(Dates.toMillis("2013-03-12T00:00:00.000Z")));
+            w.appendOutOfOrder(late);
+            Assert.assertEquals(expected + 1, w.query().all().withKeys("ADM.L").asResultSet().size());
+        }
+    }
+
     @Test
     public void testSizeAfterCompaction() throws JournalException {
         long sizeAfterCompaction;
@@ -503,4 +870,47 @@ public class JournalTest extends AbstractTest {
             };
         }
     }
+
+    private static List<Quote> lateQuotes(long start, int seed) {
+        List<Quote> late = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            late.add(new Quote().setSym("BP.L").setAsk(seed).setTimestamp(start + (i * 7 + seed) * 3600 * 1000L));
+        }
+        return late;
+    }
+
+    private static long getOpenFileCount() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.UnixOperatingSystemMXBean) {
+            return ((com.sun.management.UnixOperatingSystemMXBean) os).getOpenFileDescriptorCount();
+        }
+        return 0;
+    }
+
+    private static void appendLate(JournalWriter<Quote> w, List<Quote> expected, long timestamp) throws JournalException {
+        List<Quote> late = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            late.add(new Quote().setSym("LATE.L").setMode("late " + i).setTimestamp(timestamp + i * 60 * 1000L));
+        }
+        w.appendOutOfOrder(late);
+        expected.addAll(late);
+        Collections.sort(expected, w.getTimestampComparator());
+    }
+
+    private static void assertQuotes(List<Quote> expected, Journal<Quote> journal) throws JournalException {
+        Assert.assertEquals(expected.size(), journal.size());
+        int i = 0;
+        int bp = 0;
+        int late = 0;
+        for (Quote q : journal) {
+            Assert.assertEquals(expected.get(i++).toString(), q.toString());
+            if ("BP.L".equals(q.getSym())) {
+                bp++;
+            } else if ("LATE.L".equals(q.getSym())) {
+                late++;
+            }
+        }
+        Assert.assertEquals(bp, journal.query().all().withKeys("BP.L").asResultSet().size());
+        Assert.assertEquals(late, journal.query().all().withKeys("LATE.L").asResultSet().size());
+    }
 }
@@ -17,10 +17,14 @@
 package com.nfsdb.journal;
 
 import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.factory.JournalFactory;
+import com.nfsdb.journal.factory.configuration.JournalConfigurationBuilder;
 import com.nfsdb.journal.model.Quote;
+import com.nfsdb.journal.model.TestEntity;
 import com.nfsdb.journal.test.tools.AbstractTest;
 import com.nfsdb.journal.test.tools.TestData;
 import com.nfsdb.journal.utils.Dates;
+import com.nfsdb.journal.utils.Rnd;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -28,7 +32,9 @@ import org.junit.Test;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class LagTest extends AbstractTest {
 
@@ -194,6 +200,64 @@ public class LagTest extends AbstractTest {
         Assert.assertEquals(2, tempDirs.length);
     }
 
+    @Test
+    public void testLagMergeVariableColumns() throws Exception {
+        JournalFactory f = new JournalFactory(new JournalConfigurationBuilder() {{
+            $(TestEntity.class)
+                    .partitionBy(PartitionType.DAY)
+                    .lag(12, TimeUnit.HOURS)
+                    .key("sym")
+                    .$sym("sym").index().valueCountHint(15)
+                    .$ts();
+        }}.build(factory.getConfiguration().getJournalBase()));
+
+        String symbols[] = {"ABC", "DEF", "GHI"};
+        Rnd rnd = new Rnd();
+        long start = Dates.toMillis("2013-03-10T10:00:00.000Z");
+        List<TestEntity> expected = new ArrayList<>();
+
+        try (JournalWriter<TestEntity> w = f.writer(TestEntity.class)) {
+            // three interleaving batches within lag, last batch pushes lag out into journal
+            for (int k = 0; k < 4; k++) {
+                List<TestEntity> data = new ArrayList<>();
+                for (int i = 0; i < 1000; i++) {
+                    long timestamp = k < 3 ? start + (i * 3 + k) * 1000L : start + 5 * 24 * 3600 * 1000L + i * 1000L;
+                    TestEntity e = new TestEntity()
+                            .setSym(symbols[i % symbols.length])
+                            .setDStr(i % 10 == 0 ? null : rnd.nextString(i % 50))
+                            .setBStr(rnd.nextString(5))
+                            .setAnInt(i)
+                            .setTimestamp(timestamp);
+                    data.add(e);
+                    expected.add(e);
+                }
+                w.mergeAppend(data);
+                w.commit();
+            }
+
+            Collections.sort(expected, w.getTimestampComparator());
+            Assert.assertEquals(4000, w.size());
+            Assert.assertTrue(w.getIrregularPartition().size() < 4000);
+
+            int i = 0;
+            for (TestEntity e : w) {
+                TestEntity x = expected.get(i++);
+                Assert.assertEquals(x.getTimestamp(), e.getTimestamp());
+                Assert.assertEquals(x.getSym(), e.getSym());
+                Assert.assertEquals(x.getDStr(), e.getDStr());
+                Assert.assertEquals(x.getBStr(), e.getBStr());
+            }
+
+            int count = 0;
+            for (String sym : symbols) {
+                count += w.query().all().withKeys(sym).asResultSet().size();
+            }
+            Assert.assertEquals(4000, count);
+        } finally {
+            f.close();
+        }
+    }
+
     @Test
     public void testLagDelete() throws Exception {
         JournalWriter<Quote> origin = factory.writer(Quote.class, "origin");
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal;
+
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.factory.configuration.JournalConfigurationBuilder;
+import com.nfsdb.journal.index.KVIndex;
+import com.nfsdb.journal.index.Trigrams;
+import com.nfsdb.journal.lang.cst.PartitionSlice;
+import com.nfsdb.journal.lang.cst.RowCursor;
+import com.nfsdb.journal.lang.cst.RowFilter;
+import com.nfsdb.journal.lang.cst.impl.fltr.StringContainsRowFilter;
+import com.nfsdb.journal.lang.cst.impl.fltr.StringPrefixRowFilter;
+import com.nfsdb.journal.lang.cst.impl.ref.StringRef;
+import com.nfsdb.journal.lang.cst.impl.rsrc.AllRowSource;
+import com.nfsdb.journal.lang.cst.impl.rsrc.FilteredRowSource;
+import com.nfsdb.journal.model.Quote;
+import com.nfsdb.journal.test.tools.JournalTestFactory;
+import com.nfsdb.journal.utils.Dates;
+import com.nfsdb.journal.utils.Files;
+import com.nfsdb.journal.utils.Rnd;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class NgramIndexTest {
+
+    private static final String WORDS[] = {"timeout", "rejected", "order", "venue", "LSE", "price", "limit", "breach", "fill", "ack"};
+    private static final int ROWS_PER_DAY = 2000;
+
+    @Rule
+    public final JournalTestFactory factory = new JournalTestFactory(
+            new JournalConfigurationBuilder() {{
+                $(Quote.class).partitionBy(PartitionType.DAY).recordCountHint(1000)
+                        .$str("mode").ngramIndex()
+                        .$str("ex")
+                        .$ts()
+                ;
+            }}.build(Files.makeTempDir())
+    );
+
+    private JournalWriter<Quote> w;
+
+    @Before
+    public void setUp() throws Exception {
+        w = factory.writer(Quote.class);
+        append(w, 0, 3 * ROWS_PER_DAY);
+        w.commit();
+        // seals all but last partition
+        w.compact();
+        append(w, 3 * ROWS_PER_DAY, 500);
+        w.commit();
+    }
+
+    @Test
+    public void testTrigrams() throws Exception {
+        Trigrams t = new Trigrams();
+        Assert.assertEquals(0, t.of(null).size());
+        Assert.assertEquals(0, t.of("ab").size());
+        Assert.assertEquals(1, t.of("aaaaaa").size());
+        Assert.assertEquals(3, t.of("abcde").size());
+        for (int i = 1; i < t.size(); i++) {
+            Assert.assertTrue(t.get(i - 1) < t.get(i));
+        }
+    }
+
+    @Test
+    public void testIndexSealed() throws Exception {
+        int mode = w.getMetadata().getColumnIndex("mode");
+        Assert.assertTrue(w.getPartition(0, true).getNgramIndexForColumn(mode).isCompact());
+        KVIndex live = w.getPartition(w.getPartitionCount() - 1, true).getNgramIndexForColumn(mode);
+        Assert.assertFalse(live.isCompact());
+        Assert.assertTrue(live.getValueCount(Trigrams.key('L', 'S', 'E')) > 0);
+    }
+
+    @Test
+    public void testFilters() throws Exception {
+        assertFilters(w);
+        assertFilters(factory.reader(Quote.class));
+    }
+
+    @Test
+    public void testRollbackAndRebuild() throws Exception {
+        append(w, 4 * ROWS_PER_DAY, 300);
+        w.rollback();
+        assertFilters(w);
+
+        w.rebuildIndexes();
+        assertFilters(w);
+        assertFilters(factory.reader(Quote.class));
+    }
+
+    private static void append(JournalWriter<Quote> w, int from, int count) throws JournalException {
+        Rnd rnd = new Rnd();
+        long t = Dates.toMillis("2013-01-01T00:00:00.000Z");
+        long step = Dates.toMillis("2013-01-02T00:00:00.000Z") - t;
+        for (int i = from; i < from + count; i++) {
+            Quote q = new Quote().setSym("X").setTimestamp(t + i * (step / ROWS_PER_DAY));
+            if (i % 50 != 0) {
+                StringBuilder b = new StringBuilder();
+                for (int k = 0, n = (rnd.nextPositiveInt() % 4) + 1; k < n; k++) {
+                    if (k > 0) {
+                        b.append(' ');
+                    }
+                    b.append(WORDS[rnd.nextPositiveInt() % WORDS.length]);
+                }
+                b.append(" #").append(i);
+                q.setMode(b.toString()).setEx(b.toString());
+            }
+            w.append(q);
+        }
+    }
+
+    private void assertFilters(Journal<Quote> journal) throws JournalException {
+        String patterns[] = {"order", "venue LSE", "ck ti", "#12", "#1234", "missing", "ti", "", "ack #"};
+        StringRef value = new StringRef();
+        for (String p : patterns) {
+            value.value = p;
+            // mode has trigram index, ex is same data without one
+            assertFilter(journal, new StringContainsRowFilter(new StringRef("mode"), value), p, false);
+            assertFilter(journal, new StringContainsRowFilter(new StringRef("ex"), value), p, false);
+            assertFilter(journal, new StringPrefixRowFilter(new StringRef("mode"), value), p, true);
+        }
+    }
+
+    private void assertFilter(Journal<Quote> journal, RowFilter filter, String pattern, boolean prefix) throws JournalException {
+        int mode = journal.getMetadata().getColumnIndex("mode");
+        FilteredRowSource src = new FilteredRowSource(new AllRowSource(), filter);
+        for (int i = 0; i < journal.getPartitionCount(); i++) {
+            Partition<Quote> p = journal.getPartition(i, true);
+            List<Long> expected = new ArrayList<>();
+            for (long row = 0; row < p.size(); row++) {
+                String s = p.getStr(row, mode);
+                if (s != null && (prefix ? s.startsWith(pattern) : s.contains(pattern))) {
+                    expected.add(row);
+                }
+            }
+
+            PartitionSlice slice = new PartitionSlice();
+            slice.partition = p;
+            slice.lo = 0;
+            slice.calcHi = true;
+            List<Long> actual = new ArrayList<>();
+            RowCursor cursor = src.cursor(slice);
+            while (cursor.hasNext()) {
+                actual.add(cursor.next());
+            }
+            Assert.assertEquals(pattern, expected, actual);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal;
+
+import com.nfsdb.journal.model.Quote;
+import com.nfsdb.journal.test.tools.AbstractTest;
+import com.nfsdb.journal.test.tools.TestUtils;
+import com.nfsdb.journal.utils.Dates;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileFilter;
+
+public class PageMapperTest extends AbstractTest {
+
+    @Test
+    public void testPageMapper() throws Exception {
+        JournalWriter<Quote> origin = factory.writer(Quote.class, "origin");
+        TestUtils.generateQuoteData(origin, 100000, Dates.toMillis("2014-01-10T00:00:00.000Z"), 60000L);
+        origin.commit();
+
+        File location;
+        try (JournalWriter<Quote> w = factory.writer(Quote.class, "mapped")) {
+            w.setPageMapperEnabled(true);
+            Assert.assertTrue(w.isPageMapperEnabled());
+            w.append(origin);
+            w.commit();
+            TestUtils.assertDataEquals(origin, w);
+            location = w.getLocation();
+        }
+
+        // partition mapper created ahead of writer must not survive
+        File[] dirs = location.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File f) {
+                return f.isDirectory();
+            }
+        });
+        Assert.assertNotNull(dirs);
+        Assert.assertEquals(origin.getPartitionCount(), dirs.length);
+        TestUtils.assertDataEquals(origin, factory.reader(Quote.class, "mapped"));
+    }
+}
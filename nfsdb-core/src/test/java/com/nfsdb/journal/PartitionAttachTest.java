@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal;
+
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.factory.configuration.JournalConfigurationBuilder;
+import com.nfsdb.journal.model.Quote;
+import com.nfsdb.journal.model.Trade;
+import com.nfsdb.journal.test.tools.JournalTestFactory;
+import com.nfsdb.journal.utils.Dates;
+import com.nfsdb.journal.utils.Files;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+
+public class PartitionAttachTest {
+
+    private static final int ROWS_PER_DAY = 100;
+
+    @Rule
+    public final JournalTestFactory factory = new JournalTestFactory(
+            new JournalConfigurationBuilder() {{
+                $(Quote.class).partitionBy(PartitionType.DAY).recordCountHint(ROWS_PER_DAY).key("sym")
+                        .$sym("sym").index().valueCountHint(10)
+                        .$ts()
+                ;
+            }}.build(Files.makeTempDir())
+    );
+
+    private File archive;
+
+    @Before
+    public void setUp() {
+        archive = Files.makeTempDir();
+    }
+
+    @After
+    public void tearDown() {
+        Files.delete(archive);
+    }
+
+    @Test
+    public void testAttachHistory() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        for (int day = 5; day < 8; day++) {
+            append(w, day);
+        }
+        Journal<Quote> r = factory.reader(Quote.class);
+        assertDays(r, 5, 8);
+
+        JournalBulkWriter<Quote> scratch = scratch(factory);
+        for (int day = 3; day < 5; day++) {
+            append(scratch, day);
+        }
+        scratch.close();
+
+        w.attachPartition(new File(scratch.getLocation(), "2013-01-05"));
+        w.attachPartition(new File(scratch.getLocation(), "2013-01-04"));
+        Assert.assertFalse(new File(scratch.getLocation(), "2013-01-04").exists());
+        Assert.assertEquals(-2, w.getPartitionIndexBase());
+        assertDays(w, 3, 8);
+
+        Assert.assertTrue(r.refresh());
+        assertDays(r, 3, 8);
+        assertDays(factory.reader(Quote.class), 3, 8);
+
+        // appends carry on in last partition
+        append(w, 8);
+        Assert.assertTrue(r.refresh());
+        assertDays(r, 3, 9);
+    }
+
+    @Test
+    public void testAttachAfterLast() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        for (int day = 0; day < 2; day++) {
+            append(w, day);
+        }
+        Journal<Quote> r = factory.reader(Quote.class);
+        assertDays(r, 0, 2);
+
+        JournalBulkWriter<Quote> scratch = scratch(factory);
+        append(scratch, 2);
+        scratch.close();
+
+        w.attachPartition(new File(scratch.getLocation(), "2013-01-03"));
+        Assert.assertTrue(r.refresh());
+        assertDays(r, 0, 3);
+
+        // rows older than attached ones are out of order
+        try {
+            w.append(new Quote().setSym("S0").setTimestamp(Dates.toMillis("2013-01-03T00:00:00.000Z")));
+            Assert.fail();
+        } catch (JournalException ignore) {
+            w.rollback();
+        }
+        append(w, 3);
+        Assert.assertTrue(r.refresh());
+        assertDays(r, 0, 4);
+        assertDays(factory.reader(Quote.class), 0, 4);
+    }
+
+    @Test
+    public void testDetachAndAttachBack() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        for (int day = 0; day < 4; day++) {
+            append(w, day);
+        }
+        Journal<Quote> r = factory.reader(Quote.class);
+        assertDays(r, 0, 4);
+
+        w.detachPartition(w.getPartition(0, true).getInterval(), archive);
+        w.detachPartition(w.getPartition(0, true).getInterval(), archive);
+        Assert.assertTrue(new File(archive, "2013-01-01").exists());
+        Assert.assertTrue(new File(archive, "2013-01-02").exists());
+        Assert.assertFalse(new File(w.getLocation(), "2013-01-01").exists());
+        assertDays(w, 2, 4);
+        Assert.assertTrue(r.refresh());
+        assertDays(r, 2, 4);
+        assertDays(factory.reader(Quote.class), 2, 4);
+
+        try {
+            w.detachPartition(w.getPartition(1, true).getInterval(), archive);
+            Assert.fail();
+        } catch (JournalException ignore) {
+        }
+
+        w.attachPartition(new File(archive, "2013-01-02"));
+        w.attachPartition(new File(archive, "2013-01-01"));
+        assertDays(w, 0, 4);
+        Assert.assertTrue(r.refresh());
+        assertDays(r, 0, 4);
+        w.close();
+        assertDays(factory.reader(Quote.class), 0, 4);
+        assertDays(factory.writer(Quote.class), 0, 4);
+    }
+
+    @Test
+    public void testRejectPartitions() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        for (int day = 0; day < 3; day++) {
+            append(w, day);
+        }
+
+        JournalWriter<Quote> scratch = factory.writer(Quote.class, "scratch");
+        append(scratch, 1);
+        scratch.close();
+        try {
+            w.attachPartition(new File(scratch.getLocation(), "2013-01-02"));
+            Assert.fail();
+        } catch (JournalException e) {
+            Assert.assertTrue(e.getMessage().contains("can only be attached"));
+        }
+
+        JournalWriter<Trade> other = factory.writer(Trade.class);
+        other.close();
+        File dir = new File(other.getLocation(), "2013-01-05");
+        Files.mkDirsOrException(dir);
+        try {
+            w.attachPartition(dir);
+            Assert.fail();
+        } catch (JournalException e) {
+            Assert.assertTrue(e.getMessage().contains("does not match"));
+        }
+        assertDays(w, 0, 3);
+    }
+
+    private static JournalBulkWriter<Quote> scratch(JournalTestFactory factory) throws JournalException {
+        JournalBulkWriter<Quote> w = factory.bulkWriter(Quote.class, "scratch");
+        // symbols are added in different order, so that keys have to be translated
+        for (int i = 9; i >= 0; i--) {
+            w.getSymbolTable("sym").put("S" + i);
+        }
+        return w;
+    }
+
+    private static void append(JournalWriter<Quote> w, int day) throws JournalException {
+        long t = Dates.toMillis("2013-01-01T00:00:00.000Z") + day * 86400000L;
+        for (int i = 0; i < ROWS_PER_DAY; i++) {
+            w.append(new Quote().setSym("S" + (i % 5)).setBid(day * ROWS_PER_DAY + i).setTimestamp(t + i * 1000L));
+        }
+        w.commit();
+    }
+
+    private static void assertDays(Journal<Quote> journal, int lo, int hi) throws JournalException {
+        Assert.assertEquals(hi - lo, journal.getPartitionCount());
+        Assert.assertEquals((hi - lo) * ROWS_PER_DAY, journal.size());
+        double bid = lo * ROWS_PER_DAY;
+        for (Quote q : journal) {
+            Assert.assertEquals(bid, q.getBid(), 0);
+            Assert.assertEquals("S" + ((int) bid % ROWS_PER_DAY % 5), q.getSym());
+            bid++;
+        }
+        Assert.assertEquals(hi * ROWS_PER_DAY, bid, 0);
+        Assert.assertEquals((hi - lo) * ROWS_PER_DAY / 5, journal.query().all().withKeys("S1").count());
+    }
+}
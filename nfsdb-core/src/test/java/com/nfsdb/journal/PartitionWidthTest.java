@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal;
+
+import com.nfsdb.journal.exceptions.JournalConfigurationException;
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.exceptions.JournalMetadataException;
+import com.nfsdb.journal.factory.configuration.JournalConfigurationBuilder;
+import com.nfsdb.journal.factory.configuration.JournalStructure;
+import com.nfsdb.journal.model.Quote;
+import com.nfsdb.journal.test.tools.JournalTestFactory;
+import com.nfsdb.journal.utils.Dates;
+import com.nfsdb.journal.utils.Files;
+import org.joda.time.Interval;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+
+public class PartitionWidthTest {
+
+    private static final long T0 = Dates.toMillis("2013-01-01T00:00:00.000Z");
+    private static final long MINUTE = 60000L;
+    private static final long HOUR = 60 * MINUTE;
+
+    @Rule
+    public final JournalTestFactory factory = new JournalTestFactory(
+            new JournalConfigurationBuilder() {{
+                $(Quote.class).partitionBy(PartitionType.HOUR).recordCountHint(100).key("sym")
+                        .$sym("sym").index().valueCountHint(5)
+                        .$ts()
+                ;
+            }}.build(Files.makeTempDir())
+    );
+
+    @Test
+    public void testHourPartitions() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        for (int i = 0; i < 300; i++) {
+            w.append(new Quote().setSym("S" + (i % 5)).setBid(i).setTimestamp(T0 + i * MINUTE));
+        }
+        w.commit();
+
+        Assert.assertEquals(5, w.getPartitionCount());
+        Assert.assertTrue(new File(w.getLocation(), "2013-01-01T04").exists());
+        Assert.assertEquals(Dates.interval(T0 + 2 * HOUR, T0 + 3 * HOUR - 1), w.getPartition(2, false).getInterval());
+
+        Journal<Quote> r = factory.reader(Quote.class);
+        Assert.assertEquals(5, r.getPartitionCount());
+        Assert.assertEquals(300, r.size());
+        Assert.assertEquals(30, r.query().all().withKeys("S1").slice(Dates.interval(T0 + 90 * MINUTE, T0 + 240 * MINUTE - 1)).count());
+    }
+
+    @Test
+    public void testMinutePartitions() throws Exception {
+        JournalWriter w = factory.writer(new JournalStructure("quarters") {{
+            $sym("sym");
+            $double("price");
+            $ts();
+            partitionBy(PartitionType.MINUTE, 15);
+        }});
+
+        for (int i = 0; i < 60; i++) {
+            JournalEntryWriter e = w.entryWriter(T0 + i * MINUTE);
+            e.putSym(0, "S" + (i % 3));
+            e.putDouble(1, i);
+            e.append();
+        }
+        w.commit();
+
+        Assert.assertEquals(4, w.getPartitionCount());
+        Assert.assertTrue(new File(w.getLocation(), "2013-01-01T00-45").exists());
+        w.close();
+
+        Journal r = factory.reader("quarters");
+        Assert.assertEquals(15, r.getMetadata().getPartitionWidth());
+        Assert.assertEquals(4, r.getPartitionCount());
+        for (int i = 0; i < 4; i++) {
+            Partition p = r.getPartition(i, true);
+            Assert.assertEquals(Dates.interval(T0 + i * 15 * MINUTE, T0 + (i + 1) * 15 * MINUTE - 1), p.getInterval());
+            Assert.assertEquals(15, p.size());
+        }
+    }
+
+    @Test
+    public void testWidthMustMatchExistingJournal() throws Exception {
+        factory.writer(new JournalStructure("quarters") {{
+            $double("price");
+            $ts();
+            partitionBy(PartitionType.MINUTE, 15);
+        }}).close();
+
+        try {
+            factory.writer(new JournalStructure("quarters") {{
+                $double("price");
+                $ts();
+                partitionBy(PartitionType.MINUTE, 30);
+            }});
+            Assert.fail();
+        } catch (JournalMetadataException ignore) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testInvalidWidth() throws Exception {
+        assertInvalidWidth(PartitionType.MINUTE, 7);
+        assertInvalidWidth(PartitionType.HOUR, 5);
+        assertInvalidWidth(PartitionType.HOUR, 0);
+        assertInvalidWidth(PartitionType.DAY, 2);
+    }
+
+    @Test
+    public void testIntervals() throws Exception {
+        long ts = Dates.toMillis("2013-03-10T17:41:12.345Z");
+        assertInterval("2013-03-10T17:00:00.000Z", "2013-03-10T17:59:59.999Z", Dates.intervalForDate(ts, PartitionType.HOUR));
+        assertInterval("2013-03-10T16:00:00.000Z", "2013-03-10T19:59:59.999Z", Dates.intervalForDate(ts, PartitionType.HOUR, 4));
+        assertInterval("2013-03-10T17:30:00.000Z", "2013-03-10T17:44:59.999Z", Dates.intervalForDate(ts, PartitionType.MINUTE, 15));
+        assertInterval("1969-12-31T23:55:00.000Z", "1969-12-31T23:59:59.999Z", Dates.intervalForDate(-1, PartitionType.MINUTE, 5));
+
+        Interval interval = Dates.intervalForDate(ts, PartitionType.MINUTE, 15);
+        String name = Dates.dirNameForIntervalStart(interval, PartitionType.MINUTE);
+        Assert.assertEquals("2013-03-10T17-30", name);
+        Assert.assertEquals(interval, Dates.intervalForDirName(name, PartitionType.MINUTE, 15));
+
+        interval = Dates.intervalForDate(ts, PartitionType.HOUR, 2);
+        name = Dates.dirNameForIntervalStart(interval, PartitionType.HOUR);
+        Assert.assertEquals("2013-03-10T16", name);
+        Assert.assertEquals(interval, Dates.intervalForDirName(name, PartitionType.HOUR, 2));
+
+        Assert.assertEquals(ts - 45 * MINUTE, Dates.addPeriods(ts, PartitionType.MINUTE, 15, -3));
+    }
+
+    private static void assertInterval(String lo, String hi, Interval interval) {
+        Assert.assertEquals(Dates.toMillis(lo), interval.getStartMillis());
+        Assert.assertEquals(Dates.toMillis(hi), interval.getEndMillis());
+    }
+
+    private static void assertInvalidWidth(PartitionType type, int width) throws JournalException {
+        try {
+            new JournalStructure("invalid").partitionBy(type, width);
+            Assert.fail();
+        } catch (JournalConfigurationException ignore) {
+            // expected
+        }
+    }
+}
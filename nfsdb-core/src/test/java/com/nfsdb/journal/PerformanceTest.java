@@ -17,25 +17,44 @@
 package com.nfsdb.journal;
 
 import com.nfsdb.journal.collections.DirectLongList;
+import com.nfsdb.journal.column.ColumnType;
+import com.nfsdb.journal.column.FixedColumn;
+import com.nfsdb.journal.concurrent.GroupCommit;
 import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.factory.configuration.JournalMetadataBuilder;
+import com.nfsdb.journal.index.BitmapIndex;
 import com.nfsdb.journal.index.KVIndex;
+import com.nfsdb.journal.index.SortedIndex;
+import com.nfsdb.journal.index.StringIndex;
 import com.nfsdb.journal.lang.cst.JournalEntry;
 import com.nfsdb.journal.lang.cst.JournalSource;
+import com.nfsdb.journal.lang.cst.PartitionSlice;
+import com.nfsdb.journal.lang.cst.RowCursor;
+import com.nfsdb.journal.lang.cst.impl.fltr.StringContainsRowFilter;
+import com.nfsdb.journal.lang.cst.impl.ref.StringRef;
+import com.nfsdb.journal.lang.cst.impl.rsrc.AllRowSource;
+import com.nfsdb.journal.lang.cst.impl.rsrc.FilteredRowSource;
 import com.nfsdb.journal.logging.Logger;
 import com.nfsdb.journal.model.Quote;
 import com.nfsdb.journal.query.api.QueryAllBuilder;
 import com.nfsdb.journal.query.api.QueryHeadBuilder;
 import com.nfsdb.journal.test.tools.AbstractTest;
 import com.nfsdb.journal.test.tools.TestUtils;
+import com.nfsdb.journal.tx.TxFuture;
+import com.nfsdb.journal.utils.Checksum;
 import com.nfsdb.journal.utils.Dates;
 import org.joda.time.Interval;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
+import java.util.concurrent.*;
 
 public class PerformanceTest extends AbstractTest {
 
@@ -188,6 +207,47 @@ public class PerformanceTest extends AbstractTest {
         }
     }
 
+    @Test
+    public void testCountBySymbolValueOverInterval() throws JournalException {
+        Assume.assumeTrue(enabled);
+
+        JournalWriter<Quote> w = factory.writer(Quote.class, "quote", TEST_DATA_SIZE);
+        TestUtils.generateQuoteData(w, TEST_DATA_SIZE, Dates.toMillis("2013-10-05T10:00:00.000Z"), 1000);
+        w.commit();
+
+        try (Journal<Quote> journal = factory.reader(Quote.class)) {
+            int count = 1000;
+            Interval interval = Dates.interval(Dates.toMillis("2013-10-05T10:00:00.000Z"), Dates.toMillis("2013-10-15T10:00:00.000Z"));
+            QueryAllBuilder<Quote> builder = journal.query().all().withKeys("LLOY.L", "BP.L").slice(interval);
+            long expected = builder.asResultSet().size();
+
+            long t = 0;
+            for (int i = -100; i < count; i++) {
+                if (i == 0) {
+                    t = System.nanoTime();
+                }
+                Assert.assertEquals(expected, builder.asResultSet().size());
+            }
+            LOGGER.info("journal.query().all().withKeys(\"LLOY.L\", \"BP.L\").slice(interval).asResultSet().size() latency: " + (System.nanoTime() - t) / count / 1000 + "μs");
+
+            for (int i = -100; i < count; i++) {
+                if (i == 0) {
+                    t = System.nanoTime();
+                }
+                Assert.assertEquals(expected, builder.count());
+            }
+            LOGGER.info("journal.query().all().withKeys(\"LLOY.L\", \"BP.L\").slice(interval).count() latency: " + (System.nanoTime() - t) / count / 1000 + "μs");
+
+            for (int i = -100; i < count; i++) {
+                if (i == 0) {
+                    t = System.nanoTime();
+                }
+                journal.query().all().size(interval);
+            }
+            LOGGER.info("journal.query().all().size(interval) latency: " + (System.nanoTime() - t) / count / 1000 + "μs");
+        }
+    }
+
     @Test
     public void testLatestBySymbol() throws JournalException {
 
@@ -208,4 +268,640 @@ public class PerformanceTest extends AbstractTest {
             LOGGER.info("journal.query().head().withKeys() (query+read) latency: " + (System.nanoTime() - t) / count + "ns");
         }
     }
+
+    @Test
+    public void testAppendLatencyWithPageMapper() throws JournalException {
+        Assume.assumeTrue(enabled);
+        for (int k = 0; k < 2; k++) {
+            boolean mapper = k == 1;
+            try (JournalWriter<Quote> w = factory.writer(Quote.class, "quote-latency-" + k, TEST_DATA_SIZE)) {
+                w.setPageMapperEnabled(mapper);
+                long latencies[] = new long[TEST_DATA_SIZE];
+                Quote q = new Quote().setSym("LLOY.L").setEx("LXE").setMode("Fast trading");
+                long timestamp = Dates.toMillis("2013-10-05T10:00:00.000Z");
+                for (int i = 0; i < TEST_DATA_SIZE; i++) {
+                    q.setTimestamp(timestamp += 10000);
+                    q.setBid(i);
+                    long t = System.nanoTime();
+                    w.append(q);
+                    latencies[i] = System.nanoTime() - t;
+                }
+                w.commit();
+
+                Arrays.sort(latencies);
+                LOGGER.info("append latency (mapper=" + mapper + ") " +
+                        "p50: " + percentile(latencies, 0.5) + "ns, " +
+                        "p99: " + percentile(latencies, 0.99) + "ns, " +
+                        "p99.9: " + percentile(latencies, 0.999) + "ns, " +
+                        "p99.99: " + percentile(latencies, 0.9999) + "ns, " +
+                        "max: " + latencies[latencies.length - 1] + "ns"
+                );
+            }
+        }
+    }
+
+    @Test
+    public void testAppendLatencyWithDeferredIndexing() throws JournalException {
+        Assume.assumeTrue(enabled);
+        String symbols[] = {"AGK.L", "BP.L", "TLW.L", "ABF.L", "LLOY.L", "BT-A.L", "WTB.L", "RRS.L", "ADM.L", "GKN.L", "HSBA.L"};
+        String exchanges[] = {"LXE", "GR", "SK"};
+        for (int k = 0; k < 2; k++) {
+            int batchSize = k == 0 ? 0 : 100000;
+            try (JournalWriter<Quote> w = factory.writer(Quote.class, "quote-deferred-" + k, TEST_DATA_SIZE)) {
+                w.setDeferredIndexing(batchSize);
+                long latencies[] = new long[TEST_DATA_SIZE];
+                long maxCommit = 0;
+                Quote q = new Quote().setMode("Fast trading");
+                long timestamp = Dates.toMillis("2013-10-05T10:00:00.000Z");
+                for (int i = 0; i < TEST_DATA_SIZE; i++) {
+                    q.setTimestamp(timestamp += 10000);
+                    q.setSym(symbols[i % symbols.length]);
+                    q.setEx(exchanges[i % exchanges.length]);
+                    q.setBid(i);
+                    long t = System.nanoTime();
+                    w.append(q);
+                    latencies[i] = System.nanoTime() - t;
+                    if (i % 10000 == 0) {
+                        t = System.nanoTime();
+                        w.commit();
+                        maxCommit = Math.max(maxCommit, System.nanoTime() - t);
+                    }
+                }
+                w.commit();
+
+                Arrays.sort(latencies);
+                // deferred indexing moves index work into commits that cross batch size
+                LOGGER.info("max commit latency (sym, ex indexed, deferredIndexing=" + batchSize + ") " + maxCommit + "ns");
+                LOGGER.info("append latency (sym, ex indexed, deferredIndexing=" + batchSize + ") " +
+                        "p50: " + percentile(latencies, 0.5) + "ns, " +
+                        "p99: " + percentile(latencies, 0.99) + "ns, " +
+                        "p99.9: " + percentile(latencies, 0.999) + "ns, " +
+                        "max: " + latencies[latencies.length - 1] + "ns"
+                );
+            }
+        }
+    }
+
+    @Test
+    public void testBulkScanWithReadAhead() throws JournalException {
+        Assume.assumeTrue(enabled);
+        // separate journal per run, so that second scan does not benefit from pages first scan has cached;
+        // drop OS page cache before running this test to get cold cache numbers
+        for (int k = 0; k < 2; k++) {
+            try (JournalWriter<Quote> w = factory.bulkWriter(Quote.class, "quote-scan-" + k)) {
+                TestUtils.generateQuoteData(w, TEST_DATA_SIZE, Dates.toMillis("2013-10-05T10:00:00.000Z"), 10000);
+                w.commit();
+            }
+        }
+
+        for (int k = 0; k < 2; k++) {
+            boolean readAhead = k == 1;
+            try (JournalBulkReader<Quote> r = factory.bulkReader(new JournalKey<>(Quote.class, "quote-scan-" + k))) {
+                r.setReadAhead(readAhead);
+                long t = System.nanoTime();
+                long count = 0;
+                for (Quote q : r.bufferedIterator()) {
+                    assert q != null;
+                    count++;
+                }
+                t = System.nanoTime() - t;
+                Assert.assertEquals(TEST_DATA_SIZE, count);
+                LOGGER.info("bulk scan (readAhead=" + readAhead + ") " + TimeUnit.NANOSECONDS.toMillis(t) + "ms, " + count * 1000000000L / t + " rows/s");
+            }
+        }
+    }
+
+    @Test
+    public void testDurableCommitWithGroupCommit() throws Exception {
+        Assume.assumeTrue(enabled);
+        final int writerCount = 10;
+        final int commitCount = 100;
+
+        for (int k = 0; k < 2; k++) {
+            final boolean group = k == 1;
+            final GroupCommit groupCommit = new GroupCommit("perf");
+            groupCommit.start();
+            ExecutorService service = Executors.newCachedThreadPool();
+            final CountDownLatch latch = new CountDownLatch(writerCount);
+            final List<Throwable> exceptions = new CopyOnWriteArrayList<>();
+            long t = System.nanoTime();
+            for (int i = 0; i < writerCount; i++) {
+                final JournalWriter<Quote> w = factory.writer(Quote.class, "quote-durable-" + k + "-" + i);
+                if (group) {
+                    w.setGroupCommit(groupCommit);
+                }
+                service.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            long timestamp = Dates.toMillis("2013-10-05T10:00:00.000Z");
+                            TxFuture future = null;
+                            for (int n = 0; n < commitCount; n++) {
+                                TestUtils.generateQuoteData(w, 100, timestamp, 1000);
+                                timestamp += 100000;
+                                future = w.commitDurableAsync();
+                            }
+                            if (future != null) {
+                                future.waitFor(1, TimeUnit.MINUTES);
+                            }
+                        } catch (Throwable e) {
+                            exceptions.add(e);
+                        }
+                        latch.countDown();
+                    }
+                });
+            }
+            latch.await();
+            t = System.nanoTime() - t;
+            service.shutdown();
+            groupCommit.halt();
+            Assert.assertEquals(0, exceptions.size());
+
+            LOGGER.info("durable commits (group=" + group + ", writers=" + writerCount + "): " +
+                    writerCount * commitCount * 1000000000L / t + " commits/s" +
+                    (group ? ", batches: " + groupCommit.getBatchCount() +
+                            ", avg batch: " + groupCommit.getAverageBatchSize() +
+                            ", max batch: " + groupCommit.getMaxBatchSize() +
+                            ", avg latency: " + TimeUnit.NANOSECONDS.toMicros(groupCommit.getAverageLatency()) + "μs" +
+                            ", max latency: " + TimeUnit.NANOSECONDS.toMicros(groupCommit.getMaxLatency()) + "μs" : ""));
+        }
+    }
+
+    @Test
+    public void testDurableCommitLatencyOnLargePartition() throws JournalException {
+        Assume.assumeTrue(enabled);
+        try (JournalWriter<Quote> w = factory.writer(Quote.class, "quote-large")) {
+            long timestamp = Dates.toMillis("2013-10-01T00:00:00.000Z");
+            // fill single partition, force cost should not depend on its size
+            TestUtils.generateQuoteData(w, 2 * TEST_DATA_SIZE, timestamp, 1);
+            w.commitDurable();
+            timestamp += 2 * TEST_DATA_SIZE;
+
+            int count = 100;
+            long t = 0;
+            for (int i = 0; i < count; i++) {
+                TestUtils.generateQuoteData(w, 10, timestamp, 1);
+                timestamp += 10;
+                long t0 = System.nanoTime();
+                w.commitDurable();
+                t += System.nanoTime() - t0;
+            }
+            LOGGER.info("durable commit latency (2M rows partition): " + TimeUnit.NANOSECONDS.toMicros(t / count) + "μs");
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[(int) Math.min(sorted.length - 1, sorted.length * p)];
+    }
+
+    @Test
+    public void testLagMergeLatency() throws JournalException {
+        Assume.assumeTrue(enabled);
+        try (JournalWriter<Quote> w = factory.writer(Quote.class, "quote-lag")) {
+            long timestamp = Dates.toMillis("2013-10-01T00:00:00.000Z");
+            // one million rows within 10 hours stay in lag
+            List<Quote> lag = new ArrayList<>();
+            for (int i = 0; i < 1000000; i++) {
+                lag.add(new Quote().setSym("LLOY.L").setEx("LXE").setMode("Fast trading").setTimestamp(timestamp + i * 36));
+            }
+            w.mergeAppend(lag);
+            w.commit();
+            lag.clear();
+
+            int count = 10;
+            long t = 0;
+            for (int k = 0; k < count; k++) {
+                // data overlaps bottom of lag and causes it to be merged and copied
+                List<Quote> data = new ArrayList<>();
+                for (int i = 0; i < 1000; i++) {
+                    data.add(new Quote().setSym("BP.L").setEx("LXE").setMode("Fast trading").setTimestamp(timestamp + 35000000 + k * 1000 + i * 50 + 1));
+                }
+                long t0 = System.nanoTime();
+                w.mergeAppend(data);
+                w.commit();
+                t += System.nanoTime() - t0;
+            }
+            LOGGER.info("lag merge latency (1M rows lag): " + TimeUnit.NANOSECONDS.toMillis(t / count) + "ms");
+            Assert.assertEquals(1000000 + count * 1000, w.size());
+        }
+    }
+
+    @Test
+    public void testCompactIndexReadSpeed() throws JournalException {
+        Assume.assumeTrue(enabled);
+        File indexFile = new File(factory.getConfiguration().getJournalBase(), "index-compact-test");
+        File compactFile = new File(factory.getConfiguration().getJournalBase(), "index-compact-test.compact");
+        int totalKeys = 100;
+        int totalValues = 5000000;
+        // small row blocks, as if index was sized for much smaller partition
+        try (KVIndex index = new KVIndex(indexFile, totalKeys, totalValues / 100, 1, JournalMode.APPEND, 0)) {
+            for (int v = 0; v < totalValues; v++) {
+                index.add(v % totalKeys, v);
+            }
+            index.commit();
+            LOGGER.info("block index scan: " + scanIndex(index, totalKeys) / 1000 + "μs");
+            index.writeCompact(compactFile);
+        }
+        KVIndex.replace(compactFile, indexFile);
+        File keyFile = new File(factory.getConfiguration().getJournalBase(), "index-compact-test.k");
+        long compactSize;
+        try (KVIndex index = new KVIndex(indexFile, totalKeys, totalValues / 100, 1, JournalMode.APPEND, 0)) {
+            Assert.assertTrue(index.isCompact());
+            LOGGER.info("compact index scan: " + scanIndex(index, totalKeys) / 1000 + "μs");
+            index.compact();
+            compactSize = keyFile.length();
+            index.writeCompact(compactFile, true);
+        }
+        KVIndex.replace(compactFile, indexFile);
+        try (KVIndex index = new KVIndex(indexFile, totalKeys, totalValues / 100, 1, JournalMode.APPEND, 0)) {
+            Assert.assertTrue(index.isPacked());
+            LOGGER.info("packed index scan: " + scanIndex(index, totalKeys) / 1000 + "μs");
+            index.compact();
+            LOGGER.info("packed index is " + compactSize / keyFile.length() + "x smaller than compact: " + keyFile.length() + " bytes");
+            Assert.assertTrue(keyFile.length() * 4 < compactSize);
+        }
+    }
+
+    @Test
+    public void testIndexRangeCursorSpeed() throws JournalException {
+        Assume.assumeTrue(enabled);
+        File indexFile = new File(factory.getConfiguration().getJournalBase(), "index-range-test");
+        int totalValues = 5000000;
+        try (KVIndex index = new KVIndex(indexFile, 10, totalValues, 1, JournalMode.APPEND, 0)) {
+            // liquid symbol, every other row
+            for (int v = 0; v < totalValues; v++) {
+                index.add(v % 2, v);
+            }
+            index.commit();
+
+            // narrow window in the middle of partition
+            long lo = totalValues / 2;
+            long hi = lo + 10000;
+            long count = 0;
+            long t = 0;
+            for (int i = -10; i < 10; i++) {
+                if (i == 0) {
+                    t = System.nanoTime();
+                }
+                count = 0;
+                KVIndex.IndexCursor cursor = index.cachedCursor(0);
+                while (cursor.hasNext()) {
+                    long v = cursor.next();
+                    if (v < lo) {
+                        break;
+                    }
+                    if (v <= hi) {
+                        count++;
+                    }
+                }
+            }
+            LOGGER.info("index scan of window: " + (System.nanoTime() - t) / 10000 + "μs");
+            Assert.assertEquals(5001, count);
+
+            for (int i = -10; i < 10; i++) {
+                if (i == 0) {
+                    t = System.nanoTime();
+                }
+                count = 0;
+                KVIndex.RangeCursor cursor = index.forwardCursor(0, lo, hi);
+                while (cursor.hasNext()) {
+                    cursor.next();
+                    count++;
+                }
+            }
+            LOGGER.info("index range cursor over window: " + (System.nanoTime() - t) / 10000 + "μs");
+            Assert.assertEquals(5001, count);
+        }
+    }
+
+    @Test
+    public void testBitmapIndexAndSpeed() throws JournalException {
+        Assume.assumeTrue(enabled);
+        File sideFile = new File(factory.getConfiguration().getJournalBase(), "bitmap-side-test");
+        File venueFile = new File(factory.getConfiguration().getJournalBase(), "bitmap-venue-test");
+        int totalValues = 5000000;
+        try (KVIndex side = new KVIndex(sideFile, 2, totalValues, 1, JournalMode.APPEND, 0);
+             KVIndex venue = new KVIndex(venueFile, 4, totalValues, 1, JournalMode.APPEND, 0);
+             BitmapIndex sideBitmap = new BitmapIndex(sideFile, totalValues, JournalMode.APPEND);
+             BitmapIndex venueBitmap = new BitmapIndex(venueFile, totalValues, JournalMode.APPEND)) {
+
+            for (int v = 0; v < totalValues; v++) {
+                side.add(v % 2, v);
+                venue.add(v % 3, v);
+                sideBitmap.add(v % 2, v);
+                venueBitmap.add(v % 3, v);
+            }
+            side.commit();
+            venue.commit();
+            sideBitmap.commit();
+            venueBitmap.commit();
+
+            // side = 0 and venue = 1
+            long count = 0;
+            long t = 0;
+            for (int i = -10; i < 10; i++) {
+                if (i == 0) {
+                    t = System.nanoTime();
+                }
+                count = 0;
+                KVIndex.RangeCursor a = side.forwardCursor(0, 0, totalValues);
+                KVIndex.RangeCursor b = venue.forwardCursor(1, 0, totalValues);
+                long va = a.hasNext() ? a.next() : -1;
+                long vb = b.hasNext() ? b.next() : -1;
+                while (va != -1 && vb != -1) {
+                    if (va < vb) {
+                        va = a.hasNext() ? a.next() : -1;
+                    } else if (va > vb) {
+                        vb = b.hasNext() ? b.next() : -1;
+                    } else {
+                        count++;
+                        va = a.hasNext() ? a.next() : -1;
+                        vb = b.hasNext() ? b.next() : -1;
+                    }
+                }
+            }
+            LOGGER.info("index intersection (5M): " + (System.nanoTime() - t) / 10000 + "μs");
+            // rows 4, 10, 16 ...
+            Assert.assertEquals((totalValues - 5) / 6 + 1, count);
+
+            long words[] = new long[BitmapIndex.CHUNK_WORDS];
+            long other[] = new long[BitmapIndex.CHUNK_WORDS];
+            for (int i = -10; i < 10; i++) {
+                if (i == 0) {
+                    t = System.nanoTime();
+                }
+                count = 0;
+                for (int c = 0, n = sideBitmap.getChunkCount(); c < n; c++) {
+                    Arrays.fill(words, 0);
+                    Arrays.fill(other, 0);
+                    sideBitmap.or(0, c, words);
+                    venueBitmap.or(1, c, other);
+                    for (int k = 0; k < BitmapIndex.CHUNK_WORDS; k++) {
+                        count += Long.bitCount(words[k] & other[k]);
+                    }
+                }
+            }
+            LOGGER.info("bitmap intersection (5M): " + (System.nanoTime() - t) / 10000 + "μs");
+            Assert.assertEquals((totalValues - 5) / 6 + 1, count);
+        }
+    }
+
+    @Test
+    public void testCompositeIndexSpeed() throws JournalException {
+        Assume.assumeTrue(enabled);
+        File symFile = new File(factory.getConfiguration().getJournalBase(), "composite-sym-test");
+        File exFile = new File(factory.getConfiguration().getJournalBase(), "composite-ex-test");
+        File compositeFile = new File(factory.getConfiguration().getJournalBase(), "composite-test");
+        int totalValues = 2000000;
+        int syms[] = new int[totalValues];
+        int exs[] = new int[totalValues];
+        int pair[] = new int[2];
+        try (KVIndex sym = new KVIndex(symFile, 100, totalValues, 1, JournalMode.APPEND, 0);
+             KVIndex ex = new KVIndex(exFile, 4, totalValues, 1, JournalMode.APPEND, 0);
+             KVIndex composite = new KVIndex(compositeFile, 400, totalValues, 1, JournalMode.APPEND, 0)) {
+
+            for (int v = 0; v < totalValues; v++) {
+                pair[0] = syms[v] = v % 100;
+                pair[1] = exs[v] = v / 100 % 4;
+                sym.add(pair[0], v);
+                ex.add(pair[1], v);
+                composite.add(Checksum.hash(pair, 400), v);
+            }
+            sym.commit();
+            ex.commit();
+            composite.commit();
+
+            // sym = 5 and ex = 1
+            long count = 0;
+            long t = 0;
+            for (int i = -10; i < 10; i++) {
+                if (i == 0) {
+                    t = System.nanoTime();
+                }
+                count = 0;
+                KVIndex.RangeCursor a = sym.forwardCursor(5, 0, totalValues);
+                KVIndex.RangeCursor b = ex.forwardCursor(1, 0, totalValues);
+                long va = a.hasNext() ? a.next() : -1;
+                long vb = b.hasNext() ? b.next() : -1;
+                while (va != -1 && vb != -1) {
+                    if (va < vb) {
+                        va = a.hasNext() ? a.next() : -1;
+                    } else if (va > vb) {
+                        vb = b.hasNext() ? b.next() : -1;
+                    } else {
+                        count++;
+                        va = a.hasNext() ? a.next() : -1;
+                        vb = b.hasNext() ? b.next() : -1;
+                    }
+                }
+            }
+            LOGGER.info("index intersection (2M): " + (System.nanoTime() - t) / 10000 + "μs");
+            Assert.assertEquals(totalValues / 400, count);
+
+            pair[0] = 5;
+            pair[1] = 1;
+            int key = Checksum.hash(pair, 400);
+            for (int i = -10; i < 10; i++) {
+                if (i == 0) {
+                    t = System.nanoTime();
+                }
+                count = 0;
+                KVIndex.RangeCursor c = composite.cursor(key, 0, totalValues);
+                while (c.hasNext()) {
+                    long row = c.next();
+                    if (syms[(int) row] == 5 && exs[(int) row] == 1) {
+                        count++;
+                    }
+                }
+            }
+            LOGGER.info("composite index (2M): " + (System.nanoTime() - t) / 10000 + "μs");
+            Assert.assertEquals(totalValues / 400, count);
+        }
+    }
+
+    @Test
+    public void testSortedIndexRangeSpeed() throws JournalException {
+        Assume.assumeTrue(enabled);
+        JournalWriter<Quote> w = factory.writer(Quote.class, "quote-sorted", TEST_DATA_SIZE);
+        TestUtils.generateQuoteData(w, TEST_DATA_SIZE, Dates.toMillis("2013-10-05T10:00:00.000Z"), 0);
+        w.commit();
+
+        Partition<Quote> p = w.getPartition(0, true);
+        int bid = w.getMetadata().getColumnIndex("bid");
+        FixedColumn col = (FixedColumn) p.getAbstractColumn(bid);
+        File base = new File(factory.getConfiguration().getJournalBase(), "sorted-bid-test");
+        long t = System.nanoTime();
+        SortedIndex.write(base, col, ColumnType.DOUBLE, p.size(), TEST_DATA_SIZE);
+        LOGGER.info("sorted index build (1M): " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t) + "ms");
+
+        // bid between 0.1 and 0.1001
+        long lo = SortedIndex.toKey(0.1);
+        long hi = SortedIndex.toKey(0.1001);
+        long count = 0;
+        for (int i = -10; i < 10; i++) {
+            if (i == 0) {
+                t = System.nanoTime();
+            }
+            count = 0;
+            for (long row = 0, sz = col.size(); row < sz; row++) {
+                long key = SortedIndex.toKey(col.getDouble(row));
+                if (key >= lo && key <= hi) {
+                    count++;
+                }
+            }
+        }
+        LOGGER.info("range scan (1M): " + (System.nanoTime() - t) / 10000 + "μs");
+
+        try (SortedIndex index = new SortedIndex(base, TEST_DATA_SIZE)) {
+            long indexCount = 0;
+            for (int i = -10; i < 10; i++) {
+                if (i == 0) {
+                    t = System.nanoTime();
+                }
+                indexCount = 0;
+                for (long pos = index.lowerBound(lo), posHi = index.upperBound(hi); pos < posHi; pos++) {
+                    if (index.getRowID(pos) >= 0) {
+                        indexCount++;
+                    }
+                }
+            }
+            LOGGER.info("sorted index range (1M): " + (System.nanoTime() - t) / 10000 + "μs");
+            Assert.assertEquals(count, indexCount);
+        }
+    }
+
+    @Test
+    public void testStringIndexLookupSpeed() throws JournalException {
+        Assume.assumeTrue(enabled);
+        String values[] = new String[TEST_DATA_SIZE];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = "ORD-" + i;
+        }
+
+        // hashed KV index with bucket count hint that is 1000 times short of distinct value count
+        int buckets = TEST_DATA_SIZE / 1000;
+        File base = new File(factory.getConfiguration().getJournalBase(), "string-index-test");
+        try (KVIndex kvIndex = new KVIndex(base, buckets, TEST_DATA_SIZE, 1, JournalMode.APPEND, 0);
+             StringIndex stringIndex = new StringIndex(base, TEST_DATA_SIZE, JournalMode.APPEND)) {
+            for (int i = 0; i < values.length; i++) {
+                kvIndex.add(Checksum.hash(values[i], buckets), i);
+                stringIndex.add(Checksum.hash64(values[i]), i);
+            }
+            kvIndex.commit();
+            stringIndex.commit();
+
+            long t = 0;
+            long count = 0;
+            for (int i = -10; i < 10; i++) {
+                if (i == 0) {
+                    t = System.nanoTime();
+                }
+                count = 0;
+                for (int k = 0; k < 1000; k++) {
+                    String v = values[k * 997];
+                    KVIndex.IndexCursor cursor = kvIndex.cachedCursor(Checksum.hash(v, buckets));
+                    while (cursor.hasNext()) {
+                        if (v.equals(values[(int) cursor.next()])) {
+                            count++;
+                        }
+                    }
+                }
+            }
+            LOGGER.info("hashed index lookup (1M, 1000 keys): " + (System.nanoTime() - t) / 10000 + "μs");
+            Assert.assertEquals(1000, count);
+
+            for (int i = -10; i < 10; i++) {
+                if (i == 0) {
+                    t = System.nanoTime();
+                }
+                count = 0;
+                for (int k = 0; k < 1000; k++) {
+                    String v = values[k * 997];
+                    StringIndex.IndexCursor cursor = stringIndex.cursor(Checksum.hash64(v));
+                    while (cursor.hasNext()) {
+                        if (v.equals(values[(int) cursor.next()])) {
+                            count++;
+                        }
+                    }
+                }
+            }
+            LOGGER.info("exact index lookup (1M, 1000 keys): " + (System.nanoTime() - t) / 10000 + "μs");
+            Assert.assertEquals(1000, count);
+        }
+    }
+
+    @Test
+    public void testNgramContainsSpeed() throws JournalException {
+        Assume.assumeTrue(enabled);
+        JournalWriter<Quote> w = factory.writer(new JournalMetadataBuilder<Quote>(Quote.class) {{
+            $str("mode").ngramIndex();
+            $str("ex");
+            recordCountHint(TEST_DATA_SIZE);
+            location("quote-ngram");
+        }});
+        long t = Dates.toMillis("2013-10-05T10:00:00.000Z");
+        for (int i = 0; i < TEST_DATA_SIZE; i++) {
+            String s = "order " + i + " rejected by venue " + (i % 10);
+            w.append(new Quote().setSym("X").setMode(s).setEx(s).setTimestamp(t));
+        }
+        w.commit();
+
+        Partition<Quote> p = w.getPartition(0, true);
+        PartitionSlice slice = new PartitionSlice();
+        slice.partition = p;
+        slice.lo = 0;
+        slice.calcHi = true;
+        StringRef value = new StringRef("order 12345 ");
+
+        // ex has same values without trigram index
+        long count = 0;
+        long time = 0;
+        FilteredRowSource scan = new FilteredRowSource(new AllRowSource(), new StringContainsRowFilter(new StringRef("ex"), value));
+        for (int i = -5; i < 5; i++) {
+            if (i == 0) {
+                time = System.nanoTime();
+            }
+            count = 0;
+            RowCursor cursor = scan.cursor(slice);
+            while (cursor.hasNext()) {
+                cursor.next();
+                count++;
+            }
+        }
+        LOGGER.info("contains scan (1M): " + TimeUnit.NANOSECONDS.toMillis((System.nanoTime() - time) / 5) + "ms");
+        Assert.assertEquals(1, count);
+
+        FilteredRowSource indexed = new FilteredRowSource(new AllRowSource(), new StringContainsRowFilter(new StringRef("mode"), value));
+        for (int i = -5; i < 5; i++) {
+            if (i == 0) {
+                time = System.nanoTime();
+            }
+            count = 0;
+            RowCursor cursor = indexed.cursor(slice);
+            while (cursor.hasNext()) {
+                cursor.next();
+                count++;
+            }
+        }
+        LOGGER.info("contains with trigram index (1M): " + TimeUnit.NANOSECONDS.toMillis((System.nanoTime() - time) / 5) + "ms");
+        Assert.assertEquals(1, count);
+    }
+
+    private long scanIndex(KVIndex index, int totalKeys) {
+        long t = 0;
+        long sum = 0;
+        for (int i = -3; i < 3; i++) {
+            if (i == 0) {
+                t = System.nanoTime();
+            }
+            for (int k = 0; k < totalKeys; k++) {
+                KVIndex.IndexCursor cursor = index.cachedCursor(k);
+                while (cursor.hasNext()) {
+                    sum += cursor.next();
+                }
+            }
+        }
+        Assert.assertTrue(sum > 0);
+        return (System.nanoTime() - t) / 3;
+    }
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal;
+
+import com.nfsdb.journal.model.Quote;
+import com.nfsdb.journal.query.api.Query;
+import com.nfsdb.journal.query.api.QueryAllBuilder;
+import com.nfsdb.journal.test.tools.AbstractTest;
+import com.nfsdb.journal.test.tools.TestData;
+import com.nfsdb.journal.utils.Dates;
+import com.nfsdb.journal.utils.Rows;
+import org.joda.time.Interval;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueryCountTest extends AbstractTest {
+
+    private final long ts1 = Dates.toMillis("2013-04-28T17:20:00.000Z");
+    private final long ts2 = Dates.toMillis("2013-05-03T23:43:20.000Z");
+    private Query<Quote> q;
+    private JournalWriter<Quote> w;
+
+    @Before
+    public void setUp() throws Exception {
+        w = factory.writer(Quote.class);
+        q = w.query();
+        TestData.appendQuoteData2(w);
+    }
+
+    @Test
+    public void testCountBySymbolValues() throws Exception {
+        String values[] = {"TLW.L", "BT-A.L", "NON_EXISTING"};
+        long byKey[] = new long[values.length];
+        long byPartition[] = new long[w.getPartitionCount()];
+        ResultSet<Quote> all = q.all().asResultSet();
+        int symIndex = w.getMetadata().getColumnIndex("sym");
+        for (int i = 0, n = all.size(); i < n; i++) {
+            for (int k = 0; k < 2; k++) {
+                if (values[k].equals(all.getSymbol(i, symIndex))) {
+                    byKey[k]++;
+                    byPartition[Rows.toPartitionIndex(all.getRowID(i))]++;
+                }
+            }
+        }
+
+        QueryAllBuilder<Quote> builder = q.all().withKeys(values);
+        Assert.assertEquals(builder.asResultSet().size(), builder.count());
+        Assert.assertArrayEquals(byKey, builder.countByKey());
+        Assert.assertArrayEquals(byPartition, builder.countByPartition());
+    }
+
+    @Test
+    public void testCountBySymbolValuesOverInterval() throws Exception {
+        QueryAllBuilder<Quote> builder = q.all().withKeys("RRS.L", "BP.L").slice(Dates.interval(ts1, ts2));
+        Assert.assertEquals(builder.asResultSet().size(), builder.count());
+        Assert.assertEquals(9, builder.countByKey()[0]);
+        Assert.assertEquals(q.all().withKeys("BP.L").slice(Dates.interval(ts1, ts2)).asResultSet().size(), builder.countByKey()[1]);
+
+        long total = 0;
+        for (long c : builder.countByPartition()) {
+            total += c;
+        }
+        Assert.assertEquals(builder.count(), total);
+    }
+
+    @Test
+    public void testCountBySymbolValuesFilter() throws Exception {
+        QueryAllBuilder<Quote> builder = q.all().withKeys("TLW.L", "BP.L").slice(Dates.interval(ts1, ts2)).filter("ex", "GR");
+        long byKey[] = builder.countByKey();
+        Assert.assertEquals(q.all().withKeys("TLW.L").slice(Dates.interval(ts1, ts2)).filter("ex", "GR").asResultSet().size(), byKey[0]);
+        Assert.assertEquals(q.all().withKeys("BP.L").slice(Dates.interval(ts1, ts2)).filter("ex", "GR").asResultSet().size(), byKey[1]);
+        Assert.assertEquals(builder.asResultSet().size(), builder.count());
+
+        builder = q.all().withKeys("TLW.L", "BP.L", "TLW.L").slice(Dates.interval(ts1, ts2)).filter("ex", "GR");
+        Assert.assertArrayEquals(new long[]{byKey[0], byKey[1], byKey[0]}, builder.countByKey());
+        Assert.assertEquals(builder.asResultSet().size(), builder.count());
+    }
+
+    @Test
+    public void testCountBySymbolValuesFilterRepeatedValues() throws Exception {
+        long tlw[] = q.all().withKeys("TLW.L").filter("ex", "GR").countByPartition();
+        long bp[] = q.all().withKeys("BP.L").filter("ex", "GR").countByPartition();
+        long byKey[] = q.all().withKeys("TLW.L", "BP.L").filter("ex", "GR").countByKey();
+        Assert.assertTrue(byKey[0] > 0);
+        Assert.assertTrue(byKey[1] > 0);
+
+        QueryAllBuilder<Quote> builder = q.all().withKeys("BP.L", "TLW.L", "NON_EXISTING", "BP.L", "BP.L").filter("ex", "GR");
+        Assert.assertArrayEquals(new long[]{byKey[1], byKey[0], 0, byKey[1], byKey[1]}, builder.countByKey());
+
+        long byPartition[] = builder.countByPartition();
+        Assert.assertEquals(tlw.length, byPartition.length);
+        for (int p = 0; p < byPartition.length; p++) {
+            Assert.assertEquals(tlw[p] + 3 * bp[p], byPartition[p]);
+        }
+    }
+
+    @Test
+    public void testSizeOverInterval() throws Exception {
+        assertSize(Dates.interval(ts1, ts2));
+        assertSize(Dates.interval(0, 1));
+        assertSize(Dates.interval("2013-03-12T00:00:00.000Z", "2013-03-13T00:00:00.000Z"));
+        Assert.assertEquals(q.all().size(), q.all().size(Dates.interval(0, Long.MAX_VALUE)));
+    }
+
+    private void assertSize(Interval interval) {
+        long count = 0;
+        for (Quote quote : q.all().iterator(interval)) {
+            count++;
+        }
+        Assert.assertEquals(count, q.all().size(interval));
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal;
+
+import com.nfsdb.journal.model.Quote;
+import com.nfsdb.journal.test.tools.AbstractTest;
+import com.nfsdb.journal.test.tools.TestUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Iterator;
+
+public class ReadAheadTest extends AbstractTest {
+
+    @Test
+    public void testReadAhead() throws Exception {
+        final int batchSize = 200000;
+        JournalWriter<Quote> writer = factory.bulkWriter(Quote.class);
+        TestUtils.generateQuoteData(writer, batchSize, System.currentTimeMillis(), 12 * 30L * 24L * 60L * 60L * 1000L / batchSize);
+        writer.commit();
+
+        Journal<Quote> reader = factory.reader(Quote.class);
+        JournalBulkReader<Quote> bulkReader = factory.bulkReader(Quote.class);
+        Assert.assertFalse(bulkReader.isReadAhead());
+        bulkReader.setReadAhead(true);
+        Assert.assertTrue(bulkReader.isReadAhead());
+        bulkReader.select("sym", "bid", "timestamp");
+
+        Iterator<Quote> expected = reader.bufferedIterator();
+        long count = 0;
+        for (Quote q : bulkReader.bufferedIterator()) {
+            Quote e = expected.next();
+            Assert.assertEquals(e.getSym(), q.getSym());
+            Assert.assertEquals(e.getBid(), q.getBid(), 0);
+            Assert.assertEquals(e.getTimestamp(), q.getTimestamp());
+            Assert.assertNull(q.getEx());
+            count++;
+        }
+        Assert.assertFalse(expected.hasNext());
+        Assert.assertEquals(batchSize, count);
+    }
+}
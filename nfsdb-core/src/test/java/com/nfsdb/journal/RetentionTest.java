@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal;
+
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.factory.configuration.JournalConfigurationBuilder;
+import com.nfsdb.journal.model.Quote;
+import com.nfsdb.journal.test.tools.JournalTestFactory;
+import com.nfsdb.journal.utils.Dates;
+import com.nfsdb.journal.utils.Files;
+import com.nfsdb.journal.utils.Rows;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+
+public class RetentionTest {
+
+    private static final int ROWS_PER_DAY = 100;
+
+    @Rule
+    public final JournalTestFactory factory = new JournalTestFactory(
+            new JournalConfigurationBuilder() {{
+                $(Quote.class).partitionBy(PartitionType.DAY).recordCountHint(ROWS_PER_DAY).retention(3).key("sym")
+                        .$sym("sym").index().valueCountHint(5)
+                        .$ts()
+                ;
+            }}.build(Files.makeTempDir())
+    );
+
+    @Test
+    public void testDropOnPartitionSwitch() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        for (int day = 0; day < 10; day++) {
+            append(w, day);
+            Assert.assertEquals(Math.min(day + 1, 3), w.getPartitionCount());
+            Assert.assertEquals(Math.max(day - 2, 0), w.getPartitionIndexBase());
+        }
+
+        Assert.assertFalse(new File(w.getLocation(), "2013-01-07").exists());
+        Assert.assertTrue(new File(w.getLocation(), "2013-01-08").exists());
+        assertDays(w, 7, 10);
+
+        w.close();
+        Journal<Quote> r = factory.reader(Quote.class);
+        Assert.assertEquals(7, r.getPartitionIndexBase());
+        assertDays(r, 7, 10);
+    }
+
+    @Test
+    public void testReaderRefresh() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        for (int day = 0; day < 3; day++) {
+            append(w, day);
+        }
+
+        Journal<Quote> r = factory.reader(Quote.class);
+        assertDays(r, 0, 3);
+        long rowID = Rows.toRowID(2, 10);
+        Quote expected = r.read(rowID);
+        int base = r.getPartitionIndexBase();
+
+        append(w, 3);
+        append(w, 4);
+        Assert.assertTrue(r.refresh());
+        assertDays(r, 2, 5);
+
+        // row id of retained partition moves down by the number of dropped partitions
+        int delta = r.getPartitionIndexBase() - base;
+        Assert.assertEquals(2, delta);
+        Assert.assertEquals(expected, r.read(Rows.toRowID(Rows.toPartitionIndex(rowID) - delta, Rows.toLocalRowID(rowID))));
+    }
+
+    @Test
+    public void testLeftoverPartitionIsIgnored() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        for (int day = 0; day < 5; day++) {
+            append(w, day);
+        }
+        w.close();
+
+        // directory of dropped partition, which writer did not get to delete
+        File leftover = new File(w.getLocation(), "2013-01-02");
+        Files.mkDirsOrException(leftover);
+        Files.copyDirContents(new File(w.getLocation(), "2013-01-03"), leftover);
+
+        Journal<Quote> r = factory.reader(Quote.class);
+        assertDays(r, 2, 5);
+
+        w = factory.writer(Quote.class);
+        Assert.assertFalse(leftover.exists());
+        append(w, 5);
+        assertDays(w, 3, 6);
+    }
+
+    private static void append(JournalWriter<Quote> w, int day) throws JournalException {
+        long t = Dates.toMillis("2013-01-01T00:00:00.000Z") + day * 86400000L;
+        for (int i = 0; i < ROWS_PER_DAY; i++) {
+            w.append(new Quote().setSym("S" + (i % 5)).setBid(day * ROWS_PER_DAY + i).setTimestamp(t + i * 1000L));
+        }
+        w.commit();
+    }
+
+    private static void assertDays(Journal<Quote> journal, int lo, int hi) throws JournalException {
+        Assert.assertEquals(hi - lo, journal.getPartitionCount());
+        Assert.assertEquals((hi - lo) * ROWS_PER_DAY, journal.size());
+        double bid = lo * ROWS_PER_DAY;
+        for (Quote q : journal) {
+            Assert.assertEquals(bid++, q.getBid(), 0);
+        }
+        Assert.assertEquals(hi * ROWS_PER_DAY, bid, 0);
+        Assert.assertEquals((hi - lo) * ROWS_PER_DAY / 5, journal.query().all().withKeys("S1").count());
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal;
+
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.factory.configuration.JournalConfigurationBuilder;
+import com.nfsdb.journal.index.SortedIndex;
+import com.nfsdb.journal.lang.cst.PartitionSlice;
+import com.nfsdb.journal.lang.cst.RowCursor;
+import com.nfsdb.journal.lang.cst.RowSource;
+import com.nfsdb.journal.lang.cst.impl.ref.StringRef;
+import com.nfsdb.journal.lang.cst.impl.rsrc.RangeRowSource;
+import com.nfsdb.journal.model.Quote;
+import com.nfsdb.journal.test.tools.JournalTestFactory;
+import com.nfsdb.journal.test.tools.TestData;
+import com.nfsdb.journal.test.tools.TestUtils;
+import com.nfsdb.journal.utils.Dates;
+import com.nfsdb.journal.utils.Files;
+import com.nfsdb.journal.utils.Rnd;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class SortedIndexTest {
+
+    private static final String SYMBOLS[] = {"AGK.L", "BP.L", "TLW.L", "ABF.L", "LLOY.L", "BT-A.L", "WTB.L", "RRS.L", "ADM.L", "GKN.L", "HSBA.L"};
+
+    @Rule
+    public final JournalTestFactory factory = new JournalTestFactory(
+            new JournalConfigurationBuilder() {{
+                $(Quote.class).partitionBy(PartitionType.MONTH).key("sym").sortedIndex("bid").sortedIndex("askSize")
+                        .$sym("sym").index().valueCountHint(15)
+                        .$sym("ex").index().valueCountHint(10)
+                        .$ts()
+                ;
+            }}.build(Files.makeTempDir())
+    );
+
+    private JournalWriter<Quote> w;
+
+    @Before
+    public void setUp() throws Exception {
+        w = factory.writer(Quote.class);
+        TestData.appendQuoteData2(w);
+        w.commit();
+        // seals all but last partition, last partition gets index of its rows so far and unindexed tail
+        w.compact();
+        Partition<Quote> last = w.getPartition(w.getPartitionCount() - 1, true);
+        last.buildSortedIndex(w.getMetadata().getColumnIndex("bid"));
+        last.buildSortedIndex(w.getMetadata().getColumnIndex("askSize"));
+        TestUtils.generateQuoteData(w, 500, Dates.toMillis("2013-05-10T00:00:00.000Z"), 1000);
+        w.commit();
+    }
+
+    @Test
+    public void testKeyOrder() throws Exception {
+        Rnd rnd = new Rnd();
+        double values[] = new double[1000];
+        for (int i = 0; i < values.length - 4; i++) {
+            values[i] = (rnd.nextDouble() - 0.5) * rnd.nextInt();
+        }
+        values[values.length - 4] = 0.0;
+        values[values.length - 3] = -0.0;
+        values[values.length - 2] = Double.NEGATIVE_INFINITY;
+        values[values.length - 1] = Double.POSITIVE_INFINITY;
+        Arrays.sort(values);
+        for (int i = 1; i < values.length; i++) {
+            Assert.assertTrue(SortedIndex.toKey(values[i - 1]) <= SortedIndex.toKey(values[i]));
+        }
+    }
+
+    @Test
+    public void testIndexBuilt() throws Exception {
+        int bid = w.getMetadata().getColumnIndex("bid");
+        for (int i = 0; i < w.getPartitionCount(); i++) {
+            Partition<Quote> p = w.getPartition(i, true);
+            SortedIndex index = p.getSortedIndexForColumn(bid);
+            Assert.assertNotNull(index);
+            for (long k = 1; k < index.size(); k++) {
+                Assert.assertTrue(index.getKey(k - 1) <= index.getKey(k));
+            }
+        }
+        Partition<Quote> last = w.getPartition(w.getPartitionCount() - 1, true);
+        Assert.assertEquals(last.size() - 500, last.getSortedIndexForColumn(bid).size());
+    }
+
+    @Test
+    public void testRowSource() throws Exception {
+        assertRowSource(w);
+        assertRowSource(factory.reader(Quote.class));
+    }
+
+    @Test
+    public void testRebuildAndTruncate() throws Exception {
+        w.rebuildIndexes();
+        assertRowSource(w);
+
+        w.truncate();
+        TestData.appendQuoteData2(w);
+        w.commit();
+        assertRowSource(w);
+        assertRowSource(factory.reader(Quote.class));
+    }
+
+    @Test
+    public void testQueryAll() throws Exception {
+        assertQueryAll(w);
+        assertQueryAll(factory.reader(Quote.class));
+    }
+
+    private void assertQueryAll(Journal<Quote> journal) throws JournalException {
+        List<String> expected = new ArrayList<>();
+        for (Quote q : journal) {
+            if (q.getBid() >= 0.1 && q.getBid() <= 0.15 && q.getAskSize() <= 2000000000) {
+                expected.add(q.toString());
+            }
+        }
+
+        // narrow range over all symbols, sorted index is cheaper than symbol index
+        List<String> actual = new ArrayList<>();
+        for (Quote q : journal.query().all().withKeys(SYMBOLS).filter("bid", 0.1, 0.15).filter("askSize", 0L, 2000000000L).asResultSet().sort()) {
+            actual.add(q.toString());
+        }
+        Assert.assertTrue(expected.size() > 0);
+        Assert.assertEquals(expected, actual);
+
+        // few symbols, range checked on rows of symbol index
+        expected.clear();
+        for (Quote q : journal) {
+            if ("BP.L".equals(q.getSym()) && q.getAskSize() >= 500000000 && q.getAskSize() <= 1500000000) {
+                expected.add(q.toString());
+            }
+        }
+        actual.clear();
+        for (Quote q : journal.query().all().withKeys("BP.L").filter("askSize", 500000000L, 1500000000L).asResultSet().sort()) {
+            actual.add(q.toString());
+        }
+        Assert.assertTrue(expected.size() > 0);
+        Assert.assertEquals(expected, actual);
+    }
+
+    private void assertRowSource(Journal<Quote> journal) throws JournalException {
+        StringRef bid = new StringRef("bid");
+        StringRef askSize = new StringRef("askSize");
+        assertRange(journal, new RangeRowSource(bid, 0.25, 0.5), "bid", 0.25, 0.5, false);
+        assertRange(journal, new RangeRowSource(bid, 0.25, 0.5, true), "bid", 0.25, 0.5, true);
+        assertRange(journal, new RangeRowSource(askSize, 100000000L, 900000000L, true), "askSize", 100000000, 900000000, true);
+        // fractional bounds of INT column are rounded inwards
+        assertRange(journal, new RangeRowSource(askSize, 99999999.5, 900000000.5), "askSize", 100000000, 900000000, false);
+        assertRange(journal, new RangeRowSource(bid, 0.5, 0.25), "bid", 0.5, 0.25, true);
+    }
+
+    private void assertRange(Journal<Quote> journal, RowSource src, String column, double lo, double hi, boolean ordered) throws JournalException {
+        int columnIndex = journal.getMetadata().getColumnIndex(column);
+        for (int i = 0; i < journal.getPartitionCount(); i++) {
+            Partition<Quote> p = journal.getPartition(i, true);
+            List<Long> expected = new ArrayList<>();
+            for (long row = 0; row < p.size(); row++) {
+                double v = "bid".equals(column) ? p.getDouble(row, columnIndex) : p.getInt(row, columnIndex);
+                if (v >= lo && v <= hi) {
+                    expected.add(row);
+                }
+            }
+
+            PartitionSlice slice = new PartitionSlice();
+            slice.partition = p;
+            slice.lo = 0;
+            slice.calcHi = true;
+            List<Long> actual = new ArrayList<>();
+            RowCursor cursor = src.cursor(slice);
+            while (cursor.hasNext()) {
+                actual.add(cursor.next());
+            }
+            if (!ordered) {
+                Collections.sort(actual);
+            }
+            Assert.assertEquals(expected, actual);
+        }
+    }
+}
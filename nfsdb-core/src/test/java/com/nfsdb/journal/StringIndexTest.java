@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal;
+
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.factory.configuration.JournalConfigurationBuilder;
+import com.nfsdb.journal.index.BloomFilter;
+import com.nfsdb.journal.index.StringIndex;
+import com.nfsdb.journal.lang.cst.PartitionSlice;
+import com.nfsdb.journal.lang.cst.RowCursor;
+import com.nfsdb.journal.lang.cst.impl.ref.StringRef;
+import com.nfsdb.journal.lang.cst.impl.rsrc.StringIndexRowSource;
+import com.nfsdb.journal.model.Quote;
+import com.nfsdb.journal.test.tools.JournalTestFactory;
+import com.nfsdb.journal.utils.Checksum;
+import com.nfsdb.journal.utils.Dates;
+import com.nfsdb.journal.utils.Files;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class StringIndexTest {
+
+    private static final int ROWS_PER_DAY = 3000;
+    private static final int DAYS = 4;
+
+    @Rule
+    public final JournalTestFactory factory = new JournalTestFactory(
+            new JournalConfigurationBuilder() {{
+                $(Quote.class).partitionBy(PartitionType.DAY).recordCountHint(100)
+                        .$str("mode").exactIndex().bloomFilter()
+                        .$ts()
+                ;
+            }}.build(Files.makeTempDir())
+    );
+
+    private JournalWriter<Quote> w;
+
+    @Before
+    public void setUp() throws Exception {
+        w = factory.writer(Quote.class);
+        append(w, 0, DAYS * ROWS_PER_DAY);
+        w.commit();
+        // seals all but last partition, which is left without Bloom filter
+        w.compact();
+    }
+
+    @Test
+    public void testIndexMaintained() throws Exception {
+        int mode = w.getMetadata().getColumnIndex("mode");
+        for (int i = 0; i < w.getPartitionCount(); i++) {
+            Partition<Quote> p = w.getPartition(i, true);
+            StringIndex index = p.getStringIndexForColumn(mode);
+            Assert.assertEquals(p.size(), index.size());
+            Assert.assertEquals(p.size(), index.getEntryCount());
+        }
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        assertLookup(w);
+        assertLookup(factory.reader(Quote.class));
+    }
+
+    @Test
+    public void testBloomFilter() throws Exception {
+        int mode = w.getMetadata().getColumnIndex("mode");
+        Partition<Quote> p = w.getPartition(0, true);
+        BloomFilter filter = p.getBloomFilterForColumn(mode);
+        Assert.assertNotNull(filter);
+        Assert.assertEquals(p.size(), filter.size());
+        Assert.assertNull(w.getPartition(w.getPartitionCount() - 1, true).getBloomFilterForColumn(mode));
+
+        for (long row = 0; row < p.size(); row++) {
+            Assert.assertTrue(filter.mightContain(Checksum.hash64(p.getStr(row, mode))));
+        }
+
+        int positives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain(Checksum.hash64("missing" + i))) {
+                positives++;
+            }
+        }
+        Assert.assertTrue("false positives: " + positives, positives < 300);
+    }
+
+    @Test
+    public void testRollback() throws Exception {
+        append(w, DAYS * ROWS_PER_DAY, 500);
+        w.rollback();
+        Assert.assertEquals(DAYS * ROWS_PER_DAY, w.size());
+        testIndexMaintained();
+
+        w.append(new Quote().setSym("X").setMode("ORD-" + (DAYS * ROWS_PER_DAY + 10)).setTimestamp(Dates.toMillis("2013-01-04T23:59:59.000Z")));
+        w.commit();
+        assertLookup(w);
+        assertLookup(factory.reader(Quote.class));
+    }
+
+    @Test
+    public void testRebuildAndTruncate() throws Exception {
+        w.rebuildIndexes();
+        testIndexMaintained();
+        assertLookup(w);
+
+        w.truncate();
+        append(w, 0, 2000);
+        w.commit();
+        testIndexMaintained();
+        assertLookup(w);
+        assertLookup(factory.reader(Quote.class));
+    }
+
+    private static void append(JournalWriter<Quote> w, int from, int count) throws JournalException {
+        long t = Dates.toMillis("2013-01-01T00:00:00.000Z");
+        long step = Dates.toMillis("2013-01-02T00:00:00.000Z") - t;
+        for (int i = from; i < from + count; i++) {
+            Quote q = new Quote().setSym("X").setTimestamp(t + i * (step / ROWS_PER_DAY));
+            // every 7th row repeats value of previous row and every 100th is null
+            if (i % 100 != 0) {
+                q.setMode("ORD-" + (i % 7 == 0 ? i - 1 : i));
+            }
+            w.append(q);
+        }
+    }
+
+    private void assertLookup(Journal<Quote> journal) throws JournalException {
+        String values[] = {"ORD-1", "ORD-6", "ORD-5001", "ORD-11999", "ORD-12010", "ORD-7", "missing", null};
+        int mode = journal.getMetadata().getColumnIndex("mode");
+        StringRef value = new StringRef();
+        StringIndexRowSource src = new StringIndexRowSource(new StringRef("mode"), value);
+        int found = 0;
+        for (String v : values) {
+            value.value = v;
+            for (int i = 0; i < journal.getPartitionCount(); i++) {
+                Partition<Quote> p = journal.getPartition(i, true);
+                List<Long> expected = new ArrayList<>();
+                for (long row = 0; row < p.size(); row++) {
+                    String s = p.getStr(row, mode);
+                    if (v == null ? s == null : v.equals(s)) {
+                        expected.add(row);
+                    }
+                }
+
+                PartitionSlice slice = new PartitionSlice();
+                slice.partition = p;
+                slice.lo = 0;
+                slice.calcHi = true;
+                List<Long> actual = new ArrayList<>();
+                RowCursor cursor = src.cursor(slice);
+                while (cursor.hasNext()) {
+                    actual.add(cursor.next());
+                }
+                Assert.assertEquals(expected, actual);
+                found += actual.size();
+            }
+        }
+        Assert.assertTrue(found > 0);
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal;
+
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.factory.configuration.JournalConfigurationBuilder;
+import com.nfsdb.journal.model.Quote;
+import com.nfsdb.journal.test.tools.JournalTestFactory;
+import com.nfsdb.journal.utils.Dates;
+import com.nfsdb.journal.utils.Files;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.Arrays;
+
+public class TieredStorageTest {
+
+    private static final int ROWS_PER_DAY = 100;
+
+    @Rule
+    public final JournalTestFactory factory = new JournalTestFactory(
+            new JournalConfigurationBuilder() {{
+                $(Quote.class).partitionBy(PartitionType.DAY).recordCountHint(ROWS_PER_DAY).key("sym")
+                        .$sym("sym").index().valueCountHint(5)
+                        .$ts()
+                ;
+            }}.build(Files.makeTempDir())
+    );
+
+    private File tier;
+
+    @Before
+    public void setUp() {
+        tier = Files.makeTempDir();
+    }
+
+    @After
+    public void tearDown() {
+        Files.delete(tier);
+    }
+
+    @Test
+    public void testMoveColdPartitions() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        Journal<Quote> r = factory.reader(Quote.class);
+        w.setTierPolicy(tier, 2, 0);
+        for (int day = 0; day < 5; day++) {
+            append(w, day);
+        }
+        Assert.assertTrue(r.refresh());
+        assertDays(r, 0, 5);
+
+        waitForMoves(w, 3);
+        File location = new File(tier, w.getLocation().getName());
+        Assert.assertTrue(new File(location, "2013-01-01.1").exists());
+        Assert.assertTrue(new File(location, "2013-01-03.1").exists());
+        Assert.assertFalse(new File(w.getLocation(), "2013-01-01").exists());
+        Assert.assertTrue(new File(w.getLocation(), "2013-01-04").exists());
+        Assert.assertTrue(new File(w.getLocation(), PartitionManifest.FILE_NAME).exists());
+        assertDays(w, 0, 5);
+
+        // reader follows without reopening
+        Assert.assertTrue(r.refresh());
+        Assert.assertEquals(location, r.getPartition(0, true).getPartitionDir().getParentFile());
+        assertDays(r, 0, 5);
+        assertDays(factory.reader(Quote.class), 0, 5);
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        w.setTierPolicy(tier, 2, 0);
+        for (int day = 0; day < 4; day++) {
+            append(w, day);
+        }
+        waitForMoves(w, 2);
+        w.close();
+
+        w = factory.writer(Quote.class);
+        assertDays(w, 0, 4);
+        w.setTierPolicy(tier, 2, 0);
+        append(w, 4);
+        waitForMoves(w, 3);
+        assertDays(w, 0, 5);
+        assertDays(factory.reader(Quote.class), 0, 5);
+    }
+
+    @Test
+    public void testThrottledMoveIsAbandonedOnClose() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        for (int day = 0; day < 4; day++) {
+            append(w, day);
+        }
+        // too slow to copy anything before writer closes
+        w.setTierPolicy(tier, 2, 1);
+        w.close();
+
+        Journal<Quote> r = factory.reader(Quote.class);
+        Assert.assertEquals(w.getLocation(), r.getPartition(0, true).getPartitionDir().getParentFile());
+        assertDays(r, 0, 4);
+
+        // abandoned copy is cleared away before moves start over
+        w = factory.writer(Quote.class);
+        w.setTierPolicy(tier, 2, 0);
+        waitForMoves(w, 2);
+        Assert.assertArrayEquals(new String[]{"2013-01-01.1", "2013-01-02.1"}, sortedDirs(new File(tier, w.getLocation().getName())));
+        assertDays(w, 0, 4);
+    }
+
+    private void waitForMoves(JournalWriter<Quote> w, int count) throws Exception {
+        File location = new File(tier, w.getLocation().getName());
+        long deadline = System.currentTimeMillis() + 10000;
+        while (true) {
+            w.commit();
+            int moved = 0;
+            for (int i = 0; i < w.getPartitionCount(); i++) {
+                if (location.equals(w.getPartition(i, false).getPartitionDir().getParentFile())) {
+                    moved++;
+                }
+            }
+            if (moved == count) {
+                return;
+            }
+            Assert.assertTrue("Partitions have not been moved", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    // journals keep lock files next to partition directories they use
+    private static String[] sortedDirs(File location) {
+        String names[] = location.list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return new File(dir, name).isDirectory();
+            }
+        });
+        Arrays.sort(names);
+        return names;
+    }
+
+    private static void append(JournalWriter<Quote> w, int day) throws JournalException {
+        long t = Dates.toMillis("2013-01-01T00:00:00.000Z") + day * 86400000L;
+        for (int i = 0; i < ROWS_PER_DAY; i++) {
+            w.append(new Quote().setSym("S" + (i % 5)).setBid(day * ROWS_PER_DAY + i).setTimestamp(t + i * 1000L));
+        }
+        w.commit();
+    }
+
+    private static void assertDays(Journal<Quote> journal, int lo, int hi) throws JournalException {
+        Assert.assertEquals(hi - lo, journal.getPartitionCount());
+        Assert.assertEquals((hi - lo) * ROWS_PER_DAY, journal.size());
+        double bid = lo * ROWS_PER_DAY;
+        for (Quote q : journal) {
+            Assert.assertEquals(bid++, q.getBid(), 0);
+        }
+        Assert.assertEquals(hi * ROWS_PER_DAY, bid, 0);
+        Assert.assertEquals((hi - lo) * ROWS_PER_DAY / 5, journal.query().all().withKeys("S1").count());
+    }
+}
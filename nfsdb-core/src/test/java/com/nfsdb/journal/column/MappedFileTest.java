@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal.column;
+
+import com.nfsdb.journal.JournalMode;
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.utils.Unsafe;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+public class MappedFileTest {
+
+    private static final int BIT_HINT = 12;
+    private static final int PAGE_SIZE = 1 << BIT_HINT;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private File file;
+
+    @Before
+    public void setUp() {
+        file = new File(temporaryFolder.getRoot(), "col.d");
+    }
+
+    @Test
+    public void testForceTracksPagesWrittenSinceLastForce() throws JournalException {
+        try (MappedFileImpl mf = new MappedFileImpl(file, BIT_HINT, JournalMode.APPEND)) {
+            putLong(mf, 0, 1);
+            assertDirty(mf, 0, 0);
+            mf.force();
+            assertClean(mf);
+
+            // same page again, cached buffer has to be marked dirty after force
+            putLong(mf, 8, 2);
+            putLong(mf, 16, 3);
+            assertDirty(mf, 0, 0);
+
+            // across page boundary through stitch, which belongs to first page
+            putLong(mf, PAGE_SIZE - 4, 4);
+            assertDirty(mf, 0, 0);
+
+            // next page
+            putLong(mf, PAGE_SIZE + 8, 5);
+            assertDirty(mf, 0, 1);
+            mf.setAppendOffset(PAGE_SIZE + 16);
+            mf.force();
+            assertClean(mf);
+
+            // existing stitch is reused after force and has to be marked dirty too
+            putLong(mf, PAGE_SIZE - 4, 6);
+            assertDirty(mf, 0, 0);
+            mf.force();
+            assertClean(mf);
+
+            // second page alone
+            putLong(mf, PAGE_SIZE + 8, 7);
+            assertDirty(mf, 1, 1);
+            mf.force();
+            assertClean(mf);
+        }
+
+        try (MappedFileImpl mf = new MappedFileImpl(file, BIT_HINT, JournalMode.READ)) {
+            Assert.assertEquals(PAGE_SIZE + 16, mf.getAppendOffset());
+            Assert.assertEquals(1, getLong(mf, 0));
+            Assert.assertEquals(2, getLong(mf, 8));
+            Assert.assertEquals(3, getLong(mf, 16));
+            Assert.assertEquals(6, getLong(mf, PAGE_SIZE - 4));
+            Assert.assertEquals(7, getLong(mf, PAGE_SIZE + 8));
+        }
+    }
+
+    private static void assertClean(MappedFileImpl mf) {
+        Assert.assertEquals(Integer.MAX_VALUE, mf.getDirtyLo());
+        Assert.assertEquals(-1, mf.getDirtyHi());
+    }
+
+    private static void assertDirty(MappedFileImpl mf, int lo, int hi) {
+        Assert.assertEquals(lo, mf.getDirtyLo());
+        Assert.assertEquals(hi, mf.getDirtyHi());
+    }
+
+    private static long getLong(MappedFileImpl mf, long offset) {
+        return Unsafe.getUnsafe().getLong(mf.getAddress(offset, 8));
+    }
+
+    private static void putLong(MappedFileImpl mf, long offset, long value) {
+        Unsafe.getUnsafe().putLong(mf.getAddress(offset, 8), value);
+    }
+}
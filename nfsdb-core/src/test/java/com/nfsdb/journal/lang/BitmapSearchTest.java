@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.journal.lang;
+
+import com.nfsdb.journal.Journal;
+import com.nfsdb.journal.JournalWriter;
+import com.nfsdb.journal.factory.configuration.JournalConfigurationBuilder;
+import com.nfsdb.journal.lang.cst.*;
+import com.nfsdb.journal.lang.cst.impl.bsrc.AndBitmapSource;
+import com.nfsdb.journal.lang.cst.impl.bsrc.NotBitmapSource;
+import com.nfsdb.journal.lang.cst.impl.bsrc.OrBitmapSource;
+import com.nfsdb.journal.lang.cst.impl.bsrc.SymbolBitmapSource;
+import com.nfsdb.journal.lang.cst.impl.jsrc.JournalSourceImpl;
+import com.nfsdb.journal.lang.cst.impl.ksrc.PartialSymbolKeySource;
+import com.nfsdb.journal.lang.cst.impl.psrc.IntervalPartitionSource;
+import com.nfsdb.journal.lang.cst.impl.psrc.JournalPartitionSource;
+import com.nfsdb.journal.lang.cst.impl.ref.StringRef;
+import com.nfsdb.journal.lang.cst.impl.rsrc.AllRowSource;
+import com.nfsdb.journal.lang.cst.impl.rsrc.BitmapRowSource;
+import com.nfsdb.journal.lang.cst.impl.rsrc.FilteredRowSource;
+import com.nfsdb.journal.model.Quote;
+import com.nfsdb.journal.test.tools.JournalTestFactory;
+import com.nfsdb.journal.test.tools.TestData;
+import com.nfsdb.journal.utils.Dates;
+import com.nfsdb.journal.utils.Files;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+public class BitmapSearchTest {
+    @ClassRule
+    public static final JournalTestFactory factory = new JournalTestFactory(
+            new JournalConfigurationBuilder() {{
+                $(Quote.class)
+                        .$sym("sym").bitmapIndex().valueCountHint(15)
+                        .$sym("ex").bitmapIndex().valueCountHint(10)
+                        .$str("mode")
+                        .$ts()
+                ;
+            }}.build(Files.makeTempDir())
+    );
+    private static JournalWriter<Quote> journal;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        journal = factory.writer(Quote.class, "quote");
+        TestData.appendQuoteData2(journal);
+    }
+
+    @Test
+    public void testBitmapAndOrNot() throws Exception {
+        StringRef sym = new StringRef("sym");
+        final StringRef ex = new StringRef("ex");
+
+        // from quote where timestamp in ("2013-03-12T00:00:00.000Z", "2013-03-15T00:00:00.000Z") and (sym in ("BP.L", "WTB.L") or ex = "SK") and not ex = "GR"
+        RowSource bitmap = new BitmapRowSource(
+                new AndBitmapSource(
+                        new OrBitmapSource(
+                                new SymbolBitmapSource(sym, new PartialSymbolKeySource(sym, new ArrayList<String>() {{
+                                    add("BP.L");
+                                    add("WTB.L");
+                                }}))
+                                , new SymbolBitmapSource(ex, new PartialSymbolKeySource(ex, new ArrayList<String>() {{
+                                    add("SK");
+                                }}))
+                        )
+                        , new NotBitmapSource(
+                                new SymbolBitmapSource(ex, new PartialSymbolKeySource(ex, new ArrayList<String>() {{
+                                    add("GR");
+                                }}))
+                        )
+                )
+        );
+
+        RowSource scan = new FilteredRowSource(new AllRowSource(), new RowFilter() {
+            @Override
+            public RowAcceptor acceptor(final PartitionSlice slice) {
+                final int symIndex = journal.getMetadata().getColumnIndex("sym");
+                final int exIndex = journal.getMetadata().getColumnIndex(ex.value);
+                return new RowAcceptor() {
+                    @Override
+                    public Choice accept(long localRowID) {
+                        String s = slice.partition.getSym(localRowID, symIndex);
+                        String e = slice.partition.getSym(localRowID, exIndex);
+                        return ("BP.L".equals(s) || "WTB.L".equals(s) || "SK".equals(e)) && !"GR".equals(e) ? Choice.PICK : Choice.SKIP;
+                    }
+                };
+            }
+        });
+
+        String expected = toString(new JournalSourceImpl(new IntervalPartitionSource(new JournalPartitionSource(journal, false), Dates.interval("2013-03-12T00:00:00.000Z", "2013-03-15T00:00:00.000Z")), scan));
+        Assert.assertTrue(expected.length() > 0);
+        assertEquals(expected, new JournalSourceImpl(new IntervalPartitionSource(new JournalPartitionSource(journal, false), Dates.interval("2013-03-12T00:00:00.000Z", "2013-03-15T00:00:00.000Z")), bitmap));
+
+        // whole journal through reader
+        Journal<Quote> reader = factory.reader(Quote.class, "quote");
+        expected = toString(new JournalSourceImpl(new JournalPartitionSource(reader, false), scan));
+        Assert.assertTrue(expected.length() > 0);
+        assertEquals(expected, new JournalSourceImpl(new JournalPartitionSource(reader, false), bitmap));
+    }
+
+    private void assertEquals(CharSequence expected, EntrySource src) throws IOException {
+        Assert.assertEquals(expected, toString(src));
+    }
+
+    private String toString(EntrySource src) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        JournalEntryPrinter p = new JournalEntryPrinter(bos, true);
+        p.print(src);
+        return bos.toString();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.journal.net;
+
+import com.nfsdb.journal.Journal;
+import com.nfsdb.journal.JournalEntryWriter;
+import com.nfsdb.journal.JournalWriter;
+import com.nfsdb.journal.PartitionType;
+import com.nfsdb.journal.column.ColumnType;
+import com.nfsdb.journal.exceptions.JournalException;
+import com.nfsdb.journal.factory.configuration.JournalStructure;
+import com.nfsdb.journal.lang.cst.JournalEntry;
+import com.nfsdb.journal.lang.cst.JournalSource;
+import com.nfsdb.journal.net.comsumer.JournalClientStateConsumer;
+import com.nfsdb.journal.net.comsumer.JournalDeltaConsumer;
+import com.nfsdb.journal.net.model.IndexedJournal;
+import com.nfsdb.journal.net.producer.JournalClientStateProducer;
+import com.nfsdb.journal.net.producer.JournalDeltaProducer;
+import com.nfsdb.journal.test.tools.AbstractTest;
+import com.nfsdb.journal.utils.Dates;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ColumnReplicationTest extends AbstractTest {
+
+    private static final long DAY = 86400000L;
+    private static final long T0 = Dates.toMillis("2013-01-01T00:00:00.000Z");
+
+    @Test
+    public void testAddedColumnIsReplicated() throws Exception {
+        JournalWriter master = makeWriter("master");
+        JournalWriter slave = makeWriter("slave");
+        JournalDeltaProducer producer = new JournalDeltaProducer(factory.reader("master"));
+        JournalDeltaConsumer consumer = new JournalDeltaConsumer(slave);
+        MockByteChannel channel = new MockByteChannel();
+
+        append(master, 0, 2, false);
+        replicate(channel, producer, consumer, slave);
+        Assert.assertEquals(4, slave.size());
+
+        master.addColumn("qty", ColumnType.INT);
+        append(master, 2, 4, true);
+        replicate(channel, producer, consumer, slave);
+
+        Assert.assertEquals(4, slave.getMetadata().getColumnCount());
+        Assert.assertEquals(8, slave.size());
+
+        Journal r = factory.reader("slave");
+        JournalSource src = r.rows();
+        int n = 0;
+        while (src.hasNext()) {
+            JournalEntry e = src.next();
+            Assert.assertEquals(n < 4 ? 0 : 100 + n, e.getInt("qty"));
+            n++;
+        }
+        Assert.assertEquals(8, n);
+    }
+
+    private void replicate(MockByteChannel channel, JournalDeltaProducer producer, JournalDeltaConsumer consumer, JournalWriter slave) throws Exception {
+        JournalClientStateProducer stateProducer = new JournalClientStateProducer();
+        JournalClientStateConsumer stateConsumer = new JournalClientStateConsumer();
+        slave.refresh();
+        stateProducer.write(channel, new IndexedJournal(0, slave));
+        stateConsumer.read(channel);
+        Assert.assertTrue(stateConsumer.isComplete());
+
+        producer.configure(stateConsumer.getValue());
+        Assert.assertTrue(producer.hasContent());
+        producer.write(channel);
+        consumer.reset();
+        consumer.read(channel);
+        Assert.assertTrue(consumer.isComplete());
+    }
+
+    private JournalWriter makeWriter(String location) throws JournalException {
+        return factory.writer(new JournalStructure(location) {{
+            $sym("sym");
+            $double("price");
+            $ts();
+            partitionBy(PartitionType.DAY);
+        }});
+    }
+
+    private void append(JournalWriter w, int from, int to, boolean withColumn) throws JournalException {
+        for (int day = from; day < to; day++) {
+            for (int k = 0; k < 2; k++) {
+                JournalEntryWriter e = w.entryWriter(T0 + day * DAY + k * 1000);
+                e.putSym(0, "S" + k);
+                e.putDouble(1, day + k * 0.5);
+                if (withColumn) {
+                    e.putInt(3, 100 + day * 2 + k);
+                }
+                e.append();
+            }
+        }
+        w.commit();
+    }
+}